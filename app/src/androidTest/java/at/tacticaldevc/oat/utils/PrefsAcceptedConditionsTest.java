@@ -1,7 +1,6 @@
 package at.tacticaldevc.oat.utils;
 
 
-import android.content.Context;
 import android.content.SharedPreferences;
 
 import androidx.test.platform.app.InstrumentationRegistry;
@@ -96,7 +95,7 @@ public class PrefsAcceptedConditionsTest {
         boolean result = saveConditionAccepted(InstrumentationRegistry.getInstrumentation().getTargetContext(), testedCondition, true);
 
         // assert
-        SharedPreferences prefs = InstrumentationRegistry.getInstrumentation().getTargetContext().getSharedPreferences(DOCUMENT_NAME_TEST, Context.MODE_PRIVATE);
+        SharedPreferences prefs = ConfigStore.getInstance(InstrumentationRegistry.getInstrumentation().getTargetContext()).getSection(DOCUMENT_NAME_TEST);
 
         assertThat(result).isTrue();
         assertThat(prefs.getBoolean(testedCondition, false)).isTrue();
@@ -111,7 +110,7 @@ public class PrefsAcceptedConditionsTest {
         boolean result = saveConditionAccepted(InstrumentationRegistry.getInstrumentation().getTargetContext(), testedCondition, true);
 
         // assert
-        SharedPreferences prefs = InstrumentationRegistry.getInstrumentation().getTargetContext().getSharedPreferences(DOCUMENT_NAME_TEST, Context.MODE_PRIVATE);
+        SharedPreferences prefs = ConfigStore.getInstance(InstrumentationRegistry.getInstrumentation().getTargetContext()).getSection(DOCUMENT_NAME_TEST);
 
         assertThat(result).isTrue();
         assertThat(prefs.getBoolean(testedCondition, true)).isTrue();
@@ -123,14 +122,14 @@ public class PrefsAcceptedConditionsTest {
     }
 
     private void cleanup() {
-        SharedPreferences pref = InstrumentationRegistry.getInstrumentation().getTargetContext().getSharedPreferences(DOCUMENT_NAME_TEST, Context.MODE_PRIVATE);
+        SharedPreferences pref = ConfigStore.getInstance(InstrumentationRegistry.getInstrumentation().getTargetContext()).getSection(DOCUMENT_NAME_TEST);
         SharedPreferences.Editor editor = pref.edit();
         editor.clear();
         editor.apply();
     }
 
     private Map<String, Boolean> setup() {
-        SharedPreferences pref = InstrumentationRegistry.getInstrumentation().getTargetContext().getSharedPreferences(DOCUMENT_NAME_TEST, Context.MODE_PRIVATE);
+        SharedPreferences pref = ConfigStore.getInstance(InstrumentationRegistry.getInstrumentation().getTargetContext()).getSection(DOCUMENT_NAME_TEST);
         SharedPreferences.Editor editor = pref.edit();
 
         HashMap<String, Boolean> enabledFeatures = new HashMap<>();
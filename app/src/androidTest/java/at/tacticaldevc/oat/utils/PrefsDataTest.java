@@ -1,6 +1,5 @@
 package at.tacticaldevc.oat.utils;
 
-import android.content.Context;
 import android.content.SharedPreferences;
 import android.util.Base64;
 
@@ -11,7 +10,6 @@ import org.junit.Test;
 import org.junit.jupiter.api.AfterEach;
 
 import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -27,13 +25,13 @@ import static at.tacticaldevc.oat.utils.Prefs.savePassword;
 import static at.tacticaldevc.oat.utils.Prefs.verifyApplicationPassword;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
-import static org.junit.jupiter.api.Assertions.fail;
 
 
 public class PrefsDataTest {
     private static final String DOCUMENT_NAME_TEST = "oat-data";
     private final static String KEY_COMMAND_PASSWORD = "password";
     private final static String KEY_COMMAND_PASSWORD_SALT = "pwdsalt";
+    private final static String KEY_COMMAND_PASSWORD_KDF = "pwdkdf";
     private final static String KEY_COMMAND_TRIGGER = "cmd-trigger";
     private final static String KEY_MISSING_PERMISSIONS_TO_REQUEST_ON_STARTUP = "missing-permission";
     private final static String KEY_LOCKDOWN_STATUS = "lockdown-status";
@@ -63,19 +61,16 @@ public class PrefsDataTest {
         savePassword(InstrumentationRegistry.getInstrumentation().getTargetContext(), newPassword, null);
 
         // assert
-        SharedPreferences prefs = InstrumentationRegistry.getInstrumentation().getTargetContext().getSharedPreferences(DOCUMENT_NAME_TEST, Context.MODE_PRIVATE);
+        SharedPreferences prefs = ConfigStore.getInstance(InstrumentationRegistry.getInstrumentation().getTargetContext()).getSection(DOCUMENT_NAME_TEST);
         String psswdHash = prefs.getString(KEY_COMMAND_PASSWORD, null);
         byte[] salt = Base64.decode(prefs.getString(KEY_COMMAND_PASSWORD_SALT, null), Base64.NO_WRAP);
-        MessageDigest algorithm;
-        try {
-            algorithm = MessageDigest.getInstance("SHA-256");
-            algorithm.update(salt);
-            String expectedHash = Base64.encodeToString(algorithm.digest(newPassword.getBytes()), Base64.NO_WRAP);
-            assertThat(psswdHash).isEqualTo(expectedHash);
-            assertThat(salt).isNotEmpty();
-        } catch (NoSuchAlgorithmException ex) {
-            fail();
-        }
+        String kdfSpec = prefs.getString(KEY_COMMAND_PASSWORD_KDF, null);
+        assertThat(kdfSpec).startsWith(Pbkdf2Sha256.NAME + ":");
+        int iterations = Integer.parseInt(kdfSpec.substring(kdfSpec.indexOf(':') + 1));
+        String expectedHash = Base64.encodeToString(Pbkdf2Sha256.derive(newPassword.getBytes(), salt, iterations, 32), Base64.NO_WRAP);
+        assertThat(psswdHash).isEqualTo(expectedHash);
+        assertThat(salt).isNotEmpty();
+        assertThat(iterations).isGreaterThanOrEqualTo(10000);
     }
 
     @Test
@@ -88,18 +83,13 @@ public class PrefsDataTest {
         savePassword(InstrumentationRegistry.getInstrumentation().getTargetContext(), newPassword, "Password");
 
         // assert
-        SharedPreferences prefs = InstrumentationRegistry.getInstrumentation().getTargetContext().getSharedPreferences(DOCUMENT_NAME_TEST, Context.MODE_PRIVATE);
+        SharedPreferences prefs = ConfigStore.getInstance(InstrumentationRegistry.getInstrumentation().getTargetContext()).getSection(DOCUMENT_NAME_TEST);
         String psswdHash = prefs.getString(KEY_COMMAND_PASSWORD, null);
         byte[] salt = Base64.decode(prefs.getString(KEY_COMMAND_PASSWORD_SALT, null), Base64.NO_WRAP);
-        MessageDigest algorithm;
-        try {
-            algorithm = MessageDigest.getInstance("SHA-256");
-            algorithm.update(salt);
-            String expectedHash = Base64.encodeToString(algorithm.digest(newPassword.getBytes()), Base64.NO_WRAP);
-            assertThat(psswdHash).isEqualTo(expectedHash);
-        } catch (NoSuchAlgorithmException ex) {
-            fail();
-        }
+        String kdfSpec = prefs.getString(KEY_COMMAND_PASSWORD_KDF, null);
+        int iterations = Integer.parseInt(kdfSpec.substring(kdfSpec.indexOf(':') + 1));
+        String expectedHash = Base64.encodeToString(Pbkdf2Sha256.derive(newPassword.getBytes(), salt, iterations, 32), Base64.NO_WRAP);
+        assertThat(psswdHash).isEqualTo(expectedHash);
     }
 
     @Test
@@ -155,7 +145,7 @@ public class PrefsDataTest {
         // prepare
         String password = "Password";
         savePassword(InstrumentationRegistry.getInstrumentation().getTargetContext(), password, null);
-        SharedPreferences prefs = InstrumentationRegistry.getInstrumentation().getTargetContext().getSharedPreferences(DOCUMENT_NAME_TEST, Context.MODE_PRIVATE);
+        SharedPreferences prefs = ConfigStore.getInstance(InstrumentationRegistry.getInstrumentation().getTargetContext()).getSection(DOCUMENT_NAME_TEST);
         SharedPreferences.Editor edit = prefs.edit();
         edit.remove(KEY_COMMAND_PASSWORD_SALT);
         edit.apply();
@@ -166,6 +156,29 @@ public class PrefsDataTest {
         assertThat(prefs.getString(KEY_COMMAND_PASSWORD_SALT, null)).isNull();
     }
 
+    @Test
+    public void verifyApplicationPasswordMigratesLegacyHash() throws Exception {
+        // prepare
+        String password = "Password";
+        byte[] salt = new byte[]{1, 2, 3, 4, 5, 6, 7, 8};
+        MessageDigest algorithm = MessageDigest.getInstance("SHA-256");
+        algorithm.update(salt);
+        SharedPreferences prefs = ConfigStore.getInstance(InstrumentationRegistry.getInstrumentation().getTargetContext()).getSection(DOCUMENT_NAME_TEST);
+        SharedPreferences.Editor edit = prefs.edit();
+        edit.putString(KEY_COMMAND_PASSWORD_SALT, Base64.encodeToString(salt, Base64.NO_WRAP));
+        edit.putString(KEY_COMMAND_PASSWORD, Base64.encodeToString(algorithm.digest(password.getBytes()), Base64.NO_WRAP));
+        edit.commit();
+
+        // test
+        boolean result = verifyApplicationPassword(InstrumentationRegistry.getInstrumentation().getTargetContext(), password);
+
+        // assert
+        assertThat(result).isTrue();
+        assertThat(prefs.getString(KEY_COMMAND_PASSWORD_KDF, null)).startsWith(Pbkdf2Sha256.NAME + ":");
+        assertThat(verifyApplicationPassword(InstrumentationRegistry.getInstrumentation().getTargetContext(), password)).isTrue();
+        assertThat(verifyApplicationPassword(InstrumentationRegistry.getInstrumentation().getTargetContext(), "Password1")).isFalse();
+    }
+
     // Command trigger word
 
     @Test
@@ -186,7 +199,7 @@ public class PrefsDataTest {
         String result = saveCommandTriggerWord(InstrumentationRegistry.getInstrumentation().getTargetContext(), trigger);
 
         // assert
-        SharedPreferences prefs = InstrumentationRegistry.getInstrumentation().getTargetContext().getSharedPreferences(DOCUMENT_NAME_TEST, Context.MODE_PRIVATE);
+        SharedPreferences prefs = ConfigStore.getInstance(InstrumentationRegistry.getInstrumentation().getTargetContext()).getSection(DOCUMENT_NAME_TEST);
         String loaded = prefs.getString(KEY_COMMAND_TRIGGER, null);
         assertThat(result).isSameAs(trigger);
         assertThat(loaded).isEqualTo(trigger);
@@ -202,13 +215,28 @@ public class PrefsDataTest {
         String result = saveCommandTriggerWord(InstrumentationRegistry.getInstrumentation().getTargetContext(), trigger);
 
         // assert
-        SharedPreferences prefs = InstrumentationRegistry.getInstrumentation().getTargetContext().getSharedPreferences(DOCUMENT_NAME_TEST, Context.MODE_PRIVATE);
+        SharedPreferences prefs = ConfigStore.getInstance(InstrumentationRegistry.getInstrumentation().getTargetContext()).getSection(DOCUMENT_NAME_TEST);
         String loaded = prefs.getString(KEY_COMMAND_TRIGGER, null);
 
         assertThat(result).isSameAs(trigger);
         assertThat(loaded).isEqualTo(result);
     }
 
+    @Test
+    public void editIsAllOrNothing() {
+        // prepare
+        saveCommandTriggerWord(InstrumentationRegistry.getInstrumentation().getTargetContext(), "oat");
+
+        // test
+        assertThrows(IllegalArgumentException.class, () -> Prefs.edit(InstrumentationRegistry.getInstrumentation().getTargetContext(), tx -> tx
+                .setLockdownStatus(true)
+                .saveCommandTriggerWord("invalid trigger")));
+
+        // assert
+        assertThat(fetchCommandTriggerWord(InstrumentationRegistry.getInstrumentation().getTargetContext())).isEqualTo("oat");
+        assertThat(getLockdownStatus(InstrumentationRegistry.getInstrumentation().getTargetContext())).isFalse();
+    }
+
     @Test
     public void fetchCommandTriggerWordWithInvalidValues() {
         // test
@@ -251,7 +279,7 @@ public class PrefsDataTest {
     @Test
     public void getLockdownStatusWithExistingData() {
         // prepare
-        SharedPreferences prefs = InstrumentationRegistry.getInstrumentation().getTargetContext().getSharedPreferences(DOCUMENT_NAME_TEST, Context.MODE_PRIVATE);
+        SharedPreferences prefs = ConfigStore.getInstance(InstrumentationRegistry.getInstrumentation().getTargetContext()).getSection(DOCUMENT_NAME_TEST);
         SharedPreferences.Editor edit = prefs.edit();
         edit.putBoolean(KEY_LOCKDOWN_STATUS, true);
         edit.apply();
@@ -266,7 +294,7 @@ public class PrefsDataTest {
     @Test
     public void setLockdownStatus() {
         // prepare
-        SharedPreferences prefs = InstrumentationRegistry.getInstrumentation().getTargetContext().getSharedPreferences(DOCUMENT_NAME_TEST, Context.MODE_PRIVATE);
+        SharedPreferences prefs = ConfigStore.getInstance(InstrumentationRegistry.getInstrumentation().getTargetContext()).getSection(DOCUMENT_NAME_TEST);
         SharedPreferences.Editor edit = prefs.edit();
         edit.putBoolean(KEY_LOCKDOWN_STATUS, false);
         edit.apply();
@@ -291,7 +319,7 @@ public class PrefsDataTest {
         String result = addNewOnStartupPermissionRequest(InstrumentationRegistry.getInstrumentation().getTargetContext(), missingPermission);
 
         // assert
-        SharedPreferences prefs = InstrumentationRegistry.getInstrumentation().getTargetContext().getSharedPreferences(DOCUMENT_NAME_TEST, Context.MODE_PRIVATE);
+        SharedPreferences prefs = ConfigStore.getInstance(InstrumentationRegistry.getInstrumentation().getTargetContext()).getSection(DOCUMENT_NAME_TEST);
         Set<String> load = prefs.getStringSet(KEY_MISSING_PERMISSIONS_TO_REQUEST_ON_STARTUP, new HashSet<>());
         setup.add(missingPermission);
 
@@ -310,7 +338,7 @@ public class PrefsDataTest {
         String result = addNewOnStartupPermissionRequest(InstrumentationRegistry.getInstrumentation().getTargetContext(), missingPermission);
 
         // assert
-        SharedPreferences prefs = InstrumentationRegistry.getInstrumentation().getTargetContext().getSharedPreferences(DOCUMENT_NAME_TEST, Context.MODE_PRIVATE);
+        SharedPreferences prefs = ConfigStore.getInstance(InstrumentationRegistry.getInstrumentation().getTargetContext()).getSection(DOCUMENT_NAME_TEST);
         Set<String> load = prefs.getStringSet(KEY_MISSING_PERMISSIONS_TO_REQUEST_ON_STARTUP, new HashSet<>());
         expectedResult.add(missingPermission);
 
@@ -349,7 +377,7 @@ public class PrefsDataTest {
         String result = removeOnStartupPermissionRequest(InstrumentationRegistry.getInstrumentation().getTargetContext(), grantedPermission);
 
         // assert
-        SharedPreferences prefs = InstrumentationRegistry.getInstrumentation().getTargetContext().getSharedPreferences(DOCUMENT_NAME_TEST, Context.MODE_PRIVATE);
+        SharedPreferences prefs = ConfigStore.getInstance(InstrumentationRegistry.getInstrumentation().getTargetContext()).getSection(DOCUMENT_NAME_TEST);
         Set<String> load = prefs.getStringSet(KEY_MISSING_PERMISSIONS_TO_REQUEST_ON_STARTUP, new HashSet<>());
         setup.remove(grantedPermission);
 
@@ -366,7 +394,7 @@ public class PrefsDataTest {
         String result = removeOnStartupPermissionRequest(InstrumentationRegistry.getInstrumentation().getTargetContext(), missingPermission);
 
         // assert
-        SharedPreferences prefs = InstrumentationRegistry.getInstrumentation().getTargetContext().getSharedPreferences(DOCUMENT_NAME_TEST, Context.MODE_PRIVATE);
+        SharedPreferences prefs = ConfigStore.getInstance(InstrumentationRegistry.getInstrumentation().getTargetContext()).getSection(DOCUMENT_NAME_TEST);
         Set<String> load = prefs.getStringSet(KEY_MISSING_PERMISSIONS_TO_REQUEST_ON_STARTUP, new HashSet<>());
 
         assertThat(result).isSameAs(missingPermission);
@@ -427,14 +455,14 @@ public class PrefsDataTest {
     }
 
     private void clean() {
-        SharedPreferences pref = InstrumentationRegistry.getInstrumentation().getTargetContext().getSharedPreferences(DOCUMENT_NAME_TEST, Context.MODE_PRIVATE);
+        SharedPreferences pref = ConfigStore.getInstance(InstrumentationRegistry.getInstrumentation().getTargetContext()).getSection(DOCUMENT_NAME_TEST);
         SharedPreferences.Editor editor = pref.edit();
         editor.clear();
         editor.apply();
     }
 
     private Set<String> onStartupPermissionPermissionRequestSetup() {
-        SharedPreferences prefs = InstrumentationRegistry.getInstrumentation().getTargetContext().getSharedPreferences(DOCUMENT_NAME_TEST, Context.MODE_PRIVATE);
+        SharedPreferences prefs = ConfigStore.getInstance(InstrumentationRegistry.getInstrumentation().getTargetContext()).getSection(DOCUMENT_NAME_TEST);
         SharedPreferences.Editor editor = prefs.edit();
 
         HashSet<String> missingPermissions = new HashSet<>();
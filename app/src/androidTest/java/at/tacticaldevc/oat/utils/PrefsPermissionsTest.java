@@ -1,6 +1,5 @@
 package at.tacticaldevc.oat.utils;
 
-import android.content.Context;
 import android.content.SharedPreferences;
 
 import androidx.test.platform.app.InstrumentationRegistry;
@@ -91,7 +90,7 @@ public class PrefsPermissionsTest {
         Map<String, Boolean> result = savePermissions(InstrumentationRegistry.getInstrumentation().getTargetContext(), permissions);
 
         // assert
-        SharedPreferences pref = InstrumentationRegistry.getInstrumentation().getTargetContext().getSharedPreferences(DOCUMENT_NAME_TEST, Context.MODE_PRIVATE);
+        SharedPreferences pref = ConfigStore.getInstance(InstrumentationRegistry.getInstrumentation().getTargetContext()).getSection(DOCUMENT_NAME_TEST);
         Map<String, Boolean> loadedPermissions = new HashMap<>();
         for (String s : pref.getAll().keySet()) {
             loadedPermissions.put(s, pref.getBoolean(s, false));
@@ -112,7 +111,7 @@ public class PrefsPermissionsTest {
         Map<String, Boolean> result = savePermissions(InstrumentationRegistry.getInstrumentation().getTargetContext(), permissions);
 
         // assert
-        SharedPreferences pref = InstrumentationRegistry.getInstrumentation().getTargetContext().getSharedPreferences(DOCUMENT_NAME_TEST, Context.MODE_PRIVATE);
+        SharedPreferences pref = ConfigStore.getInstance(InstrumentationRegistry.getInstrumentation().getTargetContext()).getSection(DOCUMENT_NAME_TEST);
         Map<String, Boolean> loadedPermissions = new HashMap<>();
         for (String s : pref.getAll().keySet()) {
             loadedPermissions.put(s, pref.getBoolean(s, false));
@@ -133,7 +132,7 @@ public class PrefsPermissionsTest {
         Map<String, Boolean> result = savePermissions(InstrumentationRegistry.getInstrumentation().getTargetContext(), permissions);
 
         // assert
-        SharedPreferences pref = InstrumentationRegistry.getInstrumentation().getTargetContext().getSharedPreferences(DOCUMENT_NAME_TEST, Context.MODE_PRIVATE);
+        SharedPreferences pref = ConfigStore.getInstance(InstrumentationRegistry.getInstrumentation().getTargetContext()).getSection(DOCUMENT_NAME_TEST);
         Map<String, Boolean> loadedPermissions = new HashMap<>();
         for (String s : pref.getAll().keySet()) {
             loadedPermissions.put(s, pref.getBoolean(s, false));
@@ -150,14 +149,14 @@ public class PrefsPermissionsTest {
     }
 
     private void cleanup() {
-        SharedPreferences pref = InstrumentationRegistry.getInstrumentation().getTargetContext().getSharedPreferences(DOCUMENT_NAME_TEST, Context.MODE_PRIVATE);
+        SharedPreferences pref = ConfigStore.getInstance(InstrumentationRegistry.getInstrumentation().getTargetContext()).getSection(DOCUMENT_NAME_TEST);
         SharedPreferences.Editor editor = pref.edit();
         editor.clear();
         editor.apply();
     }
 
     private Map<String, Boolean> setup() {
-        SharedPreferences pref = InstrumentationRegistry.getInstrumentation().getTargetContext().getSharedPreferences(DOCUMENT_NAME_TEST, Context.MODE_PRIVATE);
+        SharedPreferences pref = ConfigStore.getInstance(InstrumentationRegistry.getInstrumentation().getTargetContext()).getSection(DOCUMENT_NAME_TEST);
         SharedPreferences.Editor editor = pref.edit();
 
         HashMap<String, Boolean> permissions = new HashMap<>();
@@ -0,0 +1,76 @@
+package at.tacticaldevc.oat.utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import at.tacticaldevc.oat.R;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PrefsSnapshotTest {
+
+    private static final String DOCUMENT_NAME_FEATURES = "oat-enabled-features";
+    private static final String DOCUMENT_NAME_PERMISSIONS = "oat-permissions";
+
+    @Before
+    public void init() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        ConfigStore.getInstance(context).getSection(DOCUMENT_NAME_FEATURES).edit().clear().commit();
+        ConfigStore.getInstance(context).getSection(DOCUMENT_NAME_PERMISSIONS).edit().clear().commit();
+        PrefsSnapshot.refresh(context);
+    }
+
+    @Test
+    public void getWithoutData() {
+        // test
+        PrefsSnapshot snapshot = PrefsSnapshot.get(InstrumentationRegistry.getInstrumentation().getTargetContext());
+
+        // assert
+        assertThat(snapshot.isLockdownEnabled()).isFalse();
+        assertThat(snapshot.isInstantPhotoEnabled()).isFalse();
+        assertThat(snapshot.isCameraGranted()).isFalse();
+        assertThat(snapshot.isLocationGranted()).isFalse();
+    }
+
+    @Test
+    public void saveFeatureEnabledStatusUpdatesSnapshot() {
+        // prepare
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        PrefsSnapshot before = PrefsSnapshot.get(context);
+
+        // test
+        Prefs.saveFeatureEnabledStatus(context, context.getString(R.string.oat_features_key_trigger_lockdown), true);
+
+        // assert
+        PrefsSnapshot after = PrefsSnapshot.get(context);
+        assertThat(before.isLockdownEnabled()).isFalse();
+        assertThat(after.isLockdownEnabled()).isTrue();
+        assertThat(after.isFeatureEnabled(context.getString(R.string.oat_features_key_trigger_lockdown))).isTrue();
+    }
+
+    @Test
+    public void savePermissionsUpdatesSnapshot() {
+        // prepare
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        Map<String, Boolean> permissions = new HashMap<>();
+        permissions.put(context.getString(R.string.oat_permissions_key_access_coarse_location), true);
+        permissions.put(context.getString(R.string.oat_permissions_key_camera), false);
+
+        // test
+        Prefs.savePermissions(context, permissions);
+
+        // assert
+        PrefsSnapshot snapshot = PrefsSnapshot.get(context);
+        assertThat(snapshot.isLocationGranted()).isTrue();
+        assertThat(snapshot.isFineLocationGranted()).isFalse();
+        assertThat(snapshot.isCameraGranted()).isFalse();
+    }
+}
@@ -1,6 +1,5 @@
 package at.tacticaldevc.oat.utils;
 
-import android.content.Context;
 import android.content.SharedPreferences;
 
 import androidx.test.platform.app.InstrumentationRegistry;
@@ -31,7 +30,7 @@ public class PrefsTrustedContactsTest {
     @Test
     public void getAllTrustedContactsWithData() {
         // prepare
-        SharedPreferences prefs = InstrumentationRegistry.getInstrumentation().getTargetContext().getSharedPreferences(DOCUMENT_NAME_TEST, Context.MODE_PRIVATE);
+        SharedPreferences prefs = ConfigStore.getInstance(InstrumentationRegistry.getInstrumentation().getTargetContext()).getSection(DOCUMENT_NAME_TEST);
         Map<String, String> numbers = trustedContactsSetup();
 
         // test
@@ -60,7 +59,7 @@ public class PrefsTrustedContactsTest {
         String result2 = saveTrustedContact(InstrumentationRegistry.getInstrumentation().getTargetContext(), number2, "0664 number");
 
         // assert
-        SharedPreferences prefs = InstrumentationRegistry.getInstrumentation().getTargetContext().getSharedPreferences(DOCUMENT_NAME_TEST, Context.MODE_PRIVATE);
+        SharedPreferences prefs = ConfigStore.getInstance(InstrumentationRegistry.getInstrumentation().getTargetContext()).getSection(DOCUMENT_NAME_TEST);
         Map<String, String> loaded = new HashMap<>();
         Set<String> keys = prefs.getAll().keySet();
         for (String key : keys) {
@@ -95,7 +94,7 @@ public class PrefsTrustedContactsTest {
 
         // assert
         numbers.remove(number);
-        SharedPreferences prefs = InstrumentationRegistry.getInstrumentation().getTargetContext().getSharedPreferences(DOCUMENT_NAME_TEST, Context.MODE_PRIVATE);
+        SharedPreferences prefs = ConfigStore.getInstance(InstrumentationRegistry.getInstrumentation().getTargetContext()).getSection(DOCUMENT_NAME_TEST);
         Map<String, String> loaded = new HashMap<>();
         Set<String> keys = prefs.getAll().keySet();
         for (String key : keys) {
@@ -116,7 +115,7 @@ public class PrefsTrustedContactsTest {
         String result = deleteTrustedContact(InstrumentationRegistry.getInstrumentation().getTargetContext(), unknownNumber);
 
         // assert
-        SharedPreferences prefs = InstrumentationRegistry.getInstrumentation().getTargetContext().getSharedPreferences(DOCUMENT_NAME_TEST, Context.MODE_PRIVATE);
+        SharedPreferences prefs = ConfigStore.getInstance(InstrumentationRegistry.getInstrumentation().getTargetContext()).getSection(DOCUMENT_NAME_TEST);
         Map<String, String> loaded = new HashMap<>();
         Set<String> keys = prefs.getAll().keySet();
         for (String key : keys) {
@@ -133,14 +132,14 @@ public class PrefsTrustedContactsTest {
     }
 
     private void clean() {
-        SharedPreferences pref = InstrumentationRegistry.getInstrumentation().getTargetContext().getSharedPreferences(DOCUMENT_NAME_TEST, Context.MODE_PRIVATE);
+        SharedPreferences pref = ConfigStore.getInstance(InstrumentationRegistry.getInstrumentation().getTargetContext()).getSection(DOCUMENT_NAME_TEST);
         SharedPreferences.Editor editor = pref.edit();
         editor.clear();
         editor.apply();
     }
 
     private HashMap<String, String> trustedContactsSetup() {
-        SharedPreferences prefs = InstrumentationRegistry.getInstrumentation().getTargetContext().getSharedPreferences(DOCUMENT_NAME_TEST, Context.MODE_PRIVATE);
+        SharedPreferences prefs = ConfigStore.getInstance(InstrumentationRegistry.getInstrumentation().getTargetContext()).getSection(DOCUMENT_NAME_TEST);
         SharedPreferences.Editor editor = prefs.edit();
 
         HashMap<String, String> numbers = new HashMap<>();
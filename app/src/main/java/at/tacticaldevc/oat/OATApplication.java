@@ -0,0 +1,20 @@
+package at.tacticaldevc.oat;
+
+import android.app.Application;
+
+import at.tacticaldevc.oat.utils.Warmup;
+
+/**
+ * The Application of OAT, starts loading the state of the App as soon as the process is created.
+ * The process is usually started by an incoming SMS, see {@link Warmup}.
+ *
+ * @version 0.1
+ */
+public class OATApplication extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        Warmup.start(this);
+    }
+}
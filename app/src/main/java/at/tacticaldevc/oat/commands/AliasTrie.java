@@ -0,0 +1,102 @@
+package at.tacticaldevc.oat.commands;
+
+import java.util.Locale;
+
+import static at.tacticaldevc.oat.utils.Ensurer.ensureNotNull;
+import static at.tacticaldevc.oat.utils.Ensurer.ensureStringIsValid;
+
+/**
+ * A case-insensitive prefix tree that maps aliases to values.
+ * Lookups work directly on a region of a {@link CharSequence}, so no substrings have to be created.
+ *
+ * @param <T> the type of the values
+ * @version 0.1
+ */
+public class AliasTrie<T> {
+
+    private final Node<T> root = new Node<>();
+
+    /**
+     * Adds an alias to the trie
+     *
+     * @param alias the alias, is stored in lower case
+     * @param value the value the alias maps to
+     * @return this trie
+     * @throws IllegalArgumentException if the alias is invalid or already mapped to another value
+     */
+    public AliasTrie<T> put(String alias, T value) {
+        ensureStringIsValid(alias, "alias");
+        ensureNotNull(value, "value of alias " + alias);
+
+        Node<T> node = root;
+        for (char c : alias.toLowerCase(Locale.ROOT).toCharArray()) {
+            if (Character.isWhitespace(c))
+                throw new IllegalArgumentException("alias cannot contain whitespace! (" + alias + ")");
+            node = node.childOrCreate(c);
+        }
+        if (node.value != null && node.value != value)
+            throw new IllegalArgumentException("alias '" + alias + "' is already in use!");
+        node.value = value;
+        return this;
+    }
+
+    /**
+     * Finds the value of an alias
+     *
+     * @param text  the text containing the alias
+     * @param start the index of the first character of the alias
+     * @param end   the index after the last character of the alias
+     * @return the value or null if the alias is unknown
+     */
+    public T find(CharSequence text, int start, int end) {
+        Node<T> node = root;
+        for (int i = start; i < end && node != null; i++) {
+            node = node.child(Character.toLowerCase(text.charAt(i)));
+        }
+        return node == null ? null : node.value;
+    }
+
+    /**
+     * Finds the value of an alias
+     *
+     * @param alias the alias
+     * @return the value or null if the alias is unknown
+     */
+    public T find(CharSequence alias) {
+        return find(alias, 0, alias.length());
+    }
+
+    private static class Node<T> {
+        private char[] keys = new char[0];
+        private Node<T>[] children = newArray(0);
+        private T value;
+
+        Node<T> child(char c) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == c) return children[i];
+            }
+            return null;
+        }
+
+        Node<T> childOrCreate(char c) {
+            Node<T> child = child(c);
+            if (child == null) {
+                child = new Node<>();
+                char[] newKeys = new char[keys.length + 1];
+                Node<T>[] newChildren = newArray(keys.length + 1);
+                System.arraycopy(keys, 0, newKeys, 0, keys.length);
+                System.arraycopy(children, 0, newChildren, 0, children.length);
+                newKeys[keys.length] = c;
+                newChildren[children.length] = child;
+                keys = newKeys;
+                children = newChildren;
+            }
+            return child;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> Node<T>[] newArray(int size) {
+            return (Node<T>[]) new Node<?>[size];
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package at.tacticaldevc.oat.commands;
+
+import android.util.Log;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import at.tacticaldevc.oat.utils.NamedThreadFactory;
+import at.tacticaldevc.oat.utils.ReplyBatch;
+import at.tacticaldevc.oat.utils.ReplyRoutes;
+import at.tacticaldevc.oat.utils.SMSCom;
+
+import static at.tacticaldevc.oat.utils.Ensurer.ensureNotNull;
+
+/**
+ * Executes several features that were requested with one command concurrently.
+ * The replies of all features are collected in a {@link ReplyBatch} and sent as one SMS,
+ * the batch waits for the number of replies every {@link Command} declares. The batch is sent from the SIM the command arrived on.
+ *
+ * @version 0.4
+ */
+public class BatchExecutor {
+    private static final String TAG = "BatchExecutor";
+    // one thread for each independent feature (Tracking, Cam, DA)
+    private static final int THREADS = 3;
+    // features that take a while hand their work off and reply later, so they return quickly
+    private static final long RETURN_TIMEOUT_MILLIS = 5000;
+    // a GPS fix or a photo can take a while
+    private static final long REPLY_DEADLINE_MILLIS = 45 * 1000;
+
+    private static final ExecutorService FEATURES = Executors.newFixedThreadPool(THREADS, new NamedThreadFactory("oat-batch"));
+
+    /**
+     * Executes all commands concurrently and waits until every feature has returned, so the command is handled before the broadcast finishes
+     *
+     * @param command  the {@link CommandContext} shared by all commands
+     * @param commands the requested {@link Command}s
+     */
+    public static void execute(CommandContext command, List<Command> commands) {
+        ensureNotNull(command, "command context");
+        ensureNotNull(commands, "commands");
+        if (commands.isEmpty()) return;
+
+        int[] expectedReplies = new int[commands.size()];
+        int totalReplies = 0;
+        for (int i = 0; i < expectedReplies.length; i++) {
+            expectedReplies[i] = commands.get(i).getReplies();
+            totalReplies += expectedReplies[i];
+        }
+        // commands that only reply later on are not collected
+        ReplyBatch batch = totalReplies > 0 ? ReplyBatch.open(command.getContext(), command.getPhoneNumber(), command.getSubscriptionId(), expectedReplies, REPLY_DEADLINE_MILLIS) : null;
+
+        CountDownLatch returned = new CountDownLatch(commands.size());
+        for (int i = 0; i < commands.size(); i++) {
+            final Command c = commands.get(i);
+            final int feature = i;
+            // the features run on threads of their own, so they are told the SIM of the command again
+            FEATURES.execute(() -> ReplyRoutes.runFrom(command.getSubscriptionId(), () -> {
+                try {
+                    if (batch != null) batch.run(feature, () -> executeFeature(command, c));
+                    else executeFeature(command, c);
+                } finally {
+                    returned.countDown();
+                }
+            }));
+        }
+
+        try {
+            if (!returned.await(RETURN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS))
+                Log.w(TAG, returned.getCount() + " features did not return in time");
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void executeFeature(CommandContext command, Command c) {
+        try {
+            c.getHandler().execute(command);
+        } catch (RuntimeException ex) {
+            Log.e(TAG, "Feature " + c.getName() + " failed", ex);
+            SMSCom.replyErrorSMS_FeatureFailed(command.getContext(), command.getPhoneNumber(), c.getName());
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package at.tacticaldevc.oat.commands;
+
+import static at.tacticaldevc.oat.utils.Ensurer.ensureNotNull;
+import static at.tacticaldevc.oat.utils.Ensurer.ensureStringIsValid;
+
+/**
+ * Describes a command that can be sent via SMS
+ * A command has a name, any number of aliases and accepts between minArguments and maxArguments optional arguments.
+ * A command declares how many text replies it sends to the sender, so the replies of several commands can be collected in a batch.
+ *
+ * @version 0.2
+ */
+public class Command {
+    private final String name;
+    private final String[] aliases;
+    private final int minArguments;
+    private final int maxArguments;
+    private final int replies;
+    private final FeatureHandler handler;
+
+    /**
+     * Creates a new Command
+     *
+     * @param name         the name of the command
+     * @param minArguments the minimum number of arguments
+     * @param maxArguments the maximum number of arguments
+     * @param replies      the number of text replies the command sends, not counting replies to events that happen later on
+     * @param handler      the {@link FeatureHandler} that executes the command
+     * @param aliases      other names of the command
+     */
+    public Command(String name, int minArguments, int maxArguments, int replies, FeatureHandler handler, String... aliases) {
+        this.name = ensureStringIsValid(name, "command name");
+        if (minArguments < 0 || maxArguments < minArguments)
+            throw new IllegalArgumentException("invalid number of arguments for command " + name + "! (" + minArguments + ".." + maxArguments + ")");
+        if (replies < 0)
+            throw new IllegalArgumentException("invalid number of replies for command " + name + "! (" + replies + ")");
+        this.minArguments = minArguments;
+        this.maxArguments = maxArguments;
+        this.replies = replies;
+        this.handler = ensureNotNull(handler, "handler of command " + name);
+        this.aliases = ensureNotNull(aliases, "aliases of command " + name).clone();
+    }
+
+    /**
+     * Creates a new Command that sends one reply
+     *
+     * @param name         the name of the command
+     * @param minArguments the minimum number of arguments
+     * @param maxArguments the maximum number of arguments
+     * @param handler      the {@link FeatureHandler} that executes the command
+     * @param aliases      other names of the command
+     */
+    public Command(String name, int minArguments, int maxArguments, FeatureHandler handler, String... aliases) {
+        this(name, minArguments, maxArguments, 1, handler, aliases);
+    }
+
+    /**
+     * Creates a new Command without arguments that sends one reply
+     *
+     * @param name    the name of the command
+     * @param handler the {@link FeatureHandler} that executes the command
+     * @param aliases other names of the command
+     */
+    public Command(String name, FeatureHandler handler, String... aliases) {
+        this(name, 0, 0, handler, aliases);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String[] getAliases() {
+        return aliases.clone();
+    }
+
+    /**
+     * @return the number of text replies the command sends while it is executed or once its feature finished
+     */
+    public int getReplies() {
+        return replies;
+    }
+
+    public FeatureHandler getHandler() {
+        return handler;
+    }
+
+    /**
+     * @param count the number of arguments
+     * @return true if the command accepts the number of arguments
+     */
+    public boolean acceptsArguments(int count) {
+        return count >= minArguments && count <= maxArguments;
+    }
+}
@@ -0,0 +1,56 @@
+package at.tacticaldevc.oat.commands;
+
+import android.content.Context;
+import android.telephony.SubscriptionManager;
+
+import java.util.Collections;
+import java.util.List;
+
+import static at.tacticaldevc.oat.utils.Ensurer.ensureNotNull;
+import static at.tacticaldevc.oat.utils.Ensurer.ensureStringIsValid;
+
+/**
+ * Contains all information a {@link FeatureHandler} needs to execute a command
+ *
+ * @version 0.3
+ */
+public class CommandContext {
+    private final Context context;
+    private final String phoneNumber;
+    private final int subscriptionId;
+    private final List<String> arguments;
+
+    /**
+     * Creates a new CommandContext
+     *
+     * @param context        the {@link Context} of the Application
+     * @param phoneNumber    the phone number that sent the command
+     * @param subscriptionId the id of the SIM subscription the command arrived on or {@link SubscriptionManager#INVALID_SUBSCRIPTION_ID} if it is unknown
+     * @param arguments      the optional arguments of the command
+     */
+    public CommandContext(Context context, String phoneNumber, int subscriptionId, List<String> arguments) {
+        this.context = ensureNotNull(context, "Application Context");
+        this.phoneNumber = ensureStringIsValid(phoneNumber, "phone number");
+        this.subscriptionId = subscriptionId;
+        this.arguments = Collections.unmodifiableList(ensureNotNull(arguments, "arguments"));
+    }
+
+    public Context getContext() {
+        return context;
+    }
+
+    public String getPhoneNumber() {
+        return phoneNumber;
+    }
+
+    /**
+     * @return the id of the SIM subscription the command arrived on, replies that are sent later on are sent from it
+     */
+    public int getSubscriptionId() {
+        return subscriptionId;
+    }
+
+    public List<String> getArguments() {
+        return arguments;
+    }
+}
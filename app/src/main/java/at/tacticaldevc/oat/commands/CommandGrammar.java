@@ -0,0 +1,85 @@
+package at.tacticaldevc.oat.commands;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import static at.tacticaldevc.oat.utils.Ensurer.ensureNotNull;
+
+/**
+ * The grammar of commands sent via SMS:
+ * <trigger-word> <feature>[,feature...] [arguments...] <password>
+ * Several features can be requested at once by separating them with commas, e.g. "oat gps,lock,take-photo password".
+ * The trigger word and the feature are matched ignoring case, the password and the arguments are kept as they were sent.
+ * Features are looked up in a prebuilt {@link AliasTrie}, so new commands only have to be registered.
+ *
+ * @version 0.1
+ */
+public class CommandGrammar {
+    // trigger word, feature and password
+    private static final int MIN_TOKENS = 3;
+    private static final char BATCH_SEPARATOR = ',';
+    private static final int MAX_BATCH_SIZE = 5;
+
+    private final AliasTrie<Command> commands = new AliasTrie<>();
+
+    /**
+     * Creates a new CommandGrammar
+     *
+     * @param commands the {@link Command}s that can be requested
+     */
+    public CommandGrammar(Collection<Command> commands) {
+        ensureNotNull(commands, "commands");
+
+        for (Command command : commands) {
+            this.commands.put(command.getName(), command);
+            for (String alias : command.getAliases()) {
+                this.commands.put(alias, command);
+            }
+        }
+    }
+
+    /**
+     * Parses a message
+     *
+     * @param message     the message to be parsed
+     * @param triggerWord the trigger word commands have to start with
+     * @return the {@link ParsedCommand}
+     */
+    public ParsedCommand parse(CharSequence message, String triggerWord) {
+        ensureNotNull(message, "message");
+        ensureNotNull(triggerWord, "trigger word");
+
+        CommandTokens tokens = CommandTokens.tokenize(message);
+        if (tokens.count() < 2 || !tokens.equalsIgnoreCase(0, triggerWord))
+            return new ParsedCommand(ParsedCommand.Status.Ignored, tokens, Collections.<Command>emptyList());
+        if (tokens.count() < MIN_TOKENS)
+            return new ParsedCommand(ParsedCommand.Status.Malformed, tokens, Collections.<Command>emptyList());
+
+        // the feature token may contain several features separated by commas
+        List<Command> requested = new ArrayList<>(1);
+        int argumentCount = tokens.count() - MIN_TOKENS;
+        CharSequence text = tokens.text();
+        int end = tokens.end(1);
+        int start = tokens.start(1);
+        while (start <= end) {
+            int separator = start;
+            while (separator < end && text.charAt(separator) != BATCH_SEPARATOR) separator++;
+            if (separator == start)
+                return new ParsedCommand(ParsedCommand.Status.Malformed, tokens, Collections.<Command>emptyList());
+
+            Command command = commands.find(text, start, separator);
+            if (command == null)
+                return new ParsedCommand(tokens, start, separator);
+            if (!command.acceptsArguments(argumentCount))
+                return new ParsedCommand(ParsedCommand.Status.Malformed, tokens, Collections.<Command>emptyList());
+            if (!requested.contains(command))
+                requested.add(command);
+            start = separator + 1;
+        }
+        if (requested.size() > MAX_BATCH_SIZE)
+            return new ParsedCommand(ParsedCommand.Status.Malformed, tokens, Collections.<Command>emptyList());
+        return new ParsedCommand(ParsedCommand.Status.Valid, tokens, requested);
+    }
+}
@@ -0,0 +1,120 @@
+package at.tacticaldevc.oat.commands;
+
+import static at.tacticaldevc.oat.utils.Ensurer.ensureNotNull;
+
+/**
+ * The tokens of a command message
+ * Tokens are separated by any amount of whitespace. Only the bounds of the tokens are stored, the message itself is not copied.
+ *
+ * @version 0.1
+ */
+public class CommandTokens {
+    // a command rarely has more than a handful of tokens
+    private static final int INITIAL_CAPACITY = 8;
+
+    private final CharSequence text;
+    private int[] bounds = new int[INITIAL_CAPACITY * 2];
+    private int count = 0;
+
+    private CommandTokens(CharSequence text) {
+        this.text = text;
+    }
+
+    /**
+     * Splits a message into tokens
+     *
+     * @param text the message to be split
+     * @return the tokens of the message
+     */
+    public static CommandTokens tokenize(CharSequence text) {
+        ensureNotNull(text, "message text");
+
+        CommandTokens tokens = new CommandTokens(text);
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            while (i < length && Character.isWhitespace(text.charAt(i))) i++;
+            if (i == length) break;
+            int start = i;
+            while (i < length && !Character.isWhitespace(text.charAt(i))) i++;
+            tokens.add(start, i);
+        }
+        return tokens;
+    }
+
+    private void add(int start, int end) {
+        if (count * 2 == bounds.length) {
+            int[] grown = new int[bounds.length * 2];
+            System.arraycopy(bounds, 0, grown, 0, bounds.length);
+            bounds = grown;
+        }
+        bounds[count * 2] = start;
+        bounds[count * 2 + 1] = end;
+        count++;
+    }
+
+    /**
+     * @return the number of tokens
+     */
+    public int count() {
+        return count;
+    }
+
+    /**
+     * @return the tokenized message
+     */
+    public CharSequence text() {
+        return text;
+    }
+
+    /**
+     * @param index the index of the token
+     * @return the index of the first character of the token in the message
+     */
+    public int start(int index) {
+        checkIndex(index);
+        return bounds[index * 2];
+    }
+
+    /**
+     * @param index the index of the token
+     * @return the index after the last character of the token in the message
+     */
+    public int end(int index) {
+        checkIndex(index);
+        return bounds[index * 2 + 1];
+    }
+
+    /**
+     * @param index the index of the token
+     * @return the token as a String
+     */
+    public String get(int index) {
+        return text.subSequence(start(index), end(index)).toString();
+    }
+
+    /**
+     * Compares a token to a String, ignoring case
+     *
+     * @param index the index of the token
+     * @param value the value to compare to
+     * @return true if the token equals the value
+     */
+    public boolean equalsIgnoreCase(int index, String value) {
+        if (value == null) return false;
+        int start = start(index);
+        int end = end(index);
+        if (end - start != value.length()) return false;
+        for (int i = start; i < end; i++) {
+            char a = text.charAt(i);
+            char b = value.charAt(i - start);
+            if (a != b && Character.toLowerCase(a) != Character.toLowerCase(b)) return false;
+        }
+        return true;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= count)
+            throw new IndexOutOfBoundsException("token " + index + " does not exist! (" + count + " tokens)");
+    }
+}
@@ -0,0 +1,128 @@
+package at.tacticaldevc.oat.commands;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.Arrays;
+import java.util.List;
+
+import at.tacticaldevc.oat.R;
+import at.tacticaldevc.oat.ui.PhotoTrap.PhotoTrapDialog;
+import at.tacticaldevc.oat.utils.Cam;
+import at.tacticaldevc.oat.utils.DA;
+import at.tacticaldevc.oat.utils.PrefsSnapshot;
+import at.tacticaldevc.oat.utils.SMSCom;
+import at.tacticaldevc.oat.utils.SessionManager;
+import at.tacticaldevc.oat.utils.Tracking;
+import at.tacticaldevc.oat.utils.TrustedContactIndex;
+
+/**
+ * The commands that can be sent to OAT via SMS
+ * To add a new command, register it in {@link #GRAMMAR}.
+ *
+ * @version 0.6
+ */
+public class Commands {
+
+    private static final Command LOGOUT = new Command("logout", Commands::logout);
+    private static final String ARGUMENT_FACTORY_RESET = "factory";
+    private static final String ARGUMENT_BOTH_CAMERAS = "both";
+
+    private static final CommandGrammar GRAMMAR = new CommandGrammar(Arrays.asList(
+            new Command("lockdown", Commands::lockdown, "lock"),
+            new Command("unlock", Commands::unlock),
+            new Command("gps", Commands::fetchGPSPosition, "location", "position"),
+            new Command("take-photo", 0, 1, Commands::takePhoto, "instant-photo"),
+            // the photo trap only replies once it was triggered
+            new Command("photo-trap", 0, 0, 0, Commands::photoTrap),
+            new Command("wipe", 0, 1, Commands::wipe),
+            LOGOUT
+    ));
+
+    /**
+     * @return the {@link CommandGrammar} containing all commands
+     */
+    public static CommandGrammar grammar() {
+        return GRAMMAR;
+    }
+
+    /**
+     * @return the {@link Command} that closes the session of the sender, see {@link SessionManager}
+     */
+    public static Command logout() {
+        return LOGOUT;
+    }
+
+    private static void lockdown(CommandContext command) {
+        DA.lockdown_activate(command.getContext(), command.getPhoneNumber());
+    }
+
+    private static void unlock(CommandContext command) {
+        DA.lockdown_deactivate(command.getContext(), command.getPhoneNumber());
+    }
+
+    private static void wipe(CommandContext command) {
+        List<String> arguments = command.getArguments();
+        boolean factoryReset = !arguments.isEmpty();
+        if (factoryReset && !ARGUMENT_FACTORY_RESET.equalsIgnoreCase(arguments.get(0))) {
+            SMSCom.replyErrorSMS_MalformedCommandMessage(command.getContext(), command.getPhoneNumber());
+            return;
+        }
+        DA.wipe(command.getContext(), command.getPhoneNumber(), factoryReset);
+    }
+
+    private static void fetchGPSPosition(CommandContext command) {
+        Context context = command.getContext();
+        String phoneNumber = command.getPhoneNumber();
+
+        PrefsSnapshot prefs = PrefsSnapshot.get(context);
+        if (prefs.isLocationGranted()) {
+            if (prefs.isGpsPositionEnabled()) {
+                Tracking.sendCurrentCoordinatesViaSMS(context, phoneNumber, null);
+            } else {
+                SMSCom.replyErrorSMS_FeatureDisabled(context, phoneNumber, context.getString(R.string.oat_features_name_fetch_gps_position));
+            }
+        } else
+            SMSCom.replyErrorSMS_DisabledPermission(context, phoneNumber, context.getString(R.string.oat_features_name_fetch_gps_position));
+    }
+
+    private static void takePhoto(CommandContext command) {
+        Context context = command.getContext();
+        String phoneNumber = command.getPhoneNumber();
+        List<String> arguments = command.getArguments();
+        boolean both = !arguments.isEmpty();
+        if (both && !ARGUMENT_BOTH_CAMERAS.equalsIgnoreCase(arguments.get(0))) {
+            SMSCom.replyErrorSMS_MalformedCommandMessage(context, phoneNumber);
+            return;
+        }
+
+        PrefsSnapshot prefs = PrefsSnapshot.get(context);
+        if (prefs.isCameraGranted()) {
+            if (prefs.isInstantPhotoEnabled())
+                Cam.sendPhoto(context, phoneNumber, command.getSubscriptionId(), false, both);
+            else
+                SMSCom.replyErrorSMS_FeatureDisabled(context, phoneNumber, context.getString(R.string.oat_features_name_trigger_instant_photo));
+        } else
+            SMSCom.replyErrorSMS_DisabledPermission(context, phoneNumber, "take-photo");
+    }
+
+    private static void logout(CommandContext command) {
+        SessionManager.getInstance().close(TrustedContactIndex.getInstance(command.getContext()).normalize(command.getPhoneNumber()));
+        SMSCom.replySessionClosed(command.getContext(), command.getPhoneNumber());
+    }
+
+    private static void photoTrap(CommandContext command) {
+        Context context = command.getContext();
+        String phoneNumber = command.getPhoneNumber();
+
+        PrefsSnapshot prefs = PrefsSnapshot.get(context);
+        if (prefs.isCameraGranted()) {
+            if (prefs.isPhotoTrapEnabled())
+                new Handler(Looper.getMainLooper()).post(() -> PhotoTrapDialog.dispatchUITrap(context, phoneNumber, command.getSubscriptionId())); // dialogs have to be created on the main thread
+            else
+                SMSCom.replyErrorSMS_FeatureDisabled(context, phoneNumber, context.getString(R.string.oat_features_name_trigger_photo_trap));
+        } else
+            SMSCom.replyErrorSMS_DisabledPermission(context, phoneNumber, "photo-trap");
+    }
+}
@@ -0,0 +1,16 @@
+package at.tacticaldevc.oat.commands;
+
+/**
+ * Executes a feature that was requested by a command
+ *
+ * @version 0.1
+ */
+public interface FeatureHandler {
+
+    /**
+     * Executes the feature
+     *
+     * @param command the {@link CommandContext} of the command that requested the feature
+     */
+    void execute(CommandContext command);
+}
@@ -0,0 +1,42 @@
+package at.tacticaldevc.oat.commands;
+
+import android.telephony.SubscriptionManager;
+
+import static at.tacticaldevc.oat.utils.Ensurer.ensureNotNull;
+import static at.tacticaldevc.oat.utils.Ensurer.ensureStringIsValid;
+
+/**
+ * One logical incoming SMS, multipart messages have already been joined
+ *
+ * @version 0.2
+ */
+public class IncomingSms {
+    private final String sender;
+    private final String body;
+    private final int subscriptionId;
+
+    /**
+     * Creates a new IncomingSms
+     *
+     * @param sender         the originating address
+     * @param body           the complete text of the message
+     * @param subscriptionId the id of the SIM subscription the message arrived on or {@link SubscriptionManager#INVALID_SUBSCRIPTION_ID} if it is unknown
+     */
+    public IncomingSms(String sender, String body, int subscriptionId) {
+        this.sender = ensureStringIsValid(sender, "sender");
+        this.body = ensureNotNull(body, "message body");
+        this.subscriptionId = subscriptionId;
+    }
+
+    public String getSender() {
+        return sender;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    public int getSubscriptionId() {
+        return subscriptionId;
+    }
+}
@@ -0,0 +1,125 @@
+package at.tacticaldevc.oat.commands;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The result of parsing a message with the {@link CommandGrammar}
+ *
+ * @version 0.1
+ */
+public class ParsedCommand {
+
+    /**
+     * The outcome of parsing a message
+     */
+    public enum Status {
+        /**
+         * The message does not start with the trigger word and is not a command
+         */
+        Ignored,
+        /**
+         * The message starts with the trigger word but does not follow the schema "trigger feature [arguments] password"
+         */
+        Malformed,
+        /**
+         * The message follows the schema, but the requested feature does not exist
+         */
+        UnknownFeature,
+        /**
+         * The message is a valid command
+         */
+        Valid
+    }
+
+    // token positions in "trigger feature [arguments] password"
+    private static final int FEATURE_TOKEN = 1;
+    private static final int FIRST_ARGUMENT_TOKEN = 2;
+
+    private final Status status;
+    private final CommandTokens tokens;
+    private final List<Command> commands;
+    // bounds of the unknown feature inside the feature token
+    private final int unknownStart;
+    private final int unknownEnd;
+
+    ParsedCommand(Status status, CommandTokens tokens, List<Command> commands) {
+        this.status = status;
+        this.tokens = tokens;
+        this.commands = Collections.unmodifiableList(commands);
+        this.unknownStart = -1;
+        this.unknownEnd = -1;
+    }
+
+    ParsedCommand(CommandTokens tokens, int unknownStart, int unknownEnd) {
+        this.status = Status.UnknownFeature;
+        this.tokens = tokens;
+        this.commands = Collections.emptyList();
+        this.unknownStart = unknownStart;
+        this.unknownEnd = unknownEnd;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return the first requested {@link Command} or null if the message is not a valid command
+     */
+    public Command getCommand() {
+        return commands.isEmpty() ? null : commands.get(0);
+    }
+
+    /**
+     * @return all requested {@link Command}s in the order they were sent, without duplicates
+     */
+    public List<Command> getCommands() {
+        return commands;
+    }
+
+    /**
+     * @return true if more than one feature was requested
+     */
+    public boolean isBatch() {
+        return commands.size() > 1;
+    }
+
+    /**
+     * @return the feature name exactly as it was sent, if a feature is unknown only the name of this feature
+     */
+    public String getFeatureName() {
+        ensureHasSchema();
+        if (status == Status.UnknownFeature)
+            return tokens.text().subSequence(unknownStart, unknownEnd).toString();
+        return tokens.get(FEATURE_TOKEN);
+    }
+
+    /**
+     * @return the password exactly as it was sent
+     */
+    public String getPassword() {
+        ensureHasSchema();
+        return tokens.get(tokens.count() - 1);
+    }
+
+    /**
+     * @return the optional arguments between the feature and the password
+     */
+    public List<String> getArguments() {
+        ensureHasSchema();
+        int last = tokens.count() - 1;
+        if (last <= FIRST_ARGUMENT_TOKEN) return Collections.emptyList();
+
+        List<String> arguments = new ArrayList<>(last - FIRST_ARGUMENT_TOKEN);
+        for (int i = FIRST_ARGUMENT_TOKEN; i < last; i++) {
+            arguments.add(tokens.get(i));
+        }
+        return arguments;
+    }
+
+    private void ensureHasSchema() {
+        if (status != Status.Valid && status != Status.UnknownFeature)
+            throw new IllegalStateException("a message with status " + status + " has no feature, arguments or password!");
+    }
+}
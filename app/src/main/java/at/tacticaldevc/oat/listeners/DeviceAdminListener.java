@@ -14,14 +14,16 @@ public class DeviceAdminListener extends DeviceAdminReceiver {
     @Override
     public void onEnabled(@NonNull Context context, @NonNull Intent intent) {
         super.onEnabled(context, intent);
-        Prefs.saveFeatureEnabledStatus(context, context.getString(R.string.oat_features_key_trigger_lockdown), true);
-        Prefs.saveFeatureEnabledStatus(context, context.getString(R.string.oat_features_key_lift_lockdown), true);
+        Prefs.edit(context, tx -> tx
+                .saveFeatureEnabledStatus(context.getString(R.string.oat_features_key_trigger_lockdown), true)
+                .saveFeatureEnabledStatus(context.getString(R.string.oat_features_key_lift_lockdown), true));
     }
 
     @Override
     public void onDisabled(@NonNull Context context, @NonNull Intent intent) {
         super.onDisabled(context, intent);
-        Prefs.saveFeatureEnabledStatus(context, context.getString(R.string.oat_features_key_trigger_lockdown), false);
-        Prefs.saveFeatureEnabledStatus(context, context.getString(R.string.oat_features_key_lift_lockdown), false);
+        Prefs.edit(context, tx -> tx
+                .saveFeatureEnabledStatus(context.getString(R.string.oat_features_key_trigger_lockdown), false)
+                .saveFeatureEnabledStatus(context.getString(R.string.oat_features_key_lift_lockdown), false));
     }
 }
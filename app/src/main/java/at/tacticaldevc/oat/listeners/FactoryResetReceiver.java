@@ -0,0 +1,17 @@
+package at.tacticaldevc.oat.listeners;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+import at.tacticaldevc.oat.utils.DA;
+
+/**
+ * Receives the alarm that resets the device to its factory settings after a wipe, see {@link DA#wipe(Context, String, boolean)}.
+ */
+public class FactoryResetReceiver extends BroadcastReceiver {
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        if (DA.ACTION_FACTORY_RESET.equals(intent.getAction())) DA.factoryReset(context);
+    }
+}
@@ -5,6 +5,8 @@ import android.location.Location;
 import android.location.LocationListener;
 import android.os.Bundle;
 
+import at.tacticaldevc.oat.utils.ReplyBatch;
+import at.tacticaldevc.oat.utils.ReplyRoutes;
 import at.tacticaldevc.oat.utils.SMSCom;
 
 import static at.tacticaldevc.oat.utils.Ensurer.ensureNotNull;
@@ -17,10 +19,16 @@ public class GPSListenerSMS implements LocationListener {
 
     private String phoneNumber;
     private Context context;
+    // the position is delivered on the main thread, the reply still belongs to the batch of the command
+    private final ReplyBatch.Feature replyFeature;
+    // and is sent from the SIM the command arrived on
+    private final int subscriptionId;
 
     public GPSListenerSMS(Context context, String phoneNumber) {
         this.phoneNumber = ensurePhoneNumberIsValid(phoneNumber, "phone number");
         this.context = ensureNotNull(context, "Application Context");
+        this.replyFeature = ReplyBatch.current();
+        this.subscriptionId = ReplyRoutes.current(phoneNumber);
     }
 
     /**
@@ -30,7 +38,7 @@ public class GPSListenerSMS implements LocationListener {
      */
     @Override
     public void onLocationChanged(Location location) {
-        SMSCom.replyFetchGPSPosition(context, phoneNumber, location);
+        ReplyRoutes.runFrom(subscriptionId, () -> ReplyBatch.runAs(replyFeature, () -> SMSCom.replyFetchGPSPosition(context, phoneNumber, location)));
     }
 
     /**
@@ -3,99 +3,210 @@ package at.tacticaldevc.oat.listeners;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.os.SystemClock;
 import android.provider.Telephony;
 import android.telephony.SmsMessage;
+import android.telephony.SubscriptionManager;
+import android.util.Log;
 
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import at.tacticaldevc.oat.R;
-import at.tacticaldevc.oat.ui.PhotoTrap.PhotoTrapDialog;
-import at.tacticaldevc.oat.utils.Cam;
-import at.tacticaldevc.oat.utils.DA;
+import at.tacticaldevc.oat.commands.BatchExecutor;
+import at.tacticaldevc.oat.commands.CommandContext;
+import at.tacticaldevc.oat.commands.Commands;
+import at.tacticaldevc.oat.commands.IncomingSms;
+import at.tacticaldevc.oat.commands.ParsedCommand;
+import at.tacticaldevc.oat.utils.AuthThrottle;
+import at.tacticaldevc.oat.utils.CommandExecutor;
 import at.tacticaldevc.oat.utils.Prefs;
+import at.tacticaldevc.oat.utils.ReplyRoutes;
 import at.tacticaldevc.oat.utils.SMSCom;
-import at.tacticaldevc.oat.utils.Tracking;
+import at.tacticaldevc.oat.utils.SessionManager;
+import at.tacticaldevc.oat.utils.SmsConcatInfo;
+import at.tacticaldevc.oat.utils.SmsDeduplicator;
+import at.tacticaldevc.oat.utils.SmsReassembler;
+import at.tacticaldevc.oat.utils.TrustedContactIndex;
+import at.tacticaldevc.oat.utils.Warmup;
 
 /**
  * Listens for incoming SMS that start with the trigger word.
  * The SMS message has to be in the following format:
- * <trigger-word> <feature> <password>
+ * <trigger-word> <feature>[,feature...] [arguments...] <password>
  * where trigger-word is the trigger that was configured (defaults to "oat"), feature is the feature to be activated/deactivated and password is the password that was configured
+ * or, if session mode is enabled, the nonce of the sender's open session (see {@link SessionManager}).
+ * The message is parsed by the {@link at.tacticaldevc.oat.commands.CommandGrammar} of {@link Commands}.
+ * Segments of multipart messages are joined by the {@link SmsReassembler} and every complete message is handled by the {@link CommandExecutor},
+ * so that no work is done on the main thread. Replies are sent from the SIM subscription the command arrived on.
+ * Every sender is rate limited by the {@link AuthThrottle} before the password is checked, senders are normalized by the {@link TrustedContactIndex}
+ * so that a number cannot escape its lockout by changing its format. Segments that were delivered more than once are dropped by the {@link SmsDeduplicator}.
+ * Once the {@link Warmup} loaded this state, messages of untrusted or locked out senders are rejected on the main thread,
+ * so they never take a slot of the command queue. After a cold start the command worker waits for the warm-up instead of the main thread.
  *
- * @version 0.3
+ * @version 0.13
  */
 public class SMSListener extends BroadcastReceiver {
+    private static final String TAG = "SMSListener";
+    // the PDU format is not exposed as a constant before API 30
+    private static final String EXTRA_FORMAT = "format";
+    // the subscription the message arrived on, SubscriptionManager.EXTRA_SUBSCRIPTION_INDEX is not available before API 26
+    private static final String EXTRA_SUBSCRIPTION = "subscription";
+
     @Override
     public void onReceive(Context context, Intent intent) {
         if (Telephony.Sms.Intents.SMS_RECEIVED_ACTION.equals(intent.getAction())) {
-            // Fetch trusted Contacts (phone numbers only)
-            Set<String> contacts = Prefs.fetchTrustedContacts(context).keySet();
-
-            for (SmsMessage msg : Telephony.Sms.Intents.getMessagesFromIntent(intent)) {
-                if (contacts.contains(msg.getOriginatingAddress())) {
-                    if (msg.getMessageBody() != null) { // ignore empty messages
-                        String[] msgParts = msg.getMessageBody().trim().toLowerCase().split(" ");
-                        String triggerWord = Prefs.fetchCommandTriggerWord(context);
-                        if (msgParts.length == 3) { // verify that the message has the correct number of parts (triggerWord feature password)
-                            if (triggerWord.equals(msgParts[0])) { // Message starts with trigger word
-                                if (Prefs.verifyApplicationPassword(context, msgParts[2]))// user used the correct password
-                                    dispatchToFeature(context, msg.getOriginatingAddress(), msgParts[1]);
-                                else
-                                    SMSCom.replyErrorSMS_InvalidPassword(context, msg.getOriginatingAddress());
-                            }
-                        } else {
-                            if (msgParts.length > 1 && triggerWord.equals(msgParts[0]))
-                                SMSCom.replyErrorSMS_MalformedCommandMessage(context, msg.getOriginatingAddress());
-                        }
+            SmsMessage[] messages = Telephony.Sms.Intents.getMessagesFromIntent(intent);
+            if (messages == null || messages.length == 0) return;
+
+            Context appContext = context.getApplicationContext();
+            String format = intent.getStringExtra(EXTRA_FORMAT);
+            int subscriptionId = intent.getIntExtra(EXTRA_SUBSCRIPTION, SubscriptionManager.INVALID_SUBSCRIPTION_ID);
+            CommandExecutor executor = CommandExecutor.getInstance();
+
+            if (Warmup.isReady()) {
+                // the checks only use state in memory, messages that do not pass them never reach the command queue
+                List<IncomingSms> incoming = receiveMessages(appContext, messages, format, subscriptionId);
+                if (incoming.isEmpty()) return;
+
+                // the broadcast is finished once every message has been handled
+                Runnable onFinished = finishWhenDone(goAsync(), new AtomicInteger(incoming.size()));
+                for (IncomingSms sms : incoming) {
+                    if (!executor.submit(() -> handleMessage(appContext, sms), onFinished))
+                        Log.w(TAG, "Command queue is full, dropped a message");
+                }
+                return;
+            }
+
+            // after a cold start the state is still loading, the command worker waits for it instead of the main thread
+            // the broadcast is finished once the messages and every command in them have been handled
+            AtomicInteger remaining = new AtomicInteger(1);
+            Runnable onFinished = finishWhenDone(goAsync(), remaining);
+            boolean accepted = executor.submit(() -> {
+                try {
+                    for (IncomingSms sms : receiveMessages(appContext, messages, format, subscriptionId)) {
+                        remaining.incrementAndGet();
+                        if (!executor.submit(() -> handleMessage(appContext, sms), onFinished))
+                            Log.w(TAG, "Command queue is full, dropped a message");
                     }
+                } catch (RuntimeException ex) {
+                    Log.e(TAG, "Failed to receive a message", ex);
                 }
+            }, onFinished);
+            if (!accepted)
+                Log.w(TAG, "Command queue is full, dropped the received messages");
+        }
+    }
+
+    /**
+     * @param pendingResult the result of the broadcast
+     * @param remaining     the number of tasks the broadcast waits for
+     * @return the callback every task calls once it is done, the last one finishes the broadcast
+     */
+    private static Runnable finishWhenDone(PendingResult pendingResult, AtomicInteger remaining) {
+        // the watchdog may finish the intake while it still submits messages, so the count can reach 0 more than once
+        AtomicBoolean finished = new AtomicBoolean(false);
+        return () -> {
+            if (remaining.decrementAndGet() <= 0 && finished.compareAndSet(false, true))
+                pendingResult.finish();
+        };
+    }
+
+    /**
+     * Filters the received segments and joins them to complete messages, has to be called on a background thread unless the {@link Warmup} is done
+     *
+     * @param context        the {@link Context} of the Application
+     * @param messages       the segments of the broadcast
+     * @param format         the PDU format of the segments
+     * @param subscriptionId the SIM subscription the segments arrived on
+     * @return the complete messages of trusted senders
+     */
+    private List<IncomingSms> receiveMessages(Context context, SmsMessage[] messages, String format, int subscriptionId) {
+        // the state below is loaded by the warm-up, the first broadcast after a cold start may have to wait for it
+        Warmup.awaitReady();
+
+        // reject messages of untrusted senders before any other work is done
+        TrustedContactIndex trustedContacts = TrustedContactIndex.getInstance(context);
+        AuthThrottle throttle = AuthThrottle.getInstance(context);
+        SmsDeduplicator deduplicator = SmsDeduplicator.getInstance(context);
+        SmsReassembler reassembler = SmsReassembler.getInstance();
+        long now = SystemClock.elapsedRealtime();
+        List<IncomingSms> incoming = new ArrayList<>(messages.length);
+        for (SmsMessage msg : messages) {
+            String sender = msg.getOriginatingAddress();
+            if (!trustedContacts.isTrusted(sender) || msg.getMessageBody() == null) // ignore empty messages
+                continue;
+            // senders that sent too many wrong passwords are ignored until their lockout ends
+            if (throttle.isLockedOut(trustedContacts.normalize(sender)))
+                continue;
+
+            // segments the network delivered again are dropped, so a command is not executed twice
+            SmsConcatInfo info = SmsConcatInfo.fromPdu(msg.getPdu(), format);
+            if (!deduplicator.offer(sender, msg.getTimestampMillis(), info, msg.getMessageBody())) {
+                Log.i(TAG, "Dropped a duplicate SMS segment");
+                continue;
             }
+
+            // segments of multipart messages are joined before they are parsed
+            String body = reassembler.offer(sender, info, msg.getMessageBody(), now);
+            if (body != null)
+                incoming.add(new IncomingSms(sender, body, subscriptionId));
         }
+        return incoming;
     }
 
-    private void dispatchToFeature(Context context, String phoneNumber, String feature) {
-        switch (feature) {
-            case "lock":
-            case "lockdown":
-                DA.lockdown_activate(context, phoneNumber);
-                break;
-            case "unlock":
-                DA.lockdown_deactivate(context, phoneNumber);
-                break;
-            case "gps":
-            case "location":
-            case "position":
-                if (Prefs.isPermissionGranted(context, context.getString(R.string.oat_permissions_key_access_coarse_location)) || Prefs.isPermissionGranted(context, context.getString(R.string.oat_permissions_key_access_fine_location))) {
-                    if (Prefs.fetchFeatureEnabledStatus(context, context.getString(R.string.oat_features_key_fetch_gps_position))) {
-                        Tracking.sendCurrentCoordinatesViaSMS(context, phoneNumber, null);
-                    } else {
-                        SMSCom.replyErrorSMS_FeatureDisabled(context, phoneNumber, context.getString(R.string.oat_features_name_fetch_gps_position));
-                    }
-                } else
-                    SMSCom.replyErrorSMS_DisabledPermission(context, phoneNumber, context.getString(R.string.oat_features_name_fetch_gps_position));
-                break;
-            case "instant-photo":
-            case "take-photo":
-                if (Prefs.isPermissionGranted(context, context.getString(R.string.oat_permissions_key_camera))) {
-                    if (Prefs.fetchFeatureEnabledStatus(context, context.getString(R.string.oat_features_key_trigger_instant_photo)))
-                        Cam.sendPhoto(context, phoneNumber, false);
-                    else
-                        SMSCom.replyErrorSMS_FeatureDisabled(context, phoneNumber, context.getString(R.string.oat_features_name_trigger_instant_photo));
-                } else
-                    SMSCom.replyErrorSMS_DisabledPermission(context, phoneNumber, "take-photo");
-                break;
-            case "photo-trap":
-                if (Prefs.isPermissionGranted(context, context.getString(R.string.oat_permissions_key_camera))) {
-                    if (Prefs.fetchFeatureEnabledStatus(context, context.getString(R.string.oat_features_key_trigger_photo_trap)))
-                        PhotoTrapDialog.dispatchUITrap(context, phoneNumber);
-                    else
-                        SMSCom.replyErrorSMS_FeatureDisabled(context, phoneNumber, context.getString(R.string.oat_features_name_trigger_photo_trap));
-                } else
-                    SMSCom.replyErrorSMS_DisabledPermission(context, phoneNumber, "photo-trap");
-                break;
-            default:
-                SMSCom.replyErrorSMS_FeatureNotFound(context, phoneNumber, feature);
-                break;
+    private void handleMessage(Context context, IncomingSms sms) {
+        // all replies to the command are sent from the SIM it arrived on, the route of the sender is only the fallback of replies without a command
+        ReplyRoutes.remember(sms.getSender(), sms.getSubscriptionId());
+        ReplyRoutes.runFrom(sms.getSubscriptionId(), () -> handleCommand(context, sms));
+    }
+
+    private void handleCommand(Context context, IncomingSms sms) {
+        try {
+            String phoneNumber = sms.getSender();
+            ParsedCommand command = Commands.grammar().parse(sms.getBody(), Prefs.fetchCommandTriggerWord(context));
+            if (command.getStatus() == ParsedCommand.Status.Ignored)
+                return;
+            // every command costs a token, so a flood of commands neither keeps the device hashing nor sending replies
+            AuthThrottle throttle = AuthThrottle.getInstance(context);
+            // throttle and sessions are keyed by the normalized number, so they do not depend on the format the network delivers
+            String senderKey = TrustedContactIndex.getInstance(context).normalize(phoneNumber);
+            if (!throttle.tryAcquire(senderKey)) {
+                Log.w(TAG, "Ignored a command, the sender is rate limited");
+                return;
+            }
+            if (command.getStatus() == ParsedCommand.Status.Malformed) {
+                SMSCom.replyErrorSMS_MalformedCommandMessage(context, phoneNumber);
+                return;
+            }
+
+            // in session mode the nonce of an open session is accepted instead of the password, which saves hashing it
+            SessionManager sessions = SessionManager.getInstance();
+            boolean sessionMode = Prefs.isSessionModeEnabled(context);
+            if (!sessionMode || !sessions.verify(senderKey, command.getPassword())) {
+                if (!Prefs.verifyApplicationPassword(context, command.getPassword())) {
+                    throttle.onFailure(senderKey);
+                    SMSCom.replyErrorSMS_InvalidPassword(context, phoneNumber);
+                    return;
+                }
+                throttle.onSuccess(senderKey);
+                if (sessionMode && !command.getCommands().contains(Commands.logout()))
+                    SMSCom.replySessionOpened(context, phoneNumber, sessions.open(senderKey), sessions.getSessionMillis());
+            }
+
+            if (command.getStatus() == ParsedCommand.Status.UnknownFeature) {
+                SMSCom.replyErrorSMS_FeatureNotFound(context, phoneNumber, command.getFeatureName());
+                return;
+            }
+
+            CommandContext commandContext = new CommandContext(context, phoneNumber, sms.getSubscriptionId(), command.getArguments());
+            if (command.isBatch())
+                BatchExecutor.execute(commandContext, command.getCommands());
+            else
+                command.getCommand().getHandler().execute(commandContext);
+        } catch (RuntimeException ex) {
+            Log.e(TAG, "Failed to handle a command", ex);
         }
     }
-}
\ No newline at end of file
+}
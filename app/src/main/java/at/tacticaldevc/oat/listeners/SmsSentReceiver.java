@@ -0,0 +1,53 @@
+package at.tacticaldevc.oat.listeners;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+
+import at.tacticaldevc.oat.utils.CommandExecutor;
+import at.tacticaldevc.oat.utils.SMSCom;
+import at.tacticaldevc.oat.utils.SmsOutbox;
+
+/**
+ * Receives the sent and delivery reports of messages sent by the {@link SmsOutbox} and the alarms for retries,
+ * as well as the sent reports of the MMS sent by {@link SMSCom}.
+ * The reports of the outbox are handled by the {@link CommandExecutor}, as opening the outbox loads the configuration and a retry sends messages.
+ * A report that is dropped as the queue is full is made up for by the expiry of its attempt.
+ */
+public class SmsSentReceiver extends BroadcastReceiver {
+    private static final String TAG = "SmsSentReceiver";
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        String action = intent.getAction();
+        if (action == null) return;
+
+        if (SMSCom.ACTION_MMS_SENT.equals(action)) {
+            SMSCom.onMultimediaMessageSent(context, intent.getStringExtra(SMSCom.EXTRA_PDU));
+            return;
+        }
+
+        // the result code belongs to the broadcast and has to be read before it is handed off
+        int resultCode = getResultCode();
+        Context appContext = context.getApplicationContext();
+        PendingResult pendingResult = goAsync();
+        if (!CommandExecutor.getInstance().submit(() -> handleReport(appContext, action, intent, resultCode), pendingResult::finish))
+            Log.w(TAG, "Command queue is full, dropped a " + action + " report");
+    }
+
+    private void handleReport(Context context, String action, Intent intent, int resultCode) {
+        SmsOutbox outbox = SmsOutbox.getInstance(context);
+        switch (action) {
+            case SmsOutbox.ACTION_SENT:
+                outbox.onSent(intent.getLongExtra(SmsOutbox.EXTRA_ID, -1), intent.getIntExtra(SmsOutbox.EXTRA_ATTEMPT, -1), resultCode);
+                break;
+            case SmsOutbox.ACTION_DELIVERED:
+                outbox.onDelivered(intent);
+                break;
+            case SmsOutbox.ACTION_RETRY:
+                outbox.retryDue(false);
+                break;
+        }
+    }
+}
@@ -63,7 +63,9 @@ public class InstantPhotoActivity extends AppCompatActivity {
             Prefs.saveConditionAccepted(this, getString(R.string.oat_features_key_trigger_instant_photo), true);
             activate.setClickable(true);
         }else{
-            Prefs.saveConditionAccepted(this, getString(R.string.oat_features_key_trigger_instant_photo), false);
+            // a feature whose condition was revoked is disabled in the same step
+            String feature = getString(R.string.oat_features_key_trigger_instant_photo);
+            Prefs.edit(this, tx -> tx.saveConditionAccepted(feature, false).saveFeatureEnabledStatus(feature, false));
             activate.setChecked(false);
             activate.setClickable(false);
         }
@@ -63,7 +63,9 @@ public class PhotoTrapActivity extends AppCompatActivity {
             Prefs.saveConditionAccepted(this, getString(R.string.oat_features_key_trigger_photo_trap), true);
             activate.setClickable(true);
         }else{
-            Prefs.saveConditionAccepted(this, getString(R.string.oat_features_key_trigger_photo_trap), false);
+            // a feature whose condition was revoked is disabled in the same step
+            String feature = getString(R.string.oat_features_key_trigger_photo_trap);
+            Prefs.edit(this, tx -> tx.saveConditionAccepted(feature, false).saveFeatureEnabledStatus(feature, false));
             activate.setChecked(false);
             activate.setClickable(false);
         }
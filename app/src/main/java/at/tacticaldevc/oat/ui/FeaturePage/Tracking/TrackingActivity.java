@@ -63,7 +63,9 @@ public class TrackingActivity extends AppCompatActivity {
             Prefs.saveConditionAccepted(this, getString(R.string.oat_features_key_fetch_gps_position), true);
             activate.setClickable(true);
         }else{
-            Prefs.saveConditionAccepted(this, getString(R.string.oat_features_key_fetch_gps_position), false);
+            // a feature whose condition was revoked is disabled in the same step
+            String feature = getString(R.string.oat_features_key_fetch_gps_position);
+            Prefs.edit(this, tx -> tx.saveConditionAccepted(feature, false).saveFeatureEnabledStatus(feature, false));
             activate.setChecked(false);
             activate.setClickable(false);
         }
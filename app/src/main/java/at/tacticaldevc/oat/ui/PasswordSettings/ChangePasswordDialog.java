@@ -1,13 +1,20 @@
 package at.tacticaldevc.oat.ui.PasswordSettings;
 
+import android.app.Activity;
 import android.app.AlertDialog;
 import android.app.Dialog;
+import android.content.Context;
 import android.content.DialogInterface;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.widget.EditText;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatDialogFragment;
@@ -20,6 +27,9 @@ import at.tacticaldevc.oat.utils.Ensurer;
 import at.tacticaldevc.oat.utils.Prefs;
 
 public class ChangePasswordDialog extends AppCompatDialogFragment {
+    // hashing the password takes a noticeable time, so it is never done on the main thread
+    private static final ExecutorService PASSWORD_EXECUTOR = Executors.newSingleThreadExecutor();
+
     private EditText new_pw;
     private EditText old_pw;
 
@@ -46,22 +56,21 @@ public class ChangePasswordDialog extends AppCompatDialogFragment {
                     @Override
                     public void onClick(DialogInterface dialogInterface, int i) {
                         if(!new_pw.getText().toString().isEmpty() && !old_pw.getText().toString().isEmpty()){
-                            try{
-                                Prefs.savePassword(getContext(), new_pw.getText().toString(), old_pw.getText().toString());
-                            }
-                            catch (OATApplicationException e){
-                                AlertDialog.Builder alert = new AlertDialog.Builder(getContext());
-                                alert.setTitle(R.string.fields_wrong);
-                                if(e.getExceptionType().equals(OATApplicationExceptionType.PasswordMismatch)){
-                                    alert.setMessage(R.string.missmatching_pws);
+                            final Activity activity = getActivity();
+                            final Context appContext = activity.getApplicationContext();
+                            final String newPassword = new_pw.getText().toString();
+                            final String oldPassword = old_pw.getText().toString();
+                            PASSWORD_EXECUTOR.execute(() -> {
+                                try{
+                                    Prefs.savePassword(appContext, newPassword, oldPassword);
                                 }
-                                else {
-                                    alert.setMessage(R.string.internal_error);
+                                catch (OATApplicationException e){
+                                    // the dialog is already closed, the error is shown by the activity
+                                    new Handler(Looper.getMainLooper()).post(() -> {
+                                        if (!activity.isFinishing()) showError(activity, e);
+                                    });
                                 }
-                                alert.setPositiveButton(R.string.ok, null);
-                                AlertDialog alertDialog = alert.create();
-                                alertDialog.show();
-                            }
+                            });
                         }
                         else {
                             AlertDialog.Builder alert = new AlertDialog.Builder(getContext());
@@ -77,4 +86,18 @@ public class ChangePasswordDialog extends AppCompatDialogFragment {
 
         return builder.create();
     }
+
+    private static void showError(Activity activity, OATApplicationException e) {
+        AlertDialog.Builder alert = new AlertDialog.Builder(activity);
+        alert.setTitle(R.string.fields_wrong);
+        if(e.getExceptionType().equals(OATApplicationExceptionType.PasswordMismatch)){
+            alert.setMessage(R.string.missmatching_pws);
+        }
+        else {
+            alert.setMessage(R.string.internal_error);
+        }
+        alert.setPositiveButton(R.string.ok, null);
+        AlertDialog alertDialog = alert.create();
+        alertDialog.show();
+    }
 }
@@ -4,12 +4,15 @@ import androidx.appcompat.app.AppCompatActivity;
 
 import android.os.Bundle;
 import android.widget.Button;
+import android.widget.Switch;
 
 import at.tacticaldevc.oat.R;
+import at.tacticaldevc.oat.utils.Prefs;
 
 public class PasswordSettingsActivity extends AppCompatActivity {
 
     private Button ChangePwButton;
+    private Switch sessionSwitch;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -17,6 +20,7 @@ public class PasswordSettingsActivity extends AppCompatActivity {
         setContentView(R.layout.activity_password_settings);
 
         initButton();
+        initSessionSwitch();
     }
 
     private void initButton(){
@@ -24,6 +28,12 @@ public class PasswordSettingsActivity extends AppCompatActivity {
         ChangePwButton.setOnClickListener(cl -> openDialog());
     }
 
+    private void initSessionSwitch(){
+        sessionSwitch = findViewById(R.id.password_settings_session_switch);
+        sessionSwitch.setChecked(Prefs.isSessionModeEnabled(this));
+        sessionSwitch.setOnCheckedChangeListener((buttonView, isChecked) -> Prefs.saveSessionModeEnabled(this, isChecked));
+    }
+
     private void openDialog(){
         ChangePasswordDialog pwdia = new ChangePasswordDialog();
         pwdia.show(getSupportFragmentManager(), "Change Password Dialog");
@@ -13,12 +13,12 @@ public class PhotoTrapDialog extends AlertDialog {
         super(context);
     }
 
-    public static void dispatchUITrap(Context ctx, String phoneNr) {
+    public static void dispatchUITrap(Context ctx, String phoneNr, int subscriptionId) {
         PhotoTrapDialog trap = new PhotoTrapDialog(ctx);
         trap.setTitle(ctx.getString(R.string.trap_dialog_title)); // create mock shutdown dialog
         trap.setMessage(ctx.getString(R.string.trap_dialog_message));
-        trap.setButton(BUTTON_POSITIVE, "OK", (dialog, which) -> Cam.sendPhoto(trap.getContext(), phoneNr, true));
-        trap.setButton(BUTTON_NEGATIVE, "Cancel", (dialog, which) -> Cam.sendPhoto(trap.getContext(), phoneNr, true));
+        trap.setButton(BUTTON_POSITIVE, "OK", (dialog, which) -> Cam.sendPhoto(trap.getContext(), phoneNr, subscriptionId, true));
+        trap.setButton(BUTTON_NEGATIVE, "Cancel", (dialog, which) -> Cam.sendPhoto(trap.getContext(), phoneNr, subscriptionId, true));
     }
 
     @Override
@@ -0,0 +1,263 @@
+package at.tacticaldevc.oat.utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static at.tacticaldevc.oat.utils.Ensurer.ensureNotNull;
+import static at.tacticaldevc.oat.utils.Ensurer.ensureStringIsValid;
+
+/**
+ * Limits how often a phone number may send commands, before the password is checked.
+ * Every sender has a token bucket that allows a short burst of commands and refills slowly,
+ * and after repeated wrong passwords the sender is locked out for exponentially growing periods.
+ * The state is kept in memory and persisted in a section of the {@link ConfigStore}, so it survives process death
+ * and the phone numbers are encrypted and wiped like the trusted contacts.
+ *
+ * @version 0.2
+ */
+public class AuthThrottle {
+
+    public static final String METRIC_THROTTLED = "auth.throttled";
+    public static final String METRIC_LOCKOUTS = "auth.lockouts";
+
+    static final String DOCUMENT_NAME_THROTTLE = "oat-auth-throttle";
+
+    // 5 commands at once, then one command per minute
+    static final int BUCKET_CAPACITY = 5;
+    static final long REFILL_MILLIS = 60 * 1000;
+    // two typos are forgiven, the third wrong password locks the sender out for a minute, every further one doubles it
+    static final int FREE_FAILURES = 2;
+    static final long INITIAL_LOCKOUT_MILLIS = 60 * 1000;
+    static final long MAX_LOCKOUT_MILLIS = 60 * 60 * 1000;
+    // failures are forgotten after a day without another failure
+    static final long FAILURE_MEMORY_MILLIS = 24 * 60 * 60 * 1000;
+    private static final int MAX_SENDERS = 32;
+
+    private static AuthThrottle instance;
+
+    private final SessionManager.Clock clock;
+    private final Store store;
+    private final Map<String, SenderState> senders = new LinkedHashMap<String, SenderState>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SenderState> eldest) {
+            if (size() <= MAX_SENDERS) return false;
+            store.remove(eldest.getKey());
+            return true;
+        }
+    };
+
+    /**
+     * Creates a new AuthThrottle
+     *
+     * @param clock the clock used for the buckets and lockouts, it has to keep running across process restarts
+     * @param store the {@link Store} the state of the senders is persisted to
+     */
+    AuthThrottle(SessionManager.Clock clock, Store store) {
+        this.clock = ensureNotNull(clock, "clock");
+        this.store = ensureNotNull(store, "store");
+    }
+
+    /**
+     * @param context the {@link Context} of the Application
+     * @return the AuthThrottle of the Application with the persisted state of the senders
+     */
+    public static synchronized AuthThrottle getInstance(Context context) {
+        ensureNotNull(context, "Application Context");
+        if (instance == null) {
+            Context appContext = context.getApplicationContext();
+            // older versions kept the state in a plain XML document
+            SharedPreferences prefs = ConfigStore.getInstance(appContext).getMigratedSection(appContext, DOCUMENT_NAME_THROTTLE);
+            // the wall clock is used, as the elapsed realtime restarts at every boot
+            instance = new AuthThrottle(System::currentTimeMillis, new PrefsStore(prefs));
+            for (Map.Entry<String, ?> entry : prefs.getAll().entrySet()) {
+                Object value = entry.getValue();
+                if (value instanceof String) instance.restore(entry.getKey(), (String) value);
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Checks if a sender is locked out after too many wrong passwords
+     *
+     * @param phoneNumber the phone number that sent a command
+     * @return true if commands of the phone number have to be ignored
+     */
+    public synchronized boolean isLockedOut(String phoneNumber) {
+        SenderState state = senders.get(phoneNumber);
+        return state != null && state.lockedOutFor(clock.now()) > 0;
+    }
+
+    /**
+     * Takes a token from the bucket of a sender, has to be called before the password of a command is checked
+     *
+     * @param phoneNumber the phone number that sent a command
+     * @return true if the command may be handled, false if it has to be ignored
+     */
+    public synchronized boolean tryAcquire(String phoneNumber) {
+        ensureStringIsValid(phoneNumber, "phone number");
+
+        long now = clock.now();
+        SenderState state = fetchState(phoneNumber, now);
+        if (state.lockedOutFor(now) > 0 || !state.take(now)) {
+            Metrics.increment(METRIC_THROTTLED);
+            return false;
+        }
+        // a drained bucket is persisted, so restarting the process does not refill it
+        if (state.tokens < 1) store.put(phoneNumber, state.serialize());
+        return true;
+    }
+
+    /**
+     * Records a wrong password of a sender
+     *
+     * @param phoneNumber the phone number that sent a wrong password
+     * @return the time in milliseconds the sender is locked out for, 0 if it is not locked out
+     */
+    public synchronized long onFailure(String phoneNumber) {
+        ensureStringIsValid(phoneNumber, "phone number");
+
+        long now = clock.now();
+        SenderState state = fetchState(phoneNumber, now);
+        long lockout = state.recordFailure(now);
+        if (lockout > 0) Metrics.increment(METRIC_LOCKOUTS);
+        store.put(phoneNumber, state.serialize());
+        return lockout;
+    }
+
+    /**
+     * Records a correct password of a sender, which clears its failures
+     *
+     * @param phoneNumber the phone number that sent the correct password
+     */
+    public synchronized void onSuccess(String phoneNumber) {
+        SenderState state = senders.get(phoneNumber);
+        if (state == null || state.failures == 0) return;
+
+        state.failures = 0;
+        state.lockedUntil = 0;
+        store.put(phoneNumber, state.serialize());
+    }
+
+    /**
+     * Forgets the state of all senders, the {@link ConfigStore} section it is persisted in has to be wiped by the caller
+     */
+    public synchronized void clear() {
+        senders.clear();
+    }
+
+    synchronized void restore(String phoneNumber, String serialized) {
+        SenderState state = SenderState.parse(serialized);
+        if (state != null) senders.put(phoneNumber, state);
+        else store.remove(phoneNumber);
+    }
+
+    private SenderState fetchState(String phoneNumber, long now) {
+        SenderState state = senders.get(phoneNumber);
+        if (state == null) {
+            state = new SenderState(BUCKET_CAPACITY, now, 0, 0, 0);
+            senders.put(phoneNumber, state);
+        }
+        return state;
+    }
+
+    /**
+     * Persists the state of the senders
+     */
+    interface Store {
+        void put(String phoneNumber, String state);
+
+        void remove(String phoneNumber);
+    }
+
+    private static class PrefsStore implements Store {
+        private final SharedPreferences prefs;
+
+        PrefsStore(SharedPreferences prefs) {
+            this.prefs = prefs;
+        }
+
+        @Override
+        public void put(String phoneNumber, String state) {
+            prefs.edit().putString(phoneNumber, state).apply();
+        }
+
+        @Override
+        public void remove(String phoneNumber) {
+            prefs.edit().remove(phoneNumber).apply();
+        }
+    }
+
+    /**
+     * The bucket and the failures of one sender
+     */
+    static class SenderState {
+        private static final String SEPARATOR = ";";
+        private static final String FORMAT_VERSION = "1";
+        private static final int FIELDS = 6;
+
+        private double tokens;
+        private long refilledAt;
+        private int failures;
+        private long lastFailureAt;
+        private long lockedUntil;
+
+        SenderState(double tokens, long refilledAt, int failures, long lastFailureAt, long lockedUntil) {
+            this.tokens = tokens;
+            this.refilledAt = refilledAt;
+            this.failures = failures;
+            this.lastFailureAt = lastFailureAt;
+            this.lockedUntil = lockedUntil;
+        }
+
+        static SenderState parse(String serialized) {
+            if (serialized == null) return null;
+
+            String[] fields = serialized.split(SEPARATOR);
+            if (fields.length != FIELDS || !FORMAT_VERSION.equals(fields[0])) return null;
+            try {
+                return new SenderState(Double.parseDouble(fields[1]), Long.parseLong(fields[2]), Integer.parseInt(fields[3]), Long.parseLong(fields[4]), Long.parseLong(fields[5]));
+            } catch (NumberFormatException ex) {
+                return null;
+            }
+        }
+
+        String serialize() {
+            return FORMAT_VERSION + SEPARATOR + tokens + SEPARATOR + refilledAt + SEPARATOR + failures + SEPARATOR + lastFailureAt + SEPARATOR + lockedUntil;
+        }
+
+        /**
+         * @return the remaining lockout in milliseconds
+         */
+        long lockedOutFor(long now) {
+            // a clock that was set back must not extend the lockout beyond its maximum
+            if (lockedUntil - now > MAX_LOCKOUT_MILLIS) lockedUntil = now + MAX_LOCKOUT_MILLIS;
+            return Math.max(0, lockedUntil - now);
+        }
+
+        boolean take(long now) {
+            if (now > refilledAt) {
+                tokens = Math.min(BUCKET_CAPACITY, tokens + (now - refilledAt) / (double) REFILL_MILLIS);
+            }
+            refilledAt = now;
+            if (tokens < 1) return false;
+            tokens--;
+            return true;
+        }
+
+        long recordFailure(long now) {
+            if (now - lastFailureAt > FAILURE_MEMORY_MILLIS) failures = 0;
+            failures++;
+            lastFailureAt = now;
+            if (failures <= FREE_FAILURES) return 0;
+
+            int doublings = Math.min(failures - FREE_FAILURES - 1, 30);
+            long lockout = Math.min(MAX_LOCKOUT_MILLIS, INITIAL_LOCKOUT_MILLIS << doublings);
+            lockedUntil = now + lockout;
+            return lockout;
+        }
+    }
+}
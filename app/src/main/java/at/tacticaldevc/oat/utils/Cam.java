@@ -1,28 +1,11 @@
 package at.tacticaldevc.oat.utils;
 
 import android.content.Context;
-import android.graphics.ImageFormat;
-import android.hardware.camera2.CameraAccessException;
-import android.hardware.camera2.CameraCaptureSession;
-import android.hardware.camera2.CameraCharacteristics;
-import android.hardware.camera2.CameraDevice;
-import android.hardware.camera2.CameraManager;
-import android.hardware.camera2.CaptureRequest;
-import android.hardware.camera2.params.StreamConfigurationMap;
-import android.media.Image;
-import android.media.ImageReader;
-import android.net.Uri;
-import android.os.Environment;
-import android.util.Size;
-
-import androidx.annotation.NonNull;
 
 import java.io.File;
-import java.io.FileOutputStream;
+import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.util.Arrays;
-import java.util.Calendar;
-import java.util.Collections;
+import java.util.List;
 
 import at.tacticaldevc.oat.R;
 import at.tacticaldevc.oat.exceptions.OATApplicationException;
@@ -31,175 +14,102 @@ import static at.tacticaldevc.oat.utils.Ensurer.ensureNotNull;
 import static at.tacticaldevc.oat.utils.Ensurer.ensureStringIsValid;
 
 /**
- * A helper class for the camera
+ * A helper class for the camera.
+ * The pictures are taken by the {@link CameraEngine}, this class checks the features and stores and sends the pictures.
+ * A request can take a picture with the front and the rear camera, both pictures are sent in one MMS.
+ * The plain copies of the pictures that are sent are deleted as soon as they were packed into the MMS.
+ *
+ * @version 0.5
  */
 public class Cam {
-    private static CameraManager cm = null;
-    private static CameraDevice cam;
-    private static CaptureRequest cr;
+    static final String CAPTURES_DIR = "captures";
+    private static final String STORED_FILE_SUFFIX = ".jpg.enc";
+    private static final String OUTGOING_FILE_PREFIX = "outgoing-";
+    private static final String OUTGOING_FILE_SUFFIX = ".jpg";
 
-    private static Context ctx;
-    private static String phoneNumber;
-    private static boolean photoTrap;
+    /**
+     * Requests a picture that is sent to the phone number, if the feature is enabled.
+     * The picture is taken in the background, if it fails an error message is sent instead.
+     *
+     * @param context        Context to work with
+     * @param phone          A valid phone number
+     * @param subscriptionId the id of the SIM subscription the command arrived on, the picture is sent from it
+     * @param trap           Indicator to specify if this call is trap-related
+     */
+    public static void sendPhoto(Context context, String phone, int subscriptionId, boolean trap) {
+        sendPhoto(context, phone, subscriptionId, trap, false);
+    }
 
     /**
-     * Initializes the Camera API. If it fails an Exception is raised. This is the first method to be called.
+     * Requests pictures that are sent to the phone number, if the feature is enabled.
+     * The pictures are taken in the background, if it fails an error message is sent instead.
      *
-     * @throws at.tacticaldevc.oat.exceptions.OATApplicationException in case the camera could not be connected
-     * @param context Context to work with
-     * @param phone A valid phone number
-     * @param trap Indicator to specify if this call is trap-related
+     * @param context        Context to work with
+     * @param phone          A valid phone number
+     * @param subscriptionId the id of the SIM subscription the command arrived on, the pictures are sent from it
+     * @param trap           Indicator to specify if this call is trap-related
+     * @param both           true to take a picture with the front and the rear camera, if the device has both
      */
-    public static void sendPhoto(Context context, String phone, boolean trap) {
+    public static void sendPhoto(Context context, String phone, int subscriptionId, boolean trap, boolean both) {
         ensureNotNull(context, "Context");
         ensureStringIsValid(phone, "phone number");
 
-        ctx = context;
-        phoneNumber = phone;
-        photoTrap = trap;
-
-        if ((trap && Prefs.fetchFeatureEnabledStatus(context, context.getString(R.string.oat_features_key_trigger_photo_trap))) || !trap && Prefs.fetchFeatureEnabledStatus(context, context.getString(R.string.oat_features_key_trigger_instant_photo))) {
-            cm = context.getSystemService(CameraManager.class);
-
-            try {
-                for (String identifier : cm.getCameraIdList()) {
-                    if (cm.getCameraCharacteristics(identifier).get(CameraCharacteristics.LENS_FACING) == CameraCharacteristics.LENS_FACING_FRONT) {
-                        cm.openCamera(identifier, new Cam.StateCallBackListener(), null);
-                    }
-                }
-            } catch (SecurityException e) {
-                throw OATApplicationException.forSecurityException("Camera2", e);
-            } catch (CameraAccessException e) {
-                throw OATApplicationException.forLibraryError("Camera2", e);
-            }
+        PrefsSnapshot prefs = PrefsSnapshot.get(context);
+        if (trap ? prefs.isPhotoTrapEnabled() : prefs.isInstantPhotoEnabled()) {
+            CameraEngine.getInstance(context).submit(phone, subscriptionId, trap, both);
         } else {
             if (trap)
-                SMSCom.replyErrorSMS_FeatureDisabled(context, phoneNumber, context.getString(R.string.oat_features_name_trigger_photo_trap));
+                SMSCom.replyErrorSMS_FeatureDisabled(context, phone, context.getString(R.string.oat_features_name_trigger_photo_trap));
             else
-                SMSCom.replyErrorSMS_FeatureDisabled(context, phoneNumber, context.getString(R.string.oat_features_name_trigger_instant_photo));
+                SMSCom.replyErrorSMS_FeatureDisabled(context, phone, context.getString(R.string.oat_features_name_trigger_instant_photo));
         }
     }
 
-
     /**
-     * Initializes the opened camera. This method should be called after Cam.sendPhoto()
+     * Stores the picture encrypted in the private storage of the App and writes the copy that is sent to the cache.
+     * The picture is written straight from the buffer, which is left untouched.
      *
-     * @param characteristics the characteristics to use
+     * @param context the {@link Context} of the Application
+     * @param jpeg    the JPEG picture
+     * @param durable true if the stored picture has to be synced to the storage, the copy that is sent is never synced
+     * @param shot    the index of the picture within its request
+     * @return the copy that is sent
      */
-    private static void configure(CameraCharacteristics characteristics) {
-        ensureNotNull(cm, "CameraManager");
-        ensureNotNull(cam, "Camera");
-        ensureNotNull(characteristics, "Camera characteristics");
-
-        //StreamConfigurationMap.getOutputFormats() -> JPEG
-        StreamConfigurationMap map = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
-        int chosenFormat = ImageFormat.JPEG;
-        //StreamConfigurationMap.getOutputSizes() -> sort
-        Size[] sizes = map.getOutputSizes(chosenFormat);
-        Arrays.sort(sizes, (a, b) -> Integer.compare(a.getWidth(), b.getWidth()));
-
-        ImageReader ir = ImageReader.newInstance(sizes[0].getWidth(), sizes[0].getHeight(), chosenFormat, 1);
-        ir.setOnImageAvailableListener(new ImageReaderPictureAvailableCallback(), null);
-        CaptureRequest.Builder crb;
+    static File saveImage(Context context, ByteBuffer jpeg, boolean durable, int shot) {
+        // the pictures of one request may be saved within the same millisecond, so the shot is part of the name
+        String name = "cap_" + System.currentTimeMillis() + "_" + shot;
+        File dir = new File(context.getFilesDir(), CAPTURES_DIR);
+        if (!dir.isDirectory() && !dir.mkdirs())
+            throw OATApplicationException.forOther("Cam", "Captures directory could not be created!");
+        // the MMS needs the plain picture, only the latest one of every shot is kept
+        File outgoing = new File(context.getCacheDir(), OUTGOING_FILE_PREFIX + shot + OUTGOING_FILE_SUFFIX);
         try {
-            crb = cam.createCaptureRequest(CameraDevice.TEMPLATE_ZERO_SHUTTER_LAG);
-
-            crb.addTarget(ir.getSurface());
-            cr = crb.build();
-
-            cam.createCaptureSession(Collections.singletonList(ir.getSurface()), new CameraCaptureSessionStateCallbackListener(), null);
-        } catch (CameraAccessException e) {
-            throw OATApplicationException.forLibraryError("Camera2", e);
+            File stored = ImageSink.createNewFile(dir, name, STORED_FILE_SUFFIX);
+            ImageSink.write(jpeg.duplicate(), stored, EncLayer.getInstance(), durable);
+            ImageSink.write(jpeg.duplicate(), outgoing, null, false);
+        } catch (IOException e) {
+            throw OATApplicationException.forLibraryError("java.nio.channels.FileChannel", e);
         }
+        return outgoing;
     }
 
     /**
-     * If the camera has been opened and configured call this method to take a picture
+     * Sends the pictures that were saved by {@link #saveImage(Context, ByteBuffer, boolean, int)} in one MMS
+     *
+     * @param context        the {@link Context} of the Application
+     * @param phoneNumber    the phone number the pictures are sent to
+     * @param subscriptionId the id of the SIM subscription the pictures are sent from
+     * @param trap           true if the pictures were taken by the photo trap
+     * @param pictures       the copies of the pictures that are sent, they are deleted once they were packed into the MMS
      */
-    private static void takePicture(CameraCaptureSession ccs) {
-        try {
-            ccs.capture(cr, null, null);
-        } catch (CameraAccessException e) {
-            throw OATApplicationException.forLibraryError("Camera2", e);
-        }
-    }
-
-    private static Uri saveImage(ImageReader reader) {
-        Image image = reader.acquireLatestImage();
-        ByteBuffer buf = image.getPlanes()[0].getBuffer();
-        byte[] bytes = new byte[buf.capacity()];
-        buf.get(bytes);
-
+    static void sendImages(Context context, String phoneNumber, int subscriptionId, boolean trap, List<File> pictures) {
         try {
-            File f = new File(Environment.getExternalStorageDirectory() + String.format("/cap_%S.jpg", Calendar.getInstance().getTime()));
-            FileOutputStream fos = new FileOutputStream(f);
-
-            if (f.createNewFile()) {
-                fos.write(bytes);
-                fos.flush();
-                fos.close();
-            } else
-                throw new Exception("Output file could not be created!");
-
-            return Uri.fromFile(f);
-        } catch (Exception e) {
-            throw OATApplicationException.forLibraryError("java.io.FileOutputStream", e);
-        }
-    }
-
-    private static void sendImage(Uri imageUri) {
-        if (photoTrap)
-            SMSCom.replyPhotoTrapTriggered(ctx, phoneNumber, imageUri);
-        SMSCom.replyPhotoTaken(ctx, phoneNumber, imageUri);
-    }
-
-    private static class StateCallBackListener extends CameraDevice.StateCallback {
-
-        @Override
-        public void onOpened(@NonNull CameraDevice camera) {
-            cam = camera;
-            try {
-                CameraCharacteristics characteristics = cm.getCameraCharacteristics(cam.getId());
-                configure(characteristics);
-            } catch (CameraAccessException e) {
-                throw OATApplicationException.forLibraryError("Camera2", e);
-            }
-        }
-
-        @Override
-        public void onDisconnected(@NonNull CameraDevice camera) {
-            camera.close();
-            cr = null;
-            cam = null;
-        }
-
-        @Override
-        public void onError(@NonNull CameraDevice camera, int error) {
-            throw OATApplicationException.forOther("Camera2", "StateCallBackListener.onError() returned " + error);
-        }
-    }
-
-    private static class CameraCaptureSessionStateCallbackListener extends CameraCaptureSession.StateCallback {
-
-        @Override
-        public void onConfigured(@NonNull CameraCaptureSession session) {
-            takePicture(session);
-
-            session.close();
-        }
-
-        @Override
-        public void onConfigureFailed(@NonNull CameraCaptureSession session) {
-            throw OATApplicationException.forOther("Camera2", "CameraCaptureSessionStateCallbackListener.onConfigureFailed()");
-        }
-    }
-
-    private static class ImageReaderPictureAvailableCallback implements ImageReader.OnImageAvailableListener {
-
-        @Override
-        public void onImageAvailable(ImageReader reader) {
-            Uri imageUri = saveImage(reader);
-            sendImage(imageUri);
+            if (trap)
+                SMSCom.replyPhotoTrapTriggered(context, phoneNumber, subscriptionId, pictures);
+            SMSCom.replyPhotoTaken(context, phoneNumber, subscriptionId, pictures);
+        } finally {
+            // the PDU holds the pictures now, the plain copies are not kept next to the encrypted pictures
+            for (File picture : pictures) picture.delete();
         }
     }
 }
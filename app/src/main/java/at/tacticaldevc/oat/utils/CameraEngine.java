@@ -0,0 +1,584 @@
+package at.tacticaldevc.oat.utils;
+
+import android.content.Context;
+import android.graphics.ImageFormat;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraDevice;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.CaptureFailure;
+import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.Size;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import at.tacticaldevc.oat.R;
+import at.tacticaldevc.oat.exceptions.OATApplicationException;
+
+import static at.tacticaldevc.oat.utils.Ensurer.ensureNotNull;
+
+/**
+ * Takes pictures on a dedicated camera thread.
+ * Every request moves through the states of a {@link PhotoRequest}: the camera is opened, a capture session is configured,
+ * a picture is captured, saved and delivered. Requests that arrive while a picture is taken are queued,
+ * and queued requests are served from the capture session that is already open.
+ * The camera device, the capture session and the image reader are closed as soon as the queue is empty or a request failed,
+ * a request that does not finish within its timeout fails as well.
+ * The resolution and the JPEG quality are chosen by the {@link JpegBudgetPolicy}, so the picture fits into a MMS.
+ * The pictures of a request share the budget of the MMS they are sent in.
+ * Saving, and re-encoding a picture that exceeds its budget anyway, run on an I/O thread, so the camera thread is never blocked.
+ * The picture is written straight from the buffer of its {@link Image}, the image is released as soon as it was written.
+ * Pictures taken by the photo trap are synced to the storage, so they survive the device being switched off.
+ * The photo trap takes a burst of frames instead of a single picture, as a thief rarely holds still.
+ * Every frame is scored by the {@link SharpnessScorer} on the I/O thread and only the sharpest one is encoded and sent.
+ * A request can take a shot with the front and the rear camera. The platform only offers concurrent camera sessions
+ * from API level 30 on, so the shots are taken one after the other: the rear camera is opened as soon as the front camera
+ * captured its picture, while that picture is saved. Both pictures are sent in one MMS.
+ *
+ * @version 0.7
+ */
+public class CameraEngine {
+
+    public static final String METRIC_CAPTURES = "camera.captures";
+    public static final String METRIC_FAILURES = "camera.failures";
+    public static final String LATENCY_CAPTURE = "camera.capture";
+    public static final String METRIC_BURST_FRAMES = "camera.burst.frames";
+    public static final String LATENCY_SCORE = "camera.burst.score";
+
+    private static final String TAG = "CameraEngine";
+    private static final long REQUEST_TIMEOUT_MILLIS = 10 * 1000;
+    private static final int MAX_QUEUED_REQUESTS = 4;
+    private static final int BURST_FRAMES = 4;
+
+    private static CameraEngine instance;
+
+    private final Context context;
+    private final CameraManager cameraManager;
+    private final Handler handler;
+    private final ExecutorService io;
+    private final JpegBudgetPolicy policy;
+    private final Runnable timeout = () -> failCurrent("timed out", null);
+
+    // everything below is only accessed on the camera thread
+    private final ArrayDeque<PhotoRequest> queue = new ArrayDeque<>();
+    private PhotoRequest current;
+    private CameraDevice device;
+    private CameraCaptureSession session;
+    private ImageReader reader;
+    private JpegBudgetPolicy.Setting setting;
+    private int budget;
+    // true if the open session takes bursts of frames
+    private boolean burstSession;
+    private BurstSelection selection;
+    private int framesPending;
+    private int framesReceived;
+    // the pictures of the current request that were saved, in the order of the shots
+    private final List<File> pictures = new ArrayList<>();
+    private int savesPending;
+
+    private CameraEngine(Context context) {
+        this.context = context;
+        this.cameraManager = context.getSystemService(CameraManager.class);
+        HandlerThread thread = new HandlerThread("oat-camera");
+        thread.start();
+        this.handler = new Handler(thread.getLooper());
+        this.io = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "oat-camera-io"));
+        this.policy = JpegBudgetPolicy.getInstance(context);
+    }
+
+    /**
+     * @param context the {@link Context} of the Application
+     * @return the CameraEngine of the Application, its thread is started when it is requested for the first time
+     */
+    public static synchronized CameraEngine getInstance(Context context) {
+        ensureNotNull(context, "Application Context");
+        if (instance == null) instance = new CameraEngine(context.getApplicationContext());
+        return instance;
+    }
+
+    /**
+     * Requests a picture, the picture is taken on the camera thread and sent to the phone number
+     *
+     * @param phoneNumber    the phone number the picture is sent to
+     * @param subscriptionId the id of the SIM subscription the command arrived on, the picture is sent from it
+     * @param trap           true if the request was triggered by the photo trap
+     */
+    public void submit(String phoneNumber, int subscriptionId, boolean trap) {
+        submit(phoneNumber, subscriptionId, trap, false);
+    }
+
+    /**
+     * Requests pictures, the pictures are taken on the camera thread and sent to the phone number in one MMS
+     *
+     * @param phoneNumber    the phone number the pictures are sent to
+     * @param subscriptionId the id of the SIM subscription the command arrived on, the pictures are sent from it
+     * @param trap           true if the request was triggered by the photo trap
+     * @param both           true to take a picture with the front and the rear camera, if the device has both
+     */
+    public void submit(String phoneNumber, int subscriptionId, boolean trap, boolean both) {
+        long createdAt = SystemClock.elapsedRealtime();
+        // the replies are sent from the camera thread, they still belong to the batch of the command
+        ReplyBatch.Feature replyFeature = ReplyBatch.current();
+        handler.post(() -> enqueue(new PhotoRequest(phoneNumber, subscriptionId, trap, createdAt, selectFacings(both), replyFeature)));
+    }
+
+    /**
+     * @return the lens facings of the shots of a request
+     */
+    private int[] selectFacings(boolean both) {
+        int[] front = {CameraCharacteristics.LENS_FACING_FRONT};
+        if (!both) return front;
+        try {
+            boolean hasFront = false;
+            boolean hasBack = false;
+            for (String identifier : cameraManager.getCameraIdList()) {
+                Integer facing = cameraManager.getCameraCharacteristics(identifier).get(CameraCharacteristics.LENS_FACING);
+                if (facing == null) continue;
+                hasFront |= facing == CameraCharacteristics.LENS_FACING_FRONT;
+                hasBack |= facing == CameraCharacteristics.LENS_FACING_BACK;
+            }
+            // the front camera shows the person holding the device, the rear camera where it is
+            if (hasFront && hasBack) return new int[]{CameraCharacteristics.LENS_FACING_FRONT, CameraCharacteristics.LENS_FACING_BACK};
+        } catch (CameraAccessException | IllegalArgumentException ex) {
+            Log.e(TAG, "Failed to list the cameras", ex);
+        }
+        return front;
+    }
+
+    private void enqueue(PhotoRequest request) {
+        if (queue.size() >= MAX_QUEUED_REQUESTS) {
+            fail(request, "too many requests", null);
+            return;
+        }
+        queue.add(request);
+        if (current == null) next();
+    }
+
+    private void next() {
+        current = queue.poll();
+        if (current == null) {
+            closeCamera();
+            return;
+        }
+
+        handler.postDelayed(timeout, REQUEST_TIMEOUT_MILLIS * current.getShots());
+        pictures.clear();
+        savesPending = 0;
+        startShot();
+    }
+
+    /**
+     * Takes the current shot of the current request, from the open capture session if it uses the right camera
+     */
+    private void startShot() {
+        String cameraId;
+        try {
+            cameraId = selectCamera(current.getFacing());
+        } catch (CameraAccessException | IllegalArgumentException e) {
+            failCurrent("could not list the cameras", e);
+            return;
+        }
+        if (cameraId == null) {
+            failCurrent("no camera available", null);
+            return;
+        }
+
+        if (current.getState() == PhotoRequest.State.QUEUED && session != null
+                && burstSession == current.isTrap() && cameraId.equals(device.getId())) {
+            capture();
+        } else {
+            closeCamera();
+            open(cameraId);
+        }
+    }
+
+    private void open(String cameraId) {
+        current.moveTo(PhotoRequest.State.OPENING);
+        try {
+            cameraManager.openCamera(cameraId, new DeviceCallback(), handler);
+        } catch (SecurityException | CameraAccessException | IllegalArgumentException e) {
+            failCurrent("could not open the camera", e);
+        }
+    }
+
+    /**
+     * @param facing the lens facing the camera should have
+     * @return a camera with the lens facing, or any other camera
+     */
+    private String selectCamera(int facing) throws CameraAccessException {
+        String fallback = null;
+        for (String identifier : cameraManager.getCameraIdList()) {
+            Integer lensFacing = cameraManager.getCameraCharacteristics(identifier).get(CameraCharacteristics.LENS_FACING);
+            if (lensFacing != null && lensFacing == facing) return identifier;
+            if (fallback == null) fallback = identifier;
+        }
+        return fallback;
+    }
+
+    private void configure() {
+        current.moveTo(PhotoRequest.State.CONFIGURING);
+        try {
+            CameraCharacteristics characteristics = cameraManager.getCameraCharacteristics(device.getId());
+            StreamConfigurationMap map = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+            // a burst is delivered as raw frames, so they can be scored before the best one is encoded
+            burstSession = current.isTrap();
+            int format = burstSession ? ImageFormat.YUV_420_888 : ImageFormat.JPEG;
+            Size[] sizes = map == null ? null : map.getOutputSizes(format);
+            if (sizes == null || sizes.length == 0) {
+                failCurrent("the camera does not support format " + format, null);
+                return;
+            }
+            int[] widths = new int[sizes.length];
+            int[] heights = new int[sizes.length];
+            for (int i = 0; i < sizes.length; i++) {
+                widths[i] = sizes[i].getWidth();
+                heights[i] = sizes[i].getHeight();
+            }
+            // all pictures of the request are sent in one MMS, so they share the budget of the MMS
+            budget = (Prefs.fetchMmsByteBudget(context) - MmsPdu.maxOverhead(current.getShots())) / current.getShots();
+            setting = policy.choose(device.getId(), widths, heights, budget);
+
+            // the reader is reused for every burst of the session, it has to hold all frames of a burst
+            reader = ImageReader.newInstance(setting.getWidth(), setting.getHeight(), format, burstSession ? BURST_FRAMES : 2);
+            reader.setOnImageAvailableListener(burstSession ? this::onFrameAvailable : this::onImageAvailable, handler);
+            device.createCaptureSession(Collections.singletonList(reader.getSurface()), new SessionCallback(), handler);
+        } catch (CameraAccessException | IllegalArgumentException | IllegalStateException e) {
+            failCurrent("could not configure the camera", e);
+        }
+    }
+
+    private void capture() {
+        current.moveTo(PhotoRequest.State.CAPTURING);
+        try {
+            CaptureRequest.Builder builder = device.createCaptureRequest(CameraDevice.TEMPLATE_STILL_CAPTURE);
+            builder.addTarget(reader.getSurface());
+            if (burstSession) {
+                CaptureRequest frame = builder.build();
+                List<CaptureRequest> burst = new ArrayList<>(BURST_FRAMES);
+                for (int i = 0; i < BURST_FRAMES; i++) burst.add(frame);
+                selection = new BurstSelection();
+                framesPending = BURST_FRAMES;
+                framesReceived = 0;
+                session.captureBurst(burst, new CaptureCallback(), handler);
+            } else {
+                builder.set(CaptureRequest.JPEG_QUALITY, (byte) setting.getQuality());
+                session.capture(builder.build(), new CaptureCallback(), handler);
+            }
+        } catch (CameraAccessException | IllegalArgumentException | IllegalStateException e) {
+            failCurrent("could not capture a picture", e);
+        }
+    }
+
+    private void onImageAvailable(ImageReader imageReader) {
+        Image image = imageReader.acquireLatestImage();
+        if (image == null) return;
+
+        if (current == null || current.getState() != PhotoRequest.State.CAPTURING) {
+            image.close();
+            return;
+        }
+
+        policy.observe(device.getId(), setting, image.getPlanes()[0].getBuffer().remaining());
+        final PhotoRequest request = current;
+        final int shot = request.getShot();
+        final JpegBudgetPolicy.Setting captured = setting;
+        final int limit = budget;
+        onShotCaptured(() -> {
+            try {
+                ByteBuffer jpeg = image.getPlanes()[0].getBuffer();
+                if (jpeg.remaining() > limit) {
+                    // only a picture that has to be re-encoded is copied to the heap
+                    byte[] bytes = new byte[jpeg.remaining()];
+                    jpeg.get(bytes);
+                    image.close();
+                    jpeg = ByteBuffer.wrap(JpegRecompressor.fit(bytes, captured, limit, policy));
+                }
+                return Cam.saveImage(context, jpeg, request.isTrap(), shot);
+            } finally {
+                image.close();
+            }
+        });
+    }
+
+    private void onFrameAvailable(ImageReader imageReader) {
+        Image frame = imageReader.acquireNextImage();
+        if (frame == null) return;
+
+        if (current == null || current.getState() != PhotoRequest.State.CAPTURING || selection == null) {
+            frame.close();
+            return;
+        }
+
+        framesReceived++;
+        Metrics.increment(METRIC_BURST_FRAMES);
+        final BurstSelection burst = selection;
+        io.execute(() -> burst.offer(frame));
+        onFrameDone();
+    }
+
+    /**
+     * Counts a frame of the burst that arrived or failed, once all frames are in the sharpest one is encoded
+     */
+    private void onFrameDone() {
+        if (--framesPending > 0) return;
+        if (framesReceived == 0) {
+            failCurrent("no frame of the burst was captured", null);
+            return;
+        }
+
+        final PhotoRequest request = current;
+        final int shot = request.getShot();
+        final BurstSelection burst = selection;
+        final JpegBudgetPolicy.Setting captured = setting;
+        final int limit = budget;
+        final String cameraId = device.getId();
+        selection = null;
+        // runs after the frames were scored, as the I/O thread runs its tasks in order
+        onShotCaptured(() -> {
+            try {
+                byte[] jpeg = burst.encodeSharpest(captured.getQuality());
+                policy.observe(cameraId, captured, jpeg.length);
+                if (jpeg.length > limit) jpeg = JpegRecompressor.fit(jpeg, captured, limit, policy);
+                return Cam.saveImage(context, ByteBuffer.wrap(jpeg), request.isTrap(), shot);
+            } finally {
+                burst.release();
+            }
+        });
+    }
+
+    /**
+     * Saves the picture of the current shot on the I/O thread and takes the next shot meanwhile.
+     * The pictures are delivered once the last shot was captured and all pictures were saved.
+     */
+    private void onShotCaptured(SaveJob job) {
+        final PhotoRequest request = current;
+        savesPending++;
+        io.execute(() -> {
+            File picture;
+            try {
+                picture = job.run();
+            } catch (RuntimeException e) {
+                handler.post(() -> {
+                    if (current == request) failCurrent("could not save the picture", e);
+                });
+                return;
+            }
+            handler.post(() -> onShotSaved(request, picture));
+        });
+
+        if (request.isLastShot()) {
+            request.moveTo(PhotoRequest.State.SAVING);
+        } else {
+            // the shot has to move on before the camera of the next shot is selected
+            request.nextShot();
+            startShot();
+        }
+    }
+
+    private void onShotSaved(PhotoRequest request, File picture) {
+        // the request may have timed out while the picture was saved
+        if (current != request) return;
+
+        // the I/O thread saves the pictures in the order of the shots
+        pictures.add(picture);
+        if (--savesPending == 0 && request.getState() == PhotoRequest.State.SAVING) deliver();
+    }
+
+    private void deliver() {
+        try {
+            current.moveTo(PhotoRequest.State.DELIVERING);
+            final PhotoRequest request = current;
+            final List<File> delivered = new ArrayList<>(pictures);
+            ReplyBatch.runAs(request.getReplyFeature(), () -> Cam.sendImages(context, request.getPhoneNumber(), request.getSubscriptionId(), request.isTrap(), delivered));
+        } catch (RuntimeException e) {
+            failCurrent("could not deliver the picture", e);
+            return;
+        }
+        complete();
+    }
+
+    private void complete() {
+        handler.removeCallbacks(timeout);
+        current.moveTo(PhotoRequest.State.DONE);
+        Metrics.increment(METRIC_CAPTURES);
+        Metrics.recordLatency(LATENCY_CAPTURE, SystemClock.elapsedRealtime() - current.getCreatedAt());
+        current = null;
+        next();
+    }
+
+    private void failCurrent(String reason, Exception e) {
+        if (current == null) return;
+
+        handler.removeCallbacks(timeout);
+        PhotoRequest failed = current;
+        current = null;
+        // the camera is opened again for the next request, in case it is in a bad state
+        closeCamera();
+        fail(failed, reason, e);
+        next();
+    }
+
+    private void fail(PhotoRequest request, String reason, Exception e) {
+        if (!request.fail()) return;
+
+        Log.e(TAG, "Failed to take a picture: " + reason, e);
+        Metrics.increment(METRIC_FAILURES);
+        try {
+            ReplyRoutes.runFrom(request.getSubscriptionId(), () -> ReplyBatch.runAs(request.getReplyFeature(), () -> SMSCom.replyErrorSMS_FeatureFailed(context, request.getPhoneNumber(),
+                    context.getString(request.isTrap() ? R.string.oat_features_name_trigger_photo_trap : R.string.oat_features_name_trigger_instant_photo))));
+        } catch (RuntimeException ex) {
+            Log.e(TAG, "Failed to reply", ex);
+        }
+    }
+
+    private void closeCamera() {
+        if (session != null) {
+            try {
+                session.close();
+            } catch (IllegalStateException ex) {
+                // the device was already closed
+            }
+            session = null;
+        }
+        if (device != null) {
+            device.close();
+            device = null;
+        }
+        if (reader != null) {
+            // the reader releases its images when it is closed, so it is closed after the pictures that are written
+            final ImageReader closing = reader;
+            io.execute(closing::close);
+            reader = null;
+        }
+        // the frames of an unfinished burst are released together with the reader
+        selection = null;
+    }
+
+    private class DeviceCallback extends CameraDevice.StateCallback {
+
+        @Override
+        public void onOpened(@NonNull CameraDevice camera) {
+            // the request may have timed out while the camera was opened
+            if (current == null || current.getState() != PhotoRequest.State.OPENING) {
+                camera.close();
+                return;
+            }
+            device = camera;
+            configure();
+        }
+
+        @Override
+        public void onDisconnected(@NonNull CameraDevice camera) {
+            camera.close();
+            if (camera == device) {
+                device = null;
+                failCurrent("the camera was disconnected", null);
+            }
+        }
+
+        @Override
+        public void onError(@NonNull CameraDevice camera, int error) {
+            camera.close();
+            // an error while opening is reported before the device was handed out
+            if (camera == device || (device == null && current != null && current.getState() == PhotoRequest.State.OPENING)) {
+                device = null;
+                failCurrent("the camera reported error " + error, null);
+            }
+        }
+    }
+
+    private class SessionCallback extends CameraCaptureSession.StateCallback {
+
+        @Override
+        public void onConfigured(@NonNull CameraCaptureSession captureSession) {
+            if (current == null || current.getState() != PhotoRequest.State.CONFIGURING || captureSession.getDevice() != device) {
+                captureSession.close();
+                return;
+            }
+            session = captureSession;
+            capture();
+        }
+
+        @Override
+        public void onConfigureFailed(@NonNull CameraCaptureSession captureSession) {
+            captureSession.close();
+            if (captureSession.getDevice() == device) failCurrent("the capture session could not be configured", null);
+        }
+    }
+
+    private class CaptureCallback extends CameraCaptureSession.CaptureCallback {
+
+        @Override
+        public void onCaptureFailed(@NonNull CameraCaptureSession captureSession, @NonNull CaptureRequest request, @NonNull CaptureFailure failure) {
+            if (captureSession != session) return;
+            if (!burstSession) {
+                failCurrent("the capture failed with reason " + failure.getReason(), null);
+            } else if (!failure.wasImageCaptured() && current != null && current.getState() == PhotoRequest.State.CAPTURING) {
+                // the burst goes on with the frames that were captured
+                onFrameDone();
+            }
+        }
+    }
+
+    /**
+     * Saves a picture and returns the copy that is sent
+     */
+    private interface SaveJob {
+        File run();
+    }
+
+    /**
+     * Keeps the sharpest frame of a burst, only used on the I/O thread
+     */
+    private static class BurstSelection {
+        private Image sharpest;
+        private double sharpestScore = -1;
+
+        void offer(Image frame) {
+            try {
+                long start = System.nanoTime();
+                Image.Plane luma = frame.getPlanes()[0];
+                double score = SharpnessScorer.score(luma.getBuffer(), frame.getWidth(), frame.getHeight(), luma.getRowStride());
+                Metrics.recordLatency(LATENCY_SCORE, (System.nanoTime() - start) / 1000000);
+                if (score > sharpestScore) {
+                    if (sharpest != null) sharpest.close();
+                    sharpest = frame;
+                    sharpestScore = score;
+                    return;
+                }
+            } catch (RuntimeException ex) {
+                Log.e(TAG, "Failed to score a frame", ex);
+            }
+            frame.close();
+        }
+
+        byte[] encodeSharpest(int quality) {
+            if (sharpest == null) throw OATApplicationException.forOther("CameraEngine", "no frame of the burst could be scored!");
+            return YuvFrames.encodeJpeg(sharpest, quality);
+        }
+
+        void release() {
+            if (sharpest != null) {
+                sharpest.close();
+                sharpest = null;
+            }
+        }
+    }
+}
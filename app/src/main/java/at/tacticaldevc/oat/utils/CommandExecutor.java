@@ -0,0 +1,121 @@
+package at.tacticaldevc.oat.utils;
+
+import android.util.Log;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static at.tacticaldevc.oat.utils.Ensurer.ensureNotNull;
+
+/**
+ * A bounded executor for incoming commands.
+ * Commands are executed on a small pool of background threads and the number of waiting commands is limited.
+ * A command is finished once its timeout elapsed: a command that is already running is not interrupted but keeps running,
+ * a command that is still waiting for a worker is dropped and counted as {@link #METRIC_DROPPED}.
+ *
+ * @version 0.3
+ */
+public class CommandExecutor {
+
+    public static final String METRIC_DROPPED = "command.dropped";
+
+    private static final String TAG = "CommandExecutor";
+
+    private static final int WORKER_THREADS = 2;
+    private static final int MAX_QUEUED_COMMANDS = 8;
+    // a BroadcastReceiver that called goAsync() has to finish within 10 seconds
+    private static final long COMMAND_TIMEOUT_MILLIS = 8000;
+
+    private static CommandExecutor instance;
+
+    private final ThreadPoolExecutor workers;
+    private final ScheduledExecutorService watchdog;
+    private final long timeoutMillis;
+
+    /**
+     * Creates a new CommandExecutor
+     *
+     * @param threads       the number of worker threads
+     * @param queueDepth    the maximum number of commands waiting for a worker
+     * @param timeoutMillis the time in milliseconds after which a command is finished
+     */
+    CommandExecutor(int threads, int queueDepth, long timeoutMillis) {
+        if (threads < 1) throw new IllegalArgumentException("threads has to be at least 1!");
+        if (queueDepth < 1) throw new IllegalArgumentException("queueDepth has to be at least 1!");
+        if (timeoutMillis < 1) throw new IllegalArgumentException("timeoutMillis has to be at least 1!");
+
+        this.timeoutMillis = timeoutMillis;
+        this.workers = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueDepth), new NamedThreadFactory("oat-command"), new ThreadPoolExecutor.AbortPolicy());
+        this.workers.allowCoreThreadTimeOut(true);
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("oat-command-watchdog"));
+    }
+
+    /**
+     * @return the shared CommandExecutor of the Application
+     */
+    public static synchronized CommandExecutor getInstance() {
+        if (instance == null)
+            instance = new CommandExecutor(WORKER_THREADS, MAX_QUEUED_COMMANDS, COMMAND_TIMEOUT_MILLIS);
+        return instance;
+    }
+
+    /**
+     * Submits a command for execution
+     * onFinished is called exactly once: after the command completed, failed or timed out, or immediately if the command was rejected.
+     * A command that times out while it is running keeps running, a command that times out while it is waiting is dropped.
+     *
+     * @param command    the command to be executed
+     * @param onFinished the callback to be called once the command is done
+     * @return true if the command was accepted, false if the queue is full
+     */
+    public boolean submit(Runnable command, Runnable onFinished) {
+        ensureNotNull(command, "command");
+        ensureNotNull(onFinished, "finish callback");
+
+        AtomicBoolean finished = new AtomicBoolean(false);
+        Runnable finish = () -> {
+            if (finished.compareAndSet(false, true))
+                onFinished.run();
+        };
+
+        FutureTask<Void> task = new FutureTask<>(() -> {
+            try {
+                command.run();
+            } finally {
+                finish.run();
+            }
+        }, null);
+        try {
+            workers.execute(task);
+        } catch (RejectedExecutionException ex) {
+            finish.run();
+            return false;
+        }
+
+        watchdog.schedule(() -> {
+            if (task.isDone()) return;
+            // a running command is left alone, it may be in the middle of something that must not be interrupted
+            boolean dropped = workers.remove(task);
+            finish.run();
+            if (dropped) {
+                Metrics.increment(METRIC_DROPPED);
+                Log.w(TAG, "Dropped a command that waited " + timeoutMillis + " ms for a worker");
+            }
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    /**
+     * @return the number of commands currently waiting for a worker
+     */
+    public int getQueuedCommandCount() {
+        return workers.getQueue().size();
+    }
+}
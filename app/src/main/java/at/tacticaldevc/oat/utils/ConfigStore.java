@@ -0,0 +1,843 @@
+package at.tacticaldevc.oat.utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import at.tacticaldevc.oat.exceptions.OATApplicationException;
+
+import static at.tacticaldevc.oat.utils.Ensurer.ensureNotNull;
+import static at.tacticaldevc.oat.utils.Ensurer.ensureStringIsValid;
+
+/**
+ * Stores all documents of {@link Prefs}, the pending messages of the {@link SmsOutbox} and the state of the {@link AuthThrottle}
+ * and the {@link SmsDeduplicator} in a single versioned binary file.
+ * The file is read once when the store is opened, every document is a {@link Section} that implements {@link SharedPreferences}.
+ * Changes are kept in memory and written in batches: the whole file is written to a temporary file, synced and renamed,
+ * so the file on disk is always either the old or the new version.
+ * Changes of several sections can be grouped into a {@link Transaction}.
+ * The XML documents of older versions are migrated when the store is opened for the first time, the time it took to load them
+ * is recorded as {@link #LATENCY_LEGACY_LOAD} so it can be compared with {@link #LATENCY_LOAD}.
+ * If an {@link EncLayer} is available the file is encrypted, a plain file is encrypted the next time it is written.
+ * A file that could not be loaded is never written over: a damaged file is moved aside, an encrypted file that could not be
+ * decrypted as the key was unavailable is kept for the next start. Either way changes are only kept in memory until the App is restarted.
+ *
+ * @version 0.7
+ */
+public class ConfigStore {
+
+    public static final String LATENCY_LOAD = "config.load";
+    public static final String LATENCY_MIGRATION = "config.migration";
+    public static final String LATENCY_LEGACY_LOAD = "config.legacy.load";
+    public static final String METRIC_WRITES = "config.writes";
+    public static final String METRIC_LOAD_FAILURES = "config.load.failures";
+
+    static final int MAGIC = 0x4F415443; // "OATC"
+    static final int FORMAT_VERSION = 1;
+
+    private static final String TAG = "ConfigStore";
+    private static final String FILE_NAME = "oat-config.bin";
+    private static final String TEMP_SUFFIX = ".tmp";
+    static final String CORRUPT_SUFFIX = ".corrupt";
+    // changes within this time are written together
+    private static final long FLUSH_DELAY_MILLIS = 100;
+
+    private static final byte TYPE_BOOLEAN = 1;
+    private static final byte TYPE_STRING = 2;
+    private static final byte TYPE_STRING_SET = 3;
+    private static final byte TYPE_INT = 4;
+    private static final byte TYPE_LONG = 5;
+    private static final byte TYPE_FLOAT = 6;
+
+    private static ConfigStore instance;
+
+    private final File file;
+    private final ScheduledExecutorService executor;
+    private final long flushDelayMillis;
+    private final EncLayer encLayer;
+    // guards the values of all sections, writers of the file take the file lock first
+    private final Object lock = new Object();
+    private final Object fileLock = new Object();
+    private final Map<String, Section> sections = new HashMap<>();
+    private boolean dirty = false;
+    private boolean flushScheduled = false;
+    // the reason the file could not be loaded, nothing is written while it is set
+    private IOException loadFailure;
+
+    /**
+     * Creates a new, empty ConfigStore
+     *
+     * @param file             the file the store is written to
+     * @param executor         the executor that writes the file in the background
+     * @param flushDelayMillis the time in milliseconds changes are collected before they are written
+     */
+    ConfigStore(File file, ScheduledExecutorService executor, long flushDelayMillis) {
+        this(file, executor, flushDelayMillis, null);
+    }
+
+    /**
+     * Creates a new, empty ConfigStore
+     *
+     * @param file             the file the store is written to
+     * @param executor         the executor that writes the file in the background
+     * @param flushDelayMillis the time in milliseconds changes are collected before they are written
+     * @param encLayer         the {@link EncLayer} the file is encrypted with or null to write a plain file
+     */
+    ConfigStore(File file, ScheduledExecutorService executor, long flushDelayMillis, EncLayer encLayer) {
+        this.file = ensureNotNull(file, "file");
+        this.executor = ensureNotNull(executor, "executor");
+        this.flushDelayMillis = flushDelayMillis;
+        this.encLayer = encLayer;
+    }
+
+    /**
+     * @param context the {@link Context} of the Application
+     * @return the ConfigStore of the Application, it is loaded or migrated when it is requested for the first time
+     */
+    public static synchronized ConfigStore getInstance(Context context) {
+        ensureNotNull(context, "Application Context");
+        if (instance == null) {
+            Context appContext = context.getApplicationContext();
+            ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "oat-config");
+                thread.setDaemon(true);
+                return thread;
+            });
+            EncLayer encLayer = null;
+            try {
+                encLayer = EncLayer.getInstance();
+            } catch (OATApplicationException ex) {
+                // without the Android Keystore the configuration is still usable, it is just not encrypted
+                Log.e(TAG, "Failed to open the encryption key", ex);
+            }
+            ConfigStore store = new ConfigStore(new File(appContext.getFilesDir(), FILE_NAME), executor, FLUSH_DELAY_MILLIS, encLayer);
+
+            long start = System.nanoTime();
+            boolean loaded;
+            try {
+                loaded = store.load();
+            } catch (IOException ex) {
+                Log.e(TAG, "Failed to load the configuration, changes are not written until the App is restarted", ex);
+                if (!store.onLoadFailed(ex)) Log.e(TAG, "Failed to move the damaged configuration aside");
+                loaded = true;
+            }
+            Metrics.recordLatency(LATENCY_LOAD, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+            if (!loaded) {
+                start = System.nanoTime();
+                store.migrate(appContext);
+                Metrics.recordLatency(LATENCY_MIGRATION, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            }
+            instance = store;
+        }
+        return instance;
+    }
+
+    /**
+     * @param name the name of the document
+     * @return the {@link Section} of the document, it is created if it does not exist yet
+     */
+    public Section getSection(String name) {
+        ensureStringIsValid(name, "section name");
+
+        synchronized (lock) {
+            Section section = sections.get(name);
+            if (section == null) {
+                section = new Section(name);
+                sections.put(name, section);
+            }
+            return section;
+        }
+    }
+
+    /**
+     * @return a new {@link Transaction} that changes several sections at once
+     */
+    public Transaction beginTransaction() {
+        return new Transaction();
+    }
+
+    /**
+     * Reads the file with a single read
+     *
+     * @return false if there is no file yet
+     * @throws IOException if the file could not be read or is damaged
+     */
+    boolean load() throws IOException {
+        if (!file.exists()) return false;
+
+        byte[] data = new byte[(int) file.length()];
+        try (FileInputStream in = new FileInputStream(file)) {
+            int read = 0;
+            while (read < data.length) {
+                int count = in.read(data, read, data.length - read);
+                if (count < 0) throw new IOException("unexpected end of " + file);
+                read += count;
+            }
+        }
+
+        boolean encrypted = EncLayer.isEncrypted(data);
+        if (encrypted) {
+            if (encLayer == null) throw new IOException("the configuration is encrypted");
+            data = decrypt(data);
+        }
+
+        Map<String, Map<String, Object>> parsed = parse(data);
+        synchronized (lock) {
+            for (Map.Entry<String, Map<String, Object>> entry : parsed.entrySet()) {
+                getSection(entry.getKey()).values.putAll(entry.getValue());
+            }
+        }
+        if (!encrypted && encLayer != null) scheduleFlush();
+        return true;
+    }
+
+    /**
+     * Keeps a file that could not be loaded from being written over.
+     * An encrypted file that could not be read without its key is left in place, so it is loaded once the key is available again.
+     * Any other file is damaged and moved aside, so it can still be recovered.
+     *
+     * @param cause the reason the file could not be loaded
+     * @return false if the damaged file could not be moved aside
+     */
+    boolean onLoadFailed(IOException cause) {
+        ensureNotNull(cause, "cause");
+        Metrics.increment(METRIC_LOAD_FAILURES);
+
+        synchronized (fileLock) {
+            synchronized (lock) {
+                loadFailure = cause;
+            }
+            if (!file.exists()) return true;
+            try {
+                if (encLayer == null && FileShredder.isEncrypted(file)) return true;
+            } catch (IOException ex) {
+                // a file that cannot be read is moved aside as well
+            }
+            // only the latest damaged file is kept
+            File corrupt = new File(file.getPath() + CORRUPT_SUFFIX);
+            corrupt.delete();
+            return file.renameTo(corrupt);
+        }
+    }
+
+    /**
+     * @return the reason the file could not be loaded, or null if it was loaded
+     */
+    public IOException getLoadFailure() {
+        synchronized (lock) {
+            return loadFailure;
+        }
+    }
+
+    /**
+     * Returns the section of a document that older versions kept in its own XML document.
+     * The values of the XML document are moved into the section, the XML document is cleared once they were written.
+     *
+     * @param context the {@link Context} of the Application
+     * @param name    the name of the document
+     * @return the {@link Section} of the document
+     */
+    public Section getMigratedSection(Context context, String name) {
+        ensureNotNull(context, "Application Context");
+        Section section = getSection(name);
+
+        SharedPreferences legacy = context.getSharedPreferences(name, Context.MODE_PRIVATE);
+        Map<String, ?> values = legacy.getAll();
+        if (values.isEmpty()) return section;
+        synchronized (lock) {
+            section.values.putAll(values);
+            dirty = true;
+        }
+        if (flush()) legacy.edit().clear().commit();
+        return section;
+    }
+
+    /**
+     * Copies the values of the XML documents of older versions and clears the documents once they were written
+     */
+    private void migrate(Context context) {
+        List<SharedPreferences> legacyDocuments = new ArrayList<>();
+        synchronized (lock) {
+            long legacyLoadNanos = 0;
+            for (String name : Prefs.DOCUMENTS) {
+                // getAll waits until the XML document was parsed, together they are what a start cost before the store
+                long start = System.nanoTime();
+                SharedPreferences legacy = context.getSharedPreferences(name, Context.MODE_PRIVATE);
+                Map<String, ?> values = legacy.getAll();
+                legacyLoadNanos += System.nanoTime() - start;
+                if (values.isEmpty()) continue;
+                getSection(name).values.putAll(values);
+                legacyDocuments.add(legacy);
+            }
+            // a new installation has no XML documents, there is nothing to compare
+            if (!legacyDocuments.isEmpty())
+                Metrics.recordLatency(LATENCY_LEGACY_LOAD, TimeUnit.NANOSECONDS.toMillis(legacyLoadNanos));
+            dirty = true;
+        }
+
+        if (flush()) {
+            for (SharedPreferences legacy : legacyDocuments) {
+                legacy.edit().clear().commit();
+            }
+        }
+    }
+
+    /**
+     * Writes all changes to the file
+     *
+     * @return true if the file is up to date
+     */
+    public boolean flush() {
+        synchronized (fileLock) {
+            byte[] data;
+            synchronized (lock) {
+                flushScheduled = false;
+                if (!dirty) return true;
+                // the file that could not be loaded must not be replaced by a configuration that misses its values
+                if (loadFailure != null) return false;
+                dirty = false;
+                data = serialize();
+            }
+
+            try {
+                write(encLayer != null ? encrypt(data) : data);
+                Metrics.increment(METRIC_WRITES);
+                return true;
+            } catch (IOException ex) {
+                Log.e(TAG, "Failed to write the configuration", ex);
+                synchronized (lock) {
+                    dirty = true;
+                }
+                return false;
+            }
+        }
+    }
+
+    /**
+     * @return true if the file is written encrypted
+     */
+    public boolean isEncrypted() {
+        return encLayer != null;
+    }
+
+    /**
+     * Removes all values of all sections and deletes the file, changes that were not written yet are dropped.
+     * A plain file is overwritten before it is deleted, see {@link FileShredder}. Every listener is notified once with a null key.
+     */
+    public void wipe() {
+        List<Section> wiped = new ArrayList<>();
+        synchronized (fileLock) {
+            synchronized (lock) {
+                for (Section section : sections.values()) {
+                    if (section.values.isEmpty()) continue;
+                    section.values.clear();
+                    wiped.add(section);
+                }
+                dirty = false;
+                // the file that could not be loaded is wiped as well, so the empty configuration can be written
+                loadFailure = null;
+            }
+            FileShredder.shred(file);
+            FileShredder.shred(new File(file.getPath() + TEMP_SUFFIX));
+            FileShredder.shred(new File(file.getPath() + CORRUPT_SUFFIX));
+            if (file.exists()) Log.e(TAG, "Failed to delete " + file);
+        }
+
+        Map<SharedPreferences.OnSharedPreferenceChangeListener, Section> listeners = new LinkedHashMap<>();
+        for (Section section : wiped) {
+            for (SharedPreferences.OnSharedPreferenceChangeListener listener : section.fetchListeners()) {
+                if (!listeners.containsKey(listener)) listeners.put(listener, section);
+            }
+        }
+        for (Map.Entry<SharedPreferences.OnSharedPreferenceChangeListener, Section> entry : listeners.entrySet()) {
+            entry.getKey().onSharedPreferenceChanged(entry.getValue(), null);
+        }
+    }
+
+    private void scheduleFlush() {
+        synchronized (lock) {
+            dirty = true;
+            if (flushScheduled) return;
+            flushScheduled = true;
+        }
+        executor.schedule(this::flush, flushDelayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private byte[] encrypt(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length + 64);
+        try (OutputStream out = encLayer.encrypt(bytes)) {
+            out.write(data);
+        }
+        return bytes.toByteArray();
+    }
+
+    private byte[] decrypt(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length);
+        try (InputStream in = encLayer.decrypt(new ByteArrayInputStream(data))) {
+            byte[] buffer = new byte[4096];
+            int count;
+            while ((count = in.read(buffer)) >= 0) {
+                bytes.write(buffer, 0, count);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private void write(byte[] data) throws IOException {
+        File temp = new File(file.getPath() + TEMP_SUFFIX);
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(data);
+            out.getFD().sync();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("could not replace " + file);
+        }
+    }
+
+    /**
+     * @return the content of the file, has to be called while holding the lock
+     */
+    private byte[] serialize() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(sections.size());
+            for (Section section : sections.values()) {
+                out.writeUTF(section.name);
+                out.writeInt(section.values.size());
+                for (Map.Entry<String, Object> entry : section.values.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    writeValue(out, entry.getValue());
+                }
+            }
+            CRC32 crc = new CRC32();
+            crc.update(bytes.toByteArray());
+            out.writeLong(crc.getValue());
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException ex) {
+            // writing to memory cannot fail
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value instanceof Boolean) {
+            out.writeByte(TYPE_BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof String) {
+            out.writeByte(TYPE_STRING);
+            out.writeUTF((String) value);
+        } else if (value instanceof Set) {
+            Set<String> set = (Set<String>) value;
+            out.writeByte(TYPE_STRING_SET);
+            out.writeInt(set.size());
+            for (String s : set) {
+                out.writeUTF(s);
+            }
+        } else if (value instanceof Integer) {
+            out.writeByte(TYPE_INT);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(TYPE_LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Float) {
+            out.writeByte(TYPE_FLOAT);
+            out.writeFloat((Float) value);
+        } else {
+            throw new IllegalArgumentException("unsupported value type " + value.getClass());
+        }
+    }
+
+    /**
+     * Reads the content of a file that was written by the store
+     *
+     * @param data the content of the file
+     * @return the values of the sections by their names
+     * @throws IOException if the content is damaged or was written by a newer version
+     */
+    static Map<String, Map<String, Object>> parse(byte[] data) throws IOException {
+        if (data.length < 20) throw new IOException("the configuration is too short");
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length - 8);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        if (in.readInt() != MAGIC) throw new IOException("the configuration has an unknown format");
+        int version = in.readInt();
+        if (version != FORMAT_VERSION) throw new IOException("unsupported configuration version " + version);
+
+        Map<String, Map<String, Object>> result = new HashMap<>();
+        int sectionCount = in.readInt();
+        for (int i = 0; i < sectionCount; i++) {
+            String name = in.readUTF();
+            int entryCount = in.readInt();
+            Map<String, Object> values = new HashMap<>();
+            for (int j = 0; j < entryCount; j++) {
+                String key = in.readUTF();
+                values.put(key, readValue(in));
+            }
+            result.put(name, values);
+        }
+        if (in.readLong() != crc.getValue()) throw new IOException("the checksum of the configuration does not match");
+        return result;
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case TYPE_BOOLEAN:
+                return in.readBoolean();
+            case TYPE_STRING:
+                return in.readUTF();
+            case TYPE_STRING_SET:
+                int size = in.readInt();
+                Set<String> set = new HashSet<>();
+                for (int i = 0; i < size; i++) {
+                    set.add(in.readUTF());
+                }
+                return set;
+            case TYPE_INT:
+                return in.readInt();
+            case TYPE_LONG:
+                return in.readLong();
+            case TYPE_FLOAT:
+                return in.readFloat();
+            default:
+                throw new IOException("unknown value type " + type);
+        }
+    }
+
+    /**
+     * One document of the store
+     */
+    public class Section implements SharedPreferences {
+        private final String name;
+        private final Map<String, Object> values = new HashMap<>();
+        // like SharedPreferences, the listeners are only referenced weakly
+        private final WeakHashMap<OnSharedPreferenceChangeListener, Object> listeners = new WeakHashMap<>();
+
+        private Section(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Map<String, ?> getAll() {
+            synchronized (lock) {
+                Map<String, Object> copy = new HashMap<>(values);
+                for (Map.Entry<String, Object> entry : copy.entrySet()) {
+                    if (entry.getValue() instanceof Set)
+                        entry.setValue(new HashSet<>((Set<?>) entry.getValue()));
+                }
+                return copy;
+            }
+        }
+
+        @Override
+        public String getString(String key, String defValue) {
+            Object value = get(key);
+            return value instanceof String ? (String) value : defValue;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Set<String> getStringSet(String key, Set<String> defValues) {
+            Object value = get(key);
+            return value instanceof Set ? new HashSet<>((Set<String>) value) : defValues;
+        }
+
+        @Override
+        public int getInt(String key, int defValue) {
+            Object value = get(key);
+            return value instanceof Integer ? (Integer) value : defValue;
+        }
+
+        @Override
+        public long getLong(String key, long defValue) {
+            Object value = get(key);
+            return value instanceof Long ? (Long) value : defValue;
+        }
+
+        @Override
+        public float getFloat(String key, float defValue) {
+            Object value = get(key);
+            return value instanceof Float ? (Float) value : defValue;
+        }
+
+        @Override
+        public boolean getBoolean(String key, boolean defValue) {
+            Object value = get(key);
+            return value instanceof Boolean ? (Boolean) value : defValue;
+        }
+
+        @Override
+        public boolean contains(String key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public Editor edit() {
+            return new SectionEditor(this);
+        }
+
+        @Override
+        public void registerOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+            synchronized (listeners) {
+                listeners.put(listener, this);
+            }
+        }
+
+        @Override
+        public void unregisterOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+            synchronized (listeners) {
+                listeners.remove(listener);
+            }
+        }
+
+        private Object get(String key) {
+            synchronized (lock) {
+                return values.get(key);
+            }
+        }
+
+        private List<OnSharedPreferenceChangeListener> fetchListeners() {
+            synchronized (listeners) {
+                return new ArrayList<>(listeners.keySet());
+            }
+        }
+
+        private void notifyListeners(List<String> keys) {
+            if (keys.isEmpty()) return;
+            List<OnSharedPreferenceChangeListener> targets = fetchListeners();
+            for (String key : keys) {
+                for (OnSharedPreferenceChangeListener listener : targets) {
+                    listener.onSharedPreferenceChanged(this, key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Collects changes of a {@link Section} and applies them at once
+     */
+    private class SectionEditor implements SharedPreferences.Editor {
+        // marks a removed key, as null values cannot be stored
+        private final Object removed = new Object();
+        private final Section section;
+        private final Map<String, Object> changes = new HashMap<>();
+        private boolean clear = false;
+
+        SectionEditor(Section section) {
+            this.section = section;
+        }
+
+        @Override
+        public SharedPreferences.Editor putString(String key, String value) {
+            return put(key, value);
+        }
+
+        @Override
+        public SharedPreferences.Editor putStringSet(String key, Set<String> values) {
+            return put(key, values == null ? null : Collections.unmodifiableSet(new HashSet<>(values)));
+        }
+
+        @Override
+        public SharedPreferences.Editor putInt(String key, int value) {
+            return put(key, value);
+        }
+
+        @Override
+        public SharedPreferences.Editor putLong(String key, long value) {
+            return put(key, value);
+        }
+
+        @Override
+        public SharedPreferences.Editor putFloat(String key, float value) {
+            return put(key, value);
+        }
+
+        @Override
+        public SharedPreferences.Editor putBoolean(String key, boolean value) {
+            return put(key, value);
+        }
+
+        @Override
+        public SharedPreferences.Editor remove(String key) {
+            return put(key, null);
+        }
+
+        @Override
+        public SharedPreferences.Editor clear() {
+            clear = true;
+            return this;
+        }
+
+        @Override
+        public boolean commit() {
+            applyChanges();
+            return flush();
+        }
+
+        @Override
+        public void apply() {
+            if (applyChanges()) scheduleFlush();
+        }
+
+        private SharedPreferences.Editor put(String key, Object value) {
+            synchronized (this) {
+                changes.put(key, value == null ? removed : value);
+            }
+            return this;
+        }
+
+        /**
+         * @return true if the values of the section changed
+         */
+        private boolean applyChanges() {
+            List<String> changedKeys = new ArrayList<>();
+            synchronized (this) {
+                synchronized (lock) {
+                    stage(changedKeys);
+                }
+            }
+            section.notifyListeners(changedKeys);
+            return !changedKeys.isEmpty();
+        }
+
+        /**
+         * Applies the changes to the values of the section, has to be called while holding the lock of the editor and of the store
+         *
+         * @param changedKeys receives the keys whose values changed, null if the section was cleared
+         */
+        void stage(List<String> changedKeys) {
+            if (clear && !section.values.isEmpty()) {
+                section.values.clear();
+                changedKeys.add(null);
+            }
+            for (Map.Entry<String, Object> change : changes.entrySet()) {
+                Object value = change.getValue();
+                Object previous = value == removed ? section.values.remove(change.getKey()) : section.values.put(change.getKey(), value);
+                if (value == removed ? previous != null : !value.equals(previous))
+                    changedKeys.add(change.getKey());
+            }
+            if (!changedKeys.isEmpty()) dirty = true;
+            changes.clear();
+            clear = false;
+        }
+    }
+
+    /**
+     * Collects changes of several sections and applies all of them at once.
+     * Every listener is notified once, and all changes are written to the file together.
+     */
+    public class Transaction {
+        private final Map<Section, TransactionEditor> editors = new LinkedHashMap<>();
+        private boolean committed = false;
+
+        private Transaction() {
+        }
+
+        /**
+         * @param name the name of the section
+         * @return the editor of the section, its changes are applied by {@link #commit()}
+         */
+        public synchronized SharedPreferences.Editor edit(String name) {
+            if (committed) throw new IllegalStateException("the transaction was already committed!");
+
+            Section section = getSection(name);
+            TransactionEditor editor = editors.get(section);
+            if (editor == null) {
+                editor = new TransactionEditor(section);
+                editors.put(section, editor);
+            }
+            return editor;
+        }
+
+        /**
+         * Applies the changes of all sections, the file is written in the background
+         *
+         * @return true if any value changed
+         */
+        public boolean commit() {
+            Map<Section, List<String>> changes = new LinkedHashMap<>();
+            synchronized (this) {
+                if (committed) throw new IllegalStateException("the transaction was already committed!");
+                committed = true;
+
+                synchronized (lock) {
+                    for (Map.Entry<Section, TransactionEditor> entry : editors.entrySet()) {
+                        List<String> changedKeys = new ArrayList<>();
+                        synchronized (entry.getValue()) {
+                            entry.getValue().stage(changedKeys);
+                        }
+                        if (!changedKeys.isEmpty()) changes.put(entry.getKey(), changedKeys);
+                    }
+                }
+            }
+            if (changes.isEmpty()) return false;
+
+            // a listener of several changed sections or keys is told once, the key is null if more than one changed
+            Map<SharedPreferences.OnSharedPreferenceChangeListener, Section> sections = new LinkedHashMap<>();
+            Map<SharedPreferences.OnSharedPreferenceChangeListener, String> keys = new HashMap<>();
+            for (Map.Entry<Section, List<String>> change : changes.entrySet()) {
+                for (SharedPreferences.OnSharedPreferenceChangeListener listener : change.getKey().fetchListeners()) {
+                    boolean single = !sections.containsKey(listener) && change.getValue().size() == 1;
+                    if (!sections.containsKey(listener)) sections.put(listener, change.getKey());
+                    keys.put(listener, single ? change.getValue().get(0) : null);
+                }
+            }
+            for (Map.Entry<SharedPreferences.OnSharedPreferenceChangeListener, Section> entry : sections.entrySet()) {
+                entry.getKey().onSharedPreferenceChanged(entry.getValue(), keys.get(entry.getKey()));
+            }
+
+            scheduleFlush();
+            return true;
+        }
+    }
+
+    /**
+     * An editor of a {@link Transaction}, its changes can only be applied by the transaction
+     */
+    private class TransactionEditor extends SectionEditor {
+        TransactionEditor(Section section) {
+            super(section);
+        }
+
+        @Override
+        public boolean commit() {
+            throw new UnsupportedOperationException("the changes are applied by the transaction!");
+        }
+
+        @Override
+        public void apply() {
+            throw new UnsupportedOperationException("the changes are applied by the transaction!");
+        }
+    }
+}
@@ -1,13 +1,23 @@
 package at.tacticaldevc.oat.utils;
 
 import android.app.Activity;
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.app.admin.DeviceAdminInfo;
 import android.app.admin.DevicePolicyManager;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
 
 import at.tacticaldevc.oat.R;
+import at.tacticaldevc.oat.exceptions.OATApplicationException;
 import at.tacticaldevc.oat.listeners.DeviceAdminListener;
+import at.tacticaldevc.oat.listeners.FactoryResetReceiver;
 
 import static at.tacticaldevc.oat.utils.Ensurer.ensureNotNull;
 import static at.tacticaldevc.oat.utils.Ensurer.ensureStringIsValid;
@@ -17,7 +27,16 @@ import static at.tacticaldevc.oat.utils.Ensurer.ensureStringIsValid;
  */
 public class DA {
 
+    public static final String LATENCY_WIPE = "wipe.erase";
+    public static final String LATENCY_SHRED = "wipe.shred";
+    public static final String ACTION_FACTORY_RESET = "at.tacticaldevc.oat.action.FACTORY_RESET";
+
+    private static final String TAG = "DA";
     private static final int DA_REQUEST_CODE = 1234;
+    // the plain documents older versions kept outside of the ConfigStore, they are empty once they were migrated
+    private static final String[] WIPED_DOCUMENTS = {SmsOutbox.DOCUMENT_NAME_OUTBOX, AuthThrottle.DOCUMENT_NAME_THROTTLE, SmsDeduplicator.DOCUMENT_NAME_DEDUPE};
+    // gives the confirmation a chance to be sent before the device is reset
+    private static final long FACTORY_RESET_DELAY_MILLIS = 15 * 1000;
 
     /**
      * Activate the lockdown using DA
@@ -29,7 +48,7 @@ public class DA {
         ensureNotNull(ctx, "Context");
         ensureStringIsValid(phone, "Phone number");
 
-        if (Prefs.fetchFeatureEnabledStatus(ctx, ctx.getString(R.string.oat_features_key_trigger_lockdown))) {
+        if (PrefsSnapshot.get(ctx).isLockdownEnabled()) {
             DevicePolicyManager pol = (DevicePolicyManager) ctx.getSystemService(Context.DEVICE_POLICY_SERVICE);
             Prefs.setLockdownStatus(ctx, true);
             pol.lockNow();
@@ -48,13 +67,106 @@ public class DA {
         ensureNotNull(ctx, "Context");
         ensureStringIsValid(phone, "Phone number");
 
-        if (Prefs.fetchFeatureEnabledStatus(ctx, ctx.getString(R.string.oat_features_key_trigger_lockdown))) {
+        if (PrefsSnapshot.get(ctx).isLockdownEnabled()) {
             Prefs.setLockdownStatus(ctx, false);
             SMSCom.replyDeviceUnlocked(ctx, phone);
         } else
             SMSCom.replyErrorSMS_FeatureDisabled(ctx, phone, ctx.getString(R.string.oat_features_name_lift_lockdown));
     }
 
+    /**
+     * Makes all data of the App unrecoverable by destroying the key of the {@link EncLayer}.
+     * The configuration with the trusted contacts and the password, the pending replies and the state of the sender checks are cleared
+     * in memory and on disk. The files are deleted in the background once the wipe was answered, plain files are overwritten first.
+     * The wipe is only confirmed if the key was destroyed and no data was stored without it, otherwise the sender is told that it is incomplete.
+     * The device can be reset to its factory settings afterwards, the reset is scheduled with the {@link AlarmManager},
+     * so it happens even if the process is killed in the meantime.
+     *
+     * @param ctx          The application context
+     * @param phone        A valid phone number in String representation
+     * @param factoryReset true if the device should be reset to its factory settings afterwards
+     */
+    public static void wipe(Context ctx, String phone, boolean factoryReset) {
+        ensureNotNull(ctx, "Context");
+        ensureStringIsValid(phone, "Phone number");
+
+        final Context appContext = ctx.getApplicationContext();
+        DevicePolicyManager pol = (DevicePolicyManager) appContext.getSystemService(Context.DEVICE_POLICY_SERVICE);
+        ComponentName adminComponent = new ComponentName(appContext, DeviceAdminListener.class);
+        // the policy is missing if the device admin was activated before the App requested it
+        final boolean reset = factoryReset && pol.isAdminActive(adminComponent) && pol.hasGrantedPolicy(adminComponent, DeviceAdminInfo.USES_POLICY_WIPE_DATA);
+        if (factoryReset && !reset)
+            SMSCom.replyErrorSMS_FeatureDisabled(appContext, phone, appContext.getString(R.string.oat_features_name_factory_reset));
+
+        long start = System.nanoTime();
+        // true as long as nothing can be read after the wipe
+        boolean erased = true;
+        try {
+            // as soon as the key is gone nothing that was encrypted can be read, everything after this only cleans up
+            EncLayer.getInstance().destroyKey();
+        } catch (OATApplicationException ex) {
+            Log.e(TAG, "Failed to destroy the encryption key", ex);
+            erased = false;
+        }
+        // the in-memory state is dropped before its storage, so it cannot be written back afterwards
+        SmsOutbox.getInstance(appContext).clear();
+        AuthThrottle.getInstance(appContext).clear();
+        SmsDeduplicator.getInstance(appContext).clear();
+        ConfigStore store = ConfigStore.getInstance(appContext);
+        // a configuration that was written without the key is overwritten, but the flash storage may still keep a copy
+        erased &= store.isEncrypted();
+        store.wipe();
+        TrustedContactIndex.onContactsWiped();
+        SessionManager.getInstance().closeAll();
+        // the ConfigStore holds all of this state now, documents of older versions that were not migrated yet are cleared as well
+        for (String document : WIPED_DOCUMENTS) {
+            appContext.getSharedPreferences(document, Context.MODE_PRIVATE).edit().clear().commit();
+        }
+        final File captures = new File(appContext.getFilesDir(), Cam.CAPTURES_DIR);
+        erased &= !FileShredder.holdsPlainFiles(captures);
+        Metrics.recordLatency(LATENCY_WIPE, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+        if (reset) scheduleFactoryReset(appContext);
+        if (erased) SMSCom.replyDataWiped(appContext, phone, reset);
+        else SMSCom.replyErrorSMS_WipeIncomplete(appContext, phone, reset);
+
+        // the files cannot be read without the key anymore, deleting them is left to the background
+        Thread shredder = new Thread(() -> {
+            long shredStart = System.nanoTime();
+            FileShredder.shred(captures);
+            FileShredder.shred(appContext.getCacheDir());
+            Metrics.recordLatency(LATENCY_SHRED, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - shredStart));
+        }, "oat-shredder");
+        shredder.setDaemon(true);
+        shredder.start();
+    }
+
+    /**
+     * Resets the device once the confirmation of the wipe had a chance to be sent, the alarm survives the process being killed
+     */
+    private static void scheduleFactoryReset(Context context) {
+        AlarmManager alarmManager = context.getSystemService(AlarmManager.class);
+        Intent intent = new Intent(ACTION_FACTORY_RESET, null, context, FactoryResetReceiver.class);
+        PendingIntent reset = PendingIntent.getBroadcast(context, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+        alarmManager.setExactAndAllowWhileIdle(AlarmManager.ELAPSED_REALTIME_WAKEUP, SystemClock.elapsedRealtime() + FACTORY_RESET_DELAY_MILLIS, reset);
+    }
+
+    /**
+     * Resets the device to its factory settings, called by the alarm scheduled by {@link #wipe(Context, String, boolean)}
+     *
+     * @param ctx The application context
+     */
+    public static void factoryReset(Context ctx) {
+        ensureNotNull(ctx, "Context");
+
+        DevicePolicyManager pol = (DevicePolicyManager) ctx.getSystemService(Context.DEVICE_POLICY_SERVICE);
+        try {
+            pol.wipeData(0);
+        } catch (SecurityException ex) {
+            Log.e(TAG, "Failed to reset the device", ex);
+        }
+    }
+
     public static void request_deviceAdmin(Activity ctx) {
         DevicePolicyManager dpm = (DevicePolicyManager) ctx.getSystemService(Context.DEVICE_POLICY_SERVICE);
         ComponentName adminComponent = new ComponentName(ctx, DeviceAdminListener.class);
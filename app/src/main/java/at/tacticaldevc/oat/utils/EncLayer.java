@@ -1,7 +1,480 @@
 package at.tacticaldevc.oat.utils;
 
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyProperties;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+import at.tacticaldevc.oat.exceptions.OATApplicationException;
+
+import static at.tacticaldevc.oat.utils.Ensurer.ensureNotNull;
+
 /**
- * A helper class for permission management
+ * Encrypts the data the App stores with AES-GCM.
+ * Data is split into chunks that are encrypted and authenticated one by one, so streams of any size can be encrypted
+ * and decrypted without holding them in memory. Every chunk has its own nonce made of a random prefix and its index,
+ * and the last chunk is marked in its associated data, so chunks cannot be reordered, dropped or cut off.
+ * The key of the App is kept in the Android Keystore, other keys can be passed to the constructor.
+ * All data of the App is encrypted with this one key, so destroying it makes the data unrecoverable at once.
+ * <p>
+ * The format of the encrypted data is: magic, version, chunk size, nonce prefix, chunks.
+ * Every chunk but the last holds exactly chunk size bytes of plaintext followed by the tag.
+ *
+ * @version 0.3
  */
 public class EncLayer {
+
+    public static final int MAGIC = 0x4F415445; // "OATE"
+    static final byte FORMAT_VERSION = 1;
+    static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+    static final int HEADER_LENGTH = 4 + 1 + 4 + 8;
+    static final int TAG_LENGTH = 16;
+
+    private static final String KEYSTORE = "AndroidKeyStore";
+    private static final String KEY_ALIAS = "oat-storage-key";
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int NONCE_LENGTH = 12;
+    private static final int NONCE_PREFIX_LENGTH = 8;
+    private static final int MAX_CHUNK_SIZE = 1024 * 1024;
+
+    private static EncLayer instance;
+
+    private final KeySource keySource;
+    private final int chunkSize;
+    private volatile SecretKey key;
+    private final SecureRandom random = new SecureRandom();
+    // initializing a Cipher looks up its provider, so every thread keeps its own instance
+    private final ThreadLocal<Cipher> ciphers = new ThreadLocal<Cipher>() {
+        @Override
+        protected Cipher initialValue() {
+            try {
+                return Cipher.getInstance(TRANSFORMATION);
+            } catch (GeneralSecurityException e) {
+                throw OATApplicationException.forLibraryError("javax.crypto.Cipher", e);
+            }
+        }
+    };
+
+    /**
+     * Creates a new EncLayer with a key that is only kept in memory
+     *
+     * @param key       the AES key
+     * @param chunkSize the number of plaintext bytes of a chunk
+     */
+    EncLayer(SecretKey key, int chunkSize) {
+        this(new SoftwareKeySource(), key, chunkSize);
+    }
+
+    /**
+     * Creates a new EncLayer
+     *
+     * @param keySource the {@link KeySource} that provides a new key after the key was destroyed
+     * @param key       the AES key
+     * @param chunkSize the number of plaintext bytes of a chunk
+     */
+    EncLayer(KeySource keySource, SecretKey key, int chunkSize) {
+        this.keySource = ensureNotNull(keySource, "key source");
+        this.key = ensureNotNull(key, "key");
+        if (chunkSize < 1 || chunkSize > MAX_CHUNK_SIZE)
+            throw new IllegalArgumentException("invalid chunk size!");
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * @return the EncLayer of the Application, its key is created in the Android Keystore when it is requested for the first time
+     * @throws OATApplicationException if the Android Keystore is not available
+     */
+    public static synchronized EncLayer getInstance() {
+        if (instance == null) {
+            try {
+                KeySource keySource = new KeystoreKeySource();
+                instance = new EncLayer(keySource, keySource.fetch(), DEFAULT_CHUNK_SIZE);
+            } catch (GeneralSecurityException | IOException e) {
+                throw OATApplicationException.forLibraryError(KEYSTORE, e);
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * @return a new random key that is only kept in memory
+     */
+    static SecretKey generateSoftwareKey() {
+        try {
+            KeyGenerator generator = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_AES);
+            generator.init(256);
+            return generator.generateKey();
+        } catch (GeneralSecurityException e) {
+            throw OATApplicationException.forLibraryError("javax.crypto.KeyGenerator", e);
+        }
+    }
+
+    /**
+     * Destroys the key, everything that was encrypted with it can no longer be decrypted.
+     * New streams use a new key, streams that are still open fail once a key of the Android Keystore was deleted.
+     *
+     * @throws OATApplicationException if the key could not be destroyed
+     */
+    public synchronized void destroyKey() {
+        try {
+            keySource.destroy();
+            key = keySource.fetch();
+        } catch (GeneralSecurityException | IOException e) {
+            throw OATApplicationException.forLibraryError(KEYSTORE, e);
+        }
+    }
+
+    /**
+     * Creates a stream that encrypts everything written to it, the last chunk is written when the stream is closed
+     *
+     * @param out the stream the encrypted data is written to, it is closed together with the returned stream
+     * @return the encrypting stream
+     * @throws IOException if the header could not be written
+     */
+    public OutputStream encrypt(OutputStream out) throws IOException {
+        ensureNotNull(out, "output stream");
+        return startEncryption(out);
+    }
+
+    /**
+     * Creates a channel that encrypts everything written to it, the buffers written to it are encrypted chunk by chunk
+     * without being copied to the heap as a whole. The last chunk is written when the channel is closed.
+     *
+     * @param channel the channel the encrypted data is written to, it is closed together with the returned channel
+     * @return the encrypting channel
+     * @throws IOException if the header could not be written
+     */
+    public WritableByteChannel encrypt(WritableByteChannel channel) throws IOException {
+        ensureNotNull(channel, "channel");
+        return startEncryption(Channels.newOutputStream(channel));
+    }
+
+    private EncryptingOutputStream startEncryption(OutputStream out) throws IOException {
+        byte[] header = new byte[HEADER_LENGTH];
+        writeInt(header, 0, MAGIC);
+        header[4] = FORMAT_VERSION;
+        writeInt(header, 5, chunkSize);
+        byte[] prefix = new byte[NONCE_PREFIX_LENGTH];
+        random.nextBytes(prefix);
+        System.arraycopy(prefix, 0, header, 9, NONCE_PREFIX_LENGTH);
+        out.write(header);
+        return new EncryptingOutputStream(out, key, header);
+    }
+
+    /**
+     * Creates a stream that decrypts data written by {@link #encrypt(OutputStream)}.
+     * A chunk is only returned once it was authenticated, damaged or truncated data raises an {@link IOException}.
+     *
+     * @param in the stream the encrypted data is read from, it is closed together with the returned stream
+     * @return the decrypting stream
+     * @throws IOException if the header could not be read or is not valid
+     */
+    public InputStream decrypt(InputStream in) throws IOException {
+        ensureNotNull(in, "input stream");
+
+        byte[] header = new byte[HEADER_LENGTH];
+        try {
+            new DataInputStream(in).readFully(header);
+        } catch (EOFException ex) {
+            throw new IOException("the encrypted data is too short", ex);
+        }
+        if (readInt(header, 0) != MAGIC) throw new IOException("the data is not encrypted");
+        if (header[4] != FORMAT_VERSION)
+            throw new IOException("unsupported encryption version " + header[4]);
+        int size = readInt(header, 5);
+        if (size < 1 || size > MAX_CHUNK_SIZE)
+            throw new IOException("invalid chunk size " + size);
+        return new DecryptingInputStream(in, key, header, size);
+    }
+
+    /**
+     * @param data the start of some data
+     * @return true if the data starts with the header of {@link #encrypt(OutputStream)}
+     */
+    public static boolean isEncrypted(byte[] data) {
+        return data != null && data.length >= HEADER_LENGTH && readInt(data, 0) == MAGIC;
+    }
+
+    /**
+     * Encrypts or decrypts one chunk
+     *
+     * @return the number of bytes written to the output
+     */
+    private int doChunk(int mode, SecretKey key, byte[] header, long index, boolean last, byte[] input, int length, byte[] output) throws IOException {
+        if (index > 0xFFFFFFFFL) throw new IOException("too many chunks");
+
+        byte[] nonce = new byte[NONCE_LENGTH];
+        System.arraycopy(header, 9, nonce, 0, NONCE_PREFIX_LENGTH);
+        writeInt(nonce, NONCE_PREFIX_LENGTH, (int) index);
+        Cipher cipher = ciphers.get();
+        try {
+            cipher.init(mode, key, new GCMParameterSpec(TAG_LENGTH * 8, nonce));
+            cipher.updateAAD(header);
+            cipher.updateAAD(new byte[]{(byte) (last ? 1 : 0)});
+            return cipher.doFinal(input, 0, length, output, 0);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("chunk " + index + " could not be " + (mode == Cipher.ENCRYPT_MODE ? "encrypted" : "authenticated"), e);
+        }
+    }
+
+    private static void writeInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+
+    private static int readInt(byte[] buffer, int offset) {
+        return ((buffer[offset] & 0xFF) << 24) | ((buffer[offset + 1] & 0xFF) << 16) | ((buffer[offset + 2] & 0xFF) << 8) | (buffer[offset + 3] & 0xFF);
+    }
+
+    /**
+     * Provides the key of an EncLayer
+     */
+    interface KeySource {
+        /**
+         * @return the key, it is created if it does not exist yet
+         */
+        SecretKey fetch() throws GeneralSecurityException, IOException;
+
+        /**
+         * Destroys the key, the next call of {@link #fetch()} creates a new one
+         */
+        void destroy() throws GeneralSecurityException, IOException;
+    }
+
+    private static class KeystoreKeySource implements KeySource {
+
+        @Override
+        public SecretKey fetch() throws GeneralSecurityException, IOException {
+            KeyStore keyStore = loadKeyStore();
+            KeyStore.Entry entry = keyStore.getEntry(KEY_ALIAS, null);
+            if (entry instanceof KeyStore.SecretKeyEntry)
+                return ((KeyStore.SecretKeyEntry) entry).getSecretKey();
+
+            KeyGenerator generator = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_AES, KEYSTORE);
+            generator.init(new KeyGenParameterSpec.Builder(KEY_ALIAS, KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT)
+                    .setBlockModes(KeyProperties.BLOCK_MODE_GCM)
+                    .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_NONE)
+                    .setKeySize(256)
+                    // the nonces are built from a random prefix and the chunk index
+                    .setRandomizedEncryptionRequired(false)
+                    .build());
+            return generator.generateKey();
+        }
+
+        @Override
+        public void destroy() throws GeneralSecurityException, IOException {
+            loadKeyStore().deleteEntry(KEY_ALIAS);
+        }
+
+        private static KeyStore loadKeyStore() throws GeneralSecurityException, IOException {
+            KeyStore keyStore = KeyStore.getInstance(KEYSTORE);
+            keyStore.load(null);
+            return keyStore;
+        }
+    }
+
+    /**
+     * Keeps the key in memory only, a destroyed key is replaced by a new random key
+     */
+    private static class SoftwareKeySource implements KeySource {
+
+        @Override
+        public SecretKey fetch() {
+            return generateSoftwareKey();
+        }
+
+        @Override
+        public void destroy() {
+            // the key is dropped by the EncLayer
+        }
+    }
+
+    private class EncryptingOutputStream extends FilterOutputStream implements WritableByteChannel {
+        private final SecretKey key;
+        private final byte[] header;
+        private final byte[] plain = new byte[chunkSize];
+        private final byte[] sealed = new byte[chunkSize + TAG_LENGTH];
+        private int length = 0;
+        private long index = 0;
+        private boolean closed = false;
+
+        EncryptingOutputStream(OutputStream out, SecretKey key, byte[] header) {
+            super(out);
+            this.key = key;
+            this.header = header;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (closed) throw new IOException("the stream is closed");
+            while (len > 0) {
+                // a full chunk is only written once more data follows, so the last chunk can be marked when the stream is closed
+                if (length == plain.length) writeChunk(false);
+                int count = Math.min(len, plain.length - length);
+                System.arraycopy(b, off, plain, length, count);
+                length += count;
+                off += count;
+                len -= count;
+            }
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            if (closed) throw new ClosedChannelException();
+            int written = src.remaining();
+            while (src.hasRemaining()) {
+                if (length == plain.length) writeChunk(false);
+                int count = Math.min(src.remaining(), plain.length - length);
+                src.get(plain, length, count);
+                length += count;
+            }
+            return written;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return !closed;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            try {
+                writeChunk(true);
+                out.flush();
+            } finally {
+                out.close();
+            }
+        }
+
+        private void writeChunk(boolean last) throws IOException {
+            int count = doChunk(Cipher.ENCRYPT_MODE, key, header, index++, last, plain, length, sealed);
+            out.write(sealed, 0, count);
+            length = 0;
+        }
+    }
+
+    private class DecryptingInputStream extends FilterInputStream {
+        private final SecretKey key;
+        private final byte[] header;
+        private final byte[] sealed;
+        private final byte[] plain;
+        private int position = 0;
+        private int length = 0;
+        private long index = 0;
+        private boolean last = false;
+        // the first byte of the next chunk, read to find out if the current chunk is the last one
+        private int next = -1;
+
+        DecryptingInputStream(InputStream in, SecretKey key, byte[] header, int chunkSize) {
+            super(in);
+            this.key = key;
+            this.header = header;
+            this.sealed = new byte[chunkSize + TAG_LENGTH];
+            this.plain = new byte[chunkSize + TAG_LENGTH];
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            while (position == length) {
+                if (last) return -1;
+                readChunk();
+            }
+            int count = Math.min(len, length - position);
+            System.arraycopy(plain, position, b, off, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = 0;
+            byte[] buffer = new byte[(int) Math.min(n, 4096)];
+            while (skipped < n) {
+                int count = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+                if (count < 0) break;
+                skipped += count;
+            }
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return length - position;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public synchronized void mark(int readlimit) {
+        }
+
+        @Override
+        public synchronized void reset() throws IOException {
+            throw new IOException("mark is not supported");
+        }
+
+        private void readChunk() throws IOException {
+            int count = 0;
+            if (next >= 0) {
+                sealed[count++] = (byte) next;
+                next = -1;
+            }
+            while (count < sealed.length) {
+                int read = in.read(sealed, count, sealed.length - count);
+                if (read < 0) break;
+                count += read;
+            }
+            if (count < TAG_LENGTH) throw new IOException("the encrypted data is truncated");
+
+            if (count < sealed.length) last = true;
+            else {
+                next = in.read();
+                last = next < 0;
+            }
+            length = doChunk(Cipher.DECRYPT_MODE, key, header, index++, last, sealed, count, plain);
+            position = 0;
+        }
+    }
 }
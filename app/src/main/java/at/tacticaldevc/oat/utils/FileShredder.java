@@ -0,0 +1,107 @@
+package at.tacticaldevc.oat.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Deletes the files of the App after a wipe.
+ * Files written by {@link EncLayer} are only deleted, their content is unrecoverable as soon as the key was destroyed.
+ * Plain files are overwritten with zeros before they are deleted. Flash storage may keep copies of overwritten blocks,
+ * which is why everything worth protecting is encrypted in the first place.
+ *
+ * @version 0.2
+ */
+public class FileShredder {
+
+    public static final String METRIC_SHREDDED = "wipe.shredded";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Deletes a file or a directory with everything in it
+     *
+     * @param root the file or directory to delete
+     * @return the number of files that were deleted
+     */
+    public static int shred(File root) {
+        if (root == null || !root.exists()) return 0;
+
+        int count = 0;
+        File[] children = root.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                count += shred(child);
+            }
+            root.delete();
+            return count;
+        }
+
+        try {
+            if (!isEncrypted(root)) overwrite(root);
+        } catch (IOException ex) {
+            // deleting the file is still better than keeping it
+        }
+        if (root.delete()) {
+            Metrics.increment(METRIC_SHREDDED);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @param root a file or a directory
+     * @return true if the file or any file in the directory was not written by {@link EncLayer}
+     */
+    public static boolean holdsPlainFiles(File root) {
+        if (root == null || !root.exists()) return false;
+
+        File[] children = root.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                if (holdsPlainFiles(child)) return true;
+            }
+            return false;
+        }
+        try {
+            return !isEncrypted(root);
+        } catch (IOException ex) {
+            // a file that cannot be read cannot be proven to be encrypted
+            return true;
+        }
+    }
+
+    /**
+     * Overwrites a file with zeros and syncs it
+     *
+     * @param file the file to overwrite
+     * @throws IOException if the file could not be written
+     */
+    static void overwrite(File file) throws IOException {
+        byte[] zeros = new byte[BUFFER_SIZE];
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long length = raf.length();
+            for (long written = 0; written < length; written += zeros.length) {
+                raf.write(zeros, 0, (int) Math.min(zeros.length, length - written));
+            }
+            raf.getFD().sync();
+        }
+    }
+
+    /**
+     * @return true if the file starts with the header of {@link EncLayer}
+     */
+    static boolean isEncrypted(File file) throws IOException {
+        byte[] header = new byte[EncLayer.HEADER_LENGTH];
+        try (FileInputStream in = new FileInputStream(file)) {
+            int read = 0;
+            while (read < header.length) {
+                int count = in.read(header, read, header.length - read);
+                if (count < 0) return false;
+                read += count;
+            }
+        }
+        return EncLayer.isEncrypted(header);
+    }
+}
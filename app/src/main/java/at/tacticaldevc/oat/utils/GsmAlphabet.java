@@ -0,0 +1,114 @@
+package at.tacticaldevc.oat.utils;
+
+/**
+ * The GSM 03.38 default alphabet and its extension table.
+ * Used to measure how many SMS a text needs and to replace characters that would force a text into UCS-2.
+ *
+ * @version 0.1
+ */
+public class GsmAlphabet {
+
+    // the values of SmsMessage.ENCODING_7BIT and SmsMessage.ENCODING_16BIT
+    public static final int ENCODING_7BIT = 1;
+    public static final int ENCODING_16BIT = 3;
+
+    static final int MAX_SEPTETS_SINGLE = 160;
+    static final int MAX_SEPTETS_CONCATENATED = 153;
+    static final int MAX_CHARS_SINGLE_UCS2 = 70;
+    static final int MAX_CHARS_CONCATENATED_UCS2 = 67;
+
+    private static final String BASIC = "@\u00A3$\u00A5\u00E8\u00E9\u00F9\u00EC\u00F2\u00C7\n\u00D8\u00F8\r\u00C5\u00E5\u0394_\u03A6\u0393\u039B\u03A9\u03A0\u03A8\u03A3\u0398\u039E\u001B\u00C6\u00E6\u00DF\u00C9 !\"#\u00A4%&'()*+,-./0123456789:;<=>?"
+            + "\u00A1ABCDEFGHIJKLMNOPQRSTUVWXYZ\u00C4\u00D6\u00D1\u00DC\u00A7\u00BFabcdefghijklmnopqrstuvwxyz\u00E4\u00F6\u00F1\u00FC\u00E0";
+    private static final String EXTENSION = "\f^{}\\[~]|\u20AC";
+
+    // characters outside of the GSM alphabet and their closest GSM equivalent
+    private static final String REPLACEABLE = "\u00A0\u2009\u202F"
+            + "\u2018\u2019\u201A\u201B\u2032\u00B4`"
+            + "\u201C\u201D\u201E\u201F\u2033\u00AB\u00BB"
+            + "\u2010\u2011\u2012\u2013\u2014\u2015\u2212"
+            + "\u2026\u00B7\u2022"
+            + "\u00E1\u00ED\u00F3\u00FA\u00E2\u00EA\u00EE\u00F4\u00FB\u00EB\u00EF\u00E7\u00C1\u00CD\u00D3\u00DA";
+    private static final String REPLACEMENTS = "   "
+            + "'''''''"
+            + "\"\"\"\"\"\"\""
+            + "-------"
+            + "\u0000.."
+            + "aiouaeiouei\u00C7AIOU";
+
+    private static final boolean[] BASIC_TABLE = new boolean[0x400];
+    private static final boolean[] EXTENSION_TABLE = new boolean[0x400];
+
+    static {
+        for (int i = 0; i < BASIC.length(); i++) {
+            if (BASIC.charAt(i) != '\u001B') BASIC_TABLE[BASIC.charAt(i)] = true;
+        }
+        for (int i = 0; i < EXTENSION.length(); i++) {
+            // the euro sign is outside of the table and checked on its own
+            if (EXTENSION.charAt(i) < EXTENSION_TABLE.length) EXTENSION_TABLE[EXTENSION.charAt(i)] = true;
+        }
+    }
+
+    /**
+     * @param c the character to be checked
+     * @return the number of septets the character needs in the GSM alphabet or -1 if it is not part of the alphabet
+     */
+    public static int septets(char c) {
+        if (c < BASIC_TABLE.length && BASIC_TABLE[c]) return 1;
+        if (c == '\u20AC' || c < EXTENSION_TABLE.length && EXTENSION_TABLE[c]) return 2;
+        return -1;
+    }
+
+    /**
+     * Calculates the number of SMS that are needed to send a text, like {@code SmsMessage.calculateLength(text, false)} does without national language tables
+     *
+     * @param text the text to be measured
+     * @return an array of the number of SMS, the number of code units, the remaining code units in the last SMS and the encoding
+     */
+    public static int[] calculateLength(CharSequence text) {
+        int septets = 0;
+        for (int i = 0; i < text.length(); i++) {
+            int size = septets(text.charAt(i));
+            if (size < 0) return calculateUcs2Length(text.length());
+            septets += size;
+        }
+
+        if (septets <= MAX_SEPTETS_SINGLE)
+            return new int[]{1, septets, MAX_SEPTETS_SINGLE - septets, ENCODING_7BIT};
+        int count = (septets + MAX_SEPTETS_CONCATENATED - 1) / MAX_SEPTETS_CONCATENATED;
+        return new int[]{count, septets, count * MAX_SEPTETS_CONCATENATED - septets, ENCODING_7BIT};
+    }
+
+    private static int[] calculateUcs2Length(int chars) {
+        if (chars <= MAX_CHARS_SINGLE_UCS2)
+            return new int[]{1, chars, MAX_CHARS_SINGLE_UCS2 - chars, ENCODING_16BIT};
+        int count = (chars + MAX_CHARS_CONCATENATED_UCS2 - 1) / MAX_CHARS_CONCATENATED_UCS2;
+        return new int[]{count, chars, count * MAX_CHARS_CONCATENATED_UCS2 - chars, ENCODING_16BIT};
+    }
+
+    /**
+     * Replaces typographic characters that are not part of the GSM alphabet with their closest equivalent.
+     * The text is only changed if all of its characters can be sent in the GSM alphabet afterwards.
+     *
+     * @param text the text to be converted
+     * @return the converted text or the text itself if it did not need to or could not be converted
+     */
+    public static String replaceNonGsmCharacters(String text) {
+        StringBuilder sb = null;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (septets(c) > 0) {
+                if (sb != null) sb.append(c);
+                continue;
+            }
+
+            int index = REPLACEABLE.indexOf(c);
+            if (index < 0) return text;
+            if (sb == null) sb = new StringBuilder(text.length()).append(text, 0, i);
+            char replacement = REPLACEMENTS.charAt(index);
+            // the ellipsis is replaced with three dots
+            if (replacement == '\u0000') sb.append("...");
+            else sb.append(replacement);
+        }
+        return sb == null ? text : sb.toString();
+    }
+}
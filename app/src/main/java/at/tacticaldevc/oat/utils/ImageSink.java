@@ -0,0 +1,108 @@
+package at.tacticaldevc.oat.utils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+import static at.tacticaldevc.oat.utils.Ensurer.ensureNotNull;
+
+/**
+ * Writes pictures to files straight from their buffers.
+ * The buffer of an {@link android.media.Image} lives outside of the heap, it is written to a {@link FileChannel}
+ * or to an encrypting channel of the {@link EncLayer} without being copied to a byte array first.
+ * The file is only synced to the storage if the caller asks for it, as syncing costs more than the write itself.
+ *
+ * @version 0.1
+ */
+class ImageSink {
+
+    private static final int MAX_NAME_ATTEMPTS = 100;
+
+    /**
+     * Writes the remaining bytes of a buffer to a file, a file that could not be written completely is deleted
+     *
+     * @param buffer   the picture, its position is moved to its limit
+     * @param file     the file to write, it is replaced if it exists
+     * @param encLayer the {@link EncLayer} that encrypts the file, or null to write it in plain
+     * @param durable  true if the file has to be synced to the storage before this method returns
+     * @return the number of bytes of the picture
+     * @throws IOException if the file could not be written
+     */
+    static long write(ByteBuffer buffer, File file, EncLayer encLayer, boolean durable) throws IOException {
+        ensureNotNull(buffer, "buffer");
+        ensureNotNull(file, "file");
+
+        long length = buffer.remaining();
+        WritableByteChannel channel = new FileSinkChannel(new FileOutputStream(file).getChannel(), durable);
+        try {
+            try {
+                if (encLayer != null) channel = encLayer.encrypt(channel);
+                while (buffer.hasRemaining()) channel.write(buffer);
+            } finally {
+                channel.close();
+            }
+        } catch (IOException | RuntimeException e) {
+            file.delete();
+            throw e;
+        }
+        return length;
+    }
+
+    /**
+     * Creates a new, empty file that did not exist before, so a picture never replaces another one.
+     * The file is named after the base name, a counter is added to the name if a file with the name exists already.
+     *
+     * @param dir      the directory of the file
+     * @param baseName the name of the file without its suffix
+     * @param suffix   the suffix of the file
+     * @return the created file
+     * @throws IOException if no new file could be created
+     */
+    static File createNewFile(File dir, String baseName, String suffix) throws IOException {
+        ensureNotNull(dir, "directory");
+        ensureNotNull(baseName, "base name");
+        ensureNotNull(suffix, "suffix");
+
+        for (int attempt = 0; attempt < MAX_NAME_ATTEMPTS; attempt++) {
+            File file = new File(dir, (attempt == 0 ? baseName : baseName + "-" + attempt) + suffix);
+            // createNewFile is atomic, like opening the file with StandardOpenOption.CREATE_NEW which needs API 26
+            if (file.createNewFile()) return file;
+        }
+        throw new IOException("no new file could be created for " + baseName + suffix + " in " + dir);
+    }
+
+    /**
+     * A channel to a file that syncs the file when it is closed, if the file has to be durable
+     */
+    private static class FileSinkChannel implements WritableByteChannel {
+        private final FileChannel channel;
+        private final boolean durable;
+
+        FileSinkChannel(FileChannel channel, boolean durable) {
+            this.channel = channel;
+            this.durable = durable;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            return channel.write(src);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (durable && channel.isOpen()) channel.force(true);
+            } finally {
+                channel.close();
+            }
+        }
+    }
+}
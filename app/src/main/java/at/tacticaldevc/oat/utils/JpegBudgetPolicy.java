@@ -0,0 +1,226 @@
+package at.tacticaldevc.oat.utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static at.tacticaldevc.oat.utils.Ensurer.ensureNotNull;
+import static at.tacticaldevc.oat.utils.Ensurer.ensureStringIsValid;
+
+/**
+ * Chooses the resolution and the JPEG quality of a picture, so that the picture fits into a MMS.
+ * The size of a JPEG is estimated from its number of pixels and the bytes per pixel the camera produced at the reference quality.
+ * The bytes per pixel are learned from every picture a camera takes and persisted in their own document.
+ * The largest resolution that fits the budget at an acceptable quality is chosen, pictures that exceed the budget anyway
+ * are re-encoded as planned by {@link #planReencode(Setting, int, int)}.
+ *
+ * @version 0.1
+ */
+public class JpegBudgetPolicy {
+
+    // most carriers accept MMS of 300 KB
+    public static final int DEFAULT_BYTE_BUDGET = 300 * 1024;
+    public static final int MIN_BYTE_BUDGET = 16 * 1024;
+
+    static final int MIN_QUALITY = 50;
+    static final int PREFERRED_MIN_QUALITY = 75;
+    static final int MAX_QUALITY = 90;
+    static final int REFERENCE_QUALITY = 85;
+    // the size of a picture depends on what it shows, so the budget is aimed at with a margin
+    static final double TARGET_RATIO = 0.85;
+    // the bytes per pixel at the reference quality before a camera took its first picture
+    static final double DEFAULT_BYTES_PER_PIXEL = 0.3;
+    private static final double LEARNING_RATE = 0.3;
+    private static final int QUALITY_STEP = 5;
+
+    private static final String DOCUMENT_NAME_CAMERA_POLICY = "oat-camera-policy";
+    // the size of a JPEG relative to the reference quality, measured for typical photos
+    private static final int[] QUALITIES = {50, 60, 70, 75, 80, 85, 90, 95, 100};
+    private static final double[] SIZE_FACTORS = {0.42, 0.5, 0.62, 0.7, 0.82, 1.0, 1.35, 1.9, 3.2};
+
+    private static JpegBudgetPolicy instance;
+
+    private final Store store;
+    private final Map<String, Double> bytesPerPixel = new HashMap<>();
+
+    /**
+     * Creates a new JpegBudgetPolicy
+     *
+     * @param store the {@link Store} the learned bytes per pixel are persisted to
+     */
+    JpegBudgetPolicy(Store store) {
+        this.store = ensureNotNull(store, "store");
+    }
+
+    /**
+     * @param context the {@link Context} of the Application
+     * @return the JpegBudgetPolicy of the Application with the persisted bytes per pixel of the cameras
+     */
+    public static synchronized JpegBudgetPolicy getInstance(Context context) {
+        ensureNotNull(context, "Application Context");
+        if (instance == null) {
+            final SharedPreferences prefs = context.getApplicationContext().getSharedPreferences(DOCUMENT_NAME_CAMERA_POLICY, Context.MODE_PRIVATE);
+            instance = new JpegBudgetPolicy((cameraId, value) -> prefs.edit().putString(cameraId, value).apply());
+            for (Map.Entry<String, ?> entry : prefs.getAll().entrySet()) {
+                if (entry.getValue() instanceof String) instance.restore(entry.getKey(), (String) entry.getValue());
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Chooses the resolution and quality of the next picture of a camera
+     *
+     * @param cameraId the id of the camera
+     * @param widths   the widths of the JPEG resolutions the camera supports
+     * @param heights  the heights of the JPEG resolutions, in the same order as the widths
+     * @param budget   the maximum size of the picture in bytes
+     * @return the chosen {@link Setting}
+     */
+    public synchronized Setting choose(String cameraId, int[] widths, int[] heights, int budget) {
+        ensureStringIsValid(cameraId, "camera id");
+        ensureNotNull(widths, "widths");
+        ensureNotNull(heights, "heights");
+        if (widths.length == 0 || widths.length != heights.length)
+            throw new IllegalArgumentException("invalid resolutions!");
+
+        double target = budget * TARGET_RATIO;
+        double perPixel = fetchBytesPerPixel(cameraId);
+        int best = -1;
+        int smallest = 0;
+        for (int i = 0; i < widths.length; i++) {
+            long pixels = (long) widths[i] * heights[i];
+            if (pixels < (long) widths[smallest] * heights[smallest]) smallest = i;
+            if (pixels * perPixel * sizeFactor(PREFERRED_MIN_QUALITY) > target) continue;
+            if (best < 0 || pixels > (long) widths[best] * heights[best]) best = i;
+        }
+
+        // if no resolution fits at an acceptable quality, the smallest one is taken at the lowest quality that fits
+        int index = best >= 0 ? best : smallest;
+        double estimate = (long) widths[index] * heights[index] * perPixel;
+        int quality = best >= 0 ? PREFERRED_MIN_QUALITY : MIN_QUALITY;
+        for (int q = MAX_QUALITY; q > quality; q -= QUALITY_STEP) {
+            if (estimate * sizeFactor(q) <= target) {
+                quality = q;
+                break;
+            }
+        }
+        return new Setting(widths[index], heights[index], quality);
+    }
+
+    /**
+     * Learns from a picture a camera took
+     *
+     * @param cameraId the id of the camera
+     * @param setting  the {@link Setting} the picture was taken with
+     * @param bytes    the size of the picture in bytes
+     */
+    public synchronized void observe(String cameraId, Setting setting, int bytes) {
+        ensureStringIsValid(cameraId, "camera id");
+        ensureNotNull(setting, "setting");
+        if (bytes <= 0) return;
+
+        double sample = bytes / (setting.getPixels() * sizeFactor(setting.getQuality()));
+        Double learned = bytesPerPixel.get(cameraId);
+        double value = learned == null ? sample : learned + LEARNING_RATE * (sample - learned);
+        bytesPerPixel.put(cameraId, value);
+        store.put(cameraId, Double.toString(value));
+    }
+
+    /**
+     * Plans how a picture that exceeds the budget is re-encoded.
+     * The quality is lowered first, as long as it stays acceptable, then the resolution is scaled down.
+     *
+     * @param setting the {@link Setting} of the picture
+     * @param bytes   the size of the picture in bytes
+     * @param budget  the maximum size of the picture in bytes
+     * @return the {@link Setting} to re-encode the picture with
+     */
+    public Setting planReencode(Setting setting, int bytes, int budget) {
+        ensureNotNull(setting, "setting");
+
+        double remaining = budget * TARGET_RATIO / bytes;
+        int quality = setting.getQuality();
+        double base = sizeFactor(quality);
+        for (int q = quality; q >= PREFERRED_MIN_QUALITY; q -= QUALITY_STEP) {
+            if (sizeFactor(q) / base <= remaining) return new Setting(setting.getWidth(), setting.getHeight(), q);
+        }
+
+        int lowered = Math.min(quality, PREFERRED_MIN_QUALITY);
+        double scale = Math.sqrt(remaining * base / sizeFactor(lowered));
+        return new Setting(Math.max(1, (int) (setting.getWidth() * scale)), Math.max(1, (int) (setting.getHeight() * scale)), lowered);
+    }
+
+    /**
+     * @param cameraId the id of the camera
+     * @return the learned bytes per pixel of the camera at the reference quality
+     */
+    synchronized double fetchBytesPerPixel(String cameraId) {
+        Double learned = bytesPerPixel.get(cameraId);
+        return learned != null ? learned : DEFAULT_BYTES_PER_PIXEL;
+    }
+
+    synchronized void restore(String cameraId, String value) {
+        try {
+            double parsed = Double.parseDouble(value);
+            if (parsed > 0 && !Double.isInfinite(parsed)) bytesPerPixel.put(cameraId, parsed);
+        } catch (NumberFormatException ex) {
+            // the camera is learned again
+        }
+    }
+
+    /**
+     * @param quality the JPEG quality
+     * @return the size of a JPEG of the quality relative to the reference quality
+     */
+    static double sizeFactor(int quality) {
+        if (quality <= QUALITIES[0]) return SIZE_FACTORS[0];
+        for (int i = 1; i < QUALITIES.length; i++) {
+            if (quality <= QUALITIES[i]) {
+                double position = (quality - QUALITIES[i - 1]) / (double) (QUALITIES[i] - QUALITIES[i - 1]);
+                return SIZE_FACTORS[i - 1] + position * (SIZE_FACTORS[i] - SIZE_FACTORS[i - 1]);
+            }
+        }
+        return SIZE_FACTORS[SIZE_FACTORS.length - 1];
+    }
+
+    /**
+     * Persists the learned bytes per pixel of a camera
+     */
+    interface Store {
+        void put(String cameraId, String bytesPerPixel);
+    }
+
+    /**
+     * The resolution and quality of a picture
+     */
+    public static class Setting {
+        private final int width;
+        private final int height;
+        private final int quality;
+
+        Setting(int width, int height, int quality) {
+            this.width = width;
+            this.height = height;
+            this.quality = quality;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public int getQuality() {
+            return quality;
+        }
+
+        long getPixels() {
+            return (long) width * height;
+        }
+    }
+}
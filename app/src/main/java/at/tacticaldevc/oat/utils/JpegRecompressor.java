@@ -0,0 +1,70 @@
+package at.tacticaldevc.oat.utils;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import java.io.ByteArrayOutputStream;
+
+import at.tacticaldevc.oat.exceptions.OATApplicationException;
+
+import static at.tacticaldevc.oat.utils.Ensurer.ensureNotNull;
+
+/**
+ * Re-encodes pictures that exceed their byte budget, as planned by the {@link JpegBudgetPolicy}.
+ * The picture is decoded subsampled as far as possible, so the full resolution never has to be held in memory.
+ * Re-encoding is expensive, so it must not run on the camera thread.
+ *
+ * @version 0.1
+ */
+class JpegRecompressor {
+
+    static final String METRIC_REENCODES = "camera.reencodes";
+    private static final int MAX_ATTEMPTS = 3;
+
+    /**
+     * Re-encodes a picture until it fits the budget
+     *
+     * @param jpeg    the JPEG picture
+     * @param setting the {@link JpegBudgetPolicy.Setting} the picture was taken with
+     * @param budget  the maximum size of the picture in bytes
+     * @param policy  the {@link JpegBudgetPolicy} that plans the re-encoding
+     * @return the picture if it fits, otherwise the smallest re-encoded picture
+     */
+    static byte[] fit(byte[] jpeg, JpegBudgetPolicy.Setting setting, int budget, JpegBudgetPolicy policy) {
+        ensureNotNull(jpeg, "picture");
+        ensureNotNull(setting, "setting");
+        ensureNotNull(policy, "policy");
+
+        byte[] result = jpeg;
+        JpegBudgetPolicy.Setting current = setting;
+        for (int attempt = 0; attempt < MAX_ATTEMPTS && result.length > budget; attempt++) {
+            JpegBudgetPolicy.Setting planned = policy.planReencode(current, result.length, budget);
+            result = encode(jpeg, setting, planned);
+            current = planned;
+            Metrics.increment(METRIC_REENCODES);
+        }
+        return result;
+    }
+
+    private static byte[] encode(byte[] jpeg, JpegBudgetPolicy.Setting source, JpegBudgetPolicy.Setting target) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = 1;
+        while (source.getWidth() / (options.inSampleSize * 2) >= target.getWidth()
+                && source.getHeight() / (options.inSampleSize * 2) >= target.getHeight())
+            options.inSampleSize *= 2;
+
+        Bitmap decoded = BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length, options);
+        if (decoded == null) throw OATApplicationException.forOther("JpegRecompressor", "the picture could not be decoded!");
+        Bitmap scaled = decoded;
+        try {
+            if (decoded.getWidth() != target.getWidth() || decoded.getHeight() != target.getHeight())
+                scaled = Bitmap.createScaledBitmap(decoded, target.getWidth(), target.getHeight(), true);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            scaled.compress(Bitmap.CompressFormat.JPEG, target.getQuality(), out);
+            return out.toByteArray();
+        } finally {
+            if (scaled != decoded) scaled.recycle();
+            decoded.recycle();
+        }
+    }
+}
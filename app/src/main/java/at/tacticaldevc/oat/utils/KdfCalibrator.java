@@ -0,0 +1,55 @@
+package at.tacticaldevc.oat.utils;
+
+import static at.tacticaldevc.oat.utils.Ensurer.ensureNotNull;
+
+/**
+ * Measures how fast a {@link PasswordKdf} runs on this device and picks the cost that matches a target latency.
+ * A strong KDF makes guessing the password expensive, but every command has to run it once, so it must stay fast enough on low-end phones.
+ *
+ * @version 0.1
+ */
+public class KdfCalibrator {
+
+    // the probe is repeated with a doubled cost until it takes at least this long, so the timer resolution does not matter
+    private static final long MIN_PROBE_NANOS = 10 * 1000 * 1000;
+    private static final int PROBE_COST = 500;
+    private static final int COST_STEP = 1000;
+    private static final byte[] PROBE_PASSWORD = "calibration".getBytes();
+    private static final byte[] PROBE_SALT = new byte[16];
+
+    /**
+     * Calibrates the cost of a KDF
+     *
+     * @param kdf          the {@link PasswordKdf} to be calibrated
+     * @param targetMillis the time in milliseconds verifying a password should take
+     * @param minCost      the lowest cost that may be returned
+     * @param maxCost      the highest cost that may be returned
+     * @return the cost that takes about the target time on this device, rounded down to a multiple of 1000 if possible
+     */
+    public static int calibrate(PasswordKdf kdf, long targetMillis, int minCost, int maxCost) {
+        ensureNotNull(kdf, "KDF");
+        if (targetMillis <= 0) throw new IllegalArgumentException("targetMillis has to be positive!");
+        if (minCost < 1 || maxCost < minCost) throw new IllegalArgumentException("invalid cost range!");
+
+        // the first run warms up the JIT and the crypto provider
+        kdf.derive(PROBE_PASSWORD, PROBE_SALT, PROBE_COST);
+
+        int cost = PROBE_COST;
+        long elapsed = measure(kdf, cost);
+        while (elapsed < MIN_PROBE_NANOS && cost < maxCost) {
+            cost *= 2;
+            elapsed = measure(kdf, cost);
+        }
+
+        double costPerNano = cost / (double) Math.max(elapsed, 1);
+        long calibrated = (long) (costPerNano * targetMillis * 1000 * 1000);
+        if (calibrated > COST_STEP) calibrated -= calibrated % COST_STEP;
+        return (int) Math.max(minCost, Math.min(maxCost, calibrated));
+    }
+
+    private static long measure(PasswordKdf kdf, int cost) {
+        long start = System.nanoTime();
+        kdf.derive(PROBE_PASSWORD, PROBE_SALT, cost);
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,34 @@
+package at.tacticaldevc.oat.utils;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import at.tacticaldevc.oat.exceptions.OATApplicationException;
+
+/**
+ * The single salted SHA-256 round that was used to hash the password before {@link Pbkdf2Sha256}.
+ * It is only used to verify passwords that were saved by older versions, they are migrated on the next successful login.
+ *
+ * @version 0.1
+ */
+public class LegacySha256Kdf implements PasswordKdf {
+
+    public static final String NAME = "sha256";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public byte[] derive(byte[] password, byte[] salt, int cost) {
+        MessageDigest algorithm;
+        try {
+            algorithm = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw OATApplicationException.forLibraryDeprecatedError("MessageDigest", ex);
+        }
+        algorithm.update(salt);
+        return algorithm.digest(password);
+    }
+}
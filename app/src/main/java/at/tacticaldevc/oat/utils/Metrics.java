@@ -0,0 +1,131 @@
+package at.tacticaldevc.oat.utils;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static at.tacticaldevc.oat.utils.Ensurer.ensureStringIsValid;
+
+/**
+ * Process-wide counters and latency statistics of OAT
+ * The values are kept in memory only and start at zero whenever the process is started.
+ *
+ * @version 0.1
+ */
+public class Metrics {
+
+    private static final ConcurrentMap<String, AtomicLong> COUNTERS = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, Latency> LATENCIES = new ConcurrentHashMap<>();
+
+    /**
+     * Increments a counter by one
+     *
+     * @param name the name of the counter
+     * @return the new value of the counter
+     */
+    public static long increment(String name) {
+        return add(name, 1);
+    }
+
+    /**
+     * Adds a value to a counter
+     *
+     * @param name  the name of the counter
+     * @param delta the value to be added
+     * @return the new value of the counter
+     */
+    public static long add(String name, long delta) {
+        ensureStringIsValid(name, "counter name");
+
+        AtomicLong counter = COUNTERS.get(name);
+        if (counter == null) {
+            AtomicLong created = new AtomicLong();
+            counter = COUNTERS.putIfAbsent(name, created);
+            if (counter == null) counter = created;
+        }
+        return counter.addAndGet(delta);
+    }
+
+    /**
+     * @param name the name of the counter
+     * @return the value of the counter, 0 if the counter does not exist
+     */
+    public static long getCount(String name) {
+        AtomicLong counter = COUNTERS.get(name);
+        return counter == null ? 0 : counter.get();
+    }
+
+    /**
+     * Records a latency measurement
+     *
+     * @param name   the name of the measurement
+     * @param millis the measured latency in milliseconds
+     */
+    public static void recordLatency(String name, long millis) {
+        ensureStringIsValid(name, "latency name");
+
+        Latency latency = LATENCIES.get(name);
+        if (latency == null) {
+            Latency created = new Latency();
+            latency = LATENCIES.putIfAbsent(name, created);
+            if (latency == null) latency = created;
+        }
+        latency.record(millis);
+    }
+
+    /**
+     * @param name the name of the measurement
+     * @return the {@link Latency} statistics or null if nothing was recorded yet
+     */
+    public static Latency getLatency(String name) {
+        return LATENCIES.get(name);
+    }
+
+    /**
+     * @return a sorted copy of all counters
+     */
+    public static Map<String, Long> snapshot() {
+        Map<String, Long> result = new TreeMap<>();
+        for (Map.Entry<String, AtomicLong> entry : COUNTERS.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().get());
+        }
+        return result;
+    }
+
+    /**
+     * Removes all counters and measurements
+     */
+    public static void reset() {
+        COUNTERS.clear();
+        LATENCIES.clear();
+    }
+
+    /**
+     * The statistics of a latency measurement
+     */
+    public static class Latency {
+        private long count;
+        private long totalMillis;
+        private long maxMillis;
+
+        synchronized void record(long millis) {
+            count++;
+            totalMillis += millis;
+            if (millis > maxMillis) maxMillis = millis;
+        }
+
+        public synchronized long getCount() {
+            return count;
+        }
+
+        public synchronized long getMaxMillis() {
+            return maxMillis;
+        }
+
+        public synchronized long getAverageMillis() {
+            return count == 0 ? 0 : totalMillis / count;
+        }
+    }
+}
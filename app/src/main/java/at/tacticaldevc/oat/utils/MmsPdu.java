@@ -0,0 +1,146 @@
+package at.tacticaldevc.oat.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static at.tacticaldevc.oat.utils.Ensurer.ensureNotNull;
+import static at.tacticaldevc.oat.utils.Ensurer.ensurePhoneNumberIsValid;
+import static at.tacticaldevc.oat.utils.Ensurer.ensureStringIsValid;
+
+/**
+ * Encodes the M-Send.req PDU that is handed to the platform to send a MMS, as specified by the OMA MMS encapsulation protocol.
+ * The pictures are the parts of a multipart/mixed body, so several pictures are sent in one MMS.
+ * The sender is inserted by the MMS service, the pictures are streamed from their files into the PDU.
+ * The texts of the PDU are limited in length, so the bytes the PDU adds to the pictures are bounded, see {@link #maxOverhead(int)}.
+ *
+ * @version 0.2
+ */
+public class MmsPdu {
+
+    static final int HEADER_MESSAGE_TYPE = 0x8C;
+    static final int HEADER_TRANSACTION_ID = 0x98;
+    static final int HEADER_MMS_VERSION = 0x8D;
+    static final int HEADER_FROM = 0x89;
+    static final int HEADER_TO = 0x97;
+    static final int HEADER_CONTENT_TYPE = 0x84;
+    static final int PART_HEADER_CONTENT_LOCATION = 0x8E;
+
+    static final int MESSAGE_TYPE_SEND_REQUEST = 0x80;
+    // version 1.2, the major version in bits 4 to 6 and the minor version in bits 0 to 3
+    static final int MMS_VERSION = 0x92;
+    static final int INSERT_ADDRESS_TOKEN = 0x81;
+    static final int CONTENT_TYPE_MULTIPART_MIXED = 0xA3;
+    static final int CONTENT_TYPE_IMAGE_JPEG = 0x9E;
+
+    private static final String ADDRESS_TYPE_PHONE_NUMBER = "/TYPE=PLMN";
+    private static final int BUFFER_SIZE = 16 * 1024;
+    // the longest transaction id, recipient and picture name
+    static final int MAX_TEXT_LENGTH = 48;
+    // the headers of the message: the fixed headers, the transaction id, the recipient with its address type and the number of parts
+    private static final int MAX_MESSAGE_OVERHEAD = 11 + MAX_TEXT_LENGTH + 1 + MAX_TEXT_LENGTH + ADDRESS_TYPE_PHONE_NUMBER.length() + 1 + 5;
+    // the lengths of the part and its headers, the content type and the content location with the name of the picture
+    private static final int MAX_PART_OVERHEAD = 5 + 5 + 2 + MAX_TEXT_LENGTH + 1;
+
+    /**
+     * Returns the maximum number of bytes a PDU adds to the pictures it contains
+     *
+     * @param pictures the number of pictures in the PDU
+     * @return the maximum size of the PDU without the pictures in bytes
+     */
+    public static int maxOverhead(int pictures) {
+        if (pictures < 1) throw new IllegalArgumentException("a MMS needs at least one picture!");
+        return MAX_MESSAGE_OVERHEAD + pictures * MAX_PART_OVERHEAD;
+    }
+
+    /**
+     * Writes a M-Send.req with pictures
+     *
+     * @param out           the stream the PDU is written to, it is not closed
+     * @param transactionId the id that identifies the request
+     * @param recipient     the phone number the MMS is sent to
+     * @param pictures      the JPEG pictures, their file names are used as the names of the parts
+     * @throws IOException if a picture could not be read or the PDU could not be written
+     */
+    public static void writeSendRequest(OutputStream out, String transactionId, String recipient, List<File> pictures) throws IOException {
+        ensureNotNull(out, "output stream");
+        ensureStringIsValid(transactionId, "transaction id");
+        ensurePhoneNumberIsValid(recipient, "recipient");
+        ensureNotNull(pictures, "pictures");
+        if (pictures.isEmpty()) throw new IllegalArgumentException("a MMS needs at least one picture!");
+        ensureTextFits(transactionId, "transaction id");
+        ensureTextFits(recipient, "recipient");
+        for (File picture : pictures) ensureTextFits(picture.getName(), "picture name");
+
+        out.write(HEADER_MESSAGE_TYPE);
+        out.write(MESSAGE_TYPE_SEND_REQUEST);
+        out.write(HEADER_TRANSACTION_ID);
+        writeText(out, transactionId);
+        out.write(HEADER_MMS_VERSION);
+        out.write(MMS_VERSION);
+        out.write(HEADER_FROM);
+        out.write(1);
+        out.write(INSERT_ADDRESS_TOKEN);
+        out.write(HEADER_TO);
+        writeText(out, recipient + ADDRESS_TYPE_PHONE_NUMBER);
+        // the content type is the last header, the body follows it
+        out.write(HEADER_CONTENT_TYPE);
+        out.write(CONTENT_TYPE_MULTIPART_MIXED);
+
+        writeUintvar(out, pictures.size());
+        byte[] buffer = new byte[BUFFER_SIZE];
+        for (File picture : pictures) {
+            byte[] name = picture.getName().getBytes(StandardCharsets.US_ASCII);
+            long length = picture.length();
+            // content type, content location with its terminating zero
+            writeUintvar(out, 1 + 1 + name.length + 1);
+            writeUintvar(out, length);
+            out.write(CONTENT_TYPE_IMAGE_JPEG);
+            out.write(PART_HEADER_CONTENT_LOCATION);
+            writeText(out, name);
+
+            long copied = 0;
+            try (InputStream in = new FileInputStream(picture)) {
+                int read;
+                while (copied < length && (read = in.read(buffer, 0, (int) Math.min(buffer.length, length - copied))) != -1) {
+                    out.write(buffer, 0, read);
+                    copied += read;
+                }
+            }
+            if (copied != length) throw new IOException("picture " + picture.getName() + " changed while it was sent");
+        }
+    }
+
+    /**
+     * Writes an unsigned integer with 7 bits per byte, the highest bit marks that more bytes follow
+     */
+    static void writeUintvar(OutputStream out, long value) throws IOException {
+        if (value < 0 || value > 0xFFFFFFFFL) throw new IllegalArgumentException("invalid uintvar " + value);
+
+        int shift = 28;
+        while (shift > 0 && (value >>> shift) == 0) shift -= 7;
+        for (; shift > 0; shift -= 7) out.write((int) (((value >>> shift) & 0x7F) | 0x80));
+        out.write((int) (value & 0x7F));
+    }
+
+    private static void ensureTextFits(String text, String name) {
+        if (text.length() > MAX_TEXT_LENGTH)
+            throw new IllegalArgumentException(name + " is longer than " + MAX_TEXT_LENGTH + " characters!");
+    }
+
+    private static void writeText(OutputStream out, String text) throws IOException {
+        writeText(out, text.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Writes a zero terminated text, the text is ASCII so it never has to be quoted
+     */
+    private static void writeText(OutputStream out, byte[] text) throws IOException {
+        out.write(text);
+        out.write(0);
+    }
+}
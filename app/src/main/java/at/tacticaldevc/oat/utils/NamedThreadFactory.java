@@ -0,0 +1,33 @@
+package at.tacticaldevc.oat.utils;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static at.tacticaldevc.oat.utils.Ensurer.ensureStringIsValid;
+
+/**
+ * Creates numbered daemon threads with a common prefix, so the threads of the App can be told apart in traces
+ * and never keep the process alive.
+ *
+ * @version 0.1
+ */
+public class NamedThreadFactory implements ThreadFactory {
+    private final String prefix;
+    private final AtomicInteger counter = new AtomicInteger(0);
+
+    /**
+     * Creates a new NamedThreadFactory
+     *
+     * @param prefix the prefix of the thread names, the threads are named prefix-1, prefix-2 and so on
+     */
+    public NamedThreadFactory(String prefix) {
+        this.prefix = ensureStringIsValid(prefix, "thread name prefix");
+    }
+
+    @Override
+    public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, prefix + "-" + counter.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    }
+}
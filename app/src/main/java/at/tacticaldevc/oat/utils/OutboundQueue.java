@@ -0,0 +1,205 @@
+package at.tacticaldevc.oat.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static at.tacticaldevc.oat.utils.Ensurer.ensureNotNull;
+import static at.tacticaldevc.oat.utils.Ensurer.ensureStringIsValid;
+
+/**
+ * Queues outgoing text replies so that fewer SMS have to be sent.
+ * Replies to the same recipient that are queued within the coalescing window are merged into one message,
+ * and the reminder to delete the password is added to the message at most once per recipient within the hint window.
+ * Critical replies are only merged with other replies as long as the merged message still fits into a single SMS.
+ * Only replies that are sent from the same SIM subscription are merged, a reply from another subscription sends the queued replies first.
+ *
+ * @version 0.3
+ */
+public class OutboundQueue {
+
+    private final Transport transport;
+    private final ScheduledExecutorService scheduler;
+    private final Clock clock;
+    private final ReplyEncoder encoder;
+    private final String messagePrefix;
+    private final long coalesceMillis;
+    private final long hintWindowMillis;
+
+    private final Map<String, PendingReply> pending = new HashMap<>();
+    private final Map<String, Long> hintSentAt = new HashMap<>();
+
+    /**
+     * Creates a new OutboundQueue
+     *
+     * @param transport        the {@link Transport} used to send the merged messages
+     * @param scheduler        the scheduler used to send the messages after the coalescing window
+     * @param clock            the {@link Clock} used for the hint window
+     * @param encoder          the {@link ReplyEncoder} used to measure merged messages
+     * @param messagePrefix    the prefix all replies start with, it is only kept once when replies are merged
+     * @param coalesceMillis   the time in milliseconds replies to the same recipient are collected
+     * @param hintWindowMillis the time in milliseconds after which the hint is sent again to the same recipient
+     */
+    OutboundQueue(Transport transport, ScheduledExecutorService scheduler, Clock clock, ReplyEncoder encoder, String messagePrefix, long coalesceMillis, long hintWindowMillis) {
+        this.transport = ensureNotNull(transport, "transport");
+        this.scheduler = ensureNotNull(scheduler, "scheduler");
+        this.clock = ensureNotNull(clock, "clock");
+        this.encoder = ensureNotNull(encoder, "reply encoder");
+        this.messagePrefix = ensureNotNull(messagePrefix, "message prefix");
+        if (coalesceMillis < 0) throw new IllegalArgumentException("coalesceMillis cannot be negative!");
+        if (hintWindowMillis < 0) throw new IllegalArgumentException("hintWindowMillis cannot be negative!");
+        this.coalesceMillis = coalesceMillis;
+        this.hintWindowMillis = hintWindowMillis;
+    }
+
+    /**
+     * Queues a reply
+     *
+     * @param recipient      the phone number the reply is sent to
+     * @param subscriptionId the id of the SIM subscription the reply is sent from
+     * @param text           the text of the reply
+     * @param hint           the reminder to delete the password or null if the reply does not need the reminder
+     */
+    public void enqueue(String recipient, int subscriptionId, String text, String hint) {
+        enqueue(recipient, subscriptionId, text, hint, false);
+    }
+
+    /**
+     * Queues a reply
+     *
+     * @param recipient      the phone number the reply is sent to
+     * @param subscriptionId the id of the SIM subscription the reply is sent from
+     * @param text           the text of the reply
+     * @param hint           the reminder to delete the password or null if the reply does not need the reminder
+     * @param critical       true if the reply has to be sent in a single SMS
+     */
+    public void enqueue(String recipient, int subscriptionId, String text, String hint, boolean critical) {
+        ensureStringIsValid(recipient, "recipient");
+        ensureNotNull(text, "reply text");
+
+        while (true) {
+            synchronized (this) {
+                PendingReply reply = pending.get(recipient);
+                if (reply == null) {
+                    reply = new PendingReply(subscriptionId);
+                    pending.put(recipient, reply);
+                    scheduler.schedule(() -> flush(recipient), coalesceMillis, TimeUnit.MILLISECONDS);
+                }
+                if (reply.subscriptionId == subscriptionId) {
+                    reply.texts.add(text);
+                    reply.critical.add(critical);
+                    if (hint != null) reply.hint = hint;
+                    return;
+                }
+            }
+            // the queued replies belong to a command that arrived on another SIM
+            flush(recipient);
+        }
+    }
+
+    /**
+     * Sends the queued replies to a recipient immediately
+     *
+     * @param recipient the phone number the replies are sent to
+     */
+    void flush(String recipient) {
+        List<String> messages;
+        int subscriptionId;
+        synchronized (this) {
+            PendingReply reply = pending.remove(recipient);
+            if (reply == null) return;
+            messages = merge(recipient, reply);
+            subscriptionId = reply.subscriptionId;
+        }
+        for (String message : messages) {
+            transport.send(recipient, subscriptionId, message);
+        }
+    }
+
+    /**
+     * Sends all queued replies immediately
+     */
+    public void flushAll() {
+        List<String> recipients;
+        synchronized (this) {
+            recipients = new ArrayList<>(pending.keySet());
+        }
+        for (String recipient : recipients) {
+            flush(recipient);
+        }
+    }
+
+    private List<String> merge(String recipient, PendingReply reply) {
+        List<String> messages = new ArrayList<>(1);
+        StringBuilder sb = new StringBuilder();
+        boolean critical = false;
+        long now = clock.now();
+        purgeHints(now);
+        if (reply.hint != null && !hintSentAt.containsKey(recipient)) {
+            sb.append(reply.hint);
+            hintSentAt.put(recipient, now);
+        }
+
+        for (int i = 0; i < reply.texts.size(); i++) {
+            String text = reply.texts.get(i);
+            boolean textCritical = reply.critical.get(i);
+            if (sb.length() == 0) {
+                sb.append(text);
+                critical = textCritical;
+                continue;
+            }
+
+            int length = sb.length();
+            sb.append('\n');
+            sb.append(text.startsWith(messagePrefix) ? text.substring(messagePrefix.length()) : text);
+            if ((critical || textCritical) && encoder.segments(sb) > 1) {
+                // the critical reply would be split, so the merged message is sent before it
+                sb.setLength(length);
+                messages.add(sb.toString());
+                sb.setLength(0);
+                sb.append(text);
+                critical = textCritical;
+            } else {
+                critical |= textCritical;
+            }
+        }
+        messages.add(sb.toString());
+        return messages;
+    }
+
+    private void purgeHints(long now) {
+        Iterator<Long> it = hintSentAt.values().iterator();
+        while (it.hasNext()) {
+            if (now - it.next() >= hintWindowMillis) it.remove();
+        }
+    }
+
+    /**
+     * Sends a merged message
+     */
+    interface Transport {
+        void send(String recipient, int subscriptionId, String text);
+    }
+
+    /**
+     * Provides the current time in milliseconds
+     */
+    interface Clock {
+        long now();
+    }
+
+    private static class PendingReply {
+        private final int subscriptionId;
+        private final List<String> texts = new ArrayList<>(2);
+        private final List<Boolean> critical = new ArrayList<>(2);
+        private String hint;
+
+        PendingReply(int subscriptionId) {
+            this.subscriptionId = subscriptionId;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package at.tacticaldevc.oat.utils;
+
+import static android.telephony.SubscriptionManager.INVALID_SUBSCRIPTION_ID;
+import static at.tacticaldevc.oat.utils.Ensurer.ensureNotNull;
+import static at.tacticaldevc.oat.utils.Ensurer.ensureStringIsValid;
+
+/**
+ * A text message in the {@link SmsOutbox} that has not been sent successfully yet
+ *
+ * @version 0.3
+ */
+public class OutboxEntry {
+    private static final String SEPARATOR = ";";
+    private static final String FORMAT_VERSION = "2";
+    private static final int FIELDS = 7;
+    // entries written before the subscription was stored are sent from the default subscription
+    private static final String FORMAT_VERSION_1 = "1";
+    private static final int FIELDS_VERSION_1 = 6;
+
+    // the first retry happens after 15 seconds, every further retry waits twice as long
+    private static final long INITIAL_BACKOFF_MILLIS = 15 * 1000;
+    private static final long MAX_BACKOFF_MILLIS = 30 * 60 * 1000;
+
+    private final long id;
+    private final int subscriptionId;
+    private final String recipient;
+    private final String text;
+    private final long createdAt;
+    private int attempts;
+    private long nextAttemptAt;
+
+    OutboxEntry(long id, int subscriptionId, String recipient, String text, long createdAt, int attempts, long nextAttemptAt) {
+        this.id = id;
+        this.subscriptionId = subscriptionId;
+        this.recipient = ensureStringIsValid(recipient, "recipient");
+        this.text = ensureNotNull(text, "message text");
+        this.createdAt = createdAt;
+        this.attempts = attempts;
+        this.nextAttemptAt = nextAttemptAt;
+    }
+
+    /**
+     * Reads an entry that was written by {@link #serialize()}
+     *
+     * @param id         the id of the entry
+     * @param serialized the serialized entry
+     * @return the {@link OutboxEntry} or null if the entry could not be read
+     */
+    static OutboxEntry parse(long id, String serialized) {
+        if (serialized == null) return null;
+
+        try {
+            if (serialized.startsWith(FORMAT_VERSION_1 + SEPARATOR)) {
+                String[] fields = serialized.split(SEPARATOR, FIELDS_VERSION_1);
+                if (fields.length != FIELDS_VERSION_1) return null;
+                return new OutboxEntry(id, INVALID_SUBSCRIPTION_ID, fields[4], fields[5], Long.parseLong(fields[2]), Integer.parseInt(fields[1]), Long.parseLong(fields[3]));
+            }
+
+            String[] fields = serialized.split(SEPARATOR, FIELDS);
+            if (fields.length != FIELDS || !FORMAT_VERSION.equals(fields[0])) return null;
+            return new OutboxEntry(id, Integer.parseInt(fields[4]), fields[5], fields[6], Long.parseLong(fields[2]), Integer.parseInt(fields[1]), Long.parseLong(fields[3]));
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the entry as a String, the text is stored last so it may contain the separator
+     */
+    String serialize() {
+        return FORMAT_VERSION + SEPARATOR + attempts + SEPARATOR + createdAt + SEPARATOR + nextAttemptAt + SEPARATOR + subscriptionId + SEPARATOR + recipient + SEPARATOR + text;
+    }
+
+    /**
+     * Records a failed attempt and schedules the next one with exponential backoff
+     *
+     * @param now the current time in milliseconds
+     * @return the delay in milliseconds until the next attempt
+     */
+    long recordFailure(long now) {
+        attempts++;
+        long delay = INITIAL_BACKOFF_MILLIS << Math.min(attempts - 1, 20);
+        if (delay > MAX_BACKOFF_MILLIS || delay <= 0) delay = MAX_BACKOFF_MILLIS;
+        nextAttemptAt = now + delay;
+        return delay;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public int getSubscriptionId() {
+        return subscriptionId;
+    }
+
+    public String getRecipient() {
+        return recipient;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * Returns the subscription the next attempt is sent from.
+     * Attempts alternate between the preferred subscription and the default one, in case the preferred SIM is not available.
+     *
+     * @return the id of the subscription or {@link android.telephony.SubscriptionManager#INVALID_SUBSCRIPTION_ID} for the default subscription
+     */
+    public int getAttemptSubscriptionId() {
+        return attempts % 2 == 0 ? subscriptionId : INVALID_SUBSCRIPTION_ID;
+    }
+
+    public long getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+}
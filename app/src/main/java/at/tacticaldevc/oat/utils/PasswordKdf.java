@@ -0,0 +1,24 @@
+package at.tacticaldevc.oat.utils;
+
+/**
+ * A key derivation function used to hash the password of OAT
+ *
+ * @version 0.1
+ */
+public interface PasswordKdf {
+
+    /**
+     * @return the name the KDF is stored with
+     */
+    String getName();
+
+    /**
+     * Derives the hash of a password
+     *
+     * @param password the password to be hashed
+     * @param salt     the salt of the password
+     * @param cost     the cost parameter of the KDF, e.g. the number of iterations
+     * @return the derived hash
+     */
+    byte[] derive(byte[] password, byte[] salt, int cost);
+}
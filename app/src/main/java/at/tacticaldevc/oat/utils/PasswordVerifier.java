@@ -0,0 +1,115 @@
+package at.tacticaldevc.oat.utils;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+
+import static at.tacticaldevc.oat.utils.Ensurer.ensureNotNull;
+
+/**
+ * The decoded verifier of the password of OAT: the KDF, its cost, the salt and the hash.
+ * It is decoded once and kept in memory, so verifying a password only has to run the KDF.
+ *
+ * @version 0.1
+ */
+public class PasswordVerifier {
+
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+    private static final char SPEC_SEPARATOR = ':';
+
+    private final PasswordKdf kdf;
+    private final int cost;
+    private final byte[] salt;
+    private final byte[] hash;
+
+    private PasswordVerifier(PasswordKdf kdf, int cost, byte[] salt, byte[] hash) {
+        this.kdf = kdf;
+        this.cost = cost;
+        this.salt = salt;
+        this.hash = hash;
+    }
+
+    /**
+     * Hashes a new password
+     *
+     * @param kdf      the {@link PasswordKdf} used to hash the password
+     * @param cost     the cost parameter of the KDF
+     * @param salt     the salt of the password
+     * @param password the password to be hashed
+     * @return the {@link PasswordVerifier} of the password
+     */
+    public static PasswordVerifier create(PasswordKdf kdf, int cost, byte[] salt, String password) {
+        ensureNotNull(kdf, "KDF");
+        ensureNotNull(salt, "salt");
+        ensureNotNull(password, "password");
+
+        return new PasswordVerifier(kdf, cost, salt.clone(), kdf.derive(password.getBytes(CHARSET), salt, cost));
+    }
+
+    /**
+     * Restores a stored verifier
+     *
+     * @param kdfSpec the KDF and cost as returned by {@link #getKdfSpec()} or null for hashes saved before the KDF was stored
+     * @param salt    the salt of the password
+     * @param hash    the hash of the password
+     * @return the {@link PasswordVerifier} or null if the KDF is unknown
+     */
+    public static PasswordVerifier restore(String kdfSpec, byte[] salt, byte[] hash) {
+        ensureNotNull(salt, "salt");
+        ensureNotNull(hash, "hash");
+
+        if (kdfSpec == null)
+            return new PasswordVerifier(new LegacySha256Kdf(), 1, salt, hash);
+
+        int separator = kdfSpec.indexOf(SPEC_SEPARATOR);
+        if (separator < 0 || !Pbkdf2Sha256.NAME.equals(kdfSpec.substring(0, separator))) return null;
+        try {
+            int cost = Integer.parseInt(kdfSpec.substring(separator + 1));
+            return cost < 1 ? null : new PasswordVerifier(new Pbkdf2Sha256(), cost, salt, hash);
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Verifies a password in constant time
+     *
+     * @param password the password to be checked
+     * @return true if the password matches
+     */
+    public boolean verify(String password) {
+        if (password == null) return false;
+        return MessageDigest.isEqual(hash, kdf.derive(password.getBytes(CHARSET), salt, cost));
+    }
+
+    /**
+     * @param kdfName the name of the preferred {@link PasswordKdf}
+     * @param minCost the minimal cost of the preferred KDF
+     * @return true if the password should be hashed again with the preferred KDF
+     */
+    public boolean needsMigration(String kdfName, int minCost) {
+        return !kdf.getName().equals(kdfName) || cost < minCost;
+    }
+
+    /**
+     * @return the KDF and its cost in the format read by {@link #restore(String, byte[], byte[])}
+     */
+    public String getKdfSpec() {
+        return kdf.getName() + SPEC_SEPARATOR + cost;
+    }
+
+    public PasswordKdf getKdf() {
+        return kdf;
+    }
+
+    public int getCost() {
+        return cost;
+    }
+
+    public byte[] getSalt() {
+        return salt.clone();
+    }
+
+    public byte[] getHash() {
+        return hash.clone();
+    }
+}
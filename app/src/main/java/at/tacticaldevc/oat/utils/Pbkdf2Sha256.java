@@ -0,0 +1,97 @@
+package at.tacticaldevc.oat.utils;
+
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import at.tacticaldevc.oat.exceptions.OATApplicationException;
+
+import static at.tacticaldevc.oat.utils.Ensurer.ensureNotNull;
+
+/**
+ * PBKDF2 with HMAC-SHA256 as defined in RFC 8018, the cost is the number of iterations.
+ * It is implemented on top of {@link Mac}, as the PBKDF2WithHmacSHA256 SecretKeyFactory requires API level 26.
+ *
+ * @version 0.1
+ */
+public class Pbkdf2Sha256 implements PasswordKdf {
+
+    public static final String NAME = "pbkdf2-sha256";
+
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    private static final int HASH_LENGTH = 32;
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public byte[] derive(byte[] password, byte[] salt, int cost) {
+        return derive(password, salt, cost, HASH_LENGTH);
+    }
+
+    /**
+     * Derives a key of any length
+     *
+     * @param password   the password to be hashed
+     * @param salt       the salt of the password
+     * @param iterations the number of iterations
+     * @param length     the length of the derived key in bytes
+     * @return the derived key
+     */
+    public static byte[] derive(byte[] password, byte[] salt, int iterations, int length) {
+        ensureNotNull(password, "password");
+        ensureNotNull(salt, "salt");
+        if (iterations < 1) throw new IllegalArgumentException("iterations has to be at least 1!");
+        if (length < 1) throw new IllegalArgumentException("length has to be at least 1!");
+
+        Mac mac;
+        try {
+            mac = Mac.getInstance(MAC_ALGORITHM);
+        } catch (NoSuchAlgorithmException ex) {
+            throw OATApplicationException.forLibraryDeprecatedError("Mac", ex);
+        }
+        try {
+            mac.init(new SecretKeySpec(password, MAC_ALGORITHM));
+        } catch (GeneralSecurityException ex) {
+            throw OATApplicationException.forLibraryError("Mac", ex);
+        }
+
+        byte[] result = new byte[length];
+        byte[] block = new byte[HASH_LENGTH];
+        byte[] u = new byte[HASH_LENGTH];
+        for (int index = 1, offset = 0; offset < length; index++, offset += HASH_LENGTH) {
+            // U1 = PRF(password, salt || INT(index))
+            mac.update(salt);
+            mac.update((byte) (index >>> 24));
+            mac.update((byte) (index >>> 16));
+            mac.update((byte) (index >>> 8));
+            mac.update((byte) index);
+            doFinal(mac, u);
+            System.arraycopy(u, 0, block, 0, HASH_LENGTH);
+
+            // Ui = PRF(password, Ui-1), the block is the XOR of all Ui
+            for (int i = 1; i < iterations; i++) {
+                mac.update(u);
+                doFinal(mac, u);
+                for (int j = 0; j < HASH_LENGTH; j++) {
+                    block[j] ^= u[j];
+                }
+            }
+            System.arraycopy(block, 0, result, offset, Math.min(HASH_LENGTH, length - offset));
+        }
+        return result;
+    }
+
+    private static void doFinal(Mac mac, byte[] output) {
+        try {
+            // writing into the existing array avoids an allocation per iteration
+            mac.doFinal(output, 0);
+        } catch (GeneralSecurityException ex) {
+            throw OATApplicationException.forLibraryError("Mac", ex);
+        }
+    }
+}
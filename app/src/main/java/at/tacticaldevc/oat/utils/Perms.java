@@ -73,13 +73,17 @@ public class Perms {
                 .withListener(new MultiplePermissionsListener() {
                     @Override
                     public void onPermissionsChecked(MultiplePermissionsReport report) {
-                        for (PermissionGrantedResponse perm : report.getGrantedPermissionResponses()) {
-                            permsStore.put(perm.getPermissionName(), true);
-                        }
-                        for (PermissionDeniedResponse perm : report.getDeniedPermissionResponses()) {
-                            permsStore.put(perm.getPermissionName(), false);
-                        }
-                        Prefs.savePermissions(context, permsStore);
+                        // the permissions and the permissions that no longer have to be requested are saved at once
+                        Prefs.edit(context, tx -> {
+                            for (PermissionGrantedResponse perm : report.getGrantedPermissionResponses()) {
+                                permsStore.put(perm.getPermissionName(), true);
+                                tx.removeOnStartupPermissionRequest(perm.getPermissionName());
+                            }
+                            for (PermissionDeniedResponse perm : report.getDeniedPermissionResponses()) {
+                                permsStore.put(perm.getPermissionName(), false);
+                            }
+                            tx.savePermissions(permsStore);
+                        });
 
                         if (report.isAnyPermissionPermanentlyDenied() || report.getDeniedPermissionResponses() != null)
                             ; //TODO: Show some dialog explaining why we need that permissions
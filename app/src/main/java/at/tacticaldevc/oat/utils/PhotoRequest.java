@@ -0,0 +1,176 @@
+package at.tacticaldevc.oat.utils;
+
+import android.hardware.camera2.CameraCharacteristics;
+import android.telephony.SubscriptionManager;
+
+import static at.tacticaldevc.oat.utils.Ensurer.ensureNotNull;
+import static at.tacticaldevc.oat.utils.Ensurer.ensureStringIsValid;
+
+/**
+ * A request for a picture that is handled by the {@link CameraEngine}.
+ * The request moves through its states in order, it can fail in every state that is not final.
+ * A request that is served from a capture session that is already open skips opening and configuring the camera.
+ * A request can take one shot per lens facing. After a shot was captured the request moves on to its next shot and is queued again
+ * for the camera of that shot, while the pictures that were captured are saved in the background.
+ * The request is saved once its last shot was captured.
+ * The replies of the request are sent from the SIM subscription its command arrived on.
+ *
+ * @version 0.4
+ */
+class PhotoRequest {
+
+    /**
+     * The states of a request
+     */
+    enum State {
+        QUEUED, OPENING, CONFIGURING, CAPTURING, SAVING, DELIVERING, DONE, FAILED;
+
+        boolean isFinal() {
+            return this == DONE || this == FAILED;
+        }
+    }
+
+    private final String phoneNumber;
+    private final int subscriptionId;
+    private final boolean trap;
+    private final long createdAt;
+    private final int[] facings;
+    private final ReplyBatch.Feature replyFeature;
+    private State state = State.QUEUED;
+    private int shot = 0;
+
+    /**
+     * Creates a new PhotoRequest
+     *
+     * @param phoneNumber the phone number the picture is sent to
+     * @param trap        true if the request was triggered by the photo trap
+     * @param createdAt   the time in milliseconds the request was made
+     */
+    PhotoRequest(String phoneNumber, boolean trap, long createdAt) {
+        this(phoneNumber, trap, createdAt, new int[]{CameraCharacteristics.LENS_FACING_FRONT});
+    }
+
+    /**
+     * Creates a new PhotoRequest that takes a shot with every lens facing
+     *
+     * @param phoneNumber the phone number the pictures are sent to
+     * @param trap        true if the request was triggered by the photo trap
+     * @param createdAt   the time in milliseconds the request was made
+     * @param facings     the lens facings of the shots, in the order they are taken
+     */
+    PhotoRequest(String phoneNumber, boolean trap, long createdAt, int[] facings) {
+        this(phoneNumber, SubscriptionManager.INVALID_SUBSCRIPTION_ID, trap, createdAt, facings, null);
+    }
+
+    /**
+     * Creates a new PhotoRequest that takes a shot with every lens facing and replies for a feature of a {@link ReplyBatch}
+     *
+     * @param phoneNumber    the phone number the pictures are sent to
+     * @param subscriptionId the id of the SIM subscription the command arrived on or {@link SubscriptionManager#INVALID_SUBSCRIPTION_ID} if it is unknown
+     * @param trap           true if the request was triggered by the photo trap
+     * @param createdAt      the time in milliseconds the request was made
+     * @param facings        the lens facings of the shots, in the order they are taken
+     * @param replyFeature   the feature of the batch the replies belong to, or null if they are sent on their own
+     */
+    PhotoRequest(String phoneNumber, int subscriptionId, boolean trap, long createdAt, int[] facings, ReplyBatch.Feature replyFeature) {
+        this.replyFeature = replyFeature;
+        this.phoneNumber = ensureStringIsValid(phoneNumber, "phone number");
+        this.subscriptionId = subscriptionId;
+        this.trap = trap;
+        this.createdAt = createdAt;
+        this.facings = ensureNotNull(facings, "lens facings").clone();
+        if (this.facings.length == 0) throw new IllegalArgumentException("a photo request needs at least one shot!");
+    }
+
+    /**
+     * Moves the request to its next state
+     *
+     * @param next the next state
+     * @throws IllegalStateException if the request cannot move from its current state to the next state
+     */
+    void moveTo(State next) {
+        ensureNotNull(next, "state");
+        if (!canMove(state, next))
+            throw new IllegalStateException("a photo request cannot move from " + state + " to " + next + "!");
+        if (next == State.SAVING && !isLastShot())
+            throw new IllegalStateException("a photo request cannot be saved before its last shot!");
+        state = next;
+    }
+
+    /**
+     * Moves the request to its next shot once the current shot was captured, the request is queued for the camera of the next shot
+     *
+     * @throws IllegalStateException if the current shot was not captured or it is the last shot
+     */
+    void nextShot() {
+        if (state != State.CAPTURING || isLastShot())
+            throw new IllegalStateException("a photo request cannot move to its next shot in state " + state + " at shot " + shot + "!");
+        shot++;
+        state = State.QUEUED;
+    }
+
+    /**
+     * Fails the request
+     *
+     * @return false if the request was already in a final state
+     */
+    boolean fail() {
+        if (state.isFinal()) return false;
+        state = State.FAILED;
+        return true;
+    }
+
+    static boolean canMove(State from, State to) {
+        if (from.isFinal()) return false;
+        if (to == State.FAILED) return true;
+        // an open capture session serves a queued request directly
+        if (from == State.QUEUED && to == State.CAPTURING) return true;
+        return to.ordinal() == from.ordinal() + 1;
+    }
+
+    String getPhoneNumber() {
+        return phoneNumber;
+    }
+
+    int getSubscriptionId() {
+        return subscriptionId;
+    }
+
+    boolean isTrap() {
+        return trap;
+    }
+
+    ReplyBatch.Feature getReplyFeature() {
+        return replyFeature;
+    }
+
+    /**
+     * @return the index of the shot that is taken
+     */
+    int getShot() {
+        return shot;
+    }
+
+    int getShots() {
+        return facings.length;
+    }
+
+    boolean isLastShot() {
+        return shot == facings.length - 1;
+    }
+
+    /**
+     * @return the lens facing of the shot that is taken
+     */
+    int getFacing() {
+        return facings[shot];
+    }
+
+    long getCreatedAt() {
+        return createdAt;
+    }
+
+    State getState() {
+        return state;
+    }
+}
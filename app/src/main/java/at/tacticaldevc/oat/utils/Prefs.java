@@ -4,12 +4,11 @@ import android.content.Context;
 import android.content.SharedPreferences;
 import android.util.Base64;
 
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -21,10 +20,10 @@ import static at.tacticaldevc.oat.utils.Ensurer.ensureStringIsValid;
 
 /**
  * A helper class for preference management
- * OAT uses Shared Preferences to store all data that is needed.
+ * OAT uses Shared Preferences to store all data that is needed, the documents are kept in a single {@link ConfigStore}.
  * This ensures that the users stay in full control of their data and no data is saved on third-party servers.
  *
- * @version 0.3
+ * @version 0.10
  */
 public class Prefs {
 
@@ -34,16 +33,58 @@ public class Prefs {
     private final static String DOCUMENT_NAME_ENABLED_FEATURES = "oat-enabled-features";
     private final static String DOCUMENT_NAME_ACCEPTED_CONDITIONS = "oat-accepted-conditions";
     private final static String DOCUMENT_NAME_TRUSTED_CONTACTS = "oat-trusted-contacts";
+    // all documents, they are stored in the ConfigStore
+    final static String[] DOCUMENTS = {DOCUMENT_NAME_DATA, DOCUMENT_NAME_PERMISSIONS, DOCUMENT_NAME_ENABLED_FEATURES, DOCUMENT_NAME_ACCEPTED_CONDITIONS, DOCUMENT_NAME_TRUSTED_CONTACTS};
+    // the documents that are cached by the PrefsSnapshot
+    final static String[] SNAPSHOT_DOCUMENTS = {DOCUMENT_NAME_ENABLED_FEATURES, DOCUMENT_NAME_ACCEPTED_CONDITIONS, DOCUMENT_NAME_PERMISSIONS};
     private final static String KEY_COMMAND_PASSWORD = "password";
     private final static String KEY_COMMAND_PASSWORD_SALT = "pwdsalt";
+    private final static String KEY_COMMAND_PASSWORD_KDF = "pwdkdf";
     private final static String KEY_COMMAND_TRIGGER = "cmd-trigger";
     private final static String KEY_MISSING_PERMISSIONS_TO_REQUEST_ON_STARTUP = "missing-permission";
     private final static String KEY_LOCKDOWN_STATUS = "lockdown-status";
+    private final static String KEY_SESSION_MODE = "session-mode";
+    private final static String KEY_MMS_BYTE_BUDGET = "mms-byte-budget";
+
+    // verifying the password should take about this long, the cost of the KDF is kept within the bounds
+    private final static long PASSWORD_TARGET_MILLIS = 150;
+    private final static int PASSWORD_MIN_COST = 10000;
+    private final static int PASSWORD_MAX_COST = 1000000;
+
+    private static volatile StoredPassword storedPassword;
+    private static int passwordCost = 0;
+
+    /**
+     * @param context the {@link Context} of the Application
+     * @param name    the name of the document
+     * @return the document, read from the {@link ConfigStore}
+     */
+    private static SharedPreferences fetchDocument(Context context, String name) {
+        return ConfigStore.getInstance(context).getSection(name);
+    }
+
+    /**
+     * Changes several values at once.
+     * The changes are only applied if the {@link Edit} completes without an exception, listeners are notified once
+     * and all changes are written together.
+     *
+     * @param context the {@link Context} of the Application
+     * @param edit    the {@link Edit} that makes the changes
+     */
+    public static void edit(Context context, Edit edit) {
+        ensureNotNull(context, "Application Context");
+        ensureNotNull(edit, "edit");
+
+        Transaction transaction = new Transaction(context);
+        edit.run(transaction);
+        transaction.commit();
+    }
 
     // Basic Data
 
     /**
-     * Updates the Password used to send commands to the App
+     * Updates the Password used to send commands to the App.
+     * The password is hashed with {@link Pbkdf2Sha256}, whose cost is calibrated to the speed of the device.
      *
      * @param context     the Context of the Application
      * @param password    the new Password
@@ -53,42 +94,23 @@ public class Prefs {
         ensureNotNull(context, "Application Context");
         ensureStringIsValid(password, "new User Password");
 
-        SharedPreferences prefs = context.getSharedPreferences(DOCUMENT_NAME_DATA, Context.MODE_PRIVATE);
-        SharedPreferences.Editor editor = prefs.edit();
-
-        byte[] salt;
-        MessageDigest algorithm;
-        try {
-            algorithm = MessageDigest.getInstance("SHA-256");
-        } catch (NoSuchAlgorithmException ex) {
-            throw OATApplicationException.forLibraryDeprecatedError("MessageDigest", ex);
-        }
-
-        if (prefs.getString(KEY_COMMAND_PASSWORD_SALT, null) == null) {
-            SecureRandom rnd = new SecureRandom();
-            salt = new byte[16];
-            rnd.nextBytes(salt);
-            editor.putString(KEY_COMMAND_PASSWORD_SALT, Base64.encodeToString(salt, Base64.NO_WRAP));
-        } else {
-            salt = Base64.decode(prefs.getString(KEY_COMMAND_PASSWORD_SALT, null), Base64.NO_WRAP);
-        }
+        SharedPreferences prefs = fetchDocument(context, DOCUMENT_NAME_DATA);
 
         String loadedPassword = prefs.getString(KEY_COMMAND_PASSWORD, null);
         if (loadedPassword != null) {
             ensureStringIsValid(oldPassword, "old password");
-            if (!verifyApplicationPassword(context, oldPassword))
+            if (!verifyPassword(context, oldPassword, false))
                 throw OATApplicationException.forPasswordMismatch();
         }
 
-        algorithm.update(salt);
-        String hash = Base64.encodeToString(algorithm.digest(password.getBytes()), Base64.NO_WRAP);
-
-        editor.putString(KEY_COMMAND_PASSWORD, hash);
-        editor.apply();
+        edit(context, transaction -> transaction.storePassword(password));
+        // sessions that were opened with the old password must not outlive it
+        SessionManager.getInstance().closeAll();
     }
 
     /**
-     * Verifies that a given Password is correct
+     * Verifies that a given Password is correct.
+     * Passwords that were hashed with an outdated KDF or cost are hashed again after they were verified successfully.
      *
      * @param context         the Context of the Application
      * @param passwordToCheck the password to be verified
@@ -96,6 +118,10 @@ public class Prefs {
      * @throws OATApplicationException if no Password has been set
      */
     public static boolean verifyApplicationPassword(Context context, String passwordToCheck) {
+        return verifyPassword(context, passwordToCheck, true);
+    }
+
+    private static boolean verifyPassword(Context context, String passwordToCheck, boolean migrate) {
         ensureNotNull(context, "Application Context");
         try {
             ensureStringIsValid(passwordToCheck, "password to check");
@@ -103,28 +129,48 @@ public class Prefs {
             return false;
         }
 
-        SharedPreferences prefs = context.getSharedPreferences(DOCUMENT_NAME_DATA, Context.MODE_PRIVATE);
+        SharedPreferences prefs = fetchDocument(context, DOCUMENT_NAME_DATA);
 
         String salt = prefs.getString(KEY_COMMAND_PASSWORD_SALT, null);
         String hash = prefs.getString(KEY_COMMAND_PASSWORD, null);
+        String kdfSpec = prefs.getString(KEY_COMMAND_PASSWORD_KDF, null);
         if (hash == null) throw OATApplicationException.forNoPasswordSet();
-        if (salt == null) {
-            SharedPreferences.Editor edit = prefs.edit();
-            edit.remove(KEY_COMMAND_PASSWORD);
-            edit.remove(KEY_COMMAND_PASSWORD_SALT);
-            edit.apply();
+        PasswordVerifier verifier = salt == null ? null : fetchPasswordVerifier(hash, salt, kdfSpec);
+        if (verifier == null) {
+            edit(context, Transaction::deletePassword);
             throw OATApplicationException.forCorruptedPasswordHash();
         }
-        MessageDigest algorithm;
+
+        boolean valid = verifier.verify(passwordToCheck);
+        if (valid && migrate && verifier.needsMigration(Pbkdf2Sha256.NAME, PASSWORD_MIN_COST))
+            edit(context, transaction -> transaction.storePassword(passwordToCheck));
+        return valid;
+    }
+
+    /**
+     * @return the decoded verifier of the stored password, it is only decoded again if the stored values changed
+     */
+    private static PasswordVerifier fetchPasswordVerifier(String hash, String salt, String kdfSpec) {
+        StoredPassword stored = storedPassword;
+        if (stored != null && stored.matches(hash, salt, kdfSpec)) return stored.verifier;
+
+        PasswordVerifier verifier;
         try {
-            algorithm = MessageDigest.getInstance("SHA-256");
-        } catch (NoSuchAlgorithmException ex) {
-            throw OATApplicationException.forLibraryDeprecatedError("MessageDigest", ex);
+            verifier = PasswordVerifier.restore(kdfSpec, Base64.decode(salt, Base64.NO_WRAP), Base64.decode(hash, Base64.NO_WRAP));
+        } catch (IllegalArgumentException ex) {
+            return null;
         }
-        algorithm.update(Base64.decode(salt, Base64.NO_WRAP));
-        byte[] hashToCheck = algorithm.digest(passwordToCheck.getBytes());
+        if (verifier != null) storedPassword = new StoredPassword(hash, salt, kdfSpec, verifier);
+        return verifier;
+    }
 
-        return Arrays.equals(Base64.decode(hash, Base64.NO_WRAP), hashToCheck);
+    /**
+     * @return the cost of the password KDF, it is calibrated once per process
+     */
+    private static synchronized int fetchPasswordCost() {
+        if (passwordCost == 0)
+            passwordCost = KdfCalibrator.calibrate(new Pbkdf2Sha256(), PASSWORD_TARGET_MILLIS, PASSWORD_MIN_COST, PASSWORD_MAX_COST);
+        return passwordCost;
     }
 
     /**
@@ -135,17 +181,7 @@ public class Prefs {
      * @return the saved trigger phrase
      */
     public static String saveCommandTriggerWord(Context context, String trigger) {
-        ensureNotNull(context, "Application Context");
-        ensureStringIsValid(trigger, "Application trigger");
-        if (trigger.contains(" "))
-            throw new IllegalArgumentException("trigger cannot contain a space character!");
-
-        SharedPreferences prefs = context.getSharedPreferences(DOCUMENT_NAME_DATA, Context.MODE_PRIVATE);
-        SharedPreferences.Editor edit = prefs.edit();
-
-        edit.putString(KEY_COMMAND_TRIGGER, trigger);
-
-        edit.apply();
+        edit(context, tx -> tx.saveCommandTriggerWord(trigger));
         return trigger;
     }
 
@@ -158,10 +194,60 @@ public class Prefs {
     public static String fetchCommandTriggerWord(Context context) {
         ensureNotNull(context, "Application Context");
 
-        SharedPreferences prefs = context.getSharedPreferences(DOCUMENT_NAME_DATA, Context.MODE_PRIVATE);
+        SharedPreferences prefs = fetchDocument(context, DOCUMENT_NAME_DATA);
         return prefs.getString(KEY_COMMAND_TRIGGER, "oat");
     }
 
+    /**
+     * Saves if trusted contacts may open command sessions, see {@link SessionManager}
+     *
+     * @param context the Context of the Application
+     * @param enabled true if a successful authentication opens a session
+     * @return the saved status
+     */
+    public static boolean saveSessionModeEnabled(Context context, boolean enabled) {
+        edit(context, tx -> tx.saveSessionModeEnabled(enabled));
+        return enabled;
+    }
+
+    /**
+     * Fetches if trusted contacts may open command sessions
+     *
+     * @param context the Context of the Application
+     * @return true if a successful authentication opens a session, false by default
+     */
+    public static boolean isSessionModeEnabled(Context context) {
+        ensureNotNull(context, "Application Context");
+
+        SharedPreferences prefs = fetchDocument(context, DOCUMENT_NAME_DATA);
+        return prefs.getBoolean(KEY_SESSION_MODE, false);
+    }
+
+    /**
+     * Saves the maximum size of a picture that is sent via MMS
+     *
+     * @param context the Context of the Application
+     * @param bytes   the maximum size in bytes
+     * @return the saved size
+     */
+    public static int saveMmsByteBudget(Context context, int bytes) {
+        edit(context, tx -> tx.saveMmsByteBudget(bytes));
+        return bytes;
+    }
+
+    /**
+     * Fetches the maximum size of a picture that is sent via MMS
+     *
+     * @param context the Context of the Application
+     * @return the maximum size in bytes, {@link JpegBudgetPolicy#DEFAULT_BYTE_BUDGET} by default
+     */
+    public static int fetchMmsByteBudget(Context context) {
+        ensureNotNull(context, "Application Context");
+
+        SharedPreferences prefs = fetchDocument(context, DOCUMENT_NAME_DATA);
+        return prefs.getInt(KEY_MMS_BYTE_BUDGET, JpegBudgetPolicy.DEFAULT_BYTE_BUDGET);
+    }
+
     // App state
 
     /**
@@ -173,7 +259,7 @@ public class Prefs {
     public static boolean getLockdownStatus(Context context) {
         ensureNotNull(context, "Application Context");
 
-        SharedPreferences prefs = context.getSharedPreferences(DOCUMENT_NAME_DATA, Context.MODE_PRIVATE);
+        SharedPreferences prefs = fetchDocument(context, DOCUMENT_NAME_DATA);
         return prefs.getBoolean(KEY_LOCKDOWN_STATUS, false);
     }
 
@@ -184,14 +270,7 @@ public class Prefs {
      * @param lockdownStatus true if lockdown was enabled, false if it was disabled
      */
     public static void setLockdownStatus(Context context, boolean lockdownStatus) {
-        ensureNotNull(context, "Application Context");
-
-        SharedPreferences prefs = context.getSharedPreferences(DOCUMENT_NAME_DATA, Context.MODE_PRIVATE);
-        SharedPreferences.Editor edit = prefs.edit();
-
-        edit.putBoolean(KEY_LOCKDOWN_STATUS, lockdownStatus);
-
-        edit.apply();
+        edit(context, tx -> tx.setLockdownStatus(lockdownStatus));
     }
 
     // Trusted Contacts
@@ -205,7 +284,7 @@ public class Prefs {
     public static Map<String, String> fetchTrustedContacts(Context context) {
         ensureNotNull(context, "Application Context");
 
-        SharedPreferences prefs = context.getSharedPreferences(DOCUMENT_NAME_TRUSTED_CONTACTS, Context.MODE_PRIVATE);
+        SharedPreferences prefs = fetchDocument(context, DOCUMENT_NAME_TRUSTED_CONTACTS);
         Set<String> keys = prefs.getAll().keySet();
         Map<String, String> result = new HashMap<>();
         for (String key : keys) {
@@ -223,15 +302,7 @@ public class Prefs {
      * @throws IllegalArgumentException if context is null, phone number is invalid or name is invalid (see {@link Ensurer})
      */
     public static String saveTrustedContact(Context context, String phoneNumber, String name) {
-        ensureNotNull(context, "Application Context");
-        ensurePhoneNumberIsValid(phoneNumber, "new trusted contact");
-        ensureStringIsValid(name, "trusted contact name");
-
-        SharedPreferences prefs = context.getSharedPreferences(DOCUMENT_NAME_TRUSTED_CONTACTS, Context.MODE_PRIVATE);
-        SharedPreferences.Editor editor = prefs.edit();
-
-        editor.putString(phoneNumber, name);
-        editor.apply();
+        edit(context, tx -> tx.saveTrustedContact(phoneNumber, name));
         return phoneNumber;
     }
 
@@ -243,14 +314,7 @@ public class Prefs {
      * @return the phone number of the deleted trusted contact
      */
     public static String deleteTrustedContact(Context context, String phoneNumber) {
-        ensureNotNull(context, "Application Context");
-        ensureStringIsValid(phoneNumber, "phone number");
-
-        SharedPreferences prefs = context.getSharedPreferences(DOCUMENT_NAME_TRUSTED_CONTACTS, Context.MODE_PRIVATE);
-        SharedPreferences.Editor editor = prefs.edit();
-
-        editor.remove(phoneNumber);
-        editor.apply();
+        edit(context, tx -> tx.deleteTrustedContact(phoneNumber));
         return phoneNumber;
     }
 
@@ -265,7 +329,7 @@ public class Prefs {
     public static Map<String, Boolean> fetchPermissions(Context context) {
         ensureNotNull(context, "Application Context");
 
-        SharedPreferences prefs = context.getSharedPreferences(DOCUMENT_NAME_PERMISSIONS, Context.MODE_PRIVATE);
+        SharedPreferences prefs = fetchDocument(context, DOCUMENT_NAME_PERMISSIONS);
 
         HashMap<String, Boolean> permissions = new HashMap<>();
 
@@ -287,7 +351,7 @@ public class Prefs {
         ensureNotNull(context, "Application Context");
         ensureStringIsValid(key, "permission key");
 
-        SharedPreferences prefs = context.getSharedPreferences(DOCUMENT_NAME_PERMISSIONS, Context.MODE_PRIVATE);
+        SharedPreferences prefs = fetchDocument(context, DOCUMENT_NAME_PERMISSIONS);
 
         return prefs.getBoolean(key, false);
     }
@@ -300,24 +364,7 @@ public class Prefs {
      * @return
      */
     public static Map<String, Boolean> savePermissions(Context context, Map<String, Boolean> permissions) {
-        ensureNotNull(context, "Application Context");
-        ensureNotNull(permissions, "Permission Map");
-
-        SharedPreferences prefs = context.getSharedPreferences(DOCUMENT_NAME_PERMISSIONS, Context.MODE_PRIVATE);
-        SharedPreferences.Editor editor = prefs.edit();
-
-        Map<String, Boolean> savedPermissions = fetchPermissions(context);
-        if (savedPermissions.size() > permissions.size()) {
-            editor.clear();
-            savedPermissions = new HashMap<>();
-        }
-
-        for (String key : permissions.keySet()) {
-            if (!permissions.get(key).equals(savedPermissions.get(key)))
-                editor.putBoolean(key, permissions.get(key));
-        }
-
-        editor.apply();
+        edit(context, tx -> tx.savePermissions(permissions));
         return permissions;
     }
 
@@ -332,7 +379,7 @@ public class Prefs {
     public static Map<String, Boolean> fetchFeaturesEnabled(Context context) {
         ensureNotNull(context, "Application Context");
 
-        SharedPreferences prefs = context.getSharedPreferences(DOCUMENT_NAME_ENABLED_FEATURES, Context.MODE_PRIVATE);
+        SharedPreferences prefs = fetchDocument(context, DOCUMENT_NAME_ENABLED_FEATURES);
 
         HashMap<String, Boolean> enabledFeatures = new HashMap<>();
 
@@ -354,7 +401,7 @@ public class Prefs {
         ensureNotNull(context, "Application Context");
         ensureStringIsValid(key, "Feature key");
 
-        SharedPreferences prefs = context.getSharedPreferences(DOCUMENT_NAME_ENABLED_FEATURES, Context.MODE_PRIVATE);
+        SharedPreferences prefs = fetchDocument(context, DOCUMENT_NAME_ENABLED_FEATURES);
         return prefs.getBoolean(key, false);
     }
 
@@ -367,14 +414,7 @@ public class Prefs {
      * @return the current enabled status of the Feature
      */
     public static boolean saveFeatureEnabledStatus(Context context, String key, boolean newValue) {
-        ensureNotNull(context, "Application Context");
-        ensureStringIsValid(key, "Feature key");
-
-        SharedPreferences prefs = context.getSharedPreferences(DOCUMENT_NAME_ENABLED_FEATURES, Context.MODE_PRIVATE);
-        SharedPreferences.Editor editor = prefs.edit();
-
-        editor.putBoolean(key, newValue);
-        editor.apply();
+        edit(context, tx -> tx.saveFeatureEnabledStatus(key, newValue));
         return newValue;
     }
 
@@ -389,7 +429,7 @@ public class Prefs {
     public static Map<String, Boolean> fetchConditionsAccepted(Context context) {
         ensureNotNull(context, "Application Context");
 
-        SharedPreferences prefs = context.getSharedPreferences(DOCUMENT_NAME_ACCEPTED_CONDITIONS, Context.MODE_PRIVATE);
+        SharedPreferences prefs = fetchDocument(context, DOCUMENT_NAME_ACCEPTED_CONDITIONS);
 
         HashMap<String, Boolean> conditionsAccepted = new HashMap<>();
 
@@ -411,7 +451,7 @@ public class Prefs {
         ensureNotNull(context, "Application Context");
         ensureStringIsValid(key, "Condition key");
 
-        SharedPreferences prefs = context.getSharedPreferences(DOCUMENT_NAME_ACCEPTED_CONDITIONS, Context.MODE_PRIVATE);
+        SharedPreferences prefs = fetchDocument(context, DOCUMENT_NAME_ACCEPTED_CONDITIONS);
         return prefs.getBoolean(key, false);
     }
 
@@ -424,14 +464,7 @@ public class Prefs {
      * @return the current accepted status of the Condition
      */
     public static boolean saveConditionAccepted(Context context, String key, boolean newValue) {
-        ensureNotNull(context, "Application Context");
-        ensureStringIsValid(key, "Condition key");
-
-        SharedPreferences prefs = context.getSharedPreferences(DOCUMENT_NAME_ACCEPTED_CONDITIONS, Context.MODE_PRIVATE);
-        SharedPreferences.Editor editor = prefs.edit();
-
-        editor.putBoolean(key, newValue);
-        editor.apply();
+        edit(context, tx -> tx.saveConditionAccepted(key, newValue));
         return newValue;
     }
 
@@ -446,18 +479,7 @@ public class Prefs {
      * @return the added permission
      */
     public static String addNewOnStartupPermissionRequest(Context context, String permission) {
-        ensureNotNull(context, "Application Context");
-        ensureStringIsValid(permission, "missing permission");
-
-        SharedPreferences prefs = context.getSharedPreferences(DOCUMENT_NAME_DATA, Context.MODE_PRIVATE);
-        SharedPreferences.Editor editor = prefs.edit();
-
-        Set<String> missingPermissions = prefs.getStringSet(KEY_MISSING_PERMISSIONS_TO_REQUEST_ON_STARTUP, new HashSet<String>());
-        if (!missingPermissions.contains(permission)) {
-            missingPermissions.add(permission);
-            editor.putStringSet(KEY_MISSING_PERMISSIONS_TO_REQUEST_ON_STARTUP, missingPermissions);
-            editor.apply();
-        }
+        edit(context, tx -> tx.addNewOnStartupPermissionRequest(permission));
         return permission;
     }
 
@@ -469,18 +491,7 @@ public class Prefs {
      * @return the removed permission
      */
     public static String removeOnStartupPermissionRequest(Context context, String permission) {
-        ensureNotNull(context, "Application Context");
-        ensureStringIsValid(permission, "missing permission to be removed");
-
-        SharedPreferences prefs = context.getSharedPreferences(DOCUMENT_NAME_DATA, Context.MODE_PRIVATE);
-        SharedPreferences.Editor editor = prefs.edit();
-
-        Set<String> missingPermissions = prefs.getStringSet(KEY_MISSING_PERMISSIONS_TO_REQUEST_ON_STARTUP, new HashSet<>());
-        if (missingPermissions.contains(permission)) {
-            missingPermissions.remove(permission);
-            editor.putStringSet(KEY_MISSING_PERMISSIONS_TO_REQUEST_ON_STARTUP, missingPermissions);
-            editor.apply();
-        }
+        edit(context, tx -> tx.removeOnStartupPermissionRequest(permission));
         return permission;
     }
 
@@ -493,9 +504,256 @@ public class Prefs {
     public static Set<String> fetchOnStartupPermissionRequests(Context context) {
         ensureNotNull(context, "Application Context");
 
-        SharedPreferences prefs = context.getSharedPreferences(DOCUMENT_NAME_DATA, Context.MODE_PRIVATE);
+        SharedPreferences prefs = fetchDocument(context, DOCUMENT_NAME_DATA);
 
         return prefs.getStringSet(KEY_MISSING_PERMISSIONS_TO_REQUEST_ON_STARTUP, new HashSet<>());
     }
 
+    /**
+     * Makes changes in a {@link Transaction}
+     */
+    public interface Edit {
+        void run(Transaction transaction);
+    }
+
+    /**
+     * Collects changes of the documents, see {@link #edit(Context, Edit)}
+     */
+    public static class Transaction {
+        private final Context context;
+        private final ConfigStore.Transaction transaction;
+        // run after the changes were applied
+        private final List<Runnable> afterCommit = new ArrayList<>();
+        private Set<String> startupPermissionRequests;
+
+        private Transaction(Context context) {
+            this.context = context;
+            this.transaction = ConfigStore.getInstance(context).beginTransaction();
+        }
+
+        /**
+         * Saves a new Application trigger word, see {@link Prefs#saveCommandTriggerWord(Context, String)}
+         *
+         * @param trigger the new trigger
+         * @return this transaction
+         */
+        public Transaction saveCommandTriggerWord(String trigger) {
+            ensureStringIsValid(trigger, "Application trigger");
+            if (trigger.contains(" "))
+                throw new IllegalArgumentException("trigger cannot contain a space character!");
+
+            transaction.edit(DOCUMENT_NAME_DATA).putString(KEY_COMMAND_TRIGGER, trigger);
+            return this;
+        }
+
+        /**
+         * Saves if trusted contacts may open command sessions, open sessions are closed if it is disabled
+         *
+         * @param enabled true if a successful authentication opens a session
+         * @return this transaction
+         */
+        public Transaction saveSessionModeEnabled(boolean enabled) {
+            transaction.edit(DOCUMENT_NAME_DATA).putBoolean(KEY_SESSION_MODE, enabled);
+            if (!enabled) afterCommit.add(() -> SessionManager.getInstance().closeAll());
+            return this;
+        }
+
+        /**
+         * Saves the maximum size of a picture that is sent via MMS
+         *
+         * @param bytes the maximum size in bytes
+         * @return this transaction
+         */
+        public Transaction saveMmsByteBudget(int bytes) {
+            if (bytes < JpegBudgetPolicy.MIN_BYTE_BUDGET)
+                throw new IllegalArgumentException("the MMS byte budget has to be at least " + JpegBudgetPolicy.MIN_BYTE_BUDGET + " bytes!");
+
+            transaction.edit(DOCUMENT_NAME_DATA).putInt(KEY_MMS_BYTE_BUDGET, bytes);
+            return this;
+        }
+
+        /**
+         * Saves the Lockdown status of the phone
+         *
+         * @param lockdownStatus true if lockdown was enabled, false if it was disabled
+         * @return this transaction
+         */
+        public Transaction setLockdownStatus(boolean lockdownStatus) {
+            transaction.edit(DOCUMENT_NAME_DATA).putBoolean(KEY_LOCKDOWN_STATUS, lockdownStatus);
+            return this;
+        }
+
+        /**
+         * Saves a trusted contact
+         *
+         * @param phoneNumber the phone number to be added
+         * @param name        the name of the contact
+         * @return this transaction
+         */
+        public Transaction saveTrustedContact(String phoneNumber, String name) {
+            ensurePhoneNumberIsValid(phoneNumber, "new trusted contact");
+            ensureStringIsValid(name, "trusted contact name");
+
+            transaction.edit(DOCUMENT_NAME_TRUSTED_CONTACTS).putString(phoneNumber, name);
+            afterCommit.add(() -> TrustedContactIndex.onContactSaved(phoneNumber));
+            return this;
+        }
+
+        /**
+         * Deletes an existing trusted contact
+         *
+         * @param phoneNumber the phone number of the contact to be removed
+         * @return this transaction
+         */
+        public Transaction deleteTrustedContact(String phoneNumber) {
+            ensureStringIsValid(phoneNumber, "phone number");
+
+            transaction.edit(DOCUMENT_NAME_TRUSTED_CONTACTS).remove(phoneNumber);
+            afterCommit.add(() -> TrustedContactIndex.onContactDeleted(phoneNumber));
+            return this;
+        }
+
+        /**
+         * Updates the saved permissions, permissions that are not part of the map are removed
+         *
+         * @param permissions the new status that should be saved
+         * @return this transaction
+         */
+        public Transaction savePermissions(Map<String, Boolean> permissions) {
+            ensureNotNull(permissions, "Permission Map");
+
+            SharedPreferences.Editor editor = transaction.edit(DOCUMENT_NAME_PERMISSIONS);
+            if (fetchDocument(context, DOCUMENT_NAME_PERMISSIONS).getAll().size() > permissions.size())
+                editor.clear();
+            for (Map.Entry<String, Boolean> permission : permissions.entrySet()) {
+                editor.putBoolean(permission.getKey(), permission.getValue());
+            }
+            return this;
+        }
+
+        /**
+         * Saves the enabled Status of target Feature
+         *
+         * @param key      the key of the target Feature
+         * @param newValue the new value of the Feature's enabled status
+         * @return this transaction
+         */
+        public Transaction saveFeatureEnabledStatus(String key, boolean newValue) {
+            ensureStringIsValid(key, "Feature key");
+
+            transaction.edit(DOCUMENT_NAME_ENABLED_FEATURES).putBoolean(key, newValue);
+            return this;
+        }
+
+        /**
+         * Saves the condition accepted status of target condition
+         *
+         * @param key      the key (name) of the target condition
+         * @param newValue the new value of the Condition's accepted status
+         * @return this transaction
+         */
+        public Transaction saveConditionAccepted(String key, boolean newValue) {
+            ensureStringIsValid(key, "Condition key");
+
+            transaction.edit(DOCUMENT_NAME_ACCEPTED_CONDITIONS).putBoolean(key, newValue);
+            return this;
+        }
+
+        /**
+         * Adds a permission to the permissions that have to be requested when the user opens the App the next time
+         *
+         * @param permission the key of the permission that is missing
+         * @return this transaction
+         */
+        public Transaction addNewOnStartupPermissionRequest(String permission) {
+            ensureStringIsValid(permission, "missing permission");
+
+            if (fetchStartupPermissionRequests().add(permission))
+                transaction.edit(DOCUMENT_NAME_DATA).putStringSet(KEY_MISSING_PERMISSIONS_TO_REQUEST_ON_STARTUP, startupPermissionRequests);
+            return this;
+        }
+
+        /**
+         * Removes a permission from the permissions that are requested when the user opens the App the next time
+         *
+         * @param permission the key of the permission to be removed
+         * @return this transaction
+         */
+        public Transaction removeOnStartupPermissionRequest(String permission) {
+            ensureStringIsValid(permission, "missing permission to be removed");
+
+            if (fetchStartupPermissionRequests().remove(permission))
+                transaction.edit(DOCUMENT_NAME_DATA).putStringSet(KEY_MISSING_PERMISSIONS_TO_REQUEST_ON_STARTUP, startupPermissionRequests);
+            return this;
+        }
+
+        /**
+         * Hashes and saves the Password, the old password is not checked, see {@link Prefs#savePassword(Context, String, String)}
+         *
+         * @param password the new Password
+         * @return this transaction
+         */
+        private Transaction storePassword(String password) {
+            byte[] salt = new byte[16];
+            new SecureRandom().nextBytes(salt);
+            PasswordVerifier verifier = PasswordVerifier.create(new Pbkdf2Sha256(), fetchPasswordCost(), salt, password);
+
+            String hash = Base64.encodeToString(verifier.getHash(), Base64.NO_WRAP);
+            String encodedSalt = Base64.encodeToString(salt, Base64.NO_WRAP);
+            SharedPreferences.Editor editor = transaction.edit(DOCUMENT_NAME_DATA);
+            editor.putString(KEY_COMMAND_PASSWORD_SALT, encodedSalt);
+            editor.putString(KEY_COMMAND_PASSWORD, hash);
+            editor.putString(KEY_COMMAND_PASSWORD_KDF, verifier.getKdfSpec());
+            afterCommit.add(() -> storedPassword = new StoredPassword(hash, encodedSalt, verifier.getKdfSpec(), verifier));
+            return this;
+        }
+
+        /**
+         * Deletes the Password, e.g. if its hash is corrupted
+         *
+         * @return this transaction
+         */
+        private Transaction deletePassword() {
+            SharedPreferences.Editor editor = transaction.edit(DOCUMENT_NAME_DATA);
+            editor.remove(KEY_COMMAND_PASSWORD);
+            editor.remove(KEY_COMMAND_PASSWORD_SALT);
+            editor.remove(KEY_COMMAND_PASSWORD_KDF);
+            afterCommit.add(() -> storedPassword = null);
+            return this;
+        }
+
+        private Set<String> fetchStartupPermissionRequests() {
+            if (startupPermissionRequests == null)
+                startupPermissionRequests = fetchOnStartupPermissionRequests(context);
+            return startupPermissionRequests;
+        }
+
+        private void commit() {
+            transaction.commit();
+            for (Runnable action : afterCommit) {
+                action.run();
+            }
+        }
+    }
+
+    /**
+     * The stored password values and the verifier that was decoded from them
+     */
+    private static class StoredPassword {
+        private final String hash;
+        private final String salt;
+        private final String kdfSpec;
+        private final PasswordVerifier verifier;
+
+        StoredPassword(String hash, String salt, String kdfSpec, PasswordVerifier verifier) {
+            this.hash = hash;
+            this.salt = salt;
+            this.kdfSpec = kdfSpec;
+            this.verifier = verifier;
+        }
+
+        boolean matches(String hash, String salt, String kdfSpec) {
+            return this.hash.equals(hash) && this.salt.equals(salt) && (this.kdfSpec == null ? kdfSpec == null : this.kdfSpec.equals(kdfSpec));
+        }
+    }
 }
@@ -0,0 +1,168 @@
+package at.tacticaldevc.oat.utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.Collections;
+import java.util.Map;
+
+import at.tacticaldevc.oat.R;
+
+import static at.tacticaldevc.oat.utils.Ensurer.ensureNotNull;
+import static at.tacticaldevc.oat.utils.Ensurer.ensureStringIsValid;
+
+/**
+ * An immutable snapshot of the enabled features, accepted conditions and granted permissions of the App.
+ * Commands read the snapshot from a volatile field instead of calling into {@link SharedPreferences},
+ * the snapshot is replaced by a listener of the {@link ConfigStore} as soon as one of the documents changes.
+ * The flags the commands need are resolved when the snapshot is built, so checking them does not look up any resources.
+ *
+ * @version 0.2
+ */
+public class PrefsSnapshot {
+
+    private static volatile PrefsSnapshot current;
+    private static Keys keys;
+    // SharedPreferences only keep weak references to their listeners
+    private static SharedPreferences.OnSharedPreferenceChangeListener listener;
+
+    private final Map<String, Boolean> features;
+    private final Map<String, Boolean> conditions;
+    private final Map<String, Boolean> permissions;
+    private final boolean lockdownEnabled;
+    private final boolean gpsPositionEnabled;
+    private final boolean instantPhotoEnabled;
+    private final boolean photoTrapEnabled;
+    private final boolean cameraGranted;
+    private final boolean fineLocationGranted;
+    private final boolean locationGranted;
+
+    private PrefsSnapshot(Keys keys, Map<String, Boolean> features, Map<String, Boolean> conditions, Map<String, Boolean> permissions) {
+        this.features = Collections.unmodifiableMap(features);
+        this.conditions = Collections.unmodifiableMap(conditions);
+        this.permissions = Collections.unmodifiableMap(permissions);
+        this.lockdownEnabled = isTrue(features, keys.lockdown);
+        this.gpsPositionEnabled = isTrue(features, keys.gpsPosition);
+        this.instantPhotoEnabled = isTrue(features, keys.instantPhoto);
+        this.photoTrapEnabled = isTrue(features, keys.photoTrap);
+        this.cameraGranted = isTrue(permissions, keys.camera);
+        this.fineLocationGranted = isTrue(permissions, keys.fineLocation);
+        this.locationGranted = fineLocationGranted || isTrue(permissions, keys.coarseLocation);
+    }
+
+    /**
+     * @param context the {@link Context} of the Application
+     * @return the current snapshot, it is built when it is requested for the first time
+     */
+    public static PrefsSnapshot get(Context context) {
+        PrefsSnapshot snapshot = current;
+        if (snapshot != null) return snapshot;
+        return refresh(context);
+    }
+
+    /**
+     * Builds a new snapshot from the stored values
+     *
+     * @param context the {@link Context} of the Application
+     * @return the new snapshot
+     */
+    public static synchronized PrefsSnapshot refresh(Context context) {
+        ensureNotNull(context, "Application Context");
+        Context appContext = context.getApplicationContext();
+        if (keys == null) {
+            keys = new Keys(appContext);
+            listener = (prefs, key) -> refresh(appContext);
+            ConfigStore store = ConfigStore.getInstance(appContext);
+            for (String document : Prefs.SNAPSHOT_DOCUMENTS) {
+                store.getSection(document).registerOnSharedPreferenceChangeListener(listener);
+            }
+        }
+
+        PrefsSnapshot snapshot = new PrefsSnapshot(keys, Prefs.fetchFeaturesEnabled(appContext), Prefs.fetchConditionsAccepted(appContext), Prefs.fetchPermissions(appContext));
+        current = snapshot;
+        return snapshot;
+    }
+
+    /**
+     * @param key the key of the Feature
+     * @return if the Feature is enabled, false if it could not be found
+     */
+    public boolean isFeatureEnabled(String key) {
+        return isTrue(features, ensureStringIsValid(key, "Feature key"));
+    }
+
+    /**
+     * @param key the key of the Condition
+     * @return if the Condition was accepted, false if it could not be found
+     */
+    public boolean isConditionAccepted(String key) {
+        return isTrue(conditions, ensureStringIsValid(key, "Condition key"));
+    }
+
+    /**
+     * @param key the key of the Permission
+     * @return if the Permission was granted, false if it could not be found
+     */
+    public boolean isPermissionGranted(String key) {
+        return isTrue(permissions, ensureStringIsValid(key, "permission key"));
+    }
+
+    public boolean isLockdownEnabled() {
+        return lockdownEnabled;
+    }
+
+    public boolean isGpsPositionEnabled() {
+        return gpsPositionEnabled;
+    }
+
+    public boolean isInstantPhotoEnabled() {
+        return instantPhotoEnabled;
+    }
+
+    public boolean isPhotoTrapEnabled() {
+        return photoTrapEnabled;
+    }
+
+    public boolean isCameraGranted() {
+        return cameraGranted;
+    }
+
+    public boolean isFineLocationGranted() {
+        return fineLocationGranted;
+    }
+
+    /**
+     * @return true if either the coarse or the fine location permission was granted
+     */
+    public boolean isLocationGranted() {
+        return locationGranted;
+    }
+
+    private static boolean isTrue(Map<String, Boolean> values, String key) {
+        Boolean value = values.get(key);
+        return value != null && value;
+    }
+
+    /**
+     * The keys of the flags the commands need, they are resolved once per process
+     */
+    private static class Keys {
+        private final String lockdown;
+        private final String gpsPosition;
+        private final String instantPhoto;
+        private final String photoTrap;
+        private final String camera;
+        private final String fineLocation;
+        private final String coarseLocation;
+
+        Keys(Context context) {
+            lockdown = context.getString(R.string.oat_features_key_trigger_lockdown);
+            gpsPosition = context.getString(R.string.oat_features_key_fetch_gps_position);
+            instantPhoto = context.getString(R.string.oat_features_key_trigger_instant_photo);
+            photoTrap = context.getString(R.string.oat_features_key_trigger_photo_trap);
+            camera = context.getString(R.string.oat_permissions_key_camera);
+            fineLocation = context.getString(R.string.oat_permissions_key_access_fine_location);
+            coarseLocation = context.getString(R.string.oat_permissions_key_access_coarse_location);
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package at.tacticaldevc.oat.utils;
+
+import android.content.Context;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import at.tacticaldevc.oat.R;
+
+import static at.tacticaldevc.oat.utils.Ensurer.ensureNotNull;
+import static at.tacticaldevc.oat.utils.Ensurer.ensureStringIsValid;
+
+/**
+ * Collects the text replies of several features that were requested with one command and sends them as one SMS.
+ * Every batch has its own id, a reply belongs to a batch if it is sent while a feature of the batch runs, see {@link #run(int, Runnable)}.
+ * Features that reply later on, like the camera, take their {@link Feature} along with them and reply through {@link #runAs(Feature, Runnable)}.
+ * Every feature declares the number of replies it sends, the consolidated reply is sent once every feature has sent its replies
+ * or the deadline has passed. Replies that arrive after that are sent on their own.
+ * The consolidated reply is sent from the SIM subscription the command arrived on, even if it is sent by the deadline.
+ *
+ * @version 0.4
+ */
+public class ReplyBatch {
+
+    private static final Map<Long, ReplyBatch> OPEN_BATCHES = new HashMap<>();
+    private static final AtomicLong IDS = new AtomicLong();
+    private static final ThreadLocal<Feature> CURRENT = new ThreadLocal<>();
+    private static final ScheduledExecutorService DEADLINES = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("oat-reply-deadline"));
+
+    private final long id;
+    private final Context context;
+    private final String phoneNumber;
+    private final int subscriptionId;
+    private final int[] expectedReplies;
+    private final int[] receivedReplies;
+    private final List<String> replies;
+    private int pendingReplies;
+    private boolean closed = false;
+    private ScheduledFuture<?> deadline;
+
+    private ReplyBatch(long id, Context context, String phoneNumber, int subscriptionId, int[] expectedReplies, int totalReplies) {
+        this.id = id;
+        this.context = context;
+        this.phoneNumber = phoneNumber;
+        this.subscriptionId = subscriptionId;
+        this.expectedReplies = expectedReplies;
+        this.receivedReplies = new int[expectedReplies.length];
+        this.pendingReplies = totalReplies;
+        this.replies = new ArrayList<>(totalReplies);
+    }
+
+    /**
+     * Opens a new batch. Batches are independent of each other, even if they reply to the same phone number.
+     *
+     * @param context         the {@link Context} of the Application
+     * @param phoneNumber     the phone number that requested the features
+     * @param subscriptionId  the id of the SIM subscription the command arrived on, the consolidated reply is sent from it
+     * @param expectedReplies the number of replies to wait for, for every feature
+     * @param deadlineMillis  the time in milliseconds after which the batch is sent, even if replies are missing
+     * @return the opened {@link ReplyBatch}
+     */
+    public static ReplyBatch open(Context context, String phoneNumber, int subscriptionId, int[] expectedReplies, long deadlineMillis) {
+        ensureNotNull(context, "Application Context");
+        ensureStringIsValid(phoneNumber, "phone number");
+        ensureNotNull(expectedReplies, "expected replies");
+        int total = 0;
+        for (int replies : expectedReplies) {
+            if (replies < 0) throw new IllegalArgumentException("expectedReplies cannot be negative!");
+            total += replies;
+        }
+        if (total < 1) throw new IllegalArgumentException("expectedReplies has to be at least 1!");
+
+        ReplyBatch batch = new ReplyBatch(IDS.incrementAndGet(), context, phoneNumber, subscriptionId, expectedReplies.clone(), total);
+        synchronized (OPEN_BATCHES) {
+            OPEN_BATCHES.put(batch.id, batch);
+        }
+        ScheduledFuture<?> deadline = DEADLINES.schedule(batch::send, deadlineMillis, TimeUnit.MILLISECONDS);
+        synchronized (batch) {
+            batch.deadline = deadline;
+        }
+        return batch;
+    }
+
+    /**
+     * @return the id of the batch
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Runs a feature of the batch on the calling thread, the replies it sends while it runs are added to the batch
+     *
+     * @param feature the index of the feature, as passed to {@link #open(Context, String, int, int[], long)}
+     * @param task    the feature
+     */
+    public void run(int feature, Runnable task) {
+        if (feature < 0 || feature >= expectedReplies.length)
+            throw new IllegalArgumentException("batch " + id + " has no feature " + feature + "!");
+        runAs(new Feature(id, feature), task);
+    }
+
+    /**
+     * @return the feature of a batch the calling thread replies for, or null if its replies are sent on their own
+     */
+    public static Feature current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Runs a task on the calling thread, the replies it sends are added to the batch of the feature if the batch is still open
+     *
+     * @param feature the feature the task replies for, see {@link #current()}, or null to send the replies on their own
+     * @param task    the task
+     */
+    public static void runAs(Feature feature, Runnable task) {
+        ensureNotNull(task, "task");
+        Feature previous = CURRENT.get();
+        CURRENT.set(feature);
+        try {
+            task.run();
+        } finally {
+            if (previous == null) CURRENT.remove();
+            else CURRENT.set(previous);
+        }
+    }
+
+    /**
+     * Adds a reply to the open batch of the feature the calling thread runs for
+     *
+     * @param phoneNumber the target phone number of the reply
+     * @param text        the text of the reply
+     * @return true if the reply was added to a batch, false if it has to be sent on its own
+     */
+    static boolean collect(String phoneNumber, String text) {
+        Feature feature = CURRENT.get();
+        if (feature == null) return false;
+
+        ReplyBatch batch;
+        synchronized (OPEN_BATCHES) {
+            batch = OPEN_BATCHES.get(feature.batchId);
+        }
+        return batch != null && batch.phoneNumber.equals(phoneNumber) && batch.add(feature.index, text);
+    }
+
+    private boolean add(int feature, String text) {
+        synchronized (this) {
+            if (closed) return false;
+            replies.add(text);
+            // a feature that replies more often than it declared does not complete the replies of other features
+            if (receivedReplies[feature]++ < expectedReplies[feature]) pendingReplies--;
+            if (pendingReplies > 0) return true;
+        }
+        send();
+        return true;
+    }
+
+    /**
+     * Closes the batch and sends the consolidated reply, does nothing if the batch was already sent
+     */
+    public void send() {
+        synchronized (OPEN_BATCHES) {
+            OPEN_BATCHES.remove(id);
+        }
+
+        String text;
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            if (deadline != null) deadline.cancel(false);
+            if (replies.isEmpty()) return;
+            text = consolidate();
+        }
+        SMSCom.sendBatchReply(context, phoneNumber, subscriptionId, text);
+    }
+
+    private String consolidate() {
+        String prefix = ReplyTemplates.fetchText(context, R.string.oat_sms_message_prefix);
+        StringBuilder sb = new StringBuilder(prefix);
+        for (String reply : replies) {
+            if (sb.length() > prefix.length()) sb.append('\n');
+            sb.append(reply.startsWith(prefix) ? reply.substring(prefix.length()) : reply);
+        }
+        if (pendingReplies > 0)
+            ReplyTemplates.fetch(context, R.string.oat_sms_message_batch_incomplete).renderTo(sb.append('\n'), pendingReplies);
+        return sb.toString();
+    }
+
+    /**
+     * A feature of a batch, it identifies the batch by its id, so it can be kept after the batch was sent
+     */
+    public static final class Feature {
+        private final long batchId;
+        private final int index;
+
+        private Feature(long batchId, int index) {
+            this.batchId = batchId;
+            this.index = index;
+        }
+    }
+}
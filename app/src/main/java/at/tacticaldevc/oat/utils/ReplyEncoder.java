@@ -0,0 +1,94 @@
+package at.tacticaldevc.oat.utils;
+
+import java.util.Locale;
+
+import static at.tacticaldevc.oat.utils.Ensurer.ensureNotNull;
+
+/**
+ * Prepares reply texts for sending, so they need as few SMS as possible.
+ * Typographic characters are replaced to keep texts in the GSM alphabet, and critical replies are shortened until they fit into a single SMS.
+ *
+ * @version 0.1
+ */
+public class ReplyEncoder {
+
+    // 5 decimal places are precise to about one meter
+    private static final ReplyTemplate COORDINATE = ReplyTemplate.compile("%.5f", Locale.ROOT);
+
+    private final LengthCalculator calculator;
+
+    /**
+     * Creates a new ReplyEncoder
+     *
+     * @param calculator the {@link LengthCalculator} used to measure the texts
+     */
+    ReplyEncoder(LengthCalculator calculator) {
+        this.calculator = ensureNotNull(calculator, "length calculator");
+    }
+
+    /**
+     * Formats a latitude or longitude, independent of the locale of the Application
+     *
+     * @param degrees the coordinate in degrees
+     * @return the coordinate with 5 decimal places
+     */
+    public static String formatCoordinate(double degrees) {
+        return COORDINATE.render(degrees);
+    }
+
+    /**
+     * Replaces characters that would force the text into UCS-2, if all other characters are part of the GSM alphabet
+     *
+     * @param text the text to be sent
+     * @return the encoded text
+     */
+    public String encode(String text) {
+        ensureNotNull(text, "reply text");
+        return GsmAlphabet.replaceNonGsmCharacters(text);
+    }
+
+    /**
+     * @param text the text to be measured
+     * @return the number of SMS that are needed to send the text
+     */
+    public int segments(CharSequence text) {
+        return calculator.calculateLength(text)[0];
+    }
+
+    /**
+     * Encodes a critical reply, so it fits into a single SMS.
+     * The compact text is used if the full text is too long, and the compact text is cut off if it is still too long.
+     *
+     * @param text        the full text of the reply
+     * @param compactText the shorter version of the reply
+     * @return the encoded reply that fits into one SMS
+     */
+    public String encodeCritical(String text, String compactText) {
+        String encoded = encode(text);
+        if (segments(encoded) <= 1) return encoded;
+
+        encoded = encode(ensureNotNull(compactText, "compact reply text"));
+        if (segments(encoded) <= 1) return encoded;
+
+        // search for the longest prefix that still fits
+        int low = 0;
+        int high = encoded.length() - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (segments(encoded.subSequence(0, mid)) <= 1) low = mid;
+            else high = mid - 1;
+        }
+        return encoded.substring(0, low);
+    }
+
+    /**
+     * Measures the number of SMS needed for a text
+     */
+    interface LengthCalculator {
+        /**
+         * @param text the text to be measured
+         * @return the result in the format of {@code SmsMessage.calculateLength}
+         */
+        int[] calculateLength(CharSequence text);
+    }
+}
@@ -0,0 +1,95 @@
+package at.tacticaldevc.oat.utils;
+
+import android.telephony.SubscriptionManager;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static at.tacticaldevc.oat.utils.Ensurer.ensureNotNull;
+import static at.tacticaldevc.oat.utils.Ensurer.ensureStringIsValid;
+
+/**
+ * Finds the SIM subscription a reply is sent from, so that it is the one the command arrived on.
+ * The subscription travels with the command: its {@link at.tacticaldevc.oat.commands.CommandContext}, {@link ReplyBatch} and {@link PhotoRequest}
+ * carry it, and replies sent while a task runs through {@link #runFrom(int, Runnable)} are sent from the subscription of the task.
+ * As a fallback the subscription the last command of a phone number arrived on is remembered, only for the most recent phone numbers.
+ *
+ * @version 0.2
+ */
+public class ReplyRoutes {
+
+    private static final int MAX_ROUTES = 32;
+    private static final ThreadLocal<Integer> CURRENT = new ThreadLocal<>();
+
+    private static final Map<String, Integer> ROUTES = new LinkedHashMap<String, Integer>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+            return size() > MAX_ROUTES;
+        }
+    };
+
+    /**
+     * Remembers the subscription a command arrived on
+     *
+     * @param phoneNumber    the phone number that sent the command
+     * @param subscriptionId the id of the subscription or {@link SubscriptionManager#INVALID_SUBSCRIPTION_ID} if it is unknown
+     */
+    public static void remember(String phoneNumber, int subscriptionId) {
+        ensureStringIsValid(phoneNumber, "phone number");
+
+        synchronized (ROUTES) {
+            if (subscriptionId == SubscriptionManager.INVALID_SUBSCRIPTION_ID)
+                ROUTES.remove(phoneNumber);
+            else
+                ROUTES.put(phoneNumber, subscriptionId);
+        }
+    }
+
+    /**
+     * @param phoneNumber the target phone number
+     * @return the id of the subscription replies to the phone number should be sent from or {@link SubscriptionManager#INVALID_SUBSCRIPTION_ID} if it is unknown
+     */
+    public static int lookup(String phoneNumber) {
+        synchronized (ROUTES) {
+            Integer subscriptionId = ROUTES.get(phoneNumber);
+            return subscriptionId == null ? SubscriptionManager.INVALID_SUBSCRIPTION_ID : subscriptionId;
+        }
+    }
+
+    /**
+     * Runs a task on the calling thread, the replies it sends are sent from the subscription
+     *
+     * @param subscriptionId the id of the subscription the command of the task arrived on or {@link SubscriptionManager#INVALID_SUBSCRIPTION_ID} if it is unknown
+     * @param task           the task
+     */
+    public static void runFrom(int subscriptionId, Runnable task) {
+        ensureNotNull(task, "task");
+        Integer previous = CURRENT.get();
+        CURRENT.set(subscriptionId);
+        try {
+            task.run();
+        } finally {
+            if (previous == null) CURRENT.remove();
+            else CURRENT.set(previous);
+        }
+    }
+
+    /**
+     * @param phoneNumber the target phone number
+     * @return the subscription of the task the calling thread runs, see {@link #runFrom(int, Runnable)},
+     * or the subscription the last command of the phone number arrived on if it is unknown
+     */
+    public static int current(String phoneNumber) {
+        Integer subscriptionId = CURRENT.get();
+        return resolve(phoneNumber, subscriptionId == null ? SubscriptionManager.INVALID_SUBSCRIPTION_ID : subscriptionId);
+    }
+
+    /**
+     * @param phoneNumber    the target phone number
+     * @param subscriptionId the subscription that was passed along with the reply
+     * @return the subscription, or the subscription the last command of the phone number arrived on if it is unknown
+     */
+    public static int resolve(String phoneNumber, int subscriptionId) {
+        return subscriptionId != SubscriptionManager.INVALID_SUBSCRIPTION_ID ? subscriptionId : lookup(phoneNumber);
+    }
+}
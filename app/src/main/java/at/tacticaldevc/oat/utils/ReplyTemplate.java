@@ -0,0 +1,210 @@
+package at.tacticaldevc.oat.utils;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.text.DecimalFormatSymbols;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static at.tacticaldevc.oat.utils.Ensurer.ensureNotNull;
+
+/**
+ * A reply text that was parsed once, so it can be rendered without going through {@link String#format(Locale, String, Object...)}.
+ * The placeholders %s, %d, %f, %.Nf and %% are rendered like {@link java.util.Formatter} would render them for the locale of the template.
+ * Templates with any other placeholder are rendered with {@link String#format(Locale, String, Object...)}.
+ * Like {@link java.util.Formatter}, doubles are rounded half up from their shortest decimal representation, not from their binary value.
+ *
+ * @version 0.2
+ */
+public class ReplyTemplate {
+
+    private static final int DEFAULT_PRECISION = 6;
+    private static final int MAX_PRECISION = 9;
+
+    private final String pattern;
+    private final Locale locale;
+    private final Segment[] segments;
+    private final int placeholders;
+    private final int literalLength;
+    private final char zeroDigit;
+    private final char decimalSeparator;
+
+    private ReplyTemplate(String pattern, Locale locale, Segment[] segments, int placeholders, int literalLength) {
+        this.pattern = pattern;
+        this.locale = locale;
+        this.segments = segments;
+        this.placeholders = placeholders;
+        this.literalLength = literalLength;
+        DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(locale);
+        this.zeroDigit = symbols.getZeroDigit();
+        this.decimalSeparator = symbols.getDecimalSeparator();
+    }
+
+    /**
+     * Parses a reply text
+     *
+     * @param pattern the text with its placeholders
+     * @param locale  the {@link Locale} numbers are rendered with
+     * @return the parsed {@link ReplyTemplate}
+     */
+    public static ReplyTemplate compile(String pattern, Locale locale) {
+        ensureNotNull(pattern, "template pattern");
+        ensureNotNull(locale, "template locale");
+
+        List<Segment> segments = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int placeholders = 0;
+        int literalLength = 0;
+        int i = 0;
+        while (i < pattern.length()) {
+            char c = pattern.charAt(i);
+            if (c != '%') {
+                literal.append(c);
+                i++;
+                continue;
+            }
+
+            int end = i + 1;
+            int precision = -1;
+            if (end + 1 < pattern.length() && pattern.charAt(end) == '.' && Character.isDigit(pattern.charAt(end + 1))) {
+                precision = pattern.charAt(end + 1) - '0';
+                end += 2;
+            }
+            char conversion = end < pattern.length() ? pattern.charAt(end) : 0;
+            boolean supported = conversion == '%' && precision == -1
+                    || (conversion == 's' || conversion == 'd') && precision == -1
+                    || conversion == 'f' && precision <= MAX_PRECISION;
+            if (!supported) return new ReplyTemplate(pattern, locale, null, -1, 0);
+
+            if (conversion == '%') {
+                literal.append('%');
+            } else {
+                if (literal.length() > 0) {
+                    segments.add(new Segment(literal.toString(), (char) 0, 0));
+                    literalLength += literal.length();
+                    literal.setLength(0);
+                }
+                segments.add(new Segment(null, conversion, precision == -1 ? DEFAULT_PRECISION : precision));
+                placeholders++;
+            }
+            i = end + 1;
+        }
+        if (literal.length() > 0) {
+            segments.add(new Segment(literal.toString(), (char) 0, 0));
+            literalLength += literal.length();
+        }
+        return new ReplyTemplate(pattern, locale, segments.toArray(new Segment[0]), placeholders, literalLength);
+    }
+
+    /**
+     * Renders the template
+     *
+     * @param args the values of the placeholders
+     * @return the rendered text
+     */
+    public String render(Object... args) {
+        StringBuilder sb = new StringBuilder(literalLength + 16 * Math.max(placeholders, 0));
+        renderTo(sb, args);
+        return sb.toString();
+    }
+
+    /**
+     * Renders the template by appending it to a {@link StringBuilder}
+     *
+     * @param sb   the {@link StringBuilder} the text is appended to
+     * @param args the values of the placeholders
+     */
+    public void renderTo(StringBuilder sb, Object... args) {
+        ensureNotNull(sb, "target StringBuilder");
+        if (segments == null) {
+            sb.append(String.format(locale, pattern, args));
+            return;
+        }
+        if (args.length < placeholders)
+            throw new IllegalArgumentException("The template needs " + placeholders + " arguments, but only " + args.length + " were given!");
+
+        int arg = 0;
+        for (Segment segment : segments) {
+            if (segment.literal != null) {
+                sb.append(segment.literal);
+                continue;
+            }
+            Object value = args[arg++];
+            switch (segment.conversion) {
+                case 's':
+                    sb.append(value);
+                    break;
+                case 'd':
+                    if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte)
+                        appendLong(sb, ((Number) value).longValue());
+                    else
+                        sb.append(String.format(locale, "%d", value));
+                    break;
+                default:
+                    if ((value instanceof Double || value instanceof Float) && isFinite(((Number) value).doubleValue()))
+                        appendDouble(sb, ((Number) value).doubleValue(), segment.precision);
+                    else
+                        sb.append(String.format(locale, "%." + segment.precision + "f", value));
+                    break;
+            }
+        }
+    }
+
+    /**
+     * @return the number of placeholders of the template or -1 if the template is rendered with {@link String#format(Locale, String, Object...)}
+     */
+    public int getPlaceholderCount() {
+        return placeholders;
+    }
+
+    public Locale getLocale() {
+        return locale;
+    }
+
+    private static boolean isFinite(double value) {
+        return !Double.isNaN(value) && !Double.isInfinite(value);
+    }
+
+    private void appendLong(StringBuilder sb, long value) {
+        int start = sb.length();
+        sb.append(value);
+        localizeDigits(sb, start);
+    }
+
+    private void appendDouble(StringBuilder sb, double value, int precision) {
+        // Formatter keeps the sign of negative values that are rounded to zero
+        if (Double.doubleToRawLongBits(value) < 0) sb.append('-');
+
+        // BigDecimal.valueOf starts from the same shortest decimal representation Formatter rounds, so 1.005 becomes 1.01
+        String digits = BigDecimal.valueOf(Math.abs(value)).setScale(precision, RoundingMode.HALF_UP).toPlainString();
+        int start = sb.length();
+        int point = digits.indexOf('.');
+        if (point < 0) {
+            sb.append(digits);
+        } else {
+            sb.append(digits, 0, point).append(decimalSeparator).append(digits, point + 1, digits.length());
+        }
+        localizeDigits(sb, start);
+    }
+
+    private void localizeDigits(StringBuilder sb, int start) {
+        if (zeroDigit == '0') return;
+        for (int i = start; i < sb.length(); i++) {
+            char c = sb.charAt(i);
+            if (c >= '0' && c <= '9') sb.setCharAt(i, (char) (zeroDigit + c - '0'));
+        }
+    }
+
+    private static class Segment {
+        private final String literal;
+        private final char conversion;
+        private final int precision;
+
+        Segment(String literal, char conversion, int precision) {
+            this.literal = literal;
+            this.conversion = conversion;
+            this.precision = precision;
+        }
+    }
+}
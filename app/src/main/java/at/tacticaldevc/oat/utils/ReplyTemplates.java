@@ -0,0 +1,113 @@
+package at.tacticaldevc.oat.utils;
+
+import android.content.Context;
+import android.util.SparseArray;
+
+import java.util.Locale;
+
+import static at.tacticaldevc.oat.utils.Ensurer.ensureNotNull;
+
+/**
+ * Caches the reply texts of OAT as {@link ReplyTemplate}s, so a reply does not have to be loaded from the resources and parsed again.
+ * The cache is rebuilt whenever the locale of the Application changes.
+ *
+ * @version 0.1
+ */
+public class ReplyTemplates {
+
+    private static final int BUILDER_CAPACITY = 256;
+    // the builders are only reused up to this capacity, so a single long reply does not stay in memory
+    private static final int MAX_BUILDER_CAPACITY = 2048;
+
+    private static final ThreadLocal<StringBuilder> BUILDERS = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(BUILDER_CAPACITY);
+        }
+    };
+
+    private static volatile Cache cache;
+
+    /**
+     * Renders a reply text
+     *
+     * @param context the {@link Context} of the Application
+     * @param resId   the resource id of the reply text
+     * @param args    the values of the placeholders
+     * @return the rendered reply
+     */
+    public static String render(Context context, int resId, Object... args) {
+        ReplyTemplate template = fetch(context, resId);
+        if (template.getPlaceholderCount() == 0) return fetchText(context, resId);
+
+        StringBuilder sb = BUILDERS.get();
+        sb.setLength(0);
+        template.renderTo(sb, args);
+        String result = sb.toString();
+        if (sb.capacity() > MAX_BUILDER_CAPACITY) BUILDERS.remove();
+        return result;
+    }
+
+    /**
+     * @param context the {@link Context} of the Application
+     * @param resId   the resource id of the reply text
+     * @return the reply text without rendering its placeholders
+     */
+    public static String fetchText(Context context, int resId) {
+        Cache current = fetchCache(context);
+        synchronized (current) {
+            String text = current.texts.get(resId);
+            if (text == null) {
+                text = context.getString(resId);
+                current.texts.put(resId, text);
+            }
+            return text;
+        }
+    }
+
+    /**
+     * @param context the {@link Context} of the Application
+     * @param resId   the resource id of the reply text
+     * @return the parsed {@link ReplyTemplate} of the reply text
+     */
+    public static ReplyTemplate fetch(Context context, int resId) {
+        Cache current = fetchCache(context);
+        synchronized (current) {
+            ReplyTemplate template = current.templates.get(resId);
+            if (template == null) {
+                String text = current.texts.get(resId);
+                if (text == null) {
+                    text = context.getString(resId);
+                    current.texts.put(resId, text);
+                }
+                template = ReplyTemplate.compile(text, current.locale);
+                current.templates.put(resId, template);
+            }
+            return template;
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private static Cache fetchCache(Context context) {
+        ensureNotNull(context, "Application Context");
+
+        // Configuration.getLocales() requires API level 24
+        Locale locale = context.getResources().getConfiguration().locale;
+        Cache current = cache;
+        if (current == null || !current.locale.equals(locale)) {
+            current = new Cache(locale);
+            cache = current;
+        }
+        return current;
+    }
+
+    private static class Cache {
+        private final Locale locale;
+        private final SparseArray<String> texts = new SparseArray<>();
+        private final SparseArray<ReplyTemplate> templates = new SparseArray<>();
+
+        Cache(Locale locale) {
+            this.locale = locale;
+        }
+    }
+}
@@ -1,13 +1,28 @@
 package at.tacticaldevc.oat.utils;
 
+import android.app.PendingIntent;
 import android.content.Context;
+import android.content.Intent;
 import android.location.Location;
 import android.net.Uri;
+import android.os.SystemClock;
 import android.telephony.SmsManager;
-import android.telephony.SubscriptionManager;
+import android.telephony.SmsMessage;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import androidx.core.content.FileProvider;
 
 import at.tacticaldevc.oat.R;
 import at.tacticaldevc.oat.exceptions.OATApplicationException;
+import at.tacticaldevc.oat.listeners.SmsSentReceiver;
 
 import static at.tacticaldevc.oat.utils.Ensurer.ensureNotNull;
 import static at.tacticaldevc.oat.utils.Ensurer.ensurePhoneNumberIsValid;
@@ -15,11 +30,33 @@ import static at.tacticaldevc.oat.utils.Ensurer.ensureStringIsValid;
 
 /**
  * A helper class for SMS communication
+ * The PDU of a MMS is deleted as soon as the MMS service reported its result, see {@link #onMultimediaMessageSent(Context, String)}.
+ * Replies are sent from the SIM subscription the command arrived on, see {@link ReplyRoutes}.
  *
- * @version 0.4
+ * @version 0.13
  */
 public class SMSCom {
 
+    public static final String ACTION_MMS_SENT = "at.tacticaldevc.oat.action.MMS_SENT";
+    public static final String EXTRA_PDU = "at.tacticaldevc.oat.extra.PDU";
+
+    private static final String MMS_DIR = "mms";
+    private static final String MMS_AUTHORITY_SUFFIX = ".mms";
+    private static final String PDU_SUFFIX = ".pdu";
+    // the PDUs of MMS whose result was never reported are deleted when the next MMS is sent
+    private static final long MMS_RETENTION_MILLIS = 10 * 60 * 1000;
+
+    // replies to the same phone number within this window are sent as one SMS
+    private static final long COALESCE_MILLIS = 1500;
+    // the reminder to delete the password is sent at most once per phone number within this window
+    private static final long HINT_WINDOW_MILLIS = 10 * 60 * 1000;
+
+    private static final ReplyEncoder ENCODER = new ReplyEncoder(text -> SmsMessage.calculateLength(text, false));
+
+    private static final AtomicInteger MMS_COUNTER = new AtomicInteger();
+
+    private static OutboundQueue outboundQueue;
+
     /**
      * Reply that the feature is disabled
      *
@@ -32,9 +69,7 @@ public class SMSCom {
         ensurePhoneNumberIsValid(phoneNumber, "target phone number");
         ensureStringIsValid(featureName, "name of disabled feature");
 
-        SmsManager smsManager = fetchSMSManager();
-        sendDeletePasswordHint(context, phoneNumber, smsManager);
-        smsManager.sendTextMessage(phoneNumber, null, String.format(context.getString(R.string.oat_sms_message_error_feature_disabled), featureName), null, null);
+        sendReply(context, phoneNumber, ReplyTemplates.render(context, R.string.oat_sms_message_error_feature_disabled, featureName), true);
     }
 
     /**
@@ -47,9 +82,7 @@ public class SMSCom {
         ensureNotNull(context, "Application Context");
         ensurePhoneNumberIsValid(phoneNumber, "target phone number");
 
-        SmsManager smsManager = fetchSMSManager();
-        sendDeletePasswordHint(context, phoneNumber, smsManager);
-        smsManager.sendTextMessage(phoneNumber, null, context.getString(R.string.oat_sms_message_error_malformed_message), null, null);
+        sendReply(context, phoneNumber, ReplyTemplates.fetchText(context, R.string.oat_sms_message_error_malformed_message), true);
     }
 
     /**
@@ -64,9 +97,7 @@ public class SMSCom {
         ensurePhoneNumberIsValid(phoneNumber, "phone number");
         ensureStringIsValid(featureName, "feature name");
 
-        SmsManager smsManager = fetchSMSManager();
-        sendDeletePasswordHint(context, phoneNumber, smsManager);
-        smsManager.sendTextMessage(phoneNumber, null, String.format(context.getString(R.string.oat_sms_message_error_feature_not_found), featureName), null, null);
+        sendReply(context, phoneNumber, ReplyTemplates.render(context, R.string.oat_sms_message_error_feature_not_found, featureName), true);
     }
 
     /**
@@ -79,8 +110,22 @@ public class SMSCom {
         ensureNotNull(context, "Application Context");
         ensurePhoneNumberIsValid(phoneNumber, "phone number");
 
-        SmsManager smsManager = fetchSMSManager();
-        smsManager.sendTextMessage(phoneNumber, null, String.format(context.getString(R.string.oat_sms_message_error_invalid_password)), null, null);
+        sendReply(context, phoneNumber, ReplyTemplates.fetchText(context, R.string.oat_sms_message_error_invalid_password), false);
+    }
+
+    /**
+     * Reply that the requested feature failed unexpectedly
+     *
+     * @param context     the {@link Context} of the Application
+     * @param phoneNumber the phone number that requested the feature
+     * @param featureName the name of the feature that failed
+     */
+    public static void replyErrorSMS_FeatureFailed(Context context, String phoneNumber, String featureName) {
+        ensureNotNull(context, "Application Context");
+        ensurePhoneNumberIsValid(phoneNumber, "target phone number");
+        ensureStringIsValid(featureName, "name of failed feature");
+
+        sendReply(context, phoneNumber, ReplyTemplates.render(context, R.string.oat_sms_message_error_feature_failed, featureName), true);
     }
 
     /**
@@ -95,9 +140,7 @@ public class SMSCom {
         ensureStringIsValid(feature, "feature name");
         ensurePhoneNumberIsValid(phoneNumber, "target phone number");
 
-        SmsManager smsManager = fetchSMSManager();
-        sendDeletePasswordHint(context, phoneNumber, smsManager);
-        smsManager.sendTextMessage(phoneNumber, null, String.format(context.getString(R.string.oat_sms_message_error_permission_not_granted), feature), null, null);
+        sendReply(context, phoneNumber, ReplyTemplates.render(context, R.string.oat_sms_message_error_permission_not_granted, feature), true);
     }
 
     /**
@@ -112,9 +155,68 @@ public class SMSCom {
         ensurePhoneNumberIsValid(phoneNumber, "target phone number");
         ensureNotNull(location, "current location");
 
-        SmsManager smsManager = fetchSMSManager();
-        sendDeletePasswordHint(context, phoneNumber, smsManager);
-        smsManager.sendTextMessage(phoneNumber, null, String.format(context.getString(R.string.oat_sms_message_send_gps_position), location.getLatitude(), location.getLongitude()), null, null);
+        String latitude = ReplyEncoder.formatCoordinate(location.getLatitude());
+        String longitude = ReplyEncoder.formatCoordinate(location.getLongitude());
+        sendCriticalReply(context, phoneNumber, ReplyTemplates.render(context, R.string.oat_sms_message_send_gps_position, latitude, longitude),
+                ReplyTemplates.render(context, R.string.oat_sms_message_send_gps_position_compact, latitude, longitude));
+    }
+
+    /**
+     * Reply with the nonce of a new command session
+     *
+     * @param context       the {@link Context} of the Application
+     * @param phoneNumber   the phone number the session was opened for
+     * @param nonce         the nonce of the session
+     * @param sessionMillis the time in milliseconds the session is valid for
+     */
+    public static void replySessionOpened(Context context, String phoneNumber, String nonce, long sessionMillis) {
+        ensureNotNull(context, "Application Context");
+        ensurePhoneNumberIsValid(phoneNumber, "target phone number");
+        ensureStringIsValid(nonce, "session nonce");
+
+        sendReply(context, phoneNumber, ReplyTemplates.render(context, R.string.oat_sms_message_session_opened, nonce, sessionMillis / 60000), true);
+    }
+
+    /**
+     * Reply with a confirmation, that the command session was closed
+     *
+     * @param context     the {@link Context} of the Application
+     * @param phoneNumber the target phone number
+     */
+    public static void replySessionClosed(Context context, String phoneNumber) {
+        ensureNotNull(context, "Application Context");
+        ensurePhoneNumberIsValid(phoneNumber, "target phone number");
+
+        sendReply(context, phoneNumber, ReplyTemplates.fetchText(context, R.string.oat_sms_message_session_closed), true);
+    }
+
+    /**
+     * Reply with a confirmation, that the data of the App was wiped
+     *
+     * @param context      the {@link Context} of the Application
+     * @param phoneNumber  the target phone number
+     * @param factoryReset true if the device is about to be reset to its factory settings
+     */
+    public static void replyDataWiped(Context context, String phoneNumber, boolean factoryReset) {
+        ensureNotNull(context, "Application Context");
+        ensurePhoneNumberIsValid(phoneNumber, "target phone number");
+
+        // the password is gone, so the reminder to delete it is not needed anymore
+        sendReply(context, phoneNumber, ReplyTemplates.fetchText(context, factoryReset ? R.string.oat_sms_message_send_data_wiped_factory_reset : R.string.oat_sms_message_send_data_wiped), false);
+    }
+
+    /**
+     * Reply that the data of the App could not be wiped securely, as some of it was not encrypted or the key could not be destroyed
+     *
+     * @param context      the {@link Context} of the Application
+     * @param phoneNumber  the target phone number
+     * @param factoryReset true if the device will be reset to its factory settings
+     */
+    public static void replyErrorSMS_WipeIncomplete(Context context, String phoneNumber, boolean factoryReset) {
+        ensureNotNull(context, "Application Context");
+        ensurePhoneNumberIsValid(phoneNumber, "target phone number");
+
+        sendReply(context, phoneNumber, ReplyTemplates.fetchText(context, factoryReset ? R.string.oat_sms_message_error_wipe_incomplete_factory_reset : R.string.oat_sms_message_error_wipe_incomplete), false);
     }
 
     /**
@@ -127,9 +229,8 @@ public class SMSCom {
         ensureNotNull(context, "Application Context");
         ensurePhoneNumberIsValid(phoneNumber, "target phone number");
 
-        SmsManager smsManager = fetchSMSManager();
-        sendDeletePasswordHint(context, phoneNumber, smsManager);
-        smsManager.sendTextMessage(phoneNumber, null, context.getString(R.string.oat_sms_message_send_lockdown_triggered), null, null);
+        sendCriticalReply(context, phoneNumber, ReplyTemplates.fetchText(context, R.string.oat_sms_message_send_lockdown_triggered),
+                ReplyTemplates.fetchText(context, R.string.oat_sms_message_send_lockdown_triggered_compact));
     }
 
     /**
@@ -142,66 +243,170 @@ public class SMSCom {
         ensureNotNull(context, "Application Context");
         ensurePhoneNumberIsValid(phoneNumber, "target phone number");
 
-        SmsManager smsManager = fetchSMSManager();
-        sendDeletePasswordHint(context, phoneNumber, smsManager);
-        smsManager.sendTextMessage(phoneNumber, null, context.getString(R.string.oat_sms_message_send_lockdown_lifted), null, null);
+        String text = ReplyTemplates.fetchText(context, R.string.oat_sms_message_send_lockdown_lifted);
+        sendCriticalReply(context, phoneNumber, text, text);
     }
 
     /**
-     * Send the picture that was taken
+     * Send the pictures that were taken, all pictures are sent in one MMS
      *
-     * @param context     the {@link Context} of the Application
-     * @param phoneNumber the target phone number
-     * @param imageUri    the {@link Uri} of the picture to be sent
+     * @param context        the {@link Context} of the Application
+     * @param phoneNumber    the target phone number
+     * @param subscriptionId the id of the SIM subscription the request for the pictures arrived on
+     * @param pictures       the JPEG files of the pictures to be sent
      */
-    public static void replyPhotoTaken(Context context, String phoneNumber, Uri imageUri) {
+    public static void replyPhotoTaken(Context context, String phoneNumber, int subscriptionId, List<File> pictures) {
         ensureNotNull(context, "Application Context");
         ensurePhoneNumberIsValid(phoneNumber, "phoneNumber");
-        ensureNotNull(imageUri, "the URI of the image taken by the photo trap");
+        ensureNotNull(pictures, "the pictures that were taken");
 
-        SmsManager smsManager = fetchSMSManager();
-        sendDeletePasswordHint(context, phoneNumber, smsManager);
-        smsManager.sendTextMessage(phoneNumber, null, context.getString(R.string.oat_sms_message_send_photo_taken), null, null);
-        smsManager.sendMultimediaMessage(context, imageUri, phoneNumber, null, null);
+        sendReply(context, phoneNumber, subscriptionId, ReplyTemplates.fetchText(context, R.string.oat_sms_message_send_photo_taken), true);
+        sendPictures(context, phoneNumber, subscriptionId, pictures);
     }
 
     /**
-     * Send the picture that was taken
+     * Send the pictures that were taken by the photo trap, all pictures are sent in one MMS
      *
-     * @param context     the{@link Context} of the Application
-     * @param phoneNumber the target phone number
-     * @param imageUri    the {@link Uri} of the picture to be sent
+     * @param context        the{@link Context} of the Application
+     * @param phoneNumber    the target phone number
+     * @param subscriptionId the id of the SIM subscription the photo trap was set up from
+     * @param pictures       the JPEG files of the pictures to be sent
      */
-    public static void replyPhotoTrapTriggered(Context context, String phoneNumber, Uri imageUri) {
+    public static void replyPhotoTrapTriggered(Context context, String phoneNumber, int subscriptionId, List<File> pictures) {
         ensureNotNull(context, "Application Context");
         ensurePhoneNumberIsValid(phoneNumber, "phoneNumber");
-        ensureNotNull(imageUri, "the URI of the image taken by the photo trap");
+        ensureNotNull(pictures, "the pictures taken by the photo trap");
 
-        SmsManager smsManager = fetchSMSManager();
-        sendDeletePasswordHint(context, phoneNumber, smsManager);
-        smsManager.sendTextMessage(phoneNumber, null, context.getString(R.string.oat_sms_message_send_photo_trap_triggered), null, null);
-        smsManager.sendMultimediaMessage(context, imageUri, phoneNumber, null, null);
+        sendReply(context, phoneNumber, subscriptionId, ReplyTemplates.fetchText(context, R.string.oat_sms_message_send_photo_trap_triggered), true);
+        sendPictures(context, phoneNumber, subscriptionId, pictures);
     }
 
     /**
-     * @return the SMSManager associated with the default Subscription or null, if no valid subscription could be found
+     * Packs the pictures into a PDU and hands it to the MMS service of the platform,
+     * the PDU is shared through the FileProvider of the App, as the MMS service cannot read the private files of the App
      */
-    private static SmsManager fetchSMSManager() {
-        int subscriptionID = SmsManager.getDefaultSmsSubscriptionId();
-        if (!(subscriptionID == SubscriptionManager.INVALID_SUBSCRIPTION_ID)) {
-            return SmsManager.getSmsManagerForSubscriptionId(subscriptionID);
+    private static void sendPictures(Context context, String phoneNumber, int subscriptionId, List<File> pictures) {
+        File dir = new File(context.getCacheDir(), MMS_DIR);
+        if (!dir.isDirectory() && !dir.mkdirs())
+            throw OATApplicationException.forOther("SMSCom", "MMS directory could not be created!");
+        File[] old = dir.listFiles();
+        if (old != null) {
+            for (File file : old) {
+                if (System.currentTimeMillis() - file.lastModified() > MMS_RETENTION_MILLIS) file.delete();
+            }
+        }
+
+        String transactionId = "OAT" + Long.toHexString(System.currentTimeMillis()) + "-" + MMS_COUNTER.incrementAndGet();
+        File pdu = new File(dir, transactionId + PDU_SUFFIX);
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(pdu))) {
+            MmsPdu.writeSendRequest(out, transactionId, phoneNumber, pictures);
+        } catch (IOException e) {
+            pdu.delete();
+            throw OATApplicationException.forLibraryError("java.io.FileOutputStream", e);
+        }
+
+        // the MMS service reads the PDU after it was handed over, it is deleted once the service reported the result
+        Intent sent = new Intent(ACTION_MMS_SENT, Uri.parse("oat-mms://" + transactionId), context, SmsSentReceiver.class);
+        sent.putExtra(EXTRA_PDU, pdu.getName());
+        PendingIntent sentIntent = PendingIntent.getBroadcast(context, 0, sent, PendingIntent.FLAG_ONE_SHOT);
+        Uri uri = FileProvider.getUriForFile(context, context.getPackageName() + MMS_AUTHORITY_SUFFIX, pdu);
+        try {
+            fetchSMSManager(context, ReplyRoutes.resolve(phoneNumber, subscriptionId)).sendMultimediaMessage(context, uri, null, null, sentIntent);
+        } catch (RuntimeException e) {
+            pdu.delete();
+            throw e;
         }
-        throw OATApplicationException.forNoSMSSubscriptionFound();
     }
 
     /**
-     * Sends the default Message to remind the users that they should delete the message containing their password
+     * Deletes the PDU of a MMS once the MMS service reported the result of sending it, whether it was sent or not
+     *
+     * @param context the {@link Context} of the Application
+     * @param pduName the name of the PDU, as passed in {@link #EXTRA_PDU}
+     */
+    public static void onMultimediaMessageSent(Context context, String pduName) {
+        ensureNotNull(context, "Application Context");
+        // only PDUs in the MMS directory are deleted
+        if (pduName == null || !pduName.endsWith(PDU_SUFFIX) || pduName.indexOf(File.separatorChar) >= 0) return;
+
+        new File(new File(context.getCacheDir(), MMS_DIR), pduName).delete();
+    }
+
+    /**
+     * Sends a text reply from the subscription of the command the calling thread handles, see {@link ReplyRoutes#current(String)}
+     *
+     * @param context     the {@link Context} of the Application
+     * @param phoneNumber the target phone number
+     * @param text        the text of the reply
+     * @param withHint    true if the reminder to delete the password should be added to the reply
+     */
+    private static void sendReply(Context context, String phoneNumber, String text, boolean withHint) {
+        sendReply(context, phoneNumber, ReplyRoutes.current(phoneNumber), text, withHint);
+    }
+
+    /**
+     * Sends a text reply. If the calling thread replies for a feature of an open {@link ReplyBatch}, the reply is added to the batch instead.
+     * Replies are sent through the {@link OutboundQueue}, which merges them with the reminder to delete the password,
+     * and the {@link SmsOutbox}, which retries them until they were sent.
+     *
+     * @param context        the {@link Context} of the Application
+     * @param phoneNumber    the target phone number
+     * @param subscriptionId the id of the SIM subscription the reply is sent from
+     * @param text           the text of the reply
+     * @param withHint       true if the reminder to delete the password should be added to the reply
+     */
+    private static void sendReply(Context context, String phoneNumber, int subscriptionId, String text, boolean withHint) {
+        text = ENCODER.encode(text);
+        if (ReplyBatch.collect(phoneNumber, text)) return;
+
+        fetchOutboundQueue(context).enqueue(phoneNumber, subscriptionId, text, withHint ? ReplyTemplates.fetchText(context, R.string.oat_sms_message_hint_delete_password) : null);
+    }
+
+    /**
+     * Sends a text reply that has to arrive in a single SMS, like {@link #sendReply(Context, String, String, boolean)} does.
+     * The compact text is sent if the full text does not fit into a single SMS.
      *
      * @param context     the {@link Context} of the Application
      * @param phoneNumber the target phone number
-     * @param smsManager  the {@link SmsManager} to be used
+     * @param text        the text of the reply
+     * @param compactText the shorter version of the reply
+     */
+    private static void sendCriticalReply(Context context, String phoneNumber, String text, String compactText) {
+        text = ENCODER.encodeCritical(text, compactText);
+        if (ReplyBatch.collect(phoneNumber, text)) return;
+
+        fetchOutboundQueue(context).enqueue(phoneNumber, ReplyRoutes.current(phoneNumber), text, ReplyTemplates.fetchText(context, R.string.oat_sms_message_hint_delete_password), true);
+    }
+
+    /**
+     * Sends the consolidated reply of a {@link ReplyBatch}
+     *
+     * @param context        the {@link Context} of the Application
+     * @param phoneNumber    the target phone number
+     * @param subscriptionId the id of the SIM subscription the command of the batch arrived on
+     * @param text           the consolidated text of all replies
+     */
+    static void sendBatchReply(Context context, String phoneNumber, int subscriptionId, String text) {
+        fetchOutboundQueue(context).enqueue(phoneNumber, subscriptionId, text, ReplyTemplates.fetchText(context, R.string.oat_sms_message_hint_delete_password));
+    }
+
+    /**
+     * @param context the {@link Context} of the Application
+     * @return the {@link OutboundQueue} used for all text replies
+     */
+    private static synchronized OutboundQueue fetchOutboundQueue(Context context) {
+        if (outboundQueue == null)
+            outboundQueue = new OutboundQueue(SmsOutbox.getInstance(context)::send, Executors.newSingleThreadScheduledExecutor(), SystemClock::elapsedRealtime, ENCODER,
+                    ReplyTemplates.fetchText(context, R.string.oat_sms_message_prefix), COALESCE_MILLIS, HINT_WINDOW_MILLIS);
+        return outboundQueue;
+    }
+
+    /**
+     * @param context        the {@link Context} of the Application
+     * @param subscriptionId the id of the subscription the message should be sent from, see {@link ReplyRoutes}
+     * @return the SMSManager associated with the subscription, or with the default Subscription if the subscription is not available
      */
-    private static void sendDeletePasswordHint(Context context, String phoneNumber, SmsManager smsManager) {
-        smsManager.sendTextMessage(phoneNumber, null, context.getString(R.string.oat_sms_message_hint_delete_password), null, null);
+    static SmsManager fetchSMSManager(Context context, int subscriptionId) {
+        return SmsManagerCache.fetchPreferred(context, subscriptionId);
     }
 }
@@ -0,0 +1,165 @@
+package at.tacticaldevc.oat.utils;
+
+import android.os.SystemClock;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+
+import static at.tacticaldevc.oat.utils.Ensurer.ensureNotNull;
+import static at.tacticaldevc.oat.utils.Ensurer.ensureStringIsValid;
+
+/**
+ * Manages short-lived command sessions of trusted contacts.
+ * After a contact authenticated with the password, a session nonce is issued that can be sent instead of the password
+ * until the session expires or is closed. A nonce is only valid for the phone number it was issued to,
+ * callers pass the number normalized by the {@link TrustedContactIndex} so that a session does not depend on the format the network delivers.
+ * Sessions are kept in memory only, so they end when the process is stopped.
+ *
+ * @version 0.1
+ */
+public class SessionManager {
+
+    public static final long DEFAULT_SESSION_MILLIS = 10 * 60 * 1000;
+
+    // the alphabet leaves out characters that are easily confused, the nonce is matched ignoring case
+    private static final char[] NONCE_ALPHABET = "23456789abcdefghjkmnpqrstuvwxyz".toCharArray();
+    private static final int NONCE_LENGTH = 8;
+    private static final int MAX_SESSIONS = 16;
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    private static SessionManager instance;
+
+    private final Clock clock;
+    private final SecureRandom random;
+    private final long sessionMillis;
+    private final Map<String, Session> sessions = new HashMap<>();
+
+    /**
+     * Creates a new SessionManager
+     *
+     * @param clock         the {@link Clock} used to expire sessions
+     * @param random        the source of the session nonces
+     * @param sessionMillis the time in milliseconds a session is valid for
+     */
+    SessionManager(Clock clock, SecureRandom random, long sessionMillis) {
+        this.clock = ensureNotNull(clock, "clock");
+        this.random = ensureNotNull(random, "random");
+        if (sessionMillis <= 0) throw new IllegalArgumentException("sessionMillis has to be positive!");
+        this.sessionMillis = sessionMillis;
+    }
+
+    /**
+     * @return the SessionManager of the Application
+     */
+    public static synchronized SessionManager getInstance() {
+        if (instance == null)
+            instance = new SessionManager(SystemClock::elapsedRealtime, new SecureRandom(), DEFAULT_SESSION_MILLIS);
+        return instance;
+    }
+
+    /**
+     * Opens a new session for a phone number, a session that is still open for the phone number is replaced
+     *
+     * @param phoneNumber the phone number that authenticated with the password
+     * @return the nonce of the new session
+     */
+    public synchronized String open(String phoneNumber) {
+        ensureStringIsValid(phoneNumber, "phone number");
+
+        long now = clock.now();
+        purge(now);
+        // the session that expires first is dropped if too many sessions are open
+        if (sessions.size() >= MAX_SESSIONS && !sessions.containsKey(phoneNumber)) {
+            String oldest = null;
+            long oldestExpiry = Long.MAX_VALUE;
+            for (Map.Entry<String, Session> entry : sessions.entrySet()) {
+                if (entry.getValue().expiresAt < oldestExpiry) {
+                    oldest = entry.getKey();
+                    oldestExpiry = entry.getValue().expiresAt;
+                }
+            }
+            sessions.remove(oldest);
+        }
+
+        char[] nonce = new char[NONCE_LENGTH];
+        for (int i = 0; i < nonce.length; i++) {
+            nonce[i] = NONCE_ALPHABET[random.nextInt(NONCE_ALPHABET.length)];
+        }
+        String result = new String(nonce);
+        sessions.put(phoneNumber, new Session(result.getBytes(CHARSET), now + sessionMillis));
+        return result;
+    }
+
+    /**
+     * Checks if a nonce belongs to the open session of a phone number
+     *
+     * @param phoneNumber the phone number that sent the command
+     * @param nonce       the nonce that was sent instead of the password
+     * @return true if the phone number has an open session with this nonce
+     */
+    public synchronized boolean verify(String phoneNumber, String nonce) {
+        if (phoneNumber == null || nonce == null || nonce.length() != NONCE_LENGTH) return false;
+
+        Session session = sessions.get(phoneNumber);
+        if (session == null) return false;
+        if (clock.now() >= session.expiresAt) {
+            sessions.remove(phoneNumber);
+            return false;
+        }
+        return MessageDigest.isEqual(session.nonce, nonce.toLowerCase(Locale.ROOT).getBytes(CHARSET));
+    }
+
+    /**
+     * Closes the session of a phone number
+     *
+     * @param phoneNumber the phone number whose session should be closed
+     * @return true if a session was open
+     */
+    public synchronized boolean close(String phoneNumber) {
+        Session session = sessions.remove(phoneNumber);
+        return session != null && clock.now() < session.expiresAt;
+    }
+
+    /**
+     * Closes all sessions
+     */
+    public synchronized void closeAll() {
+        sessions.clear();
+    }
+
+    /**
+     * @return the time in milliseconds a session is valid for
+     */
+    public long getSessionMillis() {
+        return sessionMillis;
+    }
+
+    private void purge(long now) {
+        Iterator<Session> it = sessions.values().iterator();
+        while (it.hasNext()) {
+            if (now >= it.next().expiresAt) it.remove();
+        }
+    }
+
+    /**
+     * Provides the current time in milliseconds
+     */
+    interface Clock {
+        long now();
+    }
+
+    private static class Session {
+        private final byte[] nonce;
+        private final long expiresAt;
+
+        Session(byte[] nonce, long expiresAt) {
+            this.nonce = nonce;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
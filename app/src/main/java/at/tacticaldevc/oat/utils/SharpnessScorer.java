@@ -0,0 +1,77 @@
+package at.tacticaldevc.oat.utils;
+
+import java.nio.ByteBuffer;
+
+import static at.tacticaldevc.oat.utils.Ensurer.ensureNotNull;
+
+/**
+ * Scores how sharp a picture is by the variance of the Laplacian of its luma.
+ * Edges produce large responses of the Laplacian, motion blur smears them out, so a blurred frame scores lower than a sharp one.
+ * Only every second pixel of every second row is evaluated, which is enough to compare the frames of a burst.
+ * The luma is read row by row into small buffers, so the buffer of an image is never copied as a whole.
+ *
+ * @version 0.1
+ */
+public class SharpnessScorer {
+
+    static final int DEFAULT_STEP = 2;
+
+    /**
+     * Scores the luma plane of a picture
+     *
+     * @param luma      the luma plane, one byte per pixel, its position is not changed
+     * @param width     the width of the picture
+     * @param height    the height of the picture
+     * @param rowStride the number of bytes between the starts of two rows
+     * @return the sharpness, 0 for a picture without any edges
+     */
+    public static double score(ByteBuffer luma, int width, int height, int rowStride) {
+        return score(luma, width, height, rowStride, DEFAULT_STEP);
+    }
+
+    /**
+     * Scores the luma plane of a picture
+     *
+     * @param luma      the luma plane, one byte per pixel, its position is not changed
+     * @param width     the width of the picture
+     * @param height    the height of the picture
+     * @param rowStride the number of bytes between the starts of two rows
+     * @param step      the distance between two evaluated pixels in both directions
+     * @return the sharpness, 0 for a picture without any edges
+     */
+    static double score(ByteBuffer luma, int width, int height, int rowStride, int step) {
+        ensureNotNull(luma, "luma");
+        if (width < 3 || height < 3 || step < 1 || rowStride < width)
+            throw new IllegalArgumentException("invalid picture dimensions!");
+        if (luma.remaining() < (long) rowStride * (height - 1) + width)
+            throw new IllegalArgumentException("the luma plane is too small!");
+
+        ByteBuffer rows = luma.duplicate();
+        int start = rows.position();
+        byte[] above = new byte[width];
+        byte[] row = new byte[width];
+        byte[] below = new byte[width];
+        long sum = 0;
+        long sumOfSquares = 0;
+        long count = 0;
+        for (int y = 1; y < height - 1; y += step) {
+            readRow(rows, start + (y - 1) * rowStride, above);
+            readRow(rows, start + y * rowStride, row);
+            readRow(rows, start + (y + 1) * rowStride, below);
+            for (int x = 1; x < width - 1; x += step) {
+                int laplacian = 4 * (row[x] & 0xFF) - (row[x - 1] & 0xFF) - (row[x + 1] & 0xFF) - (above[x] & 0xFF) - (below[x] & 0xFF);
+                sum += laplacian;
+                sumOfSquares += laplacian * laplacian;
+                count++;
+            }
+        }
+
+        double mean = sum / (double) count;
+        return sumOfSquares / (double) count - mean * mean;
+    }
+
+    private static void readRow(ByteBuffer buffer, int offset, byte[] row) {
+        buffer.position(offset);
+        buffer.get(row);
+    }
+}
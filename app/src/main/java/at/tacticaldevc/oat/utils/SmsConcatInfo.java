@@ -0,0 +1,80 @@
+package at.tacticaldevc.oat.utils;
+
+/**
+ * The concatenation information of one segment of a multipart SMS
+ * The information is read from the user data header of a 3GPP SMS-DELIVER PDU (information elements 0x00 and 0x08).
+ *
+ * @version 0.1
+ */
+public class SmsConcatInfo {
+    private static final String FORMAT_3GPP = "3gpp";
+    private static final int IEI_CONCAT_8BIT_REFERENCE = 0x00;
+    private static final int IEI_CONCAT_16BIT_REFERENCE = 0x08;
+
+    private final int reference;
+    private final int totalParts;
+    private final int sequenceNumber;
+
+    SmsConcatInfo(int reference, int totalParts, int sequenceNumber) {
+        this.reference = reference;
+        this.totalParts = totalParts;
+        this.sequenceNumber = sequenceNumber;
+    }
+
+    /**
+     * Reads the concatenation information of a PDU
+     *
+     * @param pdu    the raw PDU including the SMSC address, as returned by {@link android.telephony.SmsMessage#getPdu()}
+     * @param format the format of the PDU ("3gpp" or "3gpp2"), null is treated as "3gpp"
+     * @return the {@link SmsConcatInfo} or null if the PDU is not part of a multipart SMS or could not be read
+     */
+    public static SmsConcatInfo fromPdu(byte[] pdu, String format) {
+        if (pdu == null || (format != null && !FORMAT_3GPP.equals(format))) return null;
+
+        try {
+            int i = 0;
+            i += 1 + (pdu[i] & 0xff); // SMSC address
+            int firstOctet = pdu[i++] & 0xff;
+            if ((firstOctet & 0x03) != 0) return null; // not an SMS-DELIVER
+            if ((firstOctet & 0x40) == 0) return null; // no user data header
+            int addressDigits = pdu[i++] & 0xff;
+            i += 1 + (addressDigits + 1) / 2; // type of address and originating address
+            i += 1 + 1 + 7 + 1; // protocol identifier, data coding scheme, service centre time stamp and user data length
+
+            int headerEnd = i + 1 + (pdu[i] & 0xff);
+            i++;
+            if (headerEnd > pdu.length) return null;
+            while (i + 2 <= headerEnd) {
+                int iei = pdu[i++] & 0xff;
+                int length = pdu[i++] & 0xff;
+                if (i + length > headerEnd) return null;
+                if (iei == IEI_CONCAT_8BIT_REFERENCE && length == 3)
+                    return create(pdu[i] & 0xff, pdu[i + 1] & 0xff, pdu[i + 2] & 0xff);
+                if (iei == IEI_CONCAT_16BIT_REFERENCE && length == 4)
+                    return create(((pdu[i] & 0xff) << 8) | (pdu[i + 1] & 0xff), pdu[i + 2] & 0xff, pdu[i + 3] & 0xff);
+                i += length;
+            }
+            return null;
+        } catch (ArrayIndexOutOfBoundsException ex) {
+            return null;
+        }
+    }
+
+    private static SmsConcatInfo create(int reference, int totalParts, int sequenceNumber) {
+        // sequence numbers start at 1, invalid headers are treated like single part messages
+        if (totalParts < 2 || sequenceNumber < 1 || sequenceNumber > totalParts) return null;
+        return new SmsConcatInfo(reference, totalParts, sequenceNumber);
+    }
+
+    public int getReference() {
+        return reference;
+    }
+
+    public int getTotalParts() {
+        return totalParts;
+    }
+
+    public int getSequenceNumber() {
+        return sequenceNumber;
+    }
+}
@@ -0,0 +1,155 @@
+package at.tacticaldevc.oat.utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import static at.tacticaldevc.oat.utils.Ensurer.ensureNotNull;
+
+/**
+ * Drops SMS segments that the network delivered more than once, so a command is not executed twice.
+ * A segment is identified by its sender, the service center timestamp of its PDU, its position in a multipart message and a CRC32 of its body.
+ * The keys of the most recent segments are kept in a ring of primitive longs, and the newest of them are persisted,
+ * so duplicates are also dropped after the process was restarted. They are persisted in a section of the {@link ConfigStore}.
+ *
+ * @version 0.2
+ */
+public class SmsDeduplicator {
+
+    public static final String METRIC_DUPLICATES = "sms.duplicates";
+
+    static final String DOCUMENT_NAME_DEDUPE = "oat-dedupe";
+    private static final String KEY_WINDOW = "window";
+    private static final String SEPARATOR = ",";
+    private static final int CAPACITY = 64;
+    private static final int PERSISTED_KEYS = 16;
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    private static SmsDeduplicator instance;
+
+    private final long[] keys;
+    private final int persistedKeys;
+    private final Store store;
+    private int next = 0;
+    private int size = 0;
+
+    /**
+     * Creates a new SmsDeduplicator
+     *
+     * @param capacity      the number of segments that are remembered
+     * @param persistedKeys the number of the newest segments that are persisted
+     * @param store         the {@link Store} the newest segments are persisted to
+     */
+    SmsDeduplicator(int capacity, int persistedKeys, Store store) {
+        if (capacity < 1 || persistedKeys < 0 || persistedKeys > capacity)
+            throw new IllegalArgumentException("invalid capacity!");
+        this.keys = new long[capacity];
+        this.persistedKeys = persistedKeys;
+        this.store = ensureNotNull(store, "store");
+    }
+
+    /**
+     * @param context the {@link Context} of the Application
+     * @return the SmsDeduplicator of the Application with the persisted segments
+     */
+    public static synchronized SmsDeduplicator getInstance(Context context) {
+        ensureNotNull(context, "Application Context");
+        if (instance == null) {
+            Context appContext = context.getApplicationContext();
+            // older versions kept the segments in a plain XML document
+            final SharedPreferences prefs = ConfigStore.getInstance(appContext).getMigratedSection(appContext, DOCUMENT_NAME_DEDUPE);
+            instance = new SmsDeduplicator(CAPACITY, PERSISTED_KEYS, window -> prefs.edit().putString(KEY_WINDOW, window).apply());
+            instance.restore(prefs.getString(KEY_WINDOW, null));
+        }
+        return instance;
+    }
+
+    /**
+     * Checks if a segment was already received and remembers it if it was not
+     *
+     * @param sender    the originating address
+     * @param timestamp the service center timestamp of the PDU
+     * @param info      the {@link SmsConcatInfo} of the segment or null if it is not part of a multipart message
+     * @param body      the text of the segment
+     * @return true if the segment is new, false if it is a duplicate and has to be dropped
+     */
+    public synchronized boolean offer(String sender, long timestamp, SmsConcatInfo info, String body) {
+        long key = computeKey(sender, timestamp, info, body);
+        for (int i = 0; i < size; i++) {
+            if (keys[i] == key) {
+                Metrics.increment(METRIC_DUPLICATES);
+                return false;
+            }
+        }
+
+        keys[next] = key;
+        next = (next + 1) % keys.length;
+        if (size < keys.length) size++;
+        if (persistedKeys > 0) store.save(serialize());
+        return true;
+    }
+
+    /**
+     * Forgets all segments, the {@link ConfigStore} section they are persisted in has to be wiped by the caller
+     */
+    public synchronized void clear() {
+        Arrays.fill(keys, 0);
+        next = 0;
+        size = 0;
+    }
+
+    /**
+     * @return the newest keys, oldest first
+     */
+    synchronized String serialize() {
+        int count = Math.min(size, persistedKeys);
+        StringBuilder sb = new StringBuilder(count * 17);
+        for (int i = count; i > 0; i--) {
+            if (sb.length() > 0) sb.append(SEPARATOR);
+            sb.append(Long.toString(keys[(next - i + keys.length) % keys.length], 16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Restores the keys that were written by {@link #serialize()}, keys that cannot be read are skipped
+     *
+     * @param serialized the serialized keys or null
+     */
+    synchronized void restore(String serialized) {
+        if (serialized == null || serialized.isEmpty()) return;
+
+        for (String value : serialized.split(SEPARATOR)) {
+            try {
+                keys[next] = Long.parseLong(value, 16);
+            } catch (NumberFormatException ex) {
+                continue;
+            }
+            next = (next + 1) % keys.length;
+            if (size < keys.length) size++;
+        }
+    }
+
+    static long computeKey(String sender, long timestamp, SmsConcatInfo info, String body) {
+        CRC32 crc = new CRC32();
+        crc.update(String.valueOf(body).getBytes(CHARSET));
+
+        int hash = String.valueOf(sender).hashCode();
+        hash = 31 * hash + (int) (timestamp ^ (timestamp >>> 32));
+        if (info != null) {
+            hash = 31 * hash + info.getReference();
+            hash = 31 * hash + info.getSequenceNumber();
+        }
+        return ((long) hash << 32) | crc.getValue();
+    }
+
+    /**
+     * Persists the newest keys
+     */
+    interface Store {
+        void save(String window);
+    }
+}
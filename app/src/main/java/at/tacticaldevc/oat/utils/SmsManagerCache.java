@@ -0,0 +1,124 @@
+package at.tacticaldevc.oat.utils;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.telephony.SmsManager;
+import android.telephony.SubscriptionManager;
+import android.util.SparseArray;
+
+import at.tacticaldevc.oat.exceptions.OATApplicationException;
+
+import static at.tacticaldevc.oat.utils.Ensurer.ensureNotNull;
+
+/**
+ * Caches the {@link SmsManager}s of the subscriptions of the device and the id of the default SMS subscription.
+ * The cache is cleared whenever the user selects a different default SMS subscription.
+ *
+ * @version 0.2
+ */
+public class SmsManagerCache {
+
+    // broadcast by Android versions prior to 8.0
+    private static final String ACTION_DEFAULT_SMS_SUBSCRIPTION_CHANGED_LEGACY = "android.intent.action.ACTION_DEFAULT_SMS_SUBSCRIPTION_CHANGED";
+
+    private static final SparseArray<SmsManager> MANAGERS = new SparseArray<>();
+    private static int defaultSubscriptionId = SubscriptionManager.INVALID_SUBSCRIPTION_ID;
+    private static BroadcastReceiver subscriptionChangedReceiver;
+
+    /**
+     * @param context the {@link Context} of the Application
+     * @return the {@link SmsManager} of the default SMS subscription
+     * @throws OATApplicationException if no valid subscription could be found
+     */
+    public static SmsManager fetchDefault(Context context) {
+        ensureNotNull(context, "Application Context");
+
+        synchronized (MANAGERS) {
+            registerReceiver(context);
+            if (defaultSubscriptionId == SubscriptionManager.INVALID_SUBSCRIPTION_ID)
+                defaultSubscriptionId = SmsManager.getDefaultSmsSubscriptionId();
+            if (defaultSubscriptionId == SubscriptionManager.INVALID_SUBSCRIPTION_ID)
+                throw OATApplicationException.forNoSMSSubscriptionFound();
+            return fetchCached(defaultSubscriptionId);
+        }
+    }
+
+    /**
+     * Looks up the {@link SmsManager} to send a message from a subscription.
+     * If the subscription is not active, the default SMS subscription is used, and if there is none, the default {@link SmsManager}.
+     *
+     * @param context        the {@link Context} of the Application
+     * @param subscriptionId the id of the preferred subscription or {@link SubscriptionManager#INVALID_SUBSCRIPTION_ID} to use the default
+     * @return the {@link SmsManager} to be used
+     */
+    public static SmsManager fetchPreferred(Context context, int subscriptionId) {
+        if (subscriptionId != SubscriptionManager.INVALID_SUBSCRIPTION_ID && isActive(context, subscriptionId))
+            return fetch(context, subscriptionId);
+        try {
+            return fetchDefault(context);
+        } catch (OATApplicationException ex) {
+            return SmsManager.getDefault();
+        }
+    }
+
+    /**
+     * @param context        the {@link Context} of the Application
+     * @param subscriptionId the id of the subscription
+     * @return the {@link SmsManager} of the subscription
+     * @throws OATApplicationException if the subscription id is not valid
+     */
+    public static SmsManager fetch(Context context, int subscriptionId) {
+        ensureNotNull(context, "Application Context");
+        if (subscriptionId == SubscriptionManager.INVALID_SUBSCRIPTION_ID)
+            throw OATApplicationException.forNoSMSSubscriptionFound();
+
+        synchronized (MANAGERS) {
+            registerReceiver(context);
+            return fetchCached(subscriptionId);
+        }
+    }
+
+    /**
+     * Clears the cache, the {@link SmsManager}s are looked up again when they are needed the next time
+     */
+    public static void invalidate() {
+        synchronized (MANAGERS) {
+            MANAGERS.clear();
+            defaultSubscriptionId = SubscriptionManager.INVALID_SUBSCRIPTION_ID;
+        }
+    }
+
+    private static boolean isActive(Context context, int subscriptionId) {
+        try {
+            return SubscriptionManager.from(context).getActiveSubscriptionInfo(subscriptionId) != null;
+        } catch (SecurityException ex) {
+            // without READ_PHONE_STATE the subscription cannot be checked, a failed send falls back to the default
+            return true;
+        }
+    }
+
+    private static SmsManager fetchCached(int subscriptionId) {
+        SmsManager manager = MANAGERS.get(subscriptionId);
+        if (manager == null) {
+            manager = SmsManager.getSmsManagerForSubscriptionId(subscriptionId);
+            MANAGERS.put(subscriptionId, manager);
+        }
+        return manager;
+    }
+
+    private static void registerReceiver(Context context) {
+        if (subscriptionChangedReceiver != null) return;
+
+        subscriptionChangedReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                invalidate();
+            }
+        };
+        IntentFilter filter = new IntentFilter(SubscriptionManager.ACTION_DEFAULT_SMS_SUBSCRIPTION_CHANGED);
+        filter.addAction(ACTION_DEFAULT_SMS_SUBSCRIPTION_CHANGED_LEGACY);
+        context.getApplicationContext().registerReceiver(subscriptionChangedReceiver, filter);
+    }
+}
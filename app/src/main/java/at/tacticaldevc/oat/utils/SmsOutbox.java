@@ -0,0 +1,377 @@
+package at.tacticaldevc.oat.utils;
+
+import android.app.Activity;
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.telephony.PhoneStateListener;
+import android.telephony.ServiceState;
+import android.telephony.SmsManager;
+import android.telephony.SmsMessage;
+import android.telephony.TelephonyManager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import at.tacticaldevc.oat.listeners.SmsSentReceiver;
+
+import static at.tacticaldevc.oat.utils.Ensurer.ensureNotNull;
+import static at.tacticaldevc.oat.utils.Ensurer.ensureStringIsValid;
+
+/**
+ * Sends text messages and keeps them until the radio confirmed that they were sent.
+ * Pending messages are persisted in a section of the {@link ConfigStore}, so they survive process death and are encrypted like the configuration.
+ * Failed messages are retried with exponential backoff and immediately once the phone regains service.
+ * An attempt whose sent report never arrives expires after {@link #SENT_TIMEOUT_MILLIS} and counts as failed,
+ * reports of an attempt that expired are ignored.
+ * A message is marked as in flight in the same step that stores or selects it, so concurrent retries never send it twice.
+ *
+ * @version 0.5
+ */
+public class SmsOutbox {
+
+    public static final String ACTION_SENT = "at.tacticaldevc.oat.action.SMS_SENT";
+    public static final String ACTION_DELIVERED = "at.tacticaldevc.oat.action.SMS_DELIVERED";
+    public static final String ACTION_RETRY = "at.tacticaldevc.oat.action.SMS_RETRY";
+    public static final String EXTRA_ID = "at.tacticaldevc.oat.extra.ID";
+    public static final String EXTRA_CREATED_AT = "at.tacticaldevc.oat.extra.CREATED_AT";
+    public static final String EXTRA_ATTEMPT = "at.tacticaldevc.oat.extra.ATTEMPT";
+
+    // Metrics
+    public static final String METRIC_SENT = "sms.sent";
+    public static final String METRIC_FAILED_ATTEMPTS = "sms.failed_attempts";
+    public static final String METRIC_RETRIES = "sms.retries";
+    public static final String METRIC_DROPPED = "sms.dropped";
+    public static final String METRIC_DELIVERED = "sms.delivered";
+    public static final String METRIC_DELIVERY_FAILED = "sms.delivery_failed";
+    public static final String LATENCY_SENT = "sms.sent_latency";
+    public static final String LATENCY_DELIVERED = "sms.delivery_latency";
+
+    static final String DOCUMENT_NAME_OUTBOX = "oat-outbox";
+    private static final int MAX_ATTEMPTS = 8;
+    // the radio reports every part within seconds, an attempt without a report is considered lost after this time
+    static final long SENT_TIMEOUT_MILLIS = 3 * 60 * 1000;
+    // TP-Status values below 0x20 mean that the message was delivered
+    private static final int STATUS_DELIVERED_LIMIT = 0x20;
+
+    private static SmsOutbox instance;
+
+    private final Context context;
+    private final SharedPreferences prefs;
+    private final Map<Long, OutboxEntry> entries = new HashMap<>();
+    private final Map<Long, InFlight> inFlight = new HashMap<>();
+    private final AtomicLong ids = new AtomicLong(System.currentTimeMillis());
+    private PhoneStateListener serviceStateListener;
+
+    private SmsOutbox(Context context) {
+        this.context = context;
+        // older versions kept the messages in a plain XML document
+        this.prefs = ConfigStore.getInstance(context).getMigratedSection(context, DOCUMENT_NAME_OUTBOX);
+
+        for (String key : prefs.getAll().keySet()) {
+            try {
+                long id = Long.parseLong(key);
+                OutboxEntry entry = OutboxEntry.parse(id, prefs.getString(key, null));
+                if (entry != null) entries.put(id, entry);
+                else prefs.edit().remove(key).apply();
+            } catch (NumberFormatException ex) {
+                prefs.edit().remove(key).apply();
+            }
+        }
+        if (!entries.isEmpty()) scheduleRetry();
+    }
+
+    /**
+     * @param context the {@link Context} of the Application
+     * @return the SmsOutbox of the Application
+     */
+    public static synchronized SmsOutbox getInstance(Context context) {
+        ensureNotNull(context, "Application Context");
+        if (instance == null)
+            instance = new SmsOutbox(context.getApplicationContext());
+        return instance;
+    }
+
+    /**
+     * Sends a text message, messages that are too long for one SMS are split.
+     *
+     * @param recipient      the target phone number
+     * @param subscriptionId the id of the subscription the message is sent from, if it is unknown the message is sent from
+     *                       the subscription the last command of the recipient arrived on, see {@link ReplyRoutes}
+     * @param text           the text to be sent
+     */
+    public void send(String recipient, int subscriptionId, String text) {
+        ensureStringIsValid(recipient, "recipient");
+        ensureNotNull(text, "message text");
+
+        long now = System.currentTimeMillis();
+        OutboxEntry entry = new OutboxEntry(ids.incrementAndGet(), ReplyRoutes.resolve(recipient, subscriptionId), recipient, text, now, 0, now);
+        InFlight flight;
+        synchronized (this) {
+            entries.put(entry.getId(), entry);
+            persist(entry);
+            flight = reserve(entry, now);
+        }
+        attempt(entry, flight);
+    }
+
+    /**
+     * Called when the radio reports the result of sending one part of a message
+     *
+     * @param id         the id of the message
+     * @param attempt    the attempt the part was sent with
+     * @param resultCode the result code reported by the radio
+     */
+    public void onSent(long id, int attempt, int resultCode) {
+        boolean ok = resultCode == Activity.RESULT_OK;
+        OutboxEntry entry;
+        synchronized (this) {
+            entry = entries.get(id);
+            // the attempt expired and was counted as failed already
+            if (entry == null || entry.getAttempts() != attempt) return;
+
+            InFlight parts = inFlight.get(id);
+            // after process death the number of parts is unknown, the first result decides
+            if (parts != null) {
+                parts.remaining--;
+                parts.failed |= !ok;
+                if (parts.remaining > 0) return;
+                ok = !parts.failed;
+                inFlight.remove(id);
+            }
+        }
+        if (ok) complete(entry);
+        else fail(entry);
+    }
+
+    /**
+     * Called when the recipient's network reports the delivery of a message
+     *
+     * @param intent the delivery report {@link Intent}
+     */
+    public void onDelivered(Intent intent) {
+        int status = 0;
+        byte[] pdu = intent.getByteArrayExtra("pdu");
+        if (pdu != null) {
+            SmsMessage report = SmsMessage.createFromPdu(pdu, intent.getStringExtra("format"));
+            if (report != null) status = report.getStatus();
+        }
+
+        if (status < STATUS_DELIVERED_LIMIT) {
+            Metrics.increment(METRIC_DELIVERED);
+            long createdAt = intent.getLongExtra(EXTRA_CREATED_AT, 0);
+            if (createdAt > 0) Metrics.recordLatency(LATENCY_DELIVERED, System.currentTimeMillis() - createdAt);
+        } else
+            Metrics.increment(METRIC_DELIVERY_FAILED);
+    }
+
+    /**
+     * Sends all messages whose next attempt is due, attempts whose reports did not arrive in time are counted as failed first
+     *
+     * @param force true to send all pending messages regardless of their backoff
+     */
+    public void retryDue(boolean force) {
+        long now = System.currentTimeMillis();
+        List<OutboxEntry> expired = new ArrayList<>();
+        Map<OutboxEntry, InFlight> due = new HashMap<>();
+        synchronized (this) {
+            for (OutboxEntry entry : entries.values()) {
+                InFlight parts = inFlight.get(entry.getId());
+                if (parts != null && parts.expiresAt <= now) expired.add(entry);
+            }
+            // the attempt is counted as failed, reports that still arrive for it are ignored
+            for (OutboxEntry entry : expired) recordFailure(entry);
+
+            for (OutboxEntry entry : entries.values()) {
+                // a message that is in flight was selected by another retry or was just sent
+                if (!inFlight.containsKey(entry.getId()) && (force || entry.getNextAttemptAt() <= now))
+                    due.put(entry, reserve(entry, now));
+            }
+        }
+        for (Map.Entry<OutboxEntry, InFlight> entry : due.entrySet()) {
+            Metrics.increment(METRIC_RETRIES);
+            attempt(entry.getKey(), entry.getValue());
+        }
+        scheduleRetry();
+        if (!expired.isEmpty()) watchServiceState();
+    }
+
+    /**
+     * Drops all pending messages, the {@link ConfigStore} section they are persisted in has to be wiped by the caller.
+     * Reports of messages that were already handed to the radio are ignored.
+     */
+    public void clear() {
+        synchronized (this) {
+            entries.clear();
+            inFlight.clear();
+        }
+        stopWatchingServiceState();
+    }
+
+    /**
+     * @return the number of messages that have not been sent yet
+     */
+    public synchronized int getPendingCount() {
+        return entries.size();
+    }
+
+    /**
+     * Marks a message as in flight, so no other caller selects it. Has to be called while holding the lock.
+     */
+    private InFlight reserve(OutboxEntry entry, long now) {
+        InFlight flight = new InFlight(now + SENT_TIMEOUT_MILLIS);
+        inFlight.put(entry.getId(), flight);
+        return flight;
+    }
+
+    /**
+     * Sends a message that was marked as in flight by {@link #reserve(OutboxEntry, long)}
+     */
+    private void attempt(OutboxEntry entry, InFlight flight) {
+        SmsManager smsManager = SMSCom.fetchSMSManager(context, entry.getAttemptSubscriptionId());
+
+        ArrayList<String> parts = smsManager.divideMessage(entry.getText());
+        ArrayList<PendingIntent> sentIntents = new ArrayList<>(parts.size());
+        ArrayList<PendingIntent> deliveryIntents = new ArrayList<>(parts.size());
+        for (int i = 0; i < parts.size(); i++) {
+            sentIntents.add(createPendingIntent(ACTION_SENT, entry, i));
+            deliveryIntents.add(createPendingIntent(ACTION_DELIVERED, entry, i));
+        }
+        synchronized (this) {
+            // the outbox was cleared or the attempt expired in the meantime
+            if (inFlight.get(entry.getId()) != flight) return;
+            flight.remaining = parts.size();
+        }
+        smsManager.sendMultipartTextMessage(entry.getRecipient(), null, parts, sentIntents, deliveryIntents);
+        // the alarm also expires the attempt if its reports never arrive
+        scheduleRetry();
+        Warmup.onReplySent();
+    }
+
+    private PendingIntent createPendingIntent(String action, OutboxEntry entry, int part) {
+        // every attempt gets its own intents, so the reports of an expired attempt can be told apart
+        Uri uri = Uri.parse("oat-sms://" + entry.getId() + "/" + entry.getAttempts() + "/" + part);
+        Intent intent = new Intent(action, uri, context, SmsSentReceiver.class);
+        intent.putExtra(EXTRA_ID, entry.getId());
+        intent.putExtra(EXTRA_ATTEMPT, entry.getAttempts());
+        intent.putExtra(EXTRA_CREATED_AT, entry.getCreatedAt());
+        return PendingIntent.getBroadcast(context, 0, intent, PendingIntent.FLAG_ONE_SHOT);
+    }
+
+    private void complete(OutboxEntry entry) {
+        boolean empty;
+        synchronized (this) {
+            entries.remove(entry.getId());
+            prefs.edit().remove(Long.toString(entry.getId())).apply();
+            empty = entries.isEmpty();
+        }
+        Metrics.increment(METRIC_SENT);
+        Metrics.recordLatency(LATENCY_SENT, System.currentTimeMillis() - entry.getCreatedAt());
+        if (empty) stopWatchingServiceState();
+    }
+
+    private void fail(OutboxEntry entry) {
+        synchronized (this) {
+            recordFailure(entry);
+        }
+        scheduleRetry();
+        watchServiceState();
+    }
+
+    /**
+     * Ends the attempt of a message as failed, the message is dropped after its last attempt. Has to be called while holding the lock.
+     */
+    private void recordFailure(OutboxEntry entry) {
+        Metrics.increment(METRIC_FAILED_ATTEMPTS);
+        inFlight.remove(entry.getId());
+        if (entry.getAttempts() + 1 >= MAX_ATTEMPTS) {
+            entries.remove(entry.getId());
+            prefs.edit().remove(Long.toString(entry.getId())).apply();
+            Metrics.increment(METRIC_DROPPED);
+        } else {
+            entry.recordFailure(System.currentTimeMillis());
+            persist(entry);
+        }
+    }
+
+    private void persist(OutboxEntry entry) {
+        prefs.edit().putString(Long.toString(entry.getId()), entry.serialize()).apply();
+    }
+
+    /**
+     * Schedules an alarm for the earliest pending retry or the earliest attempt that expires
+     */
+    private void scheduleRetry() {
+        long next = Long.MAX_VALUE;
+        synchronized (this) {
+            for (OutboxEntry entry : entries.values()) {
+                InFlight parts = inFlight.get(entry.getId());
+                long at = parts != null ? parts.expiresAt : entry.getNextAttemptAt();
+                if (at < next) next = at;
+            }
+        }
+        if (next == Long.MAX_VALUE) return;
+
+        AlarmManager alarmManager = context.getSystemService(AlarmManager.class);
+        Intent intent = new Intent(ACTION_RETRY, null, context, SmsSentReceiver.class);
+        PendingIntent retry = PendingIntent.getBroadcast(context, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+        alarmManager.setAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, next, retry);
+    }
+
+    /**
+     * Retries all pending messages as soon as the phone regains service
+     */
+    private void watchServiceState() {
+        // PhoneStateListeners have to be created on a thread with a Looper
+        new Handler(Looper.getMainLooper()).post(() -> {
+            synchronized (SmsOutbox.this) {
+                if (serviceStateListener != null || entries.isEmpty()) return;
+                serviceStateListener = new PhoneStateListener() {
+                    private int lastState = -1;
+
+                    @Override
+                    public void onServiceStateChanged(ServiceState serviceState) {
+                        int state = serviceState.getState();
+                        // the first callback only reports the current state
+                        boolean regained = lastState != -1 && lastState != ServiceState.STATE_IN_SERVICE && state == ServiceState.STATE_IN_SERVICE;
+                        lastState = state;
+                        if (regained)
+                            CommandExecutor.getInstance().submit(() -> retryDue(true), () -> {
+                            });
+                    }
+                };
+            }
+            context.getSystemService(TelephonyManager.class).listen(serviceStateListener, PhoneStateListener.LISTEN_SERVICE_STATE);
+        });
+    }
+
+    private void stopWatchingServiceState() {
+        new Handler(Looper.getMainLooper()).post(() -> {
+            PhoneStateListener listener;
+            synchronized (SmsOutbox.this) {
+                if (serviceStateListener == null || !entries.isEmpty()) return;
+                listener = serviceStateListener;
+                serviceStateListener = null;
+            }
+            context.getSystemService(TelephonyManager.class).listen(listener, PhoneStateListener.LISTEN_NONE);
+        });
+    }
+
+    private static class InFlight {
+        private final long expiresAt;
+        private int remaining;
+        private boolean failed = false;
+
+        InFlight(long expiresAt) {
+            this.expiresAt = expiresAt;
+        }
+    }
+}
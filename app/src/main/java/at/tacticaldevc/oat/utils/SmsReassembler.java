@@ -0,0 +1,129 @@
+package at.tacticaldevc.oat.utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static at.tacticaldevc.oat.utils.Ensurer.ensureNotNull;
+
+/**
+ * Joins the segments of multipart SMS into one logical message
+ * Segments are grouped by originating address and concatenation reference. Incomplete messages are kept in a small buffer
+ * and are dropped once they are older than the maximum age or the buffer is full.
+ *
+ * @version 0.1
+ */
+public class SmsReassembler {
+    private static final long MAX_AGE_MILLIS = 60 * 1000;
+    private static final int MAX_PENDING_MESSAGES = 8;
+
+    private static SmsReassembler instance;
+
+    private final long maxAgeMillis;
+    private final int maxPendingMessages;
+    // insertion ordered, so the first entry is always the oldest incomplete message
+    private final LinkedHashMap<String, PendingMessage> pending = new LinkedHashMap<>();
+
+    /**
+     * Creates a new SmsReassembler
+     *
+     * @param maxAgeMillis       the time in milliseconds an incomplete message is kept
+     * @param maxPendingMessages the maximum number of incomplete messages
+     */
+    SmsReassembler(long maxAgeMillis, int maxPendingMessages) {
+        if (maxAgeMillis < 1) throw new IllegalArgumentException("maxAgeMillis has to be at least 1!");
+        if (maxPendingMessages < 1) throw new IllegalArgumentException("maxPendingMessages has to be at least 1!");
+        this.maxAgeMillis = maxAgeMillis;
+        this.maxPendingMessages = maxPendingMessages;
+    }
+
+    /**
+     * @return the shared SmsReassembler of the Application
+     */
+    public static synchronized SmsReassembler getInstance() {
+        if (instance == null)
+            instance = new SmsReassembler(MAX_AGE_MILLIS, MAX_PENDING_MESSAGES);
+        return instance;
+    }
+
+    /**
+     * Adds a segment of a message
+     *
+     * @param sender the originating address of the segment
+     * @param info   the {@link SmsConcatInfo} of the segment or null if the message has only one segment
+     * @param body   the text of the segment
+     * @param now    the current time in milliseconds
+     * @return the text of the complete message or null if segments are still missing
+     */
+    public synchronized String offer(String sender, SmsConcatInfo info, String body, long now) {
+        ensureNotNull(sender, "sender");
+        ensureNotNull(body, "message body");
+
+        purge(now);
+        if (info == null) return body;
+
+        String key = sender + '#' + info.getReference() + '#' + info.getTotalParts();
+        PendingMessage message = pending.get(key);
+        if (message == null) {
+            if (pending.size() == maxPendingMessages)
+                removeOldest();
+            message = new PendingMessage(info.getTotalParts(), now);
+            pending.put(key, message);
+        }
+
+        if (message.add(info.getSequenceNumber(), body)) {
+            pending.remove(key);
+            return message.join();
+        }
+        return null;
+    }
+
+    /**
+     * @return the number of incomplete messages
+     */
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    private void purge(long now) {
+        Iterator<PendingMessage> it = pending.values().iterator();
+        while (it.hasNext()) {
+            if (now - it.next().firstSeen <= maxAgeMillis) break;
+            it.remove();
+        }
+    }
+
+    private void removeOldest() {
+        Iterator<Map.Entry<String, PendingMessage>> it = pending.entrySet().iterator();
+        it.next();
+        it.remove();
+    }
+
+    private static class PendingMessage {
+        private final String[] parts;
+        private final long firstSeen;
+        private int received = 0;
+
+        PendingMessage(int totalParts, long firstSeen) {
+            this.parts = new String[totalParts];
+            this.firstSeen = firstSeen;
+        }
+
+        /**
+         * @return true if the message is complete
+         */
+        boolean add(int sequenceNumber, String body) {
+            if (parts[sequenceNumber - 1] == null) {
+                parts[sequenceNumber - 1] = body;
+                received++;
+            }
+            return received == parts.length;
+        }
+
+        String join() {
+            StringBuilder sb = new StringBuilder();
+            for (String part : parts) sb.append(part);
+            return sb.toString();
+        }
+    }
+}
@@ -3,6 +3,7 @@ package at.tacticaldevc.oat.utils;
 import android.content.Context;
 import android.location.Criteria;
 import android.location.LocationManager;
+import android.os.Looper;
 
 import at.tacticaldevc.oat.R;
 import at.tacticaldevc.oat.listeners.GPSListenerSMS;
@@ -13,7 +14,7 @@ import static androidx.core.content.ContextCompat.getSystemService;
 /**
  * A helper class for location tracking
  *
- * @version 0.1
+ * @version 0.2
  */
 public class Tracking {
 
@@ -26,7 +27,8 @@ public class Tracking {
      * @throws SecurityException if the User revoked the Permission to access GPS without deactivating the feature
      */
     public static void sendCurrentCoordinatesViaSMS(Context context, String phoneNumber, LocationManager locationManager) throws SecurityException {
-        if (Prefs.fetchFeatureEnabledStatus(context, context.getString(R.string.oat_features_key_fetch_gps_position))) {
+        PrefsSnapshot prefs = PrefsSnapshot.get(context);
+        if (prefs.isGpsPositionEnabled()) {
             LocationManager lManager = locationManager;
             if (locationManager == null)
                 locationManager = getSystemService(context, LocationManager.class);
@@ -35,7 +37,7 @@ public class Tracking {
             GPSListenerSMS gpsListener = new GPSListenerSMS(context, phoneNumber);
 
             // Check Location Accuracy
-            boolean fineAccuracy = Prefs.isPermissionGranted(context, context.getString(R.string.oat_permissions_key_access_fine_location));
+            boolean fineAccuracy = prefs.isFineLocationGranted();
 
             // Criteria
             Criteria criteria = new Criteria();
@@ -48,7 +50,8 @@ public class Tracking {
             criteria.setVerticalAccuracy(Criteria.ACCURACY_HIGH);
             criteria.setPowerRequirement(Criteria.NO_REQUIREMENT);
 
-            locationManager.requestSingleUpdate(criteria, gpsListener, null);
+            // commands are executed on background threads without a Looper, the update is delivered on the main thread
+            locationManager.requestSingleUpdate(criteria, gpsListener, Looper.getMainLooper());
         } else {
             SMSCom.replyErrorSMS_FeatureDisabled(context, phoneNumber, context.getString(R.string.oat_features_name_fetch_gps_position));
         }
@@ -0,0 +1,215 @@
+package at.tacticaldevc.oat.utils;
+
+import android.content.Context;
+import android.telephony.PhoneNumberUtils;
+import android.telephony.TelephonyManager;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import static at.tacticaldevc.oat.utils.Ensurer.ensureNotNull;
+
+/**
+ * An in-memory index of the phone numbers of all trusted contacts.
+ * All numbers are normalized to E.164 so that "+43660..." and "0660..." are recognized as the same number.
+ * The index is kept up to date by {@link Prefs#saveTrustedContact(Context, String, String)} and {@link Prefs#deleteTrustedContact(Context, String)}.
+ * Senders are normalized the same way, see {@link #normalize(String)}, so that state kept per sender does not depend on the format of the number.
+ * Alphanumeric senders are never normalized, so they cannot match a trusted short code.
+ *
+ * @version 0.4
+ */
+public class TrustedContactIndex {
+
+    private static volatile TrustedContactIndex instance;
+
+    private final NumberNormalizer normalizer;
+    private final Map<String, String> normalizedBySavedNumber = new HashMap<>();
+    // replaced as a whole on every change, so lookups never need to lock
+    private volatile Set<String> trustedNumbers = Collections.emptySet();
+
+    /**
+     * Creates a new TrustedContactIndex
+     *
+     * @param normalizer   the {@link NumberNormalizer} used to normalize phone numbers
+     * @param savedNumbers the phone numbers of the trusted contacts as they were saved
+     */
+    TrustedContactIndex(NumberNormalizer normalizer, Collection<String> savedNumbers) {
+        this.normalizer = ensureNotNull(normalizer, "number normalizer");
+        ensureNotNull(savedNumbers, "saved numbers");
+
+        for (String number : savedNumbers) {
+            normalizedBySavedNumber.put(number, normalizer.normalize(number));
+        }
+        rebuild();
+    }
+
+    /**
+     * Returns the index of the Application, the index is loaded from the {@link Prefs} on first access
+     *
+     * @param context the {@link Context} of the Application
+     * @return the {@link TrustedContactIndex}
+     */
+    public static TrustedContactIndex getInstance(Context context) {
+        ensureNotNull(context, "Application Context");
+
+        TrustedContactIndex index = instance;
+        if (index == null) {
+            synchronized (TrustedContactIndex.class) {
+                index = instance;
+                if (index == null) {
+                    Context appContext = context.getApplicationContext();
+                    index = new TrustedContactIndex(new E164Normalizer(appContext), Prefs.fetchTrustedContacts(appContext).keySet());
+                    instance = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Updates the index after a trusted contact was saved. Does nothing if the index was not loaded yet.
+     *
+     * @param phoneNumber the saved phone number
+     */
+    static void onContactSaved(String phoneNumber) {
+        TrustedContactIndex index = instance;
+        if (index != null) index.add(phoneNumber);
+    }
+
+    /**
+     * Updates the index after a trusted contact was deleted. Does nothing if the index was not loaded yet.
+     *
+     * @param phoneNumber the deleted phone number
+     */
+    static void onContactDeleted(String phoneNumber) {
+        TrustedContactIndex index = instance;
+        if (index != null) index.remove(phoneNumber);
+    }
+
+    /**
+     * Empties the index after all trusted contacts were wiped. Does nothing if the index was not loaded yet.
+     */
+    static void onContactsWiped() {
+        TrustedContactIndex index = instance;
+        if (index != null) index.clear();
+    }
+
+    /**
+     * Checks if a sender is a trusted contact
+     * Senders in international format are looked up directly, all other senders are normalized first.
+     *
+     * @param sender the originating address of a message
+     * @return true if the sender is a trusted contact
+     */
+    public boolean isTrusted(String sender) {
+        if (sender == null || sender.isEmpty()) return false;
+
+        Set<String> numbers = trustedNumbers;
+        if (numbers.contains(sender)) return true;
+        if (sender.charAt(0) == '+') return false;
+
+        String normalized = normalizer.normalize(sender);
+        return normalized != null && numbers.contains(normalized);
+    }
+
+    /**
+     * Normalizes a sender the same way the trusted numbers are normalized
+     * Senders in international format are returned as they are.
+     *
+     * @param sender the originating address of a message
+     * @return the normalized sender, or the sender itself if it could not be normalized
+     */
+    public String normalize(String sender) {
+        if (sender == null || sender.isEmpty() || sender.charAt(0) == '+') return sender;
+
+        String normalized = normalizer.normalize(sender);
+        return normalized != null ? normalized : sender;
+    }
+
+    /**
+     * @return the number of distinct trusted numbers
+     */
+    public int size() {
+        return trustedNumbers.size();
+    }
+
+    synchronized void add(String phoneNumber) {
+        normalizedBySavedNumber.put(phoneNumber, normalizer.normalize(phoneNumber));
+        rebuild();
+    }
+
+    synchronized void remove(String phoneNumber) {
+        if (normalizedBySavedNumber.remove(phoneNumber) != null)
+            rebuild();
+    }
+
+    synchronized void clear() {
+        normalizedBySavedNumber.clear();
+        rebuild();
+    }
+
+    /**
+     * @param phoneNumber a phone number or an alphanumeric sender id
+     * @return true if the number only consists of digits, the dial characters + * # and visual separators
+     */
+    static boolean isDialable(String phoneNumber) {
+        if (phoneNumber == null) return false;
+
+        boolean digits = false;
+        for (int i = 0; i < phoneNumber.length(); i++) {
+            char c = phoneNumber.charAt(i);
+            if (c >= '0' && c <= '9') digits = true;
+            else if ("+*# -()./".indexOf(c) < 0) return false;
+        }
+        return digits;
+    }
+
+    private void rebuild() {
+        Set<String> numbers = new HashSet<>();
+        for (String normalized : normalizedBySavedNumber.values()) {
+            if (normalized != null) numbers.add(normalized);
+        }
+        trustedNumbers = Collections.unmodifiableSet(numbers);
+    }
+
+    /**
+     * Normalizes phone numbers into a comparable format
+     */
+    interface NumberNormalizer {
+        /**
+         * @param phoneNumber the phone number to be normalized
+         * @return the normalized phone number or null if the number could not be normalized
+         */
+        String normalize(String phoneNumber);
+    }
+
+    /**
+     * Normalizes phone numbers to E.164, numbers in national format are resolved using the country of the SIM card
+     */
+    private static class E164Normalizer implements NumberNormalizer {
+        private final String countryIso;
+
+        E164Normalizer(Context context) {
+            TelephonyManager tm = context.getSystemService(TelephonyManager.class);
+            String iso = tm != null ? tm.getSimCountryIso() : null;
+            if ((iso == null || iso.isEmpty()) && tm != null) iso = tm.getNetworkCountryIso();
+            if (iso == null || iso.isEmpty()) iso = Locale.getDefault().getCountry();
+            countryIso = iso.toUpperCase(Locale.ROOT);
+        }
+
+        @Override
+        public String normalize(String phoneNumber) {
+            if (phoneNumber == null) return null;
+            String e164 = PhoneNumberUtils.formatNumberToE164(phoneNumber, countryIso);
+            if (e164 != null) return e164;
+            // numbers that cannot be parsed (e.g. short codes) are compared without separators,
+            // alphanumeric senders are not, as normalizeNumber would turn their letters into keypad digits
+            return isDialable(phoneNumber) ? PhoneNumberUtils.normalizeNumber(phoneNumber) : null;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package at.tacticaldevc.oat.utils;
+
+import android.content.Context;
+import android.hardware.camera2.CameraManager;
+import android.location.LocationManager;
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import at.tacticaldevc.oat.R;
+
+import static at.tacticaldevc.oat.utils.Ensurer.ensureNotNull;
+
+/**
+ * Loads the state of the App in the background as soon as the process starts,
+ * so the first command after a cold start does not have to load it within the deadline of its broadcast.
+ * Consumers that arrive before the warm-up is done wait for it with {@link #awaitReady()}, later consumers do not wait at all.
+ * Consumers on the main thread check {@link #isReady()} and hand their work to a background thread while the warm-up is running.
+ * Every step only fills the caches the consumers use anyway, so a step that fails is loaded again on demand.
+ * The time to the first reply is only recorded if the first consumer arrived while the warm-up was still running,
+ * as a process that was started for any other reason says nothing about the latency of a cold start.
+ *
+ * @version 0.3
+ */
+public class Warmup {
+
+    public static final String LATENCY_WARMUP = "startup.warmup";
+    public static final String LATENCY_FIRST_REPLY = "startup.first_reply";
+    public static final String METRIC_FAILED_STEPS = "startup.failed_steps";
+    public static final String METRIC_WAITS = "startup.waits";
+
+    // the warm-up must not use up the deadline of the broadcast that waits for it
+    private static final long AWAIT_TIMEOUT_MILLIS = 3000;
+
+    private static volatile Warmup instance;
+
+    private final List<Step> steps;
+    private final SessionManager.Clock clock;
+    private final long startedAt;
+    private final CountDownLatch done = new CountDownLatch(1);
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final AtomicBoolean firstReply = new AtomicBoolean(false);
+    private final AtomicBoolean awaited = new AtomicBoolean(false);
+    // true if the first consumer arrived before the warm-up was done
+    private volatile boolean coldStart = false;
+
+    /**
+     * Creates a new Warmup
+     *
+     * @param steps the {@link Step}s to run, in this order
+     * @param clock the clock used for the metrics, the process is considered started when the Warmup is created
+     */
+    Warmup(List<Step> steps, SessionManager.Clock clock) {
+        this.steps = Collections.unmodifiableList(new ArrayList<>(ensureNotNull(steps, "steps")));
+        this.clock = ensureNotNull(clock, "clock");
+        this.startedAt = clock.now();
+    }
+
+    /**
+     * Starts the warm-up of the Application, has to be called once when the process starts
+     *
+     * @param context the {@link Context} of the Application
+     */
+    public static synchronized void start(Context context) {
+        ensureNotNull(context, "Application Context");
+        if (instance != null) return;
+
+        final Context appContext = context.getApplicationContext();
+        Warmup warmup = new Warmup(Arrays.asList(
+                // also opens the key of the EncLayer
+                () -> ConfigStore.getInstance(appContext),
+                () -> TrustedContactIndex.getInstance(appContext),
+                () -> Prefs.fetchCommandTriggerWord(appContext),
+                () -> PrefsSnapshot.get(appContext),
+                () -> AuthThrottle.getInstance(appContext),
+                () -> SmsDeduplicator.getInstance(appContext),
+                () -> SmsManagerCache.fetchDefault(appContext),
+                () -> ReplyTemplates.fetchText(appContext, R.string.oat_sms_message_hint_delete_password),
+                () -> appContext.getSystemService(CameraManager.class),
+                () -> appContext.getSystemService(LocationManager.class)
+        ), SystemClock::elapsedRealtime);
+        instance = warmup;
+
+        Thread thread = new Thread(warmup::run, "oat-warmup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Waits until the warm-up is done, returns immediately if it is done or was never started
+     */
+    public static void awaitReady() {
+        Warmup warmup = instance;
+        if (warmup != null) warmup.await(AWAIT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @return true if the warm-up is done, false if it is running or was never started
+     */
+    public static boolean isReady() {
+        Warmup warmup = instance;
+        return warmup != null && warmup.isDone();
+    }
+
+    /**
+     * Records the time from the start of the process to the first reply, has to be called whenever a reply is sent.
+     * Nothing is recorded unless the first command arrived during the cold start.
+     */
+    public static void onReplySent() {
+        Warmup warmup = instance;
+        if (warmup != null) warmup.recordReply();
+    }
+
+    /**
+     * Runs all steps, the warm-up is done even if some of them failed
+     */
+    void run() {
+        if (!running.compareAndSet(false, true)) return;
+
+        long start = clock.now();
+        try {
+            for (Step step : steps) {
+                try {
+                    step.run();
+                } catch (RuntimeException ex) {
+                    Metrics.increment(METRIC_FAILED_STEPS);
+                }
+            }
+        } finally {
+            done.countDown();
+            Metrics.recordLatency(LATENCY_WARMUP, clock.now() - start);
+        }
+    }
+
+    /**
+     * @param timeoutMillis the maximum time in milliseconds to wait
+     * @return true if the warm-up is done
+     */
+    boolean await(long timeoutMillis) {
+        if (awaited.compareAndSet(false, true)) coldStart = done.getCount() != 0;
+        if (done.getCount() == 0) return true;
+
+        Metrics.increment(METRIC_WAITS);
+        try {
+            return done.await(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * @return true if all steps have been run
+     */
+    boolean isDone() {
+        return done.getCount() == 0;
+    }
+
+    void recordReply() {
+        if (coldStart && firstReply.compareAndSet(false, true))
+            Metrics.recordLatency(LATENCY_FIRST_REPLY, clock.now() - startedAt);
+    }
+
+    /**
+     * A part of the warm-up
+     */
+    interface Step {
+        void run();
+    }
+}
@@ -0,0 +1,85 @@
+package at.tacticaldevc.oat.utils;
+
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.graphics.YuvImage;
+import android.media.Image;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+import at.tacticaldevc.oat.exceptions.OATApplicationException;
+
+import static at.tacticaldevc.oat.utils.Ensurer.ensureNotNull;
+
+/**
+ * Helpers for frames in the YUV_420_888 format the camera delivers bursts in
+ *
+ * @version 0.1
+ */
+class YuvFrames {
+
+    /**
+     * Encodes a frame to JPEG
+     *
+     * @param frame   the frame in the YUV_420_888 format, it is not closed
+     * @param quality the JPEG quality
+     * @return the JPEG picture
+     */
+    static byte[] encodeJpeg(Image frame, int quality) {
+        ensureNotNull(frame, "frame");
+        if (frame.getFormat() != ImageFormat.YUV_420_888)
+            throw OATApplicationException.forOther("YuvFrames", "the frame is not in the YUV_420_888 format!");
+
+        Image.Plane[] planes = frame.getPlanes();
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        byte[] nv21 = toNv21(width, height, planes[0].getBuffer(), planes[0].getRowStride(),
+                planes[1].getBuffer(), planes[2].getBuffer(), planes[1].getRowStride(), planes[1].getPixelStride());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (!new YuvImage(nv21, ImageFormat.NV21, width, height, null).compressToJpeg(new Rect(0, 0, width, height), quality, out))
+            throw OATApplicationException.forOther("YuvFrames", "the frame could not be encoded!");
+        return out.toByteArray();
+    }
+
+    /**
+     * Converts the planes of a YUV_420_888 frame to NV21, the only YUV layout the encoder of the platform accepts
+     *
+     * @param width          the width of the frame, has to be even
+     * @param height         the height of the frame, has to be even
+     * @param y              the luma plane, its position is not changed
+     * @param yRowStride     the row stride of the luma plane
+     * @param u              the U plane, its position is not changed
+     * @param v              the V plane, its position is not changed
+     * @param uvRowStride    the row stride of the chroma planes
+     * @param uvPixelStride  the pixel stride of the chroma planes
+     * @return the frame in the NV21 layout
+     */
+    static byte[] toNv21(int width, int height, ByteBuffer y, int yRowStride, ByteBuffer u, ByteBuffer v, int uvRowStride, int uvPixelStride) {
+        ensureNotNull(y, "Y plane");
+        ensureNotNull(u, "U plane");
+        ensureNotNull(v, "V plane");
+        if (width < 2 || height < 2 || width % 2 != 0 || height % 2 != 0)
+            throw new IllegalArgumentException("invalid frame dimensions!");
+
+        byte[] nv21 = new byte[width * height * 3 / 2];
+        ByteBuffer rows = y.duplicate();
+        int start = rows.position();
+        for (int row = 0; row < height; row++) {
+            rows.position(start + row * yRowStride);
+            rows.get(nv21, row * width, width);
+        }
+
+        int offset = width * height;
+        int uStart = u.position();
+        int vStart = v.position();
+        for (int row = 0; row < height / 2; row++) {
+            for (int col = 0; col < width / 2; col++) {
+                int index = row * uvRowStride + col * uvPixelStride;
+                nv21[offset++] = v.get(vStart + index);
+                nv21[offset++] = u.get(uStart + index);
+            }
+        }
+        return nv21;
+    }
+}
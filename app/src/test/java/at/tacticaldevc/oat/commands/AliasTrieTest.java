@@ -0,0 +1,69 @@
+package at.tacticaldevc.oat.commands;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class AliasTrieTest {
+
+    @ParameterizedTest(name = "`{0}`")
+    @ValueSource(strings = {"lock", "LOCK", "Lockdown", "lockdown"})
+    void findWithKnownAliases(String alias) {
+        // prepare
+        AliasTrie<String> trie = new AliasTrie<String>().put("lock", "lockdown").put("lockdown", "lockdown");
+
+        // test
+        String result = trie.find(alias);
+
+        // assert
+        assertThat(result).isEqualTo("lockdown");
+    }
+
+    @ParameterizedTest(name = "`{0}`")
+    @ValueSource(strings = {"loc", "locks", "unlock", ""})
+    void findWithUnknownAliases(String alias) {
+        // prepare
+        AliasTrie<String> trie = new AliasTrie<String>().put("lock", "lockdown");
+
+        // test
+        String result = trie.find(alias);
+
+        // assert
+        assertThat(result).isNull();
+    }
+
+    @Test
+    void findInRegion() {
+        // prepare
+        AliasTrie<String> trie = new AliasTrie<String>().put("gps", "gps");
+
+        // test
+        String result = trie.find("oat GPS secret", 4, 7);
+
+        // assert
+        assertThat(result).isEqualTo("gps");
+    }
+
+    @Test
+    void putWithConflictingAlias() {
+        // prepare
+        AliasTrie<String> trie = new AliasTrie<String>().put("lock", "lockdown");
+
+        // assert
+        assertThrows(IllegalArgumentException.class, () -> trie.put("LOCK", "unlock"));
+    }
+
+    @Test
+    void putWithInvalidAlias() {
+        // prepare
+        AliasTrie<String> trie = new AliasTrie<>();
+
+        // assert
+        assertThrows(IllegalArgumentException.class, () -> trie.put("", "value"));
+        assertThrows(IllegalArgumentException.class, () -> trie.put("take photo", "value"));
+        assertThrows(IllegalArgumentException.class, () -> trie.put("photo", null));
+    }
+}
@@ -0,0 +1,140 @@
+package at.tacticaldevc.oat.commands;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class CommandGrammarTest {
+
+    private static final Command GPS = new Command("gps", command -> {
+    }, "location", "position");
+    private static final Command RING = new Command("ring", 0, 1, command -> {
+    });
+    private static final Command LOCK = new Command("lockdown", command -> {
+    }, "lock");
+    private static final CommandGrammar GRAMMAR = new CommandGrammar(Arrays.asList(GPS, RING, LOCK));
+
+    @ParameterizedTest(name = "`{0}`")
+    @ValueSource(strings = {"oat gps Secret", "OAT Location Secret", "  oat\tposition   Secret \n"})
+    void parseWithValidCommands(String message) {
+        // test
+        ParsedCommand result = GRAMMAR.parse(message, "oat");
+
+        // assert
+        assertThat(result.getStatus()).isEqualTo(ParsedCommand.Status.Valid);
+        assertThat(result.getCommand()).isSameAs(GPS);
+        assertThat(result.getPassword()).isEqualTo("Secret");
+        assertThat(result.getArguments()).isEmpty();
+    }
+
+    @Test
+    void parseWithOptionalArgument() {
+        // test
+        ParsedCommand withArgument = GRAMMAR.parse("oat ring 30 secret", "oat");
+        ParsedCommand withoutArgument = GRAMMAR.parse("oat ring secret", "oat");
+
+        // assert
+        assertThat(withArgument.getStatus()).isEqualTo(ParsedCommand.Status.Valid);
+        assertThat(withArgument.getArguments()).containsExactly("30");
+        assertThat(withArgument.getPassword()).isEqualTo("secret");
+        assertThat(withoutArgument.getStatus()).isEqualTo(ParsedCommand.Status.Valid);
+        assertThat(withoutArgument.getArguments()).isEmpty();
+    }
+
+    @ParameterizedTest(name = "`{0}`")
+    @ValueSource(strings = {"hello there", "oat", "gps oat secret", ""})
+    void parseWithoutTriggerWord(String message) {
+        // test
+        ParsedCommand result = GRAMMAR.parse(message, "oat");
+
+        // assert
+        assertThat(result.getStatus()).isEqualTo(ParsedCommand.Status.Ignored);
+    }
+
+    @ParameterizedTest(name = "`{0}`")
+    @ValueSource(strings = {"oat gps", "oat gps extra secret", "oat ring 1 2 secret"})
+    void parseWithMalformedCommands(String message) {
+        // test
+        ParsedCommand result = GRAMMAR.parse(message, "oat");
+
+        // assert
+        assertThat(result.getStatus()).isEqualTo(ParsedCommand.Status.Malformed);
+    }
+
+    @Test
+    void parseWithUnknownFeature() {
+        // test
+        ParsedCommand result = GRAMMAR.parse("oat Selfdestruct secret", "oat");
+
+        // assert
+        assertThat(result.getStatus()).isEqualTo(ParsedCommand.Status.UnknownFeature);
+        assertThat(result.getFeatureName()).isEqualTo("Selfdestruct");
+        assertThat(result.getPassword()).isEqualTo("secret");
+    }
+
+    @Test
+    void parseWithBatch() {
+        // test
+        ParsedCommand result = GRAMMAR.parse("oat gps,LOCK,position secret", "oat");
+
+        // assert
+        assertThat(result.getStatus()).isEqualTo(ParsedCommand.Status.Valid);
+        assertThat(result.isBatch()).isTrue();
+        assertThat(result.getCommands()).containsExactly(GPS, LOCK);
+        assertThat(result.getPassword()).isEqualTo("secret");
+    }
+
+    @Test
+    void parseWithUnknownFeatureInBatch() {
+        // test
+        ParsedCommand result = GRAMMAR.parse("oat gps,selfdestruct,lock secret", "oat");
+
+        // assert
+        assertThat(result.getStatus()).isEqualTo(ParsedCommand.Status.UnknownFeature);
+        assertThat(result.getFeatureName()).isEqualTo("selfdestruct");
+    }
+
+    @ParameterizedTest(name = "`{0}`")
+    @ValueSource(strings = {"oat gps,,lock secret", "oat gps, secret", "oat ,gps secret", "oat gps,ring 30 secret"})
+    void parseWithMalformedBatch(String message) {
+        // test
+        ParsedCommand result = GRAMMAR.parse(message, "oat");
+
+        // assert
+        assertThat(result.getStatus()).isEqualTo(ParsedCommand.Status.Malformed);
+    }
+
+    @Test
+    void commandsDeclareTheirReplies() {
+        // prepare
+        Command trap = new Command("trap", 0, 0, 0, command -> {
+        });
+
+        // test & assert
+        assertThat(GPS.getReplies()).isEqualTo(1);
+        assertThat(RING.getReplies()).isEqualTo(1);
+        assertThat(trap.getReplies()).isEqualTo(0);
+        assertThrows(IllegalArgumentException.class, () -> new Command("ring", 0, 1, -1, command -> {
+        }));
+    }
+
+    @Test
+    void tokenizeKeepsOriginalText() {
+        // prepare
+        StringBuilder message = new StringBuilder("  oat   gps\tPassWord ");
+
+        // test
+        CommandTokens tokens = CommandTokens.tokenize(message);
+
+        // assert
+        assertThat(tokens.count()).isEqualTo(3);
+        assertThat(tokens.text()).isSameAs(message);
+        assertThat(tokens.get(2)).isEqualTo("PassWord");
+        assertThat(tokens.equalsIgnoreCase(1, "GPS")).isTrue();
+    }
+}
@@ -0,0 +1,158 @@
+package at.tacticaldevc.oat.utils;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AuthThrottleTest {
+    private static final String NUMBER = "+4366012345678";
+    private static final String OTHER_NUMBER = "+4366087654321";
+
+    private long now = 1000000;
+    private final Map<String, String> stored = new HashMap<>();
+    private AuthThrottle throttle;
+
+    @BeforeEach
+    void init() {
+        throttle = new AuthThrottle(() -> now, new MemoryStore());
+    }
+
+    @Test
+    void tryAcquireAllowsBurstThenRefills() {
+        // test
+        for (int i = 0; i < AuthThrottle.BUCKET_CAPACITY; i++) {
+            assertThat(throttle.tryAcquire(NUMBER)).isTrue();
+        }
+
+        // assert
+        assertThat(throttle.tryAcquire(NUMBER)).isFalse();
+        assertThat(throttle.tryAcquire(OTHER_NUMBER)).isTrue();
+        now += AuthThrottle.REFILL_MILLIS;
+        assertThat(throttle.tryAcquire(NUMBER)).isTrue();
+        assertThat(throttle.tryAcquire(NUMBER)).isFalse();
+    }
+
+    @Test
+    void onFailureLocksOutExponentially() {
+        // test
+        long first = throttle.onFailure(NUMBER);
+        long second = throttle.onFailure(NUMBER);
+        long third = throttle.onFailure(NUMBER);
+        long fourth = throttle.onFailure(NUMBER);
+
+        // assert
+        assertThat(first).isZero();
+        assertThat(second).isZero();
+        assertThat(third).isEqualTo(AuthThrottle.INITIAL_LOCKOUT_MILLIS);
+        assertThat(fourth).isEqualTo(2 * AuthThrottle.INITIAL_LOCKOUT_MILLIS);
+        assertThat(throttle.isLockedOut(NUMBER)).isTrue();
+        assertThat(throttle.tryAcquire(NUMBER)).isFalse();
+        assertThat(throttle.isLockedOut(OTHER_NUMBER)).isFalse();
+        now += fourth;
+        assertThat(throttle.isLockedOut(NUMBER)).isFalse();
+    }
+
+    @Test
+    void clearForgetsLockouts() {
+        // prepare
+        for (int i = 0; i <= AuthThrottle.FREE_FAILURES; i++) {
+            throttle.onFailure(NUMBER);
+        }
+
+        // test
+        throttle.clear();
+
+        // assert
+        assertThat(throttle.isLockedOut(NUMBER)).isFalse();
+        assertThat(throttle.tryAcquire(NUMBER)).isTrue();
+    }
+
+    @Test
+    void onFailureLockoutIsCapped() {
+        // test
+        long lockout = 0;
+        for (int i = 0; i < 40; i++) {
+            lockout = throttle.onFailure(NUMBER);
+        }
+
+        // assert
+        assertThat(lockout).isEqualTo(AuthThrottle.MAX_LOCKOUT_MILLIS);
+    }
+
+    @Test
+    void onSuccessClearsFailures() {
+        // prepare
+        throttle.onFailure(NUMBER);
+        throttle.onFailure(NUMBER);
+
+        // test
+        throttle.onSuccess(NUMBER);
+
+        // assert
+        assertThat(throttle.onFailure(NUMBER)).isZero();
+    }
+
+    @Test
+    void failuresAreForgotten() {
+        // prepare
+        throttle.onFailure(NUMBER);
+        throttle.onFailure(NUMBER);
+        now += AuthThrottle.FAILURE_MEMORY_MILLIS + 1;
+
+        // test
+        long lockout = throttle.onFailure(NUMBER);
+
+        // assert
+        assertThat(lockout).isZero();
+    }
+
+    @Test
+    void restoreSurvivesRestart() {
+        // prepare
+        for (int i = 0; i < 3; i++) {
+            throttle.onFailure(NUMBER);
+        }
+        for (int i = 0; i < AuthThrottle.BUCKET_CAPACITY; i++) {
+            throttle.tryAcquire(OTHER_NUMBER);
+        }
+
+        // test
+        AuthThrottle restarted = new AuthThrottle(() -> now, new MemoryStore());
+        for (Map.Entry<String, String> entry : new HashMap<>(stored).entrySet()) {
+            restarted.restore(entry.getKey(), entry.getValue());
+        }
+
+        // assert
+        assertThat(restarted.isLockedOut(NUMBER)).isTrue();
+        assertThat(restarted.tryAcquire(OTHER_NUMBER)).isFalse();
+    }
+
+    @Test
+    void restoreDropsInvalidState() {
+        // prepare
+        stored.put(NUMBER, "invalid");
+
+        // test
+        throttle.restore(NUMBER, "invalid");
+
+        // assert
+        assertThat(stored).doesNotContainKey(NUMBER);
+        assertThat(throttle.isLockedOut(NUMBER)).isFalse();
+    }
+
+    private class MemoryStore implements AuthThrottle.Store {
+        @Override
+        public void put(String phoneNumber, String state) {
+            stored.put(phoneNumber, state);
+        }
+
+        @Override
+        public void remove(String phoneNumber) {
+            stored.remove(phoneNumber);
+        }
+    }
+}
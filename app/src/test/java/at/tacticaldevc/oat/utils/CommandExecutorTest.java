@@ -0,0 +1,155 @@
+package at.tacticaldevc.oat.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class CommandExecutorTest {
+
+    @Test
+    void submitRunsCommandAndFinishes() throws InterruptedException {
+        // prepare
+        CommandExecutor executor = new CommandExecutor(1, 1, 1000);
+        AtomicInteger runs = new AtomicInteger(0);
+        CountDownLatch finished = new CountDownLatch(1);
+
+        // test
+        boolean accepted = executor.submit(runs::incrementAndGet, finished::countDown);
+
+        // assert
+        assertThat(accepted).isTrue();
+        assertThat(finished.await(1, TimeUnit.SECONDS)).isTrue();
+        assertThat(runs.get()).isEqualTo(1);
+    }
+
+    @Test
+    void submitFinishesWhenCommandFails() throws InterruptedException {
+        // prepare
+        CommandExecutor executor = new CommandExecutor(1, 1, 1000);
+        CountDownLatch finished = new CountDownLatch(1);
+
+        // test
+        executor.submit(() -> {
+            throw new IllegalStateException("test Exception");
+        }, finished::countDown);
+
+        // assert
+        assertThat(finished.await(1, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    void submitFinishesOnceWhenCommandTimesOut() throws InterruptedException {
+        // prepare
+        CommandExecutor executor = new CommandExecutor(1, 1, 50);
+        AtomicInteger finishCalls = new AtomicInteger(0);
+        CountDownLatch finished = new CountDownLatch(1);
+
+        // test
+        executor.submit(() -> {
+            try {
+                Thread.sleep(5000);
+            } catch (InterruptedException ignored) {
+            }
+        }, () -> {
+            finishCalls.incrementAndGet();
+            finished.countDown();
+        });
+
+        // assert
+        assertThat(finished.await(1, TimeUnit.SECONDS)).isTrue();
+        Thread.sleep(100);
+        assertThat(finishCalls.get()).isEqualTo(1);
+    }
+
+    @Test
+    void submitDoesNotInterruptRunningCommandOnTimeout() throws InterruptedException {
+        // prepare
+        CommandExecutor executor = new CommandExecutor(1, 1, 50);
+        CountDownLatch finished = new CountDownLatch(1);
+        CountDownLatch completed = new CountDownLatch(1);
+        AtomicBoolean interrupted = new AtomicBoolean(false);
+
+        // test
+        executor.submit(() -> {
+            try {
+                Thread.sleep(200);
+                completed.countDown();
+            } catch (InterruptedException ex) {
+                interrupted.set(true);
+            }
+        }, finished::countDown);
+
+        // assert
+        assertThat(finished.await(150, TimeUnit.MILLISECONDS)).isTrue();
+        assertThat(completed.await(1, TimeUnit.SECONDS)).isTrue();
+        assertThat(interrupted.get()).isFalse();
+    }
+
+    @Test
+    void submitDropsQueuedCommandOnTimeout() throws InterruptedException {
+        // prepare
+        CommandExecutor executor = new CommandExecutor(1, 1, 50);
+        CountDownLatch block = new CountDownLatch(1);
+        CountDownLatch queuedFinished = new CountDownLatch(1);
+        AtomicInteger queuedRuns = new AtomicInteger(0);
+        long droppedBefore = Metrics.getCount(CommandExecutor.METRIC_DROPPED);
+
+        // test
+        executor.submit(() -> {
+            try {
+                block.await();
+            } catch (InterruptedException ignored) {
+            }
+        }, () -> {
+        });
+        executor.submit(queuedRuns::incrementAndGet, queuedFinished::countDown);
+
+        // assert
+        assertThat(queuedFinished.await(1, TimeUnit.SECONDS)).isTrue();
+        block.countDown();
+        Thread.sleep(100);
+        assertThat(queuedRuns.get()).isZero();
+        assertThat(Metrics.getCount(CommandExecutor.METRIC_DROPPED)).isEqualTo(droppedBefore + 1);
+    }
+
+    @Test
+    void submitRejectsCommandsWhenQueueIsFull() throws InterruptedException {
+        // prepare
+        CommandExecutor executor = new CommandExecutor(1, 1, 1000);
+        CountDownLatch block = new CountDownLatch(1);
+        CountDownLatch rejectedFinished = new CountDownLatch(1);
+        Runnable blocking = () -> {
+            try {
+                block.await();
+            } catch (InterruptedException ignored) {
+            }
+        };
+
+        // test
+        boolean first = executor.submit(blocking, () -> {
+        });
+        boolean second = executor.submit(blocking, () -> {
+        });
+        boolean third = executor.submit(blocking, rejectedFinished::countDown);
+        block.countDown();
+
+        // assert
+        assertThat(first).isTrue();
+        assertThat(second).isTrue();
+        assertThat(third).isFalse();
+        assertThat(rejectedFinished.await(0, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    void constructorWithInvalidValues() {
+        assertThrows(IllegalArgumentException.class, () -> new CommandExecutor(0, 1, 1));
+        assertThrows(IllegalArgumentException.class, () -> new CommandExecutor(1, 0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new CommandExecutor(1, 1, 0));
+    }
+}
@@ -0,0 +1,341 @@
+package at.tacticaldevc.oat.utils;
+
+import android.content.SharedPreferences;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ConfigStoreTest {
+
+    private File dir;
+    private File file;
+    private ScheduledExecutorService executor;
+
+    @BeforeEach
+    void init() throws IOException {
+        dir = Files.createTempDirectory("oat-config").toFile();
+        file = new File(dir, "config.bin");
+        executor = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @AfterEach
+    void cleanup() {
+        executor.shutdownNow();
+        for (File f : dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    void commitAndLoad() throws IOException {
+        // prepare
+        ConfigStore store = new ConfigStore(file, executor, 1000);
+        store.getSection("oat-data").edit()
+                .putString("cmd-trigger", "oat")
+                .putBoolean("lockdown-status", true)
+                .putStringSet("missing-permission", new HashSet<>(Arrays.asList("a", "b")))
+                .putInt("int", 7)
+                .putLong("long", 1L << 40)
+                .putFloat("float", 1.5f)
+                .commit();
+        store.getSection("oat-trusted-contacts").edit().putString("+4366012345678", "Max").commit();
+
+        // test
+        ConfigStore loaded = new ConfigStore(file, executor, 1000);
+        boolean result = loaded.load();
+
+        // assert
+        assertThat(result).isTrue();
+        SharedPreferences data = loaded.getSection("oat-data");
+        assertThat(data.getString("cmd-trigger", null)).isEqualTo("oat");
+        assertThat(data.getBoolean("lockdown-status", false)).isTrue();
+        assertThat(data.getStringSet("missing-permission", null)).containsExactlyInAnyOrder("a", "b");
+        assertThat(data.getInt("int", 0)).isEqualTo(7);
+        assertThat(data.getLong("long", 0)).isEqualTo(1L << 40);
+        assertThat(data.getFloat("float", 0)).isEqualTo(1.5f);
+        assertThat(loaded.getSection("oat-trusted-contacts").getString("+4366012345678", null)).isEqualTo("Max");
+        assertThat(new File(dir, "config.bin.tmp")).doesNotExist();
+    }
+
+    @Test
+    void encryptedCommitAndLoad() throws IOException {
+        // prepare
+        EncLayer encLayer = new EncLayer(EncLayer.generateSoftwareKey(), EncLayer.DEFAULT_CHUNK_SIZE);
+        ConfigStore store = new ConfigStore(file, executor, 1000, encLayer);
+        store.getSection("oat-trusted-contacts").edit().putString("+4366012345678", "Max").commit();
+
+        // test
+        ConfigStore loaded = new ConfigStore(file, executor, 1000, encLayer);
+        loaded.load();
+
+        // assert
+        assertThat(new String(Files.readAllBytes(file.toPath()), "ISO-8859-1")).doesNotContain("+4366012345678");
+        assertThat(loaded.getSection("oat-trusted-contacts").getString("+4366012345678", null)).isEqualTo("Max");
+        assertThrows(IOException.class, () -> new ConfigStore(file, executor, 1000).load());
+    }
+
+    @Test
+    void plainFileIsEncryptedOnLoad() throws Exception {
+        // prepare
+        ConfigStore plain = new ConfigStore(file, executor, 1000);
+        plain.getSection("oat-trusted-contacts").edit().putString("+4366012345678", "Max").commit();
+        EncLayer encLayer = new EncLayer(EncLayer.generateSoftwareKey(), EncLayer.DEFAULT_CHUNK_SIZE);
+
+        // test
+        ConfigStore store = new ConfigStore(file, executor, 0, encLayer);
+        store.load();
+        store.flush();
+
+        // assert
+        assertThat(EncLayer.isEncrypted(Files.readAllBytes(file.toPath()))).isTrue();
+        ConfigStore loaded = new ConfigStore(file, executor, 1000, encLayer);
+        loaded.load();
+        assertThat(loaded.getSection("oat-trusted-contacts").getString("+4366012345678", null)).isEqualTo("Max");
+    }
+
+    @Test
+    void wipeClearsSectionsAndFile() {
+        // prepare
+        ConfigStore store = new ConfigStore(file, executor, 1000);
+        SharedPreferences contacts = store.getSection("oat-trusted-contacts");
+        contacts.edit().putString("+4366012345678", "Max").commit();
+        store.getSection("oat-data").edit().putString("cmd-trigger", "oat").apply();
+        List<String> notified = new ArrayList<>();
+        SharedPreferences.OnSharedPreferenceChangeListener listener = (prefs, key) -> notified.add(key);
+        contacts.registerOnSharedPreferenceChangeListener(listener);
+
+        // test
+        store.wipe();
+        store.flush();
+
+        // assert
+        assertThat(file).doesNotExist();
+        assertThat(contacts.getAll()).isEmpty();
+        assertThat(store.getSection("oat-data").getAll()).isEmpty();
+        assertThat(notified).containsExactly((String) null);
+    }
+
+    @Test
+    void loadWithoutFile() throws IOException {
+        // test
+        boolean result = new ConfigStore(file, executor, 1000).load();
+
+        // assert
+        assertThat(result).isFalse();
+    }
+
+    @Test
+    void removeAndClear() {
+        // prepare
+        ConfigStore store = new ConfigStore(file, executor, 1000);
+        SharedPreferences section = store.getSection("oat-data");
+        section.edit().putString("a", "1").putString("b", "2").putString("c", "3").commit();
+
+        // test
+        section.edit().remove("a").commit();
+        SharedPreferences.Editor editor = section.edit();
+        editor.clear().putString("d", "4").commit();
+
+        // assert
+        assertThat(section.getAll()).containsOnlyKeys("d");
+        assertThat(section.contains("a")).isFalse();
+    }
+
+    @Test
+    void applyIsBatched() throws Exception {
+        // prepare
+        ConfigStore store = new ConfigStore(file, executor, 200);
+        SharedPreferences section = store.getSection("oat-enabled-features");
+        long writes = Metrics.getCount(ConfigStore.METRIC_WRITES);
+
+        // test
+        for (int i = 0; i < 20; i++) {
+            section.edit().putBoolean("feature-" + i, true).apply();
+        }
+        assertThat(file).doesNotExist();
+        executor.schedule(() -> null, 400, TimeUnit.MILLISECONDS).get();
+
+        // assert
+        assertThat(Metrics.getCount(ConfigStore.METRIC_WRITES) - writes).isEqualTo(1);
+        ConfigStore loaded = new ConfigStore(file, executor, 200);
+        loaded.load();
+        assertThat(loaded.getSection("oat-enabled-features").getAll()).hasSize(20);
+    }
+
+    @Test
+    void listenersAreNotifiedOfChanges() {
+        // prepare
+        ConfigStore store = new ConfigStore(file, executor, 1000);
+        SharedPreferences section = store.getSection("oat-permissions");
+        section.edit().putBoolean("camera", true).commit();
+        List<String> changed = new ArrayList<>();
+        SharedPreferences.OnSharedPreferenceChangeListener listener = (prefs, key) -> changed.add(key);
+        section.registerOnSharedPreferenceChangeListener(listener);
+
+        // test
+        section.edit().putBoolean("camera", true).putBoolean("location", false).commit();
+
+        // assert
+        assertThat(changed).containsExactly("location");
+    }
+
+    @Test
+    void transactionNotifiesListenersOnce() throws IOException {
+        // prepare
+        ConfigStore store = new ConfigStore(file, executor, 1000);
+        List<String> changed = new ArrayList<>();
+        SharedPreferences.OnSharedPreferenceChangeListener listener = (prefs, key) -> changed.add(key);
+        SharedPreferences.OnSharedPreferenceChangeListener dataListener = (prefs, key) -> changed.add("data:" + key);
+        store.getSection("oat-enabled-features").registerOnSharedPreferenceChangeListener(listener);
+        store.getSection("oat-permissions").registerOnSharedPreferenceChangeListener(listener);
+        store.getSection("oat-data").registerOnSharedPreferenceChangeListener(dataListener);
+
+        // test
+        ConfigStore.Transaction transaction = store.beginTransaction();
+        transaction.edit("oat-enabled-features").putBoolean("lockdown", true).putBoolean("unlock", true);
+        transaction.edit("oat-permissions").putBoolean("camera", true);
+        transaction.edit("oat-data").putBoolean("lockdown-status", false);
+        assertThat(changed).isEmpty();
+        boolean result = transaction.commit();
+        store.flush();
+
+        // assert
+        assertThat(result).isTrue();
+        assertThat(changed).containsExactly(null, "data:lockdown-status");
+        ConfigStore loaded = new ConfigStore(file, executor, 1000);
+        loaded.load();
+        assertThat(loaded.getSection("oat-enabled-features").getAll()).hasSize(2);
+        assertThat(loaded.getSection("oat-permissions").getBoolean("camera", false)).isTrue();
+        assertThrows(IllegalStateException.class, transaction::commit);
+        assertThrows(UnsupportedOperationException.class, () -> store.beginTransaction().edit("oat-data").apply());
+    }
+
+    @Test
+    void loadRejectsDamagedFile() throws IOException {
+        // prepare
+        ConfigStore store = new ConfigStore(file, executor, 1000);
+        store.getSection("oat-data").edit().putString("cmd-trigger", "oat").commit();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(raf.length() - 12);
+            raf.write(0x55);
+        }
+
+        // assert
+        assertThrows(IOException.class, () -> new ConfigStore(file, executor, 1000).load());
+    }
+
+    @Test
+    void damagedFileIsMovedAsideAndNotOverwritten() throws IOException {
+        // prepare
+        ConfigStore store = new ConfigStore(file, executor, 1000);
+        store.getSection("oat-data").edit().putString("cmd-trigger", "oat").commit();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(raf.length() - 12);
+            raf.write(0x55);
+        }
+        byte[] damaged = Files.readAllBytes(file.toPath());
+        ConfigStore loaded = new ConfigStore(file, executor, 1000);
+        IOException cause = assertThrows(IOException.class, loaded::load);
+
+        // test
+        loaded.onLoadFailed(cause);
+        boolean committed = loaded.getSection("oat-data").edit().putString("cmd-trigger", "other").commit();
+
+        // assert
+        assertThat(committed).isFalse();
+        assertThat(loaded.getLoadFailure()).isSameAs(cause);
+        assertThat(file).doesNotExist();
+        assertThat(Files.readAllBytes(new File(dir, "config.bin" + ConfigStore.CORRUPT_SUFFIX).toPath())).isEqualTo(damaged);
+    }
+
+    @Test
+    void encryptedFileIsKeptWithoutKey() throws IOException {
+        // prepare
+        EncLayer encLayer = new EncLayer(EncLayer.generateSoftwareKey(), EncLayer.DEFAULT_CHUNK_SIZE);
+        ConfigStore store = new ConfigStore(file, executor, 1000, encLayer);
+        store.getSection("oat-trusted-contacts").edit().putString("+4366012345678", "Max").commit();
+        ConfigStore withoutKey = new ConfigStore(file, executor, 1000);
+        IOException cause = assertThrows(IOException.class, withoutKey::load);
+
+        // test
+        withoutKey.onLoadFailed(cause);
+        withoutKey.getSection("oat-data").edit().putString("cmd-trigger", "oat").commit();
+
+        // assert
+        assertThat(withoutKey.flush()).isFalse();
+        ConfigStore loaded = new ConfigStore(file, executor, 1000, encLayer);
+        loaded.load();
+        assertThat(loaded.getSection("oat-trusted-contacts").getString("+4366012345678", null)).isEqualTo("Max");
+        assertThat(new File(dir, "config.bin" + ConfigStore.CORRUPT_SUFFIX)).doesNotExist();
+    }
+
+    @Test
+    void wipeWritesAgainAfterLoadFailure() throws IOException {
+        // prepare
+        ConfigStore store = new ConfigStore(file, executor, 1000);
+        store.getSection("oat-data").edit().putString("cmd-trigger", "oat").commit();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.writeInt(0);
+        }
+        ConfigStore loaded = new ConfigStore(file, executor, 1000);
+        loaded.onLoadFailed(assertThrows(IOException.class, loaded::load));
+
+        // test
+        loaded.wipe();
+        boolean committed = loaded.getSection("oat-data").edit().putString("cmd-trigger", "new").commit();
+
+        // assert
+        assertThat(committed).isTrue();
+        assertThat(file).exists();
+        assertThat(new File(dir, "config.bin" + ConfigStore.CORRUPT_SUFFIX)).doesNotExist();
+    }
+
+    @Test
+    void loadRejectsNewerVersion() throws IOException {
+        // prepare
+        ConfigStore store = new ConfigStore(file, executor, 1000);
+        store.getSection("oat-data").edit().putString("cmd-trigger", "oat").commit();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(4);
+            raf.writeInt(ConfigStore.FORMAT_VERSION + 1);
+        }
+
+        // assert
+        assertThrows(IOException.class, () -> new ConfigStore(file, executor, 1000).load());
+    }
+
+    @Test
+    void loadManyEntries() throws IOException {
+        // prepare
+        ConfigStore store = new ConfigStore(file, executor, 1000);
+        SharedPreferences.Editor editor = store.getSection("oat-trusted-contacts").edit();
+        for (int i = 0; i < 200; i++) {
+            editor.putString("+43660" + i, "Contact " + i);
+        }
+        editor.commit();
+
+        // test
+        ConfigStore loaded = new ConfigStore(file, executor, 1000);
+        loaded.load();
+
+        // assert
+        assertThat(loaded.getSection("oat-trusted-contacts").getAll()).hasSize(200);
+    }
+}
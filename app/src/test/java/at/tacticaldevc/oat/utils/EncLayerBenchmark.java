@@ -0,0 +1,65 @@
+package at.tacticaldevc.oat.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+
+/**
+ * Prints the throughput of writing a picture through the {@link EncLayer} compared with writing it to a plain file.
+ * It is not a test and does not run with the unit tests, run its main method to compare the throughput.
+ */
+public class EncLayerBenchmark {
+    private static final int SIZE = 8 * 1024 * 1024;
+    private static final int RUNS = 3;
+
+    public static void main(String[] args) throws IOException {
+        byte[] data = new byte[SIZE];
+        new Random(SIZE).nextBytes(data);
+        EncLayer layer = new EncLayer(EncLayer.generateSoftwareKey(), EncLayer.DEFAULT_CHUNK_SIZE);
+        File plainFile = File.createTempFile("oat-plain", ".jpg");
+        File encryptedFile = File.createTempFile("oat-encrypted", ".enc");
+
+        try {
+            long plainNanos = Long.MAX_VALUE;
+            long encryptNanos = Long.MAX_VALUE;
+            long decryptNanos = Long.MAX_VALUE;
+            byte[] buffer = new byte[EncLayer.DEFAULT_CHUNK_SIZE];
+            for (int i = 0; i < RUNS; i++) {
+                long start = System.nanoTime();
+                try (OutputStream out = new FileOutputStream(plainFile)) {
+                    writeInBlocks(out, data);
+                }
+                plainNanos = Math.min(plainNanos, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                try (OutputStream out = layer.encrypt(new FileOutputStream(encryptedFile))) {
+                    writeInBlocks(out, data);
+                }
+                encryptNanos = Math.min(encryptNanos, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                try (InputStream in = layer.decrypt(new FileInputStream(encryptedFile))) {
+                    while (in.read(buffer) >= 0) ;
+                }
+                decryptNanos = Math.min(decryptNanos, System.nanoTime() - start);
+            }
+            double megabytes = data.length / (1024.0 * 1024.0);
+            System.out.println(String.format("EncLayer: plain write %.1f MB/s, encrypted write %.1f MB/s, decrypted read %.1f MB/s",
+                    megabytes / (plainNanos / 1e9), megabytes / (encryptNanos / 1e9), megabytes / (decryptNanos / 1e9)));
+        } finally {
+            plainFile.delete();
+            encryptedFile.delete();
+        }
+    }
+
+    private static void writeInBlocks(OutputStream out, byte[] data) throws IOException {
+        // the camera delivers the picture in blocks that do not match the chunks
+        for (int off = 0; off < data.length; off += 10000) {
+            out.write(data, off, Math.min(10000, data.length - off));
+        }
+    }
+}
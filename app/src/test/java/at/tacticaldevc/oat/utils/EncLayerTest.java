@@ -0,0 +1,203 @@
+package at.tacticaldevc.oat.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.crypto.SecretKey;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class EncLayerTest {
+    private static final int CHUNK_SIZE = 1024;
+
+    private final SecretKey key = EncLayer.generateSoftwareKey();
+    private final EncLayer encLayer = new EncLayer(key, CHUNK_SIZE);
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1, CHUNK_SIZE - 1, CHUNK_SIZE, CHUNK_SIZE + 1, 3 * CHUNK_SIZE, 10000})
+    void roundTrip(int length) throws IOException {
+        // prepare
+        byte[] data = randomBytes(length);
+
+        // test
+        byte[] encrypted = encrypt(encLayer, data);
+        byte[] decrypted = decrypt(encLayer, encrypted);
+
+        // assert
+        assertThat(EncLayer.isEncrypted(encrypted)).isTrue();
+        int chunks = Math.max(1, (length + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        assertThat(encrypted).hasSize(EncLayer.HEADER_LENGTH + length + chunks * EncLayer.TAG_LENGTH);
+        assertThat(decrypted).isEqualTo(data);
+    }
+
+    @Test
+    void encryptUsesFreshNonces() throws IOException {
+        // prepare
+        byte[] data = randomBytes(100);
+
+        // test
+        byte[] first = encrypt(encLayer, data);
+        byte[] second = encrypt(encLayer, data);
+
+        // assert
+        assertThat(first).isNotEqualTo(second);
+    }
+
+    @Test
+    void decryptDetectsTampering() throws IOException {
+        // prepare
+        byte[] encrypted = encrypt(encLayer, randomBytes(2 * CHUNK_SIZE + 10));
+        encrypted[EncLayer.HEADER_LENGTH + CHUNK_SIZE + 20] ^= 1;
+
+        // test & assert
+        assertThrows(IOException.class, () -> decrypt(encLayer, encrypted));
+    }
+
+    @Test
+    void decryptDetectsTamperedHeader() throws IOException {
+        // prepare
+        byte[] encrypted = encrypt(encLayer, randomBytes(100));
+        encrypted[EncLayer.HEADER_LENGTH - 1] ^= 1;
+
+        // test & assert
+        assertThrows(IOException.class, () -> decrypt(encLayer, encrypted));
+    }
+
+    @Test
+    void decryptDetectsTruncationAtChunkBoundary() throws IOException {
+        // prepare
+        byte[] encrypted = encrypt(encLayer, randomBytes(3 * CHUNK_SIZE));
+        byte[] truncated = Arrays.copyOf(encrypted, EncLayer.HEADER_LENGTH + 2 * (CHUNK_SIZE + EncLayer.TAG_LENGTH));
+
+        // test & assert
+        assertThrows(IOException.class, () -> decrypt(encLayer, truncated));
+    }
+
+    @Test
+    void decryptDetectsAppendedData() throws IOException {
+        // prepare
+        byte[] encrypted = encrypt(encLayer, randomBytes(CHUNK_SIZE / 2));
+        byte[] extended = Arrays.copyOf(encrypted, encrypted.length + 1);
+
+        // test & assert
+        assertThrows(IOException.class, () -> decrypt(encLayer, extended));
+    }
+
+    @Test
+    void decryptRejectsOtherKey() throws IOException {
+        // prepare
+        byte[] encrypted = encrypt(encLayer, randomBytes(100));
+        EncLayer other = new EncLayer(EncLayer.generateSoftwareKey(), CHUNK_SIZE);
+
+        // test & assert
+        assertThrows(IOException.class, () -> decrypt(other, encrypted));
+    }
+
+    @Test
+    void destroyKeyMakesDataUnrecoverable() throws IOException {
+        // prepare
+        byte[] data = randomBytes(3000);
+        byte[] encrypted = encrypt(encLayer, data);
+
+        // test
+        encLayer.destroyKey();
+
+        // assert
+        assertThrows(IOException.class, () -> decrypt(encLayer, encrypted));
+        byte[] fresh = randomBytes(100);
+        assertThat(decrypt(encLayer, encrypt(encLayer, fresh))).isEqualTo(fresh);
+    }
+
+    @Test
+    void decryptReadsChunkSizeFromHeader() throws IOException {
+        // prepare
+        byte[] data = randomBytes(5000);
+        byte[] encrypted = encrypt(new EncLayer(key, 333), data);
+
+        // test
+        byte[] decrypted = decrypt(encLayer, encrypted);
+
+        // assert
+        assertThat(decrypted).isEqualTo(data);
+    }
+
+    @Test
+    void decryptRejectsPlainData() {
+        // test & assert
+        assertThat(EncLayer.isEncrypted(randomBytes(100))).isFalse();
+        assertThrows(IOException.class, () -> decrypt(encLayer, randomBytes(100)));
+    }
+
+    @Test
+    void fileRoundTripInBlocks() throws IOException {
+        // prepare
+        byte[] data = randomBytes(1024 * 1024);
+        EncLayer layer = new EncLayer(key, EncLayer.DEFAULT_CHUNK_SIZE);
+        File encryptedFile = File.createTempFile("oat-encrypted", ".enc");
+
+        try {
+            // test
+            try (OutputStream out = layer.encrypt(new FileOutputStream(encryptedFile))) {
+                writeInBlocks(out, data);
+            }
+            ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+            byte[] buffer = new byte[EncLayer.DEFAULT_CHUNK_SIZE];
+            try (InputStream in = layer.decrypt(new FileInputStream(encryptedFile))) {
+                int read;
+                while ((read = in.read(buffer)) >= 0) decrypted.write(buffer, 0, read);
+            }
+
+            // assert
+            assertThat(encryptedFile.length()).isGreaterThan(data.length);
+            assertThat(decrypted.toByteArray()).isEqualTo(data);
+        } finally {
+            encryptedFile.delete();
+        }
+    }
+
+    private static void writeInBlocks(OutputStream out, byte[] data) throws IOException {
+        // the camera delivers the picture in blocks that do not match the chunks
+        for (int off = 0; off < data.length; off += 10000) {
+            out.write(data, off, Math.min(10000, data.length - off));
+        }
+    }
+
+    private static byte[] encrypt(EncLayer layer, byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = layer.encrypt(bytes)) {
+            writeInBlocks(out, data);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] decrypt(EncLayer layer, byte[] encrypted) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (InputStream in = layer.decrypt(new ByteArrayInputStream(encrypted))) {
+            byte[] buffer = new byte[777];
+            int count;
+            while ((count = in.read(buffer)) >= 0) {
+                bytes.write(buffer, 0, count);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+}
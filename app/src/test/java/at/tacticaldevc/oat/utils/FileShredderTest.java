@@ -0,0 +1,95 @@
+package at.tacticaldevc.oat.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FileShredderTest {
+
+    private File dir;
+
+    @BeforeEach
+    void init() throws IOException {
+        dir = Files.createTempDirectory("oat-shredder").toFile();
+    }
+
+    @AfterEach
+    void cleanup() {
+        FileShredder.shred(dir);
+    }
+
+    @Test
+    void shredDeletesDirectoryTree() throws IOException {
+        // prepare
+        File captures = new File(dir, "captures");
+        captures.mkdirs();
+        write(new File(captures, "cap_1.jpg.enc"), new byte[100]);
+        write(new File(captures, "cap_2.jpg.enc"), new byte[0]);
+        write(new File(dir, "outgoing.jpg"), new byte[10]);
+
+        // test
+        int count = FileShredder.shred(dir);
+
+        // assert
+        assertThat(count).isEqualTo(3);
+        assertThat(dir).doesNotExist();
+    }
+
+    @Test
+    void overwriteZeroesContent() throws IOException {
+        // prepare
+        File file = new File(dir, "outgoing.jpg");
+        byte[] content = new byte[100 * 1024 + 7];
+        Arrays.fill(content, (byte) 0x5A);
+        write(file, content);
+
+        // test
+        FileShredder.overwrite(file);
+
+        // assert
+        assertThat(Files.readAllBytes(file.toPath())).hasSize(content.length).containsOnly((byte) 0);
+    }
+
+    @Test
+    void plainFilesAreDetected() throws IOException {
+        // prepare
+        EncLayer encLayer = new EncLayer(EncLayer.generateSoftwareKey(), EncLayer.DEFAULT_CHUNK_SIZE);
+        File captures = new File(dir, "captures");
+        captures.mkdirs();
+        try (OutputStream out = encLayer.encrypt(new FileOutputStream(new File(captures, "cap_1.jpg.enc")))) {
+            out.write(new byte[100]);
+        }
+
+        // test
+        boolean encryptedOnly = FileShredder.holdsPlainFiles(captures);
+        write(new File(captures, "cap_2.jpg"), new byte[100]);
+        boolean withPlainFile = FileShredder.holdsPlainFiles(captures);
+
+        // assert
+        assertThat(encryptedOnly).isFalse();
+        assertThat(withPlainFile).isTrue();
+        assertThat(FileShredder.holdsPlainFiles(new File(dir, "missing"))).isFalse();
+    }
+
+    @Test
+    void shredMissingFile() {
+        // test & assert
+        assertThat(FileShredder.shred(new File(dir, "missing"))).isZero();
+        assertThat(FileShredder.shred(null)).isZero();
+    }
+
+    private static void write(File file, byte[] content) throws IOException {
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(content);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package at.tacticaldevc.oat.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class ImageSinkTest {
+    private static final int PICTURE_SIZE = 4 * 1024 * 1024;
+
+    private final EncLayer encLayer = new EncLayer(EncLayer.generateSoftwareKey(), EncLayer.DEFAULT_CHUNK_SIZE);
+    private File dir;
+
+    @BeforeEach
+    void init() throws IOException {
+        dir = Files.createTempDirectory("oat-sink").toFile();
+    }
+
+    @AfterEach
+    void cleanup() {
+        FileShredder.shred(dir);
+    }
+
+    @Test
+    void writesBufferInPlain() throws IOException {
+        // prepare
+        byte[] picture = randomBytes(100000);
+        ByteBuffer buffer = direct(picture);
+        File file = new File(dir, "outgoing.jpg");
+
+        // test
+        long written = ImageSink.write(buffer, file, null, false);
+
+        // assert
+        assertThat(written).isEqualTo(picture.length);
+        assertThat(buffer.hasRemaining()).isFalse();
+        assertThat(Files.readAllBytes(file.toPath())).isEqualTo(picture);
+    }
+
+    @Test
+    void writesBufferEncrypted() throws IOException {
+        // prepare
+        byte[] picture = randomBytes(3 * EncLayer.DEFAULT_CHUNK_SIZE + 17);
+        File file = new File(dir, "cap.jpg.enc");
+
+        // test
+        ImageSink.write(direct(picture), file, encLayer, true);
+
+        // assert
+        assertThat(EncLayer.isEncrypted(Files.readAllBytes(file.toPath()))).isTrue();
+        try (InputStream in = encLayer.decrypt(new FileInputStream(file))) {
+            assertThat(readAll(in)).isEqualTo(picture);
+        }
+    }
+
+    @Test
+    void onlyRemainingBytesAreWritten() throws IOException {
+        // prepare
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1000);
+        buffer.put(randomBytes(100)).flip();
+        File file = new File(dir, "outgoing.jpg");
+
+        // test
+        ImageSink.write(buffer, file, null, false);
+
+        // assert
+        assertThat(file.length()).isEqualTo(100);
+    }
+
+    @Test
+    void failedWriteLeavesNoFile() {
+        // prepare
+        File file = new File(new File(dir, "missing"), "outgoing.jpg");
+
+        // test & assert
+        assertThrows(IOException.class, () -> ImageSink.write(direct(new byte[10]), file, null, false));
+        assertThat(file).doesNotExist();
+    }
+
+    @Test
+    void createNewFileNeverReplacesAFile() throws IOException {
+        // prepare
+        byte[] picture = randomBytes(1000);
+        File first = ImageSink.createNewFile(dir, "cap_1_0", ".jpg.enc");
+        ImageSink.write(direct(picture), first, null, false);
+
+        // test
+        File second = ImageSink.createNewFile(dir, "cap_1_0", ".jpg.enc");
+
+        // assert
+        assertThat(first.getName()).isEqualTo("cap_1_0.jpg.enc");
+        assertThat(second).isNotEqualTo(first).exists();
+        assertThat(second.getName()).endsWith(".jpg.enc");
+        assertThat(Files.readAllBytes(first.toPath())).isEqualTo(picture);
+    }
+
+    @Test
+    void allocationPerCapture() throws IOException {
+        // prepare
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        // the allocated bytes of a thread are only counted by JVMs that offer the extended bean
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean, "the JVM does not count the allocated bytes of a thread");
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled(), "the JVM does not count the allocated bytes of a thread");
+        long thread = Thread.currentThread().getId();
+        ByteBuffer picture = direct(randomBytes(PICTURE_SIZE));
+        File plain = new File(dir, "outgoing.jpg");
+        File encrypted = new File(dir, "cap.jpg.enc");
+        // the first write loads the classes and fills the caches of the channels
+        ImageSink.write(picture.duplicate(), plain, null, false);
+        ImageSink.write(picture.duplicate(), encrypted, encLayer, false);
+
+        // test
+        long before = threads.getThreadAllocatedBytes(thread);
+        ImageSink.write(picture.duplicate(), plain, null, false);
+        long plainAllocated = threads.getThreadAllocatedBytes(thread) - before;
+
+        before = threads.getThreadAllocatedBytes(thread);
+        ImageSink.write(picture.duplicate(), encrypted, encLayer, false);
+        long encryptedAllocated = threads.getThreadAllocatedBytes(thread) - before;
+
+        // assert
+        assertThat(plainAllocated).isLessThan(PICTURE_SIZE / 16);
+        assertThat(encryptedAllocated).isLessThan(PICTURE_SIZE / 8);
+        assertThat(plain.length()).isEqualTo(PICTURE_SIZE);
+    }
+
+    private static ByteBuffer direct(byte[] data) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(data.length);
+        buffer.put(data).flip();
+        return buffer;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) out.write(buffer, 0, read);
+        return out.toByteArray();
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+}
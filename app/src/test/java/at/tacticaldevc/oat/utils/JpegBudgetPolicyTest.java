@@ -0,0 +1,129 @@
+package at.tacticaldevc.oat.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.offset;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class JpegBudgetPolicyTest {
+    private static final String CAMERA = "1";
+    private static final int[] WIDTHS = {4000, 640, 1920, 1280};
+    private static final int[] HEIGHTS = {3000, 480, 1080, 960};
+
+    @Test
+    void largestResolutionThatFitsIsChosen() {
+        // prepare
+        JpegBudgetPolicy policy = new JpegBudgetPolicy(new HashMap<String, String>()::put);
+
+        // test
+        JpegBudgetPolicy.Setting setting = policy.choose(CAMERA, WIDTHS, HEIGHTS, JpegBudgetPolicy.DEFAULT_BYTE_BUDGET);
+
+        // assert
+        assertThat(setting.getWidth()).isEqualTo(1280);
+        assertThat(setting.getHeight()).isEqualTo(960);
+        assertThat(setting.getQuality()).isEqualTo(JpegBudgetPolicy.PREFERRED_MIN_QUALITY);
+    }
+
+    @Test
+    void smallestResolutionIsChosenIfNothingFits() {
+        // prepare
+        JpegBudgetPolicy policy = new JpegBudgetPolicy(new HashMap<String, String>()::put);
+
+        // test
+        JpegBudgetPolicy.Setting setting = policy.choose(CAMERA, WIDTHS, HEIGHTS, JpegBudgetPolicy.MIN_BYTE_BUDGET);
+
+        // assert
+        assertThat(setting.getWidth()).isEqualTo(640);
+        assertThat(setting.getQuality()).isEqualTo(JpegBudgetPolicy.MIN_QUALITY);
+    }
+
+    @Test
+    void observedPicturesAdjustTheChoiceAndArePersisted() {
+        // prepare
+        Map<String, String> store = new HashMap<>();
+        JpegBudgetPolicy policy = new JpegBudgetPolicy(store::put);
+        JpegBudgetPolicy.Setting first = policy.choose(CAMERA, WIDTHS, HEIGHTS, JpegBudgetPolicy.DEFAULT_BYTE_BUDGET);
+
+        // test
+        policy.observe(CAMERA, first, 100 * 1024);
+        JpegBudgetPolicy.Setting second = policy.choose(CAMERA, WIDTHS, HEIGHTS, JpegBudgetPolicy.DEFAULT_BYTE_BUDGET);
+
+        // assert
+        assertThat(second.getWidth()).isEqualTo(1920);
+        assertThat(second.getQuality()).isGreaterThan(JpegBudgetPolicy.PREFERRED_MIN_QUALITY);
+        assertThat(store).containsKey(CAMERA);
+        assertThat(policy.fetchBytesPerPixel("0")).isEqualTo(JpegBudgetPolicy.DEFAULT_BYTES_PER_PIXEL);
+
+        JpegBudgetPolicy restored = new JpegBudgetPolicy(new HashMap<String, String>()::put);
+        restored.restore(CAMERA, store.get(CAMERA));
+        assertThat(restored.fetchBytesPerPixel(CAMERA)).isEqualTo(policy.fetchBytesPerPixel(CAMERA));
+    }
+
+    @Test
+    void learningIsSmoothed() {
+        // prepare
+        JpegBudgetPolicy policy = new JpegBudgetPolicy(new HashMap<String, String>()::put);
+        JpegBudgetPolicy.Setting setting = new JpegBudgetPolicy.Setting(1000, 1000, JpegBudgetPolicy.REFERENCE_QUALITY);
+        policy.observe(CAMERA, setting, 200 * 1000);
+
+        // test
+        policy.observe(CAMERA, setting, 400 * 1000);
+
+        // assert
+        assertThat(policy.fetchBytesPerPixel(CAMERA)).isGreaterThan(0.2).isLessThan(0.4);
+    }
+
+    @Test
+    void corruptedValuesAreIgnored() {
+        // prepare
+        JpegBudgetPolicy policy = new JpegBudgetPolicy(new HashMap<String, String>()::put);
+
+        // test
+        policy.restore(CAMERA, "not a number");
+        policy.restore("2", "-1");
+
+        // assert
+        assertThat(policy.fetchBytesPerPixel(CAMERA)).isEqualTo(JpegBudgetPolicy.DEFAULT_BYTES_PER_PIXEL);
+        assertThat(policy.fetchBytesPerPixel("2")).isEqualTo(JpegBudgetPolicy.DEFAULT_BYTES_PER_PIXEL);
+    }
+
+    @Test
+    void reencodeLowersQualityBeforeResolution() {
+        // prepare
+        JpegBudgetPolicy policy = new JpegBudgetPolicy(new HashMap<String, String>()::put);
+        JpegBudgetPolicy.Setting setting = new JpegBudgetPolicy.Setting(1280, 960, JpegBudgetPolicy.MAX_QUALITY);
+
+        // test
+        JpegBudgetPolicy.Setting slightly = policy.planReencode(setting, 400 * 1024, 300 * 1024);
+        JpegBudgetPolicy.Setting far = policy.planReencode(setting, 1000 * 1024, 300 * 1024);
+
+        // assert
+        assertThat(slightly.getWidth()).isEqualTo(1280);
+        assertThat(slightly.getQuality()).isLessThan(JpegBudgetPolicy.MAX_QUALITY).isGreaterThanOrEqualTo(JpegBudgetPolicy.PREFERRED_MIN_QUALITY);
+        assertThat(far.getQuality()).isEqualTo(JpegBudgetPolicy.PREFERRED_MIN_QUALITY);
+        assertThat(far.getWidth()).isLessThan(1280);
+        assertThat((double) far.getWidth() / far.getHeight()).isCloseTo(1280.0 / 960, offset(0.01));
+    }
+
+    @Test
+    void sizeFactorIsInterpolated() {
+        // test & assert
+        assertThat(JpegBudgetPolicy.sizeFactor(JpegBudgetPolicy.REFERENCE_QUALITY)).isEqualTo(1.0);
+        assertThat(JpegBudgetPolicy.sizeFactor(77)).isGreaterThan(JpegBudgetPolicy.sizeFactor(75)).isLessThan(JpegBudgetPolicy.sizeFactor(80));
+        assertThat(JpegBudgetPolicy.sizeFactor(10)).isEqualTo(JpegBudgetPolicy.sizeFactor(JpegBudgetPolicy.MIN_QUALITY));
+    }
+
+    @Test
+    void invalidResolutionsAreRejected() {
+        // prepare
+        JpegBudgetPolicy policy = new JpegBudgetPolicy(new HashMap<String, String>()::put);
+
+        // test & assert
+        assertThrows(IllegalArgumentException.class, () -> policy.choose(CAMERA, new int[0], new int[0], JpegBudgetPolicy.DEFAULT_BYTE_BUDGET));
+        assertThrows(IllegalArgumentException.class, () -> policy.choose(CAMERA, new int[]{640}, new int[0], JpegBudgetPolicy.DEFAULT_BYTE_BUDGET));
+    }
+}
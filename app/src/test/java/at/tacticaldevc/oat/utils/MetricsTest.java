@@ -0,0 +1,47 @@
+package at.tacticaldevc.oat.utils;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class MetricsTest {
+
+    @BeforeEach
+    void init() {
+        Metrics.reset();
+    }
+
+    @Test
+    void incrementAndAdd() {
+        // test
+        Metrics.increment("test.counter");
+        Metrics.add("test.counter", 4);
+
+        // assert
+        assertThat(Metrics.getCount("test.counter")).isEqualTo(5);
+        assertThat(Metrics.getCount("test.unknown")).isZero();
+        assertThat(Metrics.snapshot()).containsEntry("test.counter", 5L);
+    }
+
+    @Test
+    void recordLatency() {
+        // test
+        Metrics.recordLatency("test.latency", 10);
+        Metrics.recordLatency("test.latency", 30);
+
+        // assert
+        Metrics.Latency latency = Metrics.getLatency("test.latency");
+        assertThat(latency.getCount()).isEqualTo(2);
+        assertThat(latency.getAverageMillis()).isEqualTo(20);
+        assertThat(latency.getMaxMillis()).isEqualTo(30);
+        assertThat(Metrics.getLatency("test.unknown")).isNull();
+    }
+
+    @Test
+    void incrementWithInvalidName() {
+        assertThrows(IllegalArgumentException.class, () -> Metrics.increment(""));
+        assertThrows(IllegalArgumentException.class, () -> Metrics.recordLatency(null, 1));
+    }
+}
@@ -0,0 +1,181 @@
+package at.tacticaldevc.oat.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class MmsPduTest {
+    private static final String NUMBER = "+4366012345678";
+
+    private File dir;
+
+    @BeforeEach
+    void init() throws IOException {
+        dir = Files.createTempDirectory("oat-mms").toFile();
+    }
+
+    @AfterEach
+    void cleanup() {
+        FileShredder.shred(dir);
+    }
+
+    @Test
+    void uintvarEncoding() throws IOException {
+        // test & assert
+        assertThat(uintvar(0)).containsExactly(0x00);
+        assertThat(uintvar(127)).containsExactly(0x7F);
+        assertThat(uintvar(128)).containsExactly(0x81, 0x00);
+        assertThat(uintvar(16383)).containsExactly(0xFF, 0x7F);
+        assertThat(uintvar(300 * 1024)).containsExactly(0x92, 0xE0, 0x00);
+        assertThat(uintvar(0xFFFFFFFFL)).containsExactly(0x8F, 0xFF, 0xFF, 0xFF, 0x7F);
+        assertThrows(IllegalArgumentException.class, () -> uintvar(-1));
+    }
+
+    @Test
+    void sendRequestHeaders() throws IOException {
+        // prepare
+        File front = picture("outgoing-0.jpg", 10);
+
+        // test
+        byte[] pdu = write("T1", Collections.singletonList(front));
+
+        // assert
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(new byte[]{(byte) 0x8C, (byte) 0x80, (byte) 0x98, 'T', '1', 0, (byte) 0x8D, (byte) 0x92, (byte) 0x89, 0x01, (byte) 0x81, (byte) 0x97});
+        expected.write((NUMBER + "/TYPE=PLMN").getBytes(StandardCharsets.US_ASCII));
+        expected.write(new byte[]{0, (byte) 0x84, (byte) 0xA3});
+        assertThat(Arrays.copyOf(pdu, expected.size())).isEqualTo(expected.toByteArray());
+    }
+
+    @Test
+    void picturesArePackedIntoOneMessage() throws IOException {
+        // prepare
+        File front = picture("outgoing-0.jpg", 1000);
+        File rear = picture("outgoing-1.jpg", 200000);
+
+        // test
+        byte[] pdu = write("T2", Arrays.asList(front, rear));
+
+        // assert
+        List<byte[]> parts = parseParts(pdu, Arrays.asList("outgoing-0.jpg", "outgoing-1.jpg"));
+        assertThat(parts).hasSize(2);
+        assertThat(parts.get(0)).isEqualTo(Files.readAllBytes(front.toPath()));
+        assertThat(parts.get(1)).isEqualTo(Files.readAllBytes(rear.toPath()));
+    }
+
+    @Test
+    void invalidRequestsAreRejected() throws IOException {
+        // prepare
+        File front = picture("outgoing-0.jpg", 10);
+
+        // test & assert
+        assertThrows(IllegalArgumentException.class, () -> write("T3", Collections.<File>emptyList()));
+        assertThrows(IllegalArgumentException.class, () -> MmsPdu.writeSendRequest(new ByteArrayOutputStream(), " ", NUMBER, Collections.singletonList(front)));
+        assertThrows(IllegalArgumentException.class, () -> MmsPdu.writeSendRequest(new ByteArrayOutputStream(), "T3", "no number", Collections.singletonList(front)));
+        assertThrows(IOException.class, () -> write("T3", Collections.singletonList(new File(dir, "missing.jpg"))));
+    }
+
+    @Test
+    void overheadIsBounded() throws IOException {
+        // prepare
+        String longest = new String(new char[MmsPdu.MAX_TEXT_LENGTH - 4]).replace('\0', 'x');
+        File front = picture(longest + ".jpg", 300 * 1024);
+        File rear = picture("outgoing-1.jpg", 10);
+        String transactionId = new String(new char[MmsPdu.MAX_TEXT_LENGTH]).replace('\0', 'T');
+        String recipient = "+" + new String(new char[MmsPdu.MAX_TEXT_LENGTH - 1]).replace('\0', '4');
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // test
+        MmsPdu.writeSendRequest(out, transactionId, recipient, Arrays.asList(front, rear));
+
+        // assert
+        assertThat(out.size() - front.length() - rear.length()).isLessThanOrEqualTo(MmsPdu.maxOverhead(2));
+        assertThat(MmsPdu.maxOverhead(2)).isGreaterThan(MmsPdu.maxOverhead(1));
+        assertThrows(IllegalArgumentException.class, () -> MmsPdu.maxOverhead(0));
+        assertThrows(IllegalArgumentException.class, () -> MmsPdu.writeSendRequest(new ByteArrayOutputStream(), transactionId + "T", NUMBER, Collections.singletonList(rear)));
+        assertThrows(IllegalArgumentException.class, () -> write("T4", Collections.singletonList(picture(longest + "x.jpg", 10))));
+    }
+
+    /**
+     * Parses the multipart body of a PDU, the header of every part has to contain the JPEG content type and the name
+     */
+    private static List<byte[]> parseParts(byte[] pdu, List<String> names) throws IOException {
+        int body = indexOf(pdu, new byte[]{(byte) 0x84, (byte) 0xA3}) + 2;
+        ByteArrayInputStream in = new ByteArrayInputStream(pdu, body, pdu.length - body);
+        long count = readUintvar(in);
+        List<byte[]> parts = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            byte[] headers = new byte[(int) readUintvar(in)];
+            byte[] data = new byte[(int) readUintvar(in)];
+            assertThat(in.read(headers)).isEqualTo(headers.length);
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            expected.write(new byte[]{(byte) 0x9E, (byte) 0x8E});
+            expected.write(names.get(i).getBytes(StandardCharsets.US_ASCII));
+            expected.write(0);
+            assertThat(headers).isEqualTo(expected.toByteArray());
+            assertThat(in.read(data)).isEqualTo(data.length);
+            parts.add(data);
+        }
+        assertThat(in.available()).isEqualTo(0);
+        return parts;
+    }
+
+    private static long readUintvar(ByteArrayInputStream in) {
+        long value = 0;
+        int b;
+        do {
+            b = in.read();
+            value = (value << 7) | (b & 0x7F);
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static int indexOf(byte[] data, byte[] pattern) {
+        for (int i = 0; i <= data.length - pattern.length; i++) {
+            if (Arrays.equals(Arrays.copyOfRange(data, i, i + pattern.length), pattern)) return i;
+        }
+        return -1;
+    }
+
+    private byte[] write(String transactionId, List<File> pictures) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MmsPdu.writeSendRequest(out, transactionId, NUMBER, pictures);
+        return out.toByteArray();
+    }
+
+    private File picture(String name, int length) throws IOException {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        File file = new File(dir, name);
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(data);
+        }
+        return file;
+    }
+
+    private static int[] uintvar(long value) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MmsPdu.writeUintvar(out, value);
+        byte[] bytes = out.toByteArray();
+        int[] unsigned = new int[bytes.length];
+        for (int i = 0; i < bytes.length; i++) unsigned[i] = bytes[i] & 0xFF;
+        return unsigned;
+    }
+}
@@ -0,0 +1,129 @@
+package at.tacticaldevc.oat.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OutboundQueueTest {
+    private static final String PREFIX = "OAT: \n";
+    private static final String HINT = PREFIX + "Delete the message above!";
+    private static final String NUMBER = "+4366012345678";
+    private static final int SUBSCRIPTION = 1;
+
+    private final List<String> sent = new ArrayList<>();
+    private long now = 0;
+    private ScheduledExecutorService scheduler;
+    private OutboundQueue queue;
+
+    @BeforeEach
+    void init() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        // the coalescing window never ends on its own, the tests flush manually
+        queue = new OutboundQueue((recipient, subscriptionId, text) -> sent.add(recipient + "@" + subscriptionId + ": " + text), scheduler, () -> now, new ReplyEncoder(GsmAlphabet::calculateLength), PREFIX, 60 * 60 * 1000, 1000);
+    }
+
+    @AfterEach
+    void clean() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    void enqueueMergesHintAndReply() {
+        // test
+        queue.enqueue(NUMBER, SUBSCRIPTION, PREFIX + "The device is now unlocked.", HINT);
+        queue.flushAll();
+
+        // assert
+        assertThat(sent).containsExactly(NUMBER + "@1: " + HINT + "\nThe device is now unlocked.");
+    }
+
+    @Test
+    void enqueueMergesRepliesToSameRecipient() {
+        // test
+        queue.enqueue(NUMBER, SUBSCRIPTION, PREFIX + "first", null);
+        queue.enqueue(NUMBER, SUBSCRIPTION, PREFIX + "second", HINT);
+        queue.enqueue("+4366087654321", SUBSCRIPTION, PREFIX + "other", null);
+        queue.flushAll();
+
+        // assert
+        assertThat(sent).containsExactlyInAnyOrder(
+                NUMBER + "@1: " + HINT + "\nfirst\nsecond",
+                "+4366087654321@1: " + PREFIX + "other");
+    }
+
+    @Test
+    void enqueueSendsHintOncePerWindow() {
+        // test
+        queue.enqueue(NUMBER, SUBSCRIPTION, PREFIX + "first", HINT);
+        queue.flushAll();
+        now = 500;
+        queue.enqueue(NUMBER, SUBSCRIPTION, PREFIX + "second", HINT);
+        queue.flushAll();
+        now = 1500;
+        queue.enqueue(NUMBER, SUBSCRIPTION, PREFIX + "third", HINT);
+        queue.flushAll();
+
+        // assert
+        assertThat(sent).containsExactly(
+                NUMBER + "@1: " + HINT + "\nfirst",
+                NUMBER + "@1: " + PREFIX + "second",
+                NUMBER + "@1: " + HINT + "\nthird");
+    }
+
+    @Test
+    void enqueueKeepsCriticalReplyInOneSegment() {
+        // prepare
+        StringBuilder longText = new StringBuilder(PREFIX);
+        for (int i = 0; i < 16; i++) longText.append("locked. ");
+
+        // test
+        queue.enqueue(NUMBER, SUBSCRIPTION, PREFIX + "first", HINT);
+        queue.enqueue(NUMBER, SUBSCRIPTION, longText.toString(), HINT, true);
+        queue.enqueue(NUMBER, SUBSCRIPTION, PREFIX + "second", null);
+        queue.flushAll();
+
+        // assert
+        assertThat(sent).containsExactly(
+                NUMBER + "@1: " + HINT + "\nfirst",
+                NUMBER + "@1: " + longText + "\nsecond");
+    }
+
+    @Test
+    void enqueueMergesCriticalReplyThatFits() {
+        // test
+        queue.enqueue(NUMBER, SUBSCRIPTION, PREFIX + "The device is now unlocked.", HINT, true);
+        queue.flushAll();
+
+        // assert
+        assertThat(sent).containsExactly(NUMBER + "@1: " + HINT + "\nThe device is now unlocked.");
+    }
+
+    @Test
+    void enqueueKeepsRepliesFromDifferentSubscriptionsApart() {
+        // test
+        queue.enqueue(NUMBER, SUBSCRIPTION, PREFIX + "first", HINT);
+        queue.enqueue(NUMBER, 2, PREFIX + "second", null);
+        queue.flushAll();
+
+        // assert
+        assertThat(sent).containsExactly(
+                NUMBER + "@1: " + HINT + "\nfirst",
+                NUMBER + "@2: " + PREFIX + "second");
+    }
+
+    @Test
+    void flushWithoutPendingReplies() {
+        // test
+        queue.flushAll();
+
+        // assert
+        assertThat(sent).isEmpty();
+    }
+}
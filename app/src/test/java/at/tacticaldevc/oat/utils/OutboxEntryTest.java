@@ -0,0 +1,106 @@
+package at.tacticaldevc.oat.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OutboxEntryTest {
+
+    @Test
+    void serializeAndParse() {
+        // prepare
+        OutboxEntry entry = new OutboxEntry(42, 2, "+4366012345678", "OAT: \nlocated at 48.2;16.3", 1000, 2, 5000);
+
+        // test
+        OutboxEntry result = OutboxEntry.parse(42, entry.serialize());
+
+        // assert
+        assertThat(result).isNotNull();
+        assertThat(result.getId()).isEqualTo(42);
+        assertThat(result.getSubscriptionId()).isEqualTo(2);
+        assertThat(result.getRecipient()).isEqualTo("+4366012345678");
+        assertThat(result.getText()).isEqualTo("OAT: \nlocated at 48.2;16.3");
+        assertThat(result.getCreatedAt()).isEqualTo(1000);
+        assertThat(result.getAttempts()).isEqualTo(2);
+        assertThat(result.getNextAttemptAt()).isEqualTo(5000);
+    }
+
+    @Test
+    void attemptsAlternateBetweenPreferredAndDefaultSubscription() {
+        // prepare
+        OutboxEntry entry = new OutboxEntry(42, 2, "+4366012345678", "text", 1000, 0, 1000);
+
+        // test & assert
+        assertThat(entry.getAttemptSubscriptionId()).isEqualTo(2);
+        entry.recordFailure(2000);
+        assertThat(entry.getAttemptSubscriptionId()).isEqualTo(-1);
+        entry.recordFailure(3000);
+        assertThat(entry.getAttemptSubscriptionId()).isEqualTo(2);
+        entry.recordFailure(4000);
+        assertThat(entry.getAttemptSubscriptionId()).isEqualTo(-1);
+        assertThat(entry.getSubscriptionId()).isEqualTo(2);
+    }
+
+    @Test
+    void attemptsOfUnknownSubscriptionUseDefaultSubscription() {
+        // prepare
+        OutboxEntry entry = OutboxEntry.parse(7, "1;0;1000;5000;+4366012345678;text");
+
+        // test & assert
+        assertThat(entry.getAttemptSubscriptionId()).isEqualTo(-1);
+        entry.recordFailure(6000);
+        assertThat(entry.getAttemptSubscriptionId()).isEqualTo(-1);
+    }
+
+    @Test
+    void parseVersion1() {
+        // test
+        OutboxEntry result = OutboxEntry.parse(7, "1;3;1000;5000;+4366012345678;text;with;separators");
+
+        // assert
+        assertThat(result).isNotNull();
+        assertThat(result.getSubscriptionId()).isEqualTo(-1);
+        assertThat(result.getAttempts()).isEqualTo(3);
+        assertThat(result.getRecipient()).isEqualTo("+4366012345678");
+        assertThat(result.getText()).isEqualTo("text;with;separators");
+    }
+
+    @ParameterizedTest(name = "`{0}`")
+    @ValueSource(strings = {"", "garbage", "3;0;0;0;1;+43660;text", "1;x;0;0;+43660;text", "1;0;0;0; ;text", "2;0;0;0;x;+43660;text", "2;0;0;0;1;+43660"})
+    void parseWithInvalidValues(String serialized) {
+        // assert
+        assertThat(OutboxEntry.parse(1, serialized)).isNull();
+    }
+
+    @Test
+    void recordFailureBacksOffExponentially() {
+        // prepare
+        OutboxEntry entry = new OutboxEntry(1, -1, "+4366012345678", "text", 0, 0, 0);
+
+        // test
+        long first = entry.recordFailure(0);
+        long second = entry.recordFailure(0);
+        long third = entry.recordFailure(100);
+
+        // assert
+        assertThat(first).isEqualTo(15 * 1000);
+        assertThat(second).isEqualTo(30 * 1000);
+        assertThat(third).isEqualTo(60 * 1000);
+        assertThat(entry.getNextAttemptAt()).isEqualTo(100 + 60 * 1000);
+        assertThat(entry.getAttempts()).isEqualTo(3);
+    }
+
+    @Test
+    void recordFailureIsCapped() {
+        // prepare
+        OutboxEntry entry = new OutboxEntry(1, -1, "+4366012345678", "text", 0, 40, 0);
+
+        // test
+        long delay = entry.recordFailure(0);
+
+        // assert
+        assertThat(delay).isEqualTo(30 * 60 * 1000);
+    }
+}
@@ -0,0 +1,27 @@
+package at.tacticaldevc.oat.utils;
+
+/**
+ * Prints how long a password check takes with different PBKDF2 costs.
+ * It is not a test and does not run with the unit tests, run its main method to compare the costs.
+ */
+public class PasswordVerifierBenchmark {
+    private static final byte[] SALT = new byte[]{1, 2, 3, 4, 5, 6, 7, 8};
+    private static final int[] COSTS = new int[]{1000, 10000, 50000, 100000, 200000};
+    private static final int RUNS = 5;
+
+    public static void main(String[] args) {
+        for (int cost : COSTS) {
+            PasswordVerifier verifier = PasswordVerifier.create(new Pbkdf2Sha256(), cost, SALT, "Password");
+            // the first check warms up the JIT
+            verifier.verify("Password");
+
+            long best = Long.MAX_VALUE;
+            for (int i = 0; i < RUNS; i++) {
+                long start = System.nanoTime();
+                verifier.verify("Password");
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            System.out.println(String.format("PBKDF2-SHA256 verify with %d iterations: %.1f ms", cost, best / 1e6));
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package at.tacticaldevc.oat.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.security.MessageDigest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PasswordVerifierTest {
+    private static final byte[] SALT = new byte[]{1, 2, 3, 4, 5, 6, 7, 8};
+
+    @Test
+    void createAndRestore() {
+        // prepare
+        PasswordVerifier created = PasswordVerifier.create(new Pbkdf2Sha256(), 1000, SALT, "Password");
+
+        // test
+        PasswordVerifier restored = PasswordVerifier.restore(created.getKdfSpec(), created.getSalt(), created.getHash());
+
+        // assert
+        assertThat(created.getKdfSpec()).isEqualTo("pbkdf2-sha256:1000");
+        assertThat(restored).isNotNull();
+        assertThat(restored.verify("Password")).isTrue();
+        assertThat(restored.verify("password")).isFalse();
+        assertThat(restored.verify(null)).isFalse();
+        assertThat(restored.needsMigration(Pbkdf2Sha256.NAME, 1000)).isFalse();
+        assertThat(restored.needsMigration(Pbkdf2Sha256.NAME, 2000)).isTrue();
+    }
+
+    @Test
+    void restoreLegacyHash() throws Exception {
+        // prepare
+        MessageDigest algorithm = MessageDigest.getInstance("SHA-256");
+        algorithm.update(SALT);
+        byte[] hash = algorithm.digest("Password".getBytes());
+
+        // test
+        PasswordVerifier verifier = PasswordVerifier.restore(null, SALT, hash);
+
+        // assert
+        assertThat(verifier.verify("Password")).isTrue();
+        assertThat(verifier.verify("Password1")).isFalse();
+        assertThat(verifier.needsMigration(Pbkdf2Sha256.NAME, 1)).isTrue();
+    }
+
+    @Test
+    void restoreUnknownKdf() {
+        // assert
+        assertThat(PasswordVerifier.restore("scrypt:16384", SALT, new byte[32])).isNull();
+        assertThat(PasswordVerifier.restore("pbkdf2-sha256", SALT, new byte[32])).isNull();
+        assertThat(PasswordVerifier.restore("pbkdf2-sha256:x", SALT, new byte[32])).isNull();
+        assertThat(PasswordVerifier.restore("pbkdf2-sha256:0", SALT, new byte[32])).isNull();
+    }
+
+    @Test
+    void calibrateStaysWithinBounds() {
+        // test
+        int cost = KdfCalibrator.calibrate(new Pbkdf2Sha256(), 20, 1000, 50000);
+
+        // assert
+        assertThat(cost).isBetween(1000, 50000);
+    }
+
+    @Test
+    void verifyWithDifferentCosts() {
+        // prepare
+        int[] costs = new int[]{1000, 10000, 50000, 100000};
+        for (int cost : costs) {
+            PasswordVerifier verifier = PasswordVerifier.create(new Pbkdf2Sha256(), cost, SALT, "Password");
+
+            // test & assert
+            assertThat(verifier.verify("Password")).isTrue();
+            assertThat(verifier.verify("password")).isFalse();
+        }
+    }
+}
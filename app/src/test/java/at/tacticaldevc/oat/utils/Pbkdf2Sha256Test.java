@@ -0,0 +1,54 @@
+package at.tacticaldevc.oat.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class Pbkdf2Sha256Test {
+
+    @Test
+    void deriveMatchesRfc7914Vectors() {
+        // test
+        byte[] first = Pbkdf2Sha256.derive("passwd".getBytes(), "salt".getBytes(), 1, 64);
+        byte[] second = Pbkdf2Sha256.derive("Password".getBytes(), "NaCl".getBytes(), 80000, 64);
+
+        // assert
+        assertThat(hex(first)).isEqualTo("55ac046e56e3089fec1691c22544b605f94185216dde0465e68b9d57c20dacbc"
+                + "49ca9cccf179b645991664b39d77ef317c71b845b1e30bd509112041d3a19783");
+        assertThat(hex(second)).isEqualTo("4ddcd8f60b98be21830cee5ef22701f9641a4418d04c0414aeff08876b34ab56"
+                + "a1d425a1225833549adb841b51c9b3176a272bdebba1d078478f62b397f33c8d");
+    }
+
+    @Test
+    void deriveMatchesSecretKeyFactory() throws Exception {
+        // prepare
+        byte[] salt = new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16};
+        SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
+        byte[] expected = factory.generateSecret(new PBEKeySpec("Password".toCharArray(), salt, 1000, 256)).getEncoded();
+
+        // test
+        byte[] result = new Pbkdf2Sha256().derive("Password".getBytes(), salt, 1000);
+
+        // assert
+        assertThat(result).isEqualTo(expected);
+    }
+
+    @Test
+    void deriveWithInvalidValues() {
+        // assert
+        assertThrows(IllegalArgumentException.class, () -> Pbkdf2Sha256.derive(null, new byte[1], 1, 32));
+        assertThrows(IllegalArgumentException.class, () -> Pbkdf2Sha256.derive(new byte[1], null, 1, 32));
+        assertThrows(IllegalArgumentException.class, () -> Pbkdf2Sha256.derive(new byte[1], new byte[1], 0, 32));
+        assertThrows(IllegalArgumentException.class, () -> Pbkdf2Sha256.derive(new byte[1], new byte[1], 1, 0));
+    }
+
+    private static String hex(byte[] bytes) {
+        return String.format("%0" + bytes.length * 2 + "x", new BigInteger(1, bytes));
+    }
+}
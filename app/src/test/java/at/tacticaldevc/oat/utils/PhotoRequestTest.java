@@ -0,0 +1,138 @@
+package at.tacticaldevc.oat.utils;
+
+import android.hardware.camera2.CameraCharacteristics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class PhotoRequestTest {
+    private static final String NUMBER = "+4366012345678";
+    private static final int FRONT = CameraCharacteristics.LENS_FACING_FRONT;
+    private static final int BACK = CameraCharacteristics.LENS_FACING_BACK;
+
+    @Test
+    void requestMovesThroughAllStates() {
+        // prepare
+        PhotoRequest request = new PhotoRequest(NUMBER, false, 0);
+
+        // test
+        request.moveTo(PhotoRequest.State.OPENING);
+        request.moveTo(PhotoRequest.State.CONFIGURING);
+        request.moveTo(PhotoRequest.State.CAPTURING);
+        request.moveTo(PhotoRequest.State.SAVING);
+        request.moveTo(PhotoRequest.State.DELIVERING);
+        request.moveTo(PhotoRequest.State.DONE);
+
+        // assert
+        assertThat(request.getState()).isEqualTo(PhotoRequest.State.DONE);
+        assertThat(request.fail()).isFalse();
+    }
+
+    @Test
+    void queuedRequestCanUseOpenSession() {
+        // prepare
+        PhotoRequest request = new PhotoRequest(NUMBER, true, 0);
+
+        // test
+        request.moveTo(PhotoRequest.State.CAPTURING);
+
+        // assert
+        assertThat(request.getState()).isEqualTo(PhotoRequest.State.CAPTURING);
+        assertThat(request.isTrap()).isTrue();
+    }
+
+    @Test
+    void statesCannotBeSkipped() {
+        // prepare
+        PhotoRequest request = new PhotoRequest(NUMBER, false, 0);
+        request.moveTo(PhotoRequest.State.OPENING);
+
+        // test & assert
+        assertThrows(IllegalStateException.class, () -> request.moveTo(PhotoRequest.State.CAPTURING));
+        assertThrows(IllegalStateException.class, () -> request.moveTo(PhotoRequest.State.QUEUED));
+        assertThat(request.getState()).isEqualTo(PhotoRequest.State.OPENING);
+    }
+
+    @Test
+    void failedRequestIsFinal() {
+        // prepare
+        PhotoRequest request = new PhotoRequest(NUMBER, false, 0);
+        request.moveTo(PhotoRequest.State.OPENING);
+
+        // test
+        boolean failed = request.fail();
+
+        // assert
+        assertThat(failed).isTrue();
+        assertThat(request.fail()).isFalse();
+        assertThrows(IllegalStateException.class, () -> request.moveTo(PhotoRequest.State.CONFIGURING));
+    }
+
+    @Test
+    void requestTakesAllShotsBeforeSaving() {
+        // prepare
+        PhotoRequest request = new PhotoRequest(NUMBER, false, 0, new int[]{FRONT, BACK});
+        request.moveTo(PhotoRequest.State.OPENING);
+        request.moveTo(PhotoRequest.State.CONFIGURING);
+        request.moveTo(PhotoRequest.State.CAPTURING);
+
+        // test & assert
+        assertThat(request.getFacing()).isEqualTo(FRONT);
+        assertThrows(IllegalStateException.class, () -> request.moveTo(PhotoRequest.State.SAVING));
+        request.nextShot();
+        assertThat(request.getShot()).isEqualTo(1);
+        assertThat(request.isLastShot()).isTrue();
+        request.moveTo(PhotoRequest.State.OPENING);
+        request.moveTo(PhotoRequest.State.CONFIGURING);
+        request.moveTo(PhotoRequest.State.CAPTURING);
+        assertThrows(IllegalStateException.class, request::nextShot);
+        request.moveTo(PhotoRequest.State.SAVING);
+        assertThat(request.getShots()).isEqualTo(2);
+    }
+
+    @Test
+    void secondShotUsesRearCameraBeforeItIsOpened() {
+        // prepare
+        PhotoRequest request = new PhotoRequest(NUMBER, false, 0, new int[]{FRONT, BACK});
+        request.moveTo(PhotoRequest.State.OPENING);
+        request.moveTo(PhotoRequest.State.CONFIGURING);
+        request.moveTo(PhotoRequest.State.CAPTURING);
+
+        // test
+        request.nextShot();
+
+        // assert
+        // the camera engine selects the camera of the next shot while the request is queued, before it is opened
+        assertThat(request.getState()).isEqualTo(PhotoRequest.State.QUEUED);
+        assertThat(request.getFacing()).isEqualTo(BACK);
+        assertThrows(IllegalStateException.class, () -> new PhotoRequest(NUMBER, false, 0, new int[]{FRONT, BACK}).nextShot());
+    }
+
+    @Test
+    void capturedShotCannotReopenTheCamera() {
+        // prepare
+        PhotoRequest request = new PhotoRequest(NUMBER, false, 0, new int[]{FRONT, BACK});
+        request.moveTo(PhotoRequest.State.OPENING);
+        request.moveTo(PhotoRequest.State.CONFIGURING);
+        request.moveTo(PhotoRequest.State.CAPTURING);
+
+        // test & assert
+        assertThrows(IllegalStateException.class, () -> request.moveTo(PhotoRequest.State.OPENING));
+        assertThat(request.getFacing()).isEqualTo(FRONT);
+    }
+
+    @Test
+    void requestNeedsAShot() {
+        // test & assert
+        assertThrows(IllegalArgumentException.class, () -> new PhotoRequest(NUMBER, false, 0, new int[0]));
+        assertThat(new PhotoRequest(NUMBER, false, 0).getFacing()).isEqualTo(FRONT);
+    }
+
+    @Test
+    void invalidPhoneNumber() {
+        // test & assert
+        assertThrows(IllegalArgumentException.class, () -> new PhotoRequest(" ", false, 0));
+    }
+}
@@ -0,0 +1,97 @@
+package at.tacticaldevc.oat.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ReplyEncoderTest {
+    private static final String PREFIX = "OAT: \n";
+
+    private final ReplyEncoder encoder = new ReplyEncoder(GsmAlphabet::calculateLength);
+
+    @ParameterizedTest(name = "{0} chars of `{1}`")
+    @CsvSource({"160,a,1,1", "161,a,2,1", "306,a,2,1", "307,a,3,1", "80,[,1,1", "81,[,2,1", "70,\u0416,1,3", "71,\u0416,2,3"})
+    void calculateLength(int count, char c, int segments, int encoding) {
+        // prepare
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) sb.append(c);
+
+        // test
+        int[] result = GsmAlphabet.calculateLength(sb);
+
+        // assert
+        assertThat(result[0]).isEqualTo(segments);
+        assertThat(result[3]).isEqualTo(encoding);
+    }
+
+    @Test
+    void encodeReplacesTypographicCharacters() {
+        // test
+        String result = encoder.encode(PREFIX + "The feature \u201Cgps\u201D isn\u2019t available \u2013 try again\u2026");
+
+        // assert
+        assertThat(result).isEqualTo(PREFIX + "The feature \"gps\" isn't available - try again...");
+        assertThat(GsmAlphabet.calculateLength(result)[3]).isEqualTo(GsmAlphabet.ENCODING_7BIT);
+    }
+
+    @Test
+    void encodeKeepsTextThatNeedsUcs2() {
+        // prepare
+        String text = PREFIX + "\u2019\u041F\u0440\u0438\u0432\u0435\u0442";
+
+        // test
+        String result = encoder.encode(text);
+
+        // assert
+        assertThat(result).isSameAs(text);
+    }
+
+    @Test
+    void formatCoordinate() {
+        // assert
+        assertThat(ReplyEncoder.formatCoordinate(48.20817434)).isEqualTo("48.20817");
+        assertThat(ReplyEncoder.formatCoordinate(-16.373819)).isEqualTo("-16.37382");
+    }
+
+    @Test
+    void encodeCriticalKeepsShortText() {
+        // test
+        String result = encoder.encodeCritical(PREFIX + "The device is now unlocked.", PREFIX + "Unlocked.");
+
+        // assert
+        assertThat(result).isEqualTo(PREFIX + "The device is now unlocked.");
+    }
+
+    @Test
+    void encodeCriticalUsesCompactText() {
+        // prepare
+        String text = PREFIX + repeat("The device is now under lockdown. ", 6);
+
+        // test
+        String result = encoder.encodeCritical(text, PREFIX + "Locked.");
+
+        // assert
+        assertThat(result).isEqualTo(PREFIX + "Locked.");
+    }
+
+    @Test
+    void encodeCriticalCutsOffCompactText() {
+        // prepare
+        String text = PREFIX + repeat("\u0416", 100);
+
+        // test
+        String result = encoder.encodeCritical(text, text);
+
+        // assert
+        assertThat(result).hasSize(GsmAlphabet.MAX_CHARS_SINGLE_UCS2);
+        assertThat(encoder.segments(result)).isEqualTo(1);
+    }
+
+    private static String repeat(String text, int times) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < times; i++) sb.append(text);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,74 @@
+package at.tacticaldevc.oat.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ReplyRoutesTest {
+
+    @Test
+    void rememberAndLookup() {
+        // test
+        ReplyRoutes.remember("+4366011111111", 2);
+        ReplyRoutes.remember("+4366022222222", 1);
+        ReplyRoutes.remember("+4366011111111", 3);
+
+        // assert
+        assertThat(ReplyRoutes.lookup("+4366011111111")).isEqualTo(3);
+        assertThat(ReplyRoutes.lookup("+4366022222222")).isEqualTo(1);
+        assertThat(ReplyRoutes.lookup("+4366033333333")).isEqualTo(-1);
+    }
+
+    @Test
+    void rememberUnknownSubscriptionForgetsRoute() {
+        // test
+        ReplyRoutes.remember("+4366044444444", 2);
+        ReplyRoutes.remember("+4366044444444", -1);
+
+        // assert
+        assertThat(ReplyRoutes.lookup("+4366044444444")).isEqualTo(-1);
+    }
+
+    @Test
+    void rememberKeepsRecentRoutesOnly() {
+        // prepare
+        ReplyRoutes.remember("+4366055555555", 2);
+
+        // test
+        for (int i = 0; i < 100; i++) ReplyRoutes.remember("+43660000000" + i, 1);
+
+        // assert
+        assertThat(ReplyRoutes.lookup("+4366055555555")).isEqualTo(-1);
+        assertThat(ReplyRoutes.lookup("+4366000000099")).isEqualTo(1);
+    }
+
+    @Test
+    void currentPrefersSubscriptionOfTask() {
+        // prepare
+        ReplyRoutes.remember("+4366066666666", 2);
+        int[] current = new int[1];
+
+        // test
+        ReplyRoutes.runFrom(1, () -> current[0] = ReplyRoutes.current("+4366066666666"));
+
+        // assert
+        assertThat(current[0]).isEqualTo(1);
+        assertThat(ReplyRoutes.current("+4366066666666")).isEqualTo(2);
+    }
+
+    @Test
+    void resolveFallsBackToRememberedRoute() {
+        // prepare
+        ReplyRoutes.remember("+4366077777777", 2);
+
+        // test
+        int explicit = ReplyRoutes.resolve("+4366077777777", 1);
+        int remembered = ReplyRoutes.resolve("+4366077777777", -1);
+        int unknown = ReplyRoutes.resolve("+4366088888888", -1);
+
+        // assert
+        assertThat(explicit).isEqualTo(1);
+        assertThat(remembered).isEqualTo(2);
+        assertThat(unknown).isEqualTo(-1);
+    }
+}
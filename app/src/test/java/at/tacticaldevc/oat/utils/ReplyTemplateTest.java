@@ -0,0 +1,128 @@
+package at.tacticaldevc.oat.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Locale;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ReplyTemplateTest {
+
+    @Test
+    void renderText() {
+        // prepare
+        ReplyTemplate template = ReplyTemplate.compile("OAT: \nThe feature %s is disabled.", Locale.US);
+
+        // test
+        String result = template.render("gps");
+
+        // assert
+        assertThat(template.getPlaceholderCount()).isEqualTo(1);
+        assertThat(result).isEqualTo("OAT: \nThe feature gps is disabled.");
+    }
+
+    @ParameterizedTest(name = "`{0}`")
+    @ValueSource(strings = {"en-US", "de-AT", "fr-FR", "ar-EG", "hi-IN-u-nu-deva"})
+    void renderLikeStringFormat(String languageTag) {
+        // prepare
+        Locale locale = Locale.forLanguageTag(languageTag);
+        String pattern = "located at %f,%f (%d%%) %.5f %.0f";
+        ReplyTemplate template = ReplyTemplate.compile(pattern, locale);
+        Object[][] values = {
+                {48.2081743, 16.3738189, 3, 0.000005, 2.5},
+                {-33.8688197, 151.2092955, -12L, -0.000001, 0.49},
+                {0.0, -0.0, 0, 123.456789, 99999.5},
+        };
+
+        for (Object[] args : values) {
+            // test
+            String result = template.render(args);
+
+            // assert
+            assertThat(result).isEqualTo(String.format(locale, pattern, args));
+        }
+    }
+
+    @ParameterizedTest(name = "`{0}`")
+    @ValueSource(doubles = {16.7014945, 1.005, 0.125, 2.675, 1.0000005, -1.0000005, 48.20817425, 9.9999995, -0.0000005, 1e12 + 0.5, 1e-10})
+    void renderRoundsHalfUpLikeStringFormat(double value) {
+        // prepare
+        ReplyTemplate coordinate = ReplyTemplate.compile("%f", Locale.US);
+        ReplyTemplate cents = ReplyTemplate.compile("%.2f", Locale.US);
+        ReplyTemplate whole = ReplyTemplate.compile("%.0f", Locale.US);
+
+        // test & assert
+        assertThat(coordinate.render(value)).isEqualTo(String.format(Locale.US, "%f", value));
+        assertThat(cents.render(value)).isEqualTo(String.format(Locale.US, "%.2f", value));
+        assertThat(whole.render(value)).isEqualTo(String.format(Locale.US, "%.0f", value));
+    }
+
+    @Test
+    void renderRoundsTiesOfTheDecimalRepresentationUp() {
+        // test & assert
+        assertThat(ReplyTemplate.compile("%f", Locale.US).render(16.7014945)).isEqualTo("16.701495");
+        assertThat(ReplyTemplate.compile("%.2f", Locale.US).render(1.005)).isEqualTo("1.01");
+        assertThat(ReplyTemplate.compile("%.2f", Locale.US).render(-1.005)).isEqualTo("-1.01");
+    }
+
+    @Test
+    void renderCoordinatesLikeStringFormat() {
+        // prepare
+        ReplyTemplate template = ReplyTemplate.compile("%f,%f", Locale.US);
+        Random random = new Random(7);
+
+        for (int i = 0; i < 20000; i++) {
+            // coordinates with 7 decimals, like the ones reported by the location providers, hit the ties of the 6th decimal
+            double latitude = Math.round((random.nextDouble() * 180 - 90) * 1e7) / 1e7;
+            double longitude = Math.round((random.nextDouble() * 360 - 180) * 1e7) / 1e7;
+
+            // test & assert
+            assertThat(template.render(latitude, longitude)).isEqualTo(String.format(Locale.US, "%f,%f", latitude, longitude));
+        }
+    }
+
+    @Test
+    void renderToAppendsToBuilder() {
+        // prepare
+        ReplyTemplate template = ReplyTemplate.compile("%d missing", Locale.ROOT);
+        StringBuilder sb = new StringBuilder("OAT: ");
+
+        // test
+        template.renderTo(sb, 2);
+
+        // assert
+        assertThat(sb.toString()).isEqualTo("OAT: 2 missing");
+    }
+
+    @Test
+    void renderUnsupportedPlaceholderWithStringFormat() {
+        // prepare
+        ReplyTemplate template = ReplyTemplate.compile("%s-%05d", Locale.US);
+
+        // test
+        String result = template.render("a", 42);
+
+        // assert
+        assertThat(template.getPlaceholderCount()).isEqualTo(-1);
+        assertThat(result).isEqualTo("a-00042");
+    }
+
+    @Test
+    void renderWithMissingArguments() {
+        // prepare
+        ReplyTemplate template = ReplyTemplate.compile("%s and %s", Locale.US);
+
+        // assert
+        assertThrows(IllegalArgumentException.class, () -> template.render("a"));
+    }
+
+    @Test
+    void compileWithInvalidValues() {
+        assertThrows(IllegalArgumentException.class, () -> ReplyTemplate.compile(null, Locale.US));
+        assertThrows(IllegalArgumentException.class, () -> ReplyTemplate.compile("%s", null));
+    }
+}
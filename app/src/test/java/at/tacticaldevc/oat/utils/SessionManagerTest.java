@@ -0,0 +1,110 @@
+package at.tacticaldevc.oat.utils;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.security.SecureRandom;
+import java.util.Locale;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class SessionManagerTest {
+    private static final String NUMBER = "+4366012345678";
+    private static final String OTHER_NUMBER = "+4366087654321";
+
+    private long now = 0;
+    private SessionManager sessions;
+
+    @BeforeEach
+    void init() {
+        sessions = new SessionManager(() -> now, new SecureRandom(), 1000);
+    }
+
+    @Test
+    void openAndVerify() {
+        // test
+        String nonce = sessions.open(NUMBER);
+
+        // assert
+        assertThat(nonce).hasSize(8).matches("[2-9a-z]+");
+        assertThat(sessions.verify(NUMBER, nonce)).isTrue();
+        assertThat(sessions.verify(NUMBER, nonce.toUpperCase(Locale.ROOT))).isTrue();
+    }
+
+    @Test
+    void verifyIsBoundToSender() {
+        // prepare
+        String nonce = sessions.open(NUMBER);
+
+        // assert
+        assertThat(sessions.verify(OTHER_NUMBER, nonce)).isFalse();
+        assertThat(sessions.verify(NUMBER, "password")).isFalse();
+        assertThat(sessions.verify(NUMBER, null)).isFalse();
+    }
+
+    @Test
+    void verifyExpiredSession() {
+        // prepare
+        String nonce = sessions.open(NUMBER);
+
+        // test
+        now = 999;
+        boolean beforeExpiry = sessions.verify(NUMBER, nonce);
+        now = 1000;
+        boolean afterExpiry = sessions.verify(NUMBER, nonce);
+
+        // assert
+        assertThat(beforeExpiry).isTrue();
+        assertThat(afterExpiry).isFalse();
+    }
+
+    @Test
+    void openReplacesPreviousSession() {
+        // prepare
+        sessions = new SessionManager(() -> now, new CountingRandom(), 1000);
+        String first = sessions.open(NUMBER);
+
+        // test
+        String second = sessions.open(NUMBER);
+
+        // assert
+        assertThat(second).isNotEqualTo(first);
+        assertThat(sessions.verify(NUMBER, second)).isTrue();
+        assertThat(sessions.verify(NUMBER, first)).isFalse();
+    }
+
+    @Test
+    void closeRevokesSession() {
+        // prepare
+        String nonce = sessions.open(NUMBER);
+        String other = sessions.open(OTHER_NUMBER);
+
+        // test
+        boolean closed = sessions.close(NUMBER);
+
+        // assert
+        assertThat(closed).isTrue();
+        assertThat(sessions.close(NUMBER)).isFalse();
+        assertThat(sessions.verify(NUMBER, nonce)).isFalse();
+        assertThat(sessions.verify(OTHER_NUMBER, other)).isTrue();
+    }
+
+    @Test
+    void openWithInvalidValues() {
+        assertThrows(IllegalArgumentException.class, () -> sessions.open(null));
+        assertThrows(IllegalArgumentException.class, () -> new SessionManager(() -> now, new SecureRandom(), 0));
+    }
+
+    /**
+     * Returns 0, 1, 2, ... so every nonce differs from the previous one
+     */
+    private static class CountingRandom extends SecureRandom {
+        private int next = 0;
+
+        @Override
+        public int nextInt(int bound) {
+            return next++ % bound;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package at.tacticaldevc.oat.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class SharpnessScorerTest {
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+
+    @Test
+    void flatPictureScoresZero() {
+        // prepare
+        byte[] luma = new byte[WIDTH * HEIGHT];
+        Arrays.fill(luma, (byte) 128);
+
+        // test
+        double score = SharpnessScorer.score(ByteBuffer.wrap(luma), WIDTH, HEIGHT, WIDTH);
+
+        // assert
+        assertThat(score).isEqualTo(0.0);
+    }
+
+    @Test
+    void blurredPictureScoresLower() {
+        // prepare
+        byte[] sharp = texture(WIDTH, HEIGHT);
+        byte[] slightlyBlurred = blur(sharp, WIDTH, HEIGHT, 1);
+        byte[] blurred = blur(sharp, WIDTH, HEIGHT, 3);
+
+        // test
+        double sharpScore = SharpnessScorer.score(ByteBuffer.wrap(sharp), WIDTH, HEIGHT, WIDTH);
+        double slightlyBlurredScore = SharpnessScorer.score(ByteBuffer.wrap(slightlyBlurred), WIDTH, HEIGHT, WIDTH);
+        double blurredScore = SharpnessScorer.score(ByteBuffer.wrap(blurred), WIDTH, HEIGHT, WIDTH);
+
+        // assert
+        assertThat(sharpScore).isGreaterThan(slightlyBlurredScore);
+        assertThat(slightlyBlurredScore).isGreaterThan(blurredScore);
+    }
+
+    @Test
+    void rowPaddingIsIgnored() {
+        // prepare
+        int rowStride = WIDTH + 64;
+        byte[] luma = texture(WIDTH, HEIGHT);
+        byte[] padded = new byte[rowStride * HEIGHT];
+        new Random(1).nextBytes(padded);
+        for (int y = 0; y < HEIGHT; y++) System.arraycopy(luma, y * WIDTH, padded, y * rowStride, WIDTH);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(padded.length);
+        buffer.put(padded).flip();
+
+        // test
+        double score = SharpnessScorer.score(buffer, WIDTH, HEIGHT, rowStride);
+
+        // assert
+        assertThat(score).isEqualTo(SharpnessScorer.score(ByteBuffer.wrap(luma), WIDTH, HEIGHT, WIDTH));
+        assertThat(buffer.position()).isEqualTo(0);
+    }
+
+    @Test
+    void invalidDimensionsAreRejected() {
+        // prepare
+        ByteBuffer luma = ByteBuffer.allocate(100);
+
+        // test & assert
+        assertThrows(IllegalArgumentException.class, () -> SharpnessScorer.score(luma, 2, 2, 2));
+        assertThrows(IllegalArgumentException.class, () -> SharpnessScorer.score(luma, 20, 20, 20));
+        assertThrows(IllegalArgumentException.class, () -> SharpnessScorer.score(luma, 10, 10, 5));
+        assertThrows(IllegalArgumentException.class, () -> SharpnessScorer.score(null, 10, 10, 10));
+    }
+
+    @Test
+    void scoreFullHdFrame() {
+        // prepare
+        int width = 1920;
+        int height = 1080;
+        ByteBuffer frame = ByteBuffer.allocateDirect(width * height);
+        frame.put(texture(width, height)).flip();
+
+        // test
+        double score = SharpnessScorer.score(frame, width, height, width);
+
+        // assert
+        assertThat(score).isGreaterThan(0.0);
+        assertThat(SharpnessScorer.score(frame, width, height, width)).isEqualTo(score);
+    }
+
+    /**
+     * @return a picture with edges of all sizes, like a real scene
+     */
+    private static byte[] texture(int width, int height) {
+        byte[] luma = new byte[width * height];
+        Random random = new Random(42);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int checker = ((x / 16 + y / 16) % 2) * 120;
+                luma[y * width + x] = (byte) (60 + checker + random.nextInt(40));
+            }
+        }
+        return luma;
+    }
+
+    /**
+     * Blurs a picture with a box filter, like a frame taken while the camera moves
+     */
+    private static byte[] blur(byte[] luma, int width, int height, int radius) {
+        byte[] blurred = new byte[luma.length];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int sum = 0;
+                int count = 0;
+                for (int dy = -radius; dy <= radius; dy++) {
+                    for (int dx = -radius; dx <= radius; dx++) {
+                        int px = Math.min(width - 1, Math.max(0, x + dx));
+                        int py = Math.min(height - 1, Math.max(0, y + dy));
+                        sum += luma[py * width + px] & 0xFF;
+                        count++;
+                    }
+                }
+                blurred[y * width + x] = (byte) (sum / count);
+            }
+        }
+        return blurred;
+    }
+}
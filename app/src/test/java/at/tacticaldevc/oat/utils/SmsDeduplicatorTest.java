@@ -0,0 +1,100 @@
+package at.tacticaldevc.oat.utils;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SmsDeduplicatorTest {
+    private static final String NUMBER = "+4366012345678";
+    private static final String OTHER_NUMBER = "+4366087654321";
+    private static final long TIMESTAMP = 1580000000000L;
+
+    private String window;
+    private SmsDeduplicator deduplicator;
+
+    @BeforeEach
+    void init() {
+        window = null;
+        deduplicator = new SmsDeduplicator(4, 2, w -> window = w);
+    }
+
+    @Test
+    void offerDropsDuplicates() {
+        // test
+        boolean first = deduplicator.offer(NUMBER, TIMESTAMP, null, "oat lock Password");
+        boolean second = deduplicator.offer(NUMBER, TIMESTAMP, null, "oat lock Password");
+
+        // assert
+        assertThat(first).isTrue();
+        assertThat(second).isFalse();
+    }
+
+    @Test
+    void offerAcceptsDifferentSegments() {
+        // prepare
+        deduplicator.offer(NUMBER, TIMESTAMP, null, "oat lock Password");
+
+        // assert
+        assertThat(deduplicator.offer(OTHER_NUMBER, TIMESTAMP, null, "oat lock Password")).isTrue();
+        assertThat(deduplicator.offer(NUMBER, TIMESTAMP + 1000, null, "oat lock Password")).isTrue();
+        assertThat(deduplicator.offer(NUMBER, TIMESTAMP, null, "oat unlock Password")).isTrue();
+    }
+
+    @Test
+    void offerDistinguishesMultipartSegments() {
+        // test
+        boolean first = deduplicator.offer(NUMBER, TIMESTAMP, new SmsConcatInfo(7, 2, 1), "same");
+        boolean second = deduplicator.offer(NUMBER, TIMESTAMP, new SmsConcatInfo(7, 2, 2), "same");
+        boolean duplicate = deduplicator.offer(NUMBER, TIMESTAMP, new SmsConcatInfo(7, 2, 2), "same");
+
+        // assert
+        assertThat(first).isTrue();
+        assertThat(second).isTrue();
+        assertThat(duplicate).isFalse();
+    }
+
+    @Test
+    void clearForgetsSegments() {
+        // prepare
+        deduplicator.offer(NUMBER, TIMESTAMP, null, "oat lock Password");
+
+        // test
+        deduplicator.clear();
+
+        // assert
+        assertThat(deduplicator.serialize()).isEmpty();
+        assertThat(deduplicator.offer(NUMBER, TIMESTAMP, null, "oat lock Password")).isTrue();
+    }
+
+    @Test
+    void offerForgetsOldestSegments() {
+        // prepare
+        for (int i = 0; i < 5; i++) {
+            deduplicator.offer(NUMBER, TIMESTAMP + i, null, "message");
+        }
+
+        // assert
+        assertThat(deduplicator.offer(NUMBER, TIMESTAMP, null, "message")).isTrue();
+        assertThat(deduplicator.offer(NUMBER, TIMESTAMP + 4, null, "message")).isFalse();
+    }
+
+    @Test
+    void restoreDropsDuplicatesAfterRestart() {
+        // prepare
+        deduplicator.offer(NUMBER, TIMESTAMP, null, "first");
+        deduplicator.offer(NUMBER, TIMESTAMP + 1, null, "second");
+        deduplicator.offer(NUMBER, TIMESTAMP + 2, null, "third");
+
+        // test
+        SmsDeduplicator restarted = new SmsDeduplicator(4, 2, w -> {
+        });
+        restarted.restore(window + ",invalid");
+
+        // assert
+        assertThat(restarted.offer(NUMBER, TIMESTAMP + 1, null, "second")).isFalse();
+        assertThat(restarted.offer(NUMBER, TIMESTAMP + 2, null, "third")).isFalse();
+        // only the newest segments are persisted
+        assertThat(restarted.offer(NUMBER, TIMESTAMP, null, "first")).isTrue();
+    }
+}
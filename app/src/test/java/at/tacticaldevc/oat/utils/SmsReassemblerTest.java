@@ -0,0 +1,113 @@
+package at.tacticaldevc.oat.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SmsReassemblerTest {
+    private static final String SENDER = "+4366012345678";
+
+    // SMS-DELIVER from +4366012345678 with a user data header, the concatenation element is inserted by the tests
+    private static byte[] pduWithHeader(int... header) {
+        int[] prefix = {0x00, 0x44, 0x0D, 0x91, 0x34, 0x66, 0x10, 0x32, 0x54, 0x76, 0xF8, 0x00, 0x00, 0x02, 0x10, 0x81, 0x41, 0x51, 0x22, 0x80, 0x10};
+        byte[] pdu = new byte[prefix.length + header.length + 4];
+        for (int i = 0; i < prefix.length; i++) pdu[i] = (byte) prefix[i];
+        for (int i = 0; i < header.length; i++) pdu[prefix.length + i] = (byte) header[i];
+        return pdu;
+    }
+
+    @Test
+    void fromPduWith8BitReference() {
+        // test
+        SmsConcatInfo info = SmsConcatInfo.fromPdu(pduWithHeader(0x05, 0x00, 0x03, 0x2A, 0x03, 0x02), "3gpp");
+
+        // assert
+        assertThat(info).isNotNull();
+        assertThat(info.getReference()).isEqualTo(0x2A);
+        assertThat(info.getTotalParts()).isEqualTo(3);
+        assertThat(info.getSequenceNumber()).isEqualTo(2);
+    }
+
+    @Test
+    void fromPduWith16BitReferenceAfterOtherElement() {
+        // test
+        SmsConcatInfo info = SmsConcatInfo.fromPdu(pduWithHeader(0x09, 0x24, 0x01, 0x01, 0x08, 0x04, 0x12, 0x34, 0x02, 0x01), null);
+
+        // assert
+        assertThat(info).isNotNull();
+        assertThat(info.getReference()).isEqualTo(0x1234);
+        assertThat(info.getTotalParts()).isEqualTo(2);
+        assertThat(info.getSequenceNumber()).isEqualTo(1);
+    }
+
+    @Test
+    void fromPduWithoutConcatenation() {
+        // prepare
+        byte[] withoutHeader = pduWithHeader();
+        withoutHeader[1] = 0x04;
+
+        // assert
+        assertThat(SmsConcatInfo.fromPdu(withoutHeader, "3gpp")).isNull();
+        assertThat(SmsConcatInfo.fromPdu(pduWithHeader(0x05, 0x00, 0x03, 0x2A, 0x03, 0x04), "3gpp")).isNull();
+        assertThat(SmsConcatInfo.fromPdu(pduWithHeader(0x05, 0x00, 0x03, 0x2A, 0x03, 0x01), "3gpp2")).isNull();
+        assertThat(SmsConcatInfo.fromPdu(new byte[]{0x00, 0x44}, "3gpp")).isNull();
+        assertThat(SmsConcatInfo.fromPdu(null, "3gpp")).isNull();
+    }
+
+    @Test
+    void offerJoinsSegmentsInSequence() {
+        // prepare
+        SmsReassembler reassembler = new SmsReassembler(1000, 4);
+
+        // test
+        String first = reassembler.offer(SENDER, new SmsConcatInfo(7, 3, 3), "secret", 0);
+        String second = reassembler.offer(SENDER, new SmsConcatInfo(7, 3, 1), "oat take-photo ", 10);
+        String third = reassembler.offer(SENDER, new SmsConcatInfo(7, 3, 2), "extra ", 20);
+
+        // assert
+        assertThat(first).isNull();
+        assertThat(second).isNull();
+        assertThat(third).isEqualTo("oat take-photo extra secret");
+        assertThat(reassembler.getPendingCount()).isZero();
+    }
+
+    @Test
+    void offerPassesSinglePartMessages() {
+        // prepare
+        SmsReassembler reassembler = new SmsReassembler(1000, 4);
+
+        // assert
+        assertThat(reassembler.offer(SENDER, null, "oat gps secret", 0)).isEqualTo("oat gps secret");
+    }
+
+    @Test
+    void offerKeepsSendersApart() {
+        // prepare
+        SmsReassembler reassembler = new SmsReassembler(1000, 4);
+
+        // test
+        reassembler.offer(SENDER, new SmsConcatInfo(7, 2, 1), "a", 0);
+        String other = reassembler.offer("+4366087654321", new SmsConcatInfo(7, 2, 2), "b", 0);
+
+        // assert
+        assertThat(other).isNull();
+        assertThat(reassembler.getPendingCount()).isEqualTo(2);
+    }
+
+    @Test
+    void offerDropsExpiredAndOverflowingMessages() {
+        // prepare
+        SmsReassembler reassembler = new SmsReassembler(100, 2);
+
+        // test
+        reassembler.offer(SENDER, new SmsConcatInfo(1, 2, 1), "expired ", 0);
+        String expired = reassembler.offer(SENDER, new SmsConcatInfo(1, 2, 2), "message", 200);
+        reassembler.offer(SENDER, new SmsConcatInfo(2, 2, 1), "a", 210);
+        reassembler.offer(SENDER, new SmsConcatInfo(3, 2, 1), "b", 220);
+
+        // assert
+        assertThat(expired).isNull();
+        assertThat(reassembler.getPendingCount()).isEqualTo(2);
+        assertThat(reassembler.offer(SENDER, new SmsConcatInfo(2, 2, 2), "c", 230)).isEqualTo("ac");
+    }
+}
@@ -0,0 +1,124 @@
+package at.tacticaldevc.oat.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class TrustedContactIndexTest {
+
+    // normalizes austrian numbers in national format and strips all separators
+    private static final TrustedContactIndex.NumberNormalizer AT_NORMALIZER = phoneNumber -> {
+        String digits = phoneNumber.replaceAll("[^0-9+]", "");
+        if (digits.startsWith("+")) return digits;
+        if (digits.startsWith("00")) return "+" + digits.substring(2);
+        if (digits.startsWith("0")) return "+43" + digits.substring(1);
+        return digits;
+    };
+
+    @ParameterizedTest(name = "`{0}`")
+    @ValueSource(strings = {"+4366012345678", "066012345678", "0660 123 456 78", "004366012345678"})
+    void isTrustedWithDifferentFormats(String sender) {
+        // prepare
+        TrustedContactIndex index = new TrustedContactIndex(AT_NORMALIZER, Collections.singleton("0660 12345678"));
+
+        // test
+        boolean result = index.isTrusted(sender);
+
+        // assert
+        assertThat(result).isTrue();
+    }
+
+    @Test
+    void isTrustedWithUnknownSender() {
+        // prepare
+        TrustedContactIndex index = new TrustedContactIndex(AT_NORMALIZER, Collections.singleton("+4366012345678"));
+
+        // assert
+        assertThat(index.isTrusted("+4366087654321")).isFalse();
+        assertThat(index.isTrusted("066087654321")).isFalse();
+        assertThat(index.isTrusted("")).isFalse();
+        assertThat(index.isTrusted(null)).isFalse();
+    }
+
+    @ParameterizedTest(name = "`{0}`")
+    @ValueSource(strings = {"+4366012345678", "066012345678", "0660 123 456 78", "004366012345678"})
+    void normalizeSenderWithDifferentFormats(String sender) {
+        // prepare
+        TrustedContactIndex index = new TrustedContactIndex(AT_NORMALIZER, Collections.emptySet());
+
+        // test
+        String result = index.normalize(sender);
+
+        // assert
+        assertThat(result).isEqualTo("+4366012345678");
+    }
+
+    @Test
+    void normalizeKeepsSendersThatCannotBeNormalized() {
+        // prepare
+        TrustedContactIndex index = new TrustedContactIndex(phoneNumber -> null, Collections.emptySet());
+
+        // assert
+        assertThat(index.normalize("12345")).isEqualTo("12345");
+        assertThat(index.normalize("")).isEmpty();
+        assertThat(index.normalize(null)).isNull();
+    }
+
+    @ParameterizedTest(name = "`{0}`")
+    @ValueSource(strings = {"12345", "0660 123-456/78", "+43 (660) 12345678", "*100#"})
+    void isDialableWithNumbers(String sender) {
+        // test
+        boolean result = TrustedContactIndex.isDialable(sender);
+
+        // assert
+        assertThat(result).isTrue();
+    }
+
+    @ParameterizedTest(name = "`{0}`")
+    @ValueSource(strings = {"BANK", "1-800-FLOWERS", "Info24", "+", ""})
+    void isDialableWithAlphanumericSenders(String sender) {
+        // test
+        boolean result = TrustedContactIndex.isDialable(sender);
+
+        // assert
+        assertThat(result).isFalse();
+    }
+
+    @Test
+    void addAndRemoveUpdateIndex() {
+        // prepare
+        TrustedContactIndex index = new TrustedContactIndex(AT_NORMALIZER, Collections.emptySet());
+
+        // test & assert
+        index.add("0660 12345678");
+        assertThat(index.isTrusted("+4366012345678")).isTrue();
+
+        index.remove("0660 12345678");
+        assertThat(index.isTrusted("+4366012345678")).isFalse();
+    }
+
+    @Test
+    void removeKeepsNumberThatWasSavedTwice() {
+        // prepare
+        TrustedContactIndex index = new TrustedContactIndex(AT_NORMALIZER, Arrays.asList("0660 12345678", "+43 660 12345678"));
+
+        // test
+        index.remove("0660 12345678");
+
+        // assert
+        assertThat(index.size()).isEqualTo(1);
+        assertThat(index.isTrusted("+4366012345678")).isTrue();
+    }
+
+    @Test
+    void constructorWithNullValues() {
+        assertThrows(IllegalArgumentException.class, () -> new TrustedContactIndex(null, Collections.emptySet()));
+        assertThrows(IllegalArgumentException.class, () -> new TrustedContactIndex(AT_NORMALIZER, null));
+    }
+}
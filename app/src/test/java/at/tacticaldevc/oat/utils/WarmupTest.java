@@ -0,0 +1,133 @@
+package at.tacticaldevc.oat.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class WarmupTest {
+
+    private long now = 1000;
+
+    @Test
+    void runRunsAllStepsInOrder() {
+        // prepare
+        List<Integer> order = new ArrayList<>();
+        Warmup warmup = new Warmup(Arrays.asList(() -> order.add(1), () -> order.add(2), () -> order.add(3)), () -> now);
+
+        // test
+        warmup.run();
+
+        // assert
+        assertThat(order).containsExactly(1, 2, 3);
+        assertThat(warmup.isDone()).isTrue();
+        assertThat(warmup.await(0)).isTrue();
+    }
+
+    @Test
+    void failedStepDoesNotStopWarmup() {
+        // prepare
+        List<Integer> order = new ArrayList<>();
+        long failures = Metrics.getCount(Warmup.METRIC_FAILED_STEPS);
+        Warmup warmup = new Warmup(Arrays.asList(() -> {
+            throw new IllegalStateException("no camera");
+        }, () -> order.add(2)), () -> now);
+
+        // test
+        warmup.run();
+
+        // assert
+        assertThat(order).containsExactly(2);
+        assertThat(warmup.isDone()).isTrue();
+        assertThat(Metrics.getCount(Warmup.METRIC_FAILED_STEPS) - failures).isEqualTo(1);
+    }
+
+    @Test
+    void awaitBlocksUntilDone() throws Exception {
+        // prepare
+        CountDownLatch release = new CountDownLatch(1);
+        Warmup warmup = new Warmup(Collections.singletonList(() -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }), () -> now);
+        Thread thread = new Thread(warmup::run);
+        thread.start();
+
+        // test
+        boolean early = warmup.await(50);
+        release.countDown();
+        boolean late = warmup.await(5000);
+        thread.join();
+
+        // assert
+        assertThat(early).isFalse();
+        assertThat(late).isTrue();
+    }
+
+    @Test
+    void onlyFirstReplyIsRecorded() {
+        // prepare
+        Warmup warmup = new Warmup(Collections.<Warmup.Step>emptyList(), () -> now);
+        long count = firstReplies();
+        // the first command arrives while the warm-up is still running
+        warmup.await(0);
+        warmup.run();
+
+        // test
+        now += 420;
+        warmup.recordReply();
+        now += 1000;
+        warmup.recordReply();
+
+        // assert
+        Metrics.Latency latency = Metrics.getLatency(Warmup.LATENCY_FIRST_REPLY);
+        assertThat(latency.getCount() - count).isEqualTo(1);
+        assertThat(latency.getMaxMillis()).isGreaterThanOrEqualTo(420);
+    }
+
+    @Test
+    void replyAfterWarmStartIsNotRecorded() {
+        // prepare
+        Warmup warmup = new Warmup(Collections.<Warmup.Step>emptyList(), () -> now);
+        long count = firstReplies();
+        warmup.run();
+        now += 60000;
+
+        // test
+        warmup.await(0);
+        warmup.recordReply();
+
+        // assert
+        assertThat(firstReplies()).isEqualTo(count);
+    }
+
+    @Test
+    void replyWithoutCommandIsNotRecorded() {
+        // prepare
+        Warmup warmup = new Warmup(Collections.<Warmup.Step>emptyList(), () -> now);
+        long count = firstReplies();
+
+        // test
+        warmup.recordReply();
+        warmup.run();
+        warmup.await(0);
+        warmup.recordReply();
+
+        // assert
+        assertThat(firstReplies()).isEqualTo(count);
+    }
+
+    private static long firstReplies() {
+        Metrics.Latency latency = Metrics.getLatency(Warmup.LATENCY_FIRST_REPLY);
+        return latency == null ? 0 : latency.getCount();
+    }
+}
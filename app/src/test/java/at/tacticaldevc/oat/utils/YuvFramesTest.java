@@ -0,0 +1,51 @@
+package at.tacticaldevc.oat.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class YuvFramesTest {
+
+    @Test
+    void planarFrameIsInterleaved() {
+        // prepare
+        ByteBuffer y = ByteBuffer.wrap(new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        ByteBuffer u = ByteBuffer.wrap(new byte[]{10, 11});
+        ByteBuffer v = ByteBuffer.wrap(new byte[]{20, 21});
+
+        // test
+        byte[] nv21 = YuvFrames.toNv21(4, 2, y, 4, u, v, 2, 1);
+
+        // assert
+        assertThat(nv21).containsExactly(1, 2, 3, 4, 5, 6, 7, 8, 20, 10, 21, 11);
+    }
+
+    @Test
+    void paddedSemiPlanarFrameIsConverted() {
+        // prepare
+        // the camera delivers U and V interleaved in one buffer with a pixel stride of 2 and padded rows
+        ByteBuffer y = ByteBuffer.wrap(new byte[]{1, 2, 0, 0, 3, 4, 0, 0});
+        byte[] chroma = {10, 20, 0, 0};
+        ByteBuffer u = ByteBuffer.wrap(chroma);
+        ByteBuffer v = ByteBuffer.wrap(chroma, 1, 3).slice();
+
+        // test
+        byte[] nv21 = YuvFrames.toNv21(2, 2, y, 4, u, v, 4, 2);
+
+        // assert
+        assertThat(nv21).containsExactly(1, 2, 3, 4, 20, 10);
+        assertThat(y.position()).isEqualTo(0);
+    }
+
+    @Test
+    void oddDimensionsAreRejected() {
+        // prepare
+        ByteBuffer plane = ByteBuffer.allocate(16);
+
+        // test & assert
+        assertThrows(IllegalArgumentException.class, () -> YuvFrames.toNv21(3, 2, plane, 3, plane, plane, 2, 1));
+    }
+}